@@ -3,6 +3,7 @@ package com.paperpiper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.paperpiper.drone.Drone;
 import com.paperpiper.physics.PhysicsWorld;
 import com.paperpiper.render.Camera; 
 import com.paperpiper.render.Renderer;
@@ -103,8 +104,11 @@ public class PaperPiper {
                 lastFps = frameCount;
                 frameCount = 0;
                 fpsTimer = System.currentTimeMillis();
-                window.setTitle(String.format("PaperPiper - Drone Simulator | FPS: %d | Drones: %d", 
-                    lastFps, simulation.getDrones().size()));
+                Drone active = simulation.getActiveDrone();
+                window.setTitle(String.format("PaperPiper - Drone Simulator | FPS: %d | Drones: %d (%d parked) | Battery: %.1f V %d%%",
+                    lastFps, simulation.getDrones().size(), simulation.getDormantDroneCount(),
+                    active != null ? active.getBatteryVoltage() : 0f,
+                    active != null ? Math.round(active.getBatteryCharge() * 100) : 0));
             }
         }
     }
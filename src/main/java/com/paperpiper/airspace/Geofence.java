@@ -0,0 +1,474 @@
+package com.paperpiper.airspace;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.spatial.RTree;
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Airspace rules checked against every drone each update.
+ *
+ * A zone is a polygon outline of (x, z) points extruded between two
+ * altitudes, one of:
+ *   KEEP_OUT  no-fly volume
+ *   CEILING   the outline's area above an altitude
+ *   CORRIDOR  a passage where keep-outs and ceilings don't apply (an
+ *             approach lane through a no-fly zone, a lift shaft above a
+ *             ceiling)
+ *
+ * Zone boxes live in an STR-packed RTree, so check() costs each drone a tree
+ * query plus the few zones near it, however many zones there are. The check
+ * runs in parallel over all drones; only the comparison with each drone's
+ * previous status is serial (and in drone order, so events are
+ * reproducible).
+ *
+ * A drone is BREACH inside a keep-out or above a ceiling, NEAR within
+ * nearMargin of one, and CLEAR otherwise. Inside a corridor it is CLEAR
+ * unless it is within nearMargin of the corridor's wall while a restricted
+ * zone waits on the other side, which is NEAR. Each change of status (or
+ * of the zone behind it) is written to a ring of the last eventCapacity
+ * events, where readers follow a sequence number and the oldest events are
+ * overwritten.
+ *
+ * Zones can be added, moved and removed at any time between checks; the
+ * tree is edited in place and repacked once edits outnumber zones.
+ * Everything is flat arrays indexed by zone id or drone id, for the
+ * simulation thread only.
+ */
+public class Geofence {
+
+    private static final Logger logger = LoggerFactory.getLogger(Geofence.class);
+
+    public static final int KEEP_OUT = 0;
+    public static final int CEILING = 1;
+    public static final int CORRIDOR = 2;
+
+    public static final int CLEAR = 0;
+    public static final int NEAR = 1;
+    public static final int BREACH = 2;
+
+    private static final int CHUNK_SIZE = 256;
+    private static final int NODE_ENTRIES = 8;
+    // Ceilings reach up forever, but their tree boxes stop here to keep volumes finite
+    private static final float SKY = 100_000f;
+
+    private final ParallelFor parallel;
+    private final float nearMargin;
+    private final RTree tree = new RTree(NODE_ENTRIES);
+
+    // Zones, indexed by zone id
+    private int zoneCapacity = 0;
+    private int[] kind = new int[0];
+    private float[][] outline = new float[0][];
+    private float[] minY = new float[0];
+    private float[] maxY = new float[0];
+    private boolean[] zoneUsed = new boolean[0];
+    private int[] freeIds = new int[0];
+    private int freeIdCount = 0;
+    private int zoneCount = 0;
+
+    // Per drone id: status after the last check, and what this check found
+    private int[] status = new int[0];
+    private int[] statusZone = new int[0];
+    private int[] newStatus = new int[0];
+    private int[] newZone = new int[0];
+    private float[] newDistance = new float[0];
+
+    // Event ring
+    private final int eventMask;
+    private final int[] eventDrone;
+    private final int[] eventZone;
+    private final int[] eventStatus;
+    private final float[] eventDistance;
+    private final long[] eventTick;
+    private long eventsWritten = 0;
+
+    private long tick = 0;
+
+    // Check in progress
+    private float[] position;
+    private int[] checkIds;
+    private final ParallelFor.RangeBody checkBody = this::checkRange;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private static final class Scratch {
+        int[] hits = new int[16];
+        int[] stack = new int[256];
+    }
+
+    /**
+     * @param nearMargin    m from a zone that counts as a near breach
+     * @param eventCapacity events kept, rounded up to a power of two
+     */
+    public Geofence(ParallelFor parallel, float nearMargin, int eventCapacity) {
+        this.parallel = parallel;
+        this.nearMargin = nearMargin;
+        int capacity = Integer.highestOneBit(Math.max(2, eventCapacity - 1)) << 1;
+        this.eventMask = capacity - 1;
+        this.eventDrone = new int[capacity];
+        this.eventZone = new int[capacity];
+        this.eventStatus = new int[capacity];
+        this.eventDistance = new float[capacity];
+        this.eventTick = new long[capacity];
+    }
+
+    /**
+     * No-fly volume between two altitudes.
+     *
+     * @param outline x0, z0, x1, z1, ... (closed ring, last point not repeated)
+     * @return zone id
+     */
+    public int addKeepOut(float[] outline, float minY, float maxY) {
+        return addZone(KEEP_OUT, outline, minY, maxY);
+    }
+
+    /**
+     * Altitude limit over an area: everything above maxAltitude is off limits.
+     */
+    public int addCeiling(float[] outline, float maxAltitude) {
+        return addZone(CEILING, outline, maxAltitude, Float.MAX_VALUE);
+    }
+
+    /**
+     * Passage through restricted airspace between two altitudes.
+     */
+    public int addCorridor(float[] outline, float minY, float maxY) {
+        return addZone(CORRIDOR, outline, minY, maxY);
+    }
+
+    private int addZone(int zoneKind, float[] points, float bottom, float top) {
+        validate(points, bottom, top);
+        int id;
+        if (freeIdCount > 0) {
+            id = freeIds[--freeIdCount];
+        } else {
+            id = zoneCapacity;
+            ensureZoneCapacity(id + 1);
+        }
+        zoneUsed[id] = true;
+        kind[id] = zoneKind;
+        zoneCount++;
+        setShape(id, points, bottom, top);
+        return id;
+    }
+
+    /**
+     * Reshape a zone (same kind). For a ceiling, minY is the altitude and
+     * maxY is ignored.
+     */
+    public void updateZone(int id, float[] points, float bottom, float top) {
+        checkZone(id);
+        if (kind[id] == CEILING) {
+            top = Float.MAX_VALUE;
+        }
+        validate(points, bottom, top);
+        setShape(id, points, bottom, top);
+    }
+
+    public void removeZone(int id) {
+        checkZone(id);
+        tree.remove(id);
+        zoneUsed[id] = false;
+        outline[id] = null;
+        zoneCount--;
+        if (freeIdCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, Math.max(16, freeIds.length * 2));
+        }
+        freeIds[freeIdCount++] = id;
+    }
+
+    private void setShape(int id, float[] points, float bottom, float top) {
+        outline[id] = points.clone();
+        minY[id] = bottom;
+        maxY[id] = top;
+        float minX = Float.MAX_VALUE, minZ = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = 0; i < points.length; i += 2) {
+            minX = Math.min(minX, points[i]);
+            maxX = Math.max(maxX, points[i]);
+            minZ = Math.min(minZ, points[i + 1]);
+            maxZ = Math.max(maxZ, points[i + 1]);
+        }
+        tree.insert(id, minX, bottom, minZ, maxX, Math.min(top, SKY), maxZ);
+    }
+
+    private static void validate(float[] points, float bottom, float top) {
+        if (points.length < 6 || points.length % 2 != 0) {
+            throw new IllegalArgumentException("Zone outline needs at least 3 (x, z) points, got " + points.length / 2);
+        }
+        if (!(top > bottom)) {
+            throw new IllegalArgumentException("Zone top " + top + " must be above its bottom " + bottom);
+        }
+    }
+
+    private void checkZone(int id) {
+        if (id < 0 || id >= zoneCapacity || !zoneUsed[id]) {
+            throw new IllegalArgumentException("No geofence zone " + id);
+        }
+    }
+
+    /**
+     * Check drones ids[0..n) against all zones and record status changes as
+     * events. Call once per update.
+     */
+    public void check(DroneState state, int[] ids, int n) {
+        tick++;
+        ensureDroneCapacity(state.getCapacity());
+        if (zoneCount == 0) {
+            // Nothing to breach; still let drones that were flagged go back to clear
+            for (int i = 0; i < n; i++) {
+                newStatus[ids[i]] = CLEAR;
+                newZone[ids[i]] = -1;
+                newDistance[ids[i]] = 0f;
+            }
+        } else {
+            if (tree.getEditsSincePack() > Math.max(64, zoneCount)) {
+                long start = System.nanoTime();
+                tree.repack();
+                logger.debug("Repacked geofence tree of {} zones in {} us", zoneCount,
+                        (System.nanoTime() - start) / 1000);
+            }
+            position = state.getPosition();
+            checkIds = ids;
+            parallel.run(n, CHUNK_SIZE, checkBody);
+            position = null;
+            checkIds = null;
+        }
+
+        for (int i = 0; i < n; i++) {
+            int id = ids[i];
+            int s = newStatus[id];
+            if (s != status[id] || (s != CLEAR && newZone[id] != statusZone[id])) {
+                status[id] = s;
+                statusZone[id] = newZone[id];
+                writeEvent(id, newZone[id], s, newDistance[id]);
+            }
+        }
+    }
+
+    private void checkRange(int from, int to) {
+        Scratch s = scratch.get();
+        if (s.hits.length < zoneCapacity) {
+            s.hits = new int[zoneCapacity];
+        }
+        float margin = nearMargin;
+        for (int i = from; i < to; i++) {
+            int id = checkIds[i];
+            float x = position[id * 3], y = position[id * 3 + 1], z = position[id * 3 + 2];
+            int hitCount = tree.query(x - margin, y - margin, z - margin, x + margin, y + margin, z + margin,
+                    s.hits, s.stack);
+
+            // Deepest corridor around the drone, how far it is from the corridor's wall
+            int corridor = -1;
+            float corridorDepth = -1f;
+            // Deepest restricted zone it is inside, and the nearest one it is outside of
+            int breachZone = -1;
+            float breachDepth = -1f;
+            int nearZone = -1;
+            float nearDistance = Float.MAX_VALUE;
+
+            for (int h = 0; h < hitCount; h++) {
+                int zone = s.hits[h];
+                float[] points = outline[zone];
+                boolean inside = y >= minY[zone] && y <= maxY[zone] && contains(points, x, z);
+                float edge = (float) Math.sqrt(edgeDistanceSq(points, x, z));
+                if (inside) {
+                    float depth = Math.min(edge, Math.min(y - minY[zone], maxY[zone] - y));
+                    if (kind[zone] == CORRIDOR) {
+                        if (depth > corridorDepth) {
+                            corridor = zone;
+                            corridorDepth = depth;
+                        }
+                    } else if (depth > breachDepth) {
+                        breachZone = zone;
+                        breachDepth = depth;
+                    }
+                } else if (kind[zone] != CORRIDOR) {
+                    float horizontal = contains(points, x, z) ? 0f : edge;
+                    float vertical = y < minY[zone] ? minY[zone] - y : y > maxY[zone] ? y - maxY[zone] : 0f;
+                    float distance = (float) Math.sqrt(horizontal * horizontal + vertical * vertical);
+                    if (distance < nearDistance) {
+                        nearZone = zone;
+                        nearDistance = distance;
+                    }
+                }
+            }
+
+            int result = CLEAR;
+            int zone = -1;
+            float distance = 0f;
+            if (corridor >= 0) {
+                if ((breachZone >= 0 || nearDistance < margin) && corridorDepth < margin) {
+                    result = NEAR;
+                    zone = corridor;
+                    distance = corridorDepth;
+                }
+            } else if (breachZone >= 0) {
+                result = BREACH;
+                zone = breachZone;
+                distance = breachDepth;
+            } else if (nearDistance < margin) {
+                result = NEAR;
+                zone = nearZone;
+                distance = nearDistance;
+            }
+            newStatus[id] = result;
+            newZone[id] = zone;
+            newDistance[id] = distance;
+        }
+    }
+
+    /** Even-odd point in polygon */
+    private static boolean contains(float[] points, float x, float z) {
+        boolean inside = false;
+        int n = points.length;
+        for (int i = 0, j = n - 2; i < n; j = i, i += 2) {
+            float xi = points[i], zi = points[i + 1], xj = points[j], zj = points[j + 1];
+            if ((zi > z) != (zj > z) && x < (xj - xi) * (z - zi) / (zj - zi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /** Squared distance to the nearest outline edge */
+    private static float edgeDistanceSq(float[] points, float x, float z) {
+        float best = Float.MAX_VALUE;
+        int n = points.length;
+        for (int i = 0, j = n - 2; i < n; j = i, i += 2) {
+            float ax = points[j], az = points[j + 1];
+            float ex = points[i] - ax, ez = points[i + 1] - az;
+            float lengthSq = ex * ex + ez * ez;
+            float t = lengthSq > 0f ? ((x - ax) * ex + (z - az) * ez) / lengthSq : 0f;
+            t = Math.max(0f, Math.min(1f, t));
+            float dx = ax + t * ex - x, dz = az + t * ez - z;
+            best = Math.min(best, dx * dx + dz * dz);
+        }
+        return best;
+    }
+
+    private void writeEvent(int droneId, int zone, int newState, float distance) {
+        int slot = (int) (eventsWritten & eventMask);
+        eventDrone[slot] = droneId;
+        eventZone[slot] = zone;
+        eventStatus[slot] = newState;
+        eventDistance[slot] = distance;
+        eventTick[slot] = tick;
+        eventsWritten++;
+    }
+
+    /** Forget a drone's status (e.g. when it is removed), without an event */
+    public void forget(int droneId) {
+        if (droneId < status.length) {
+            status[droneId] = CLEAR;
+            statusZone[droneId] = -1;
+        }
+    }
+
+    // ---- Events: sequence numbers run from getOldestEvent() to getEventCount() - 1 ----
+
+    /** Events written so far; the next event gets this sequence number */
+    public long getEventCount() {
+        return eventsWritten;
+    }
+
+    /** Oldest sequence number still in the ring */
+    public long getOldestEvent() {
+        return Math.max(0, eventsWritten - eventMask - 1);
+    }
+
+    public int getEventDrone(long sequence) {
+        return eventDrone[eventSlot(sequence)];
+    }
+
+    /** Zone behind the event, -1 for CLEAR */
+    public int getEventZone(long sequence) {
+        return eventZone[eventSlot(sequence)];
+    }
+
+    /** The drone's new status: CLEAR, NEAR or BREACH */
+    public int getEventStatus(long sequence) {
+        return eventStatus[eventSlot(sequence)];
+    }
+
+    /** m inside the zone for BREACH (inside the corridor for a corridor NEAR), m away for NEAR */
+    public float getEventDistance(long sequence) {
+        return eventDistance[eventSlot(sequence)];
+    }
+
+    /** check() call that raised the event, counting from 1 */
+    public long getEventTick(long sequence) {
+        return eventTick[eventSlot(sequence)];
+    }
+
+    private int eventSlot(long sequence) {
+        if (sequence < getOldestEvent() || sequence >= eventsWritten) {
+            throw new IllegalArgumentException("Geofence event " + sequence + " is not in the ring ["
+                    + getOldestEvent() + ", " + eventsWritten + ")");
+        }
+        return (int) (sequence & eventMask);
+    }
+
+    /** Status after the last check */
+    public int getStatus(int droneId) {
+        return droneId < status.length ? status[droneId] : CLEAR;
+    }
+
+    /** Zone behind the drone's status, -1 when CLEAR */
+    public int getStatusZone(int droneId) {
+        return droneId < status.length ? statusZone[droneId] : -1;
+    }
+
+    public int getZoneKind(int id) {
+        checkZone(id);
+        return kind[id];
+    }
+
+    public int getZoneCount() {
+        return zoneCount;
+    }
+
+    public float getNearMargin() {
+        return nearMargin;
+    }
+
+    public RTree getTree() {
+        return tree;
+    }
+
+    private void ensureZoneCapacity(int n) {
+        if (zoneCapacity >= n) {
+            return;
+        }
+        int capacity = Math.max(n, zoneCapacity * 2);
+        kind = Arrays.copyOf(kind, capacity);
+        outline = Arrays.copyOf(outline, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        zoneUsed = Arrays.copyOf(zoneUsed, capacity);
+        // Fresh ids past the old end go on the free list, highest first so they come out in order
+        for (int id = capacity - 1; id >= n; id--) {
+            if (freeIdCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, Math.max(16, freeIds.length * 2));
+            }
+            freeIds[freeIdCount++] = id;
+        }
+        zoneCapacity = capacity;
+    }
+
+    private void ensureDroneCapacity(int n) {
+        if (status.length >= n) {
+            return;
+        }
+        int old = status.length;
+        status = Arrays.copyOf(status, n);
+        statusZone = Arrays.copyOf(statusZone, n);
+        Arrays.fill(statusZone, old, n, -1);
+        newStatus = Arrays.copyOf(newStatus, n);
+        newZone = Arrays.copyOf(newZone, n);
+        newDistance = Arrays.copyOf(newDistance, n);
+    }
+}
@@ -0,0 +1,418 @@
+package com.paperpiper.airspace;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Space-time reservations for strategic deconfliction: a drone about to fly
+ * a path claims the (voxel, time slot) cells it will pass through, and a
+ * path that runs into another drone's claim is refused so it can be
+ * replanned before anyone takes off.
+ *
+ * Paths are walked voxel by voxel. A drone in a voxel from t0 to t1 claims
+ * every slot from t0 - slotDuration / 2 to t1 + slotDuration / 2, so two
+ * drones a moment apart on either side of a slot boundary still collide.
+ *
+ * Only the next horizon slots can be reserved. Each slot maps to one of
+ * horizon buckets (slot mod horizon), a fixed open-addressing table of
+ * bucketCapacity entries, so the table's memory never changes however long
+ * the run.
+ * Entries expire by themselves: each carries the round (slot / horizon) it
+ * was made for, and an entry from an older round counts as empty and gets
+ * overwritten. Nothing is ever swept.
+ *
+ * An entry is one long, so claims are a single CAS and any number of
+ * threads (planner workers) can reserve at once without locks:
+ *   bits  0..19  owner drone id + 1, 0 once released
+ *   bits 20..29  round mod 1023, plus 1 so no key is ever 0
+ *   bits 30..63  voxel x (13 bits), y (8), z (13), each mod its width
+ * Voxel coordinates wrap, and so do rounds, so voxels 8192 cells apart (or
+ * an entry 1023 rounds old) can alias and cost a spurious conflict, never a
+ * missed one.
+ *
+ * A drone holds one path at a time; reserving a new one releases the old
+ * one first. Calls for the same drone are serialized by a striped lock.
+ * A holding can be tagged with the request that made it and guarded by a
+ * check run under that lock, so a planner worker finishing a superseded or
+ * cancelled request never replaces (or leaks) the drone's current path.
+ */
+public class ReservationTable {
+
+    public static final int RESERVED = -1;
+    public static final int FULL = -2;
+    public static final int STALE = -3;
+
+    private static final int OWNER_BITS = 20;
+    private static final int ROUND_BITS = 10;
+    private static final long OWNER_MASK = (1L << OWNER_BITS) - 1;
+    private static final long ROUND_MASK = (1L << ROUND_BITS) - 1;
+    private static final long KEY_MASK = ~OWNER_MASK;
+    private static final int MAX_DRONES = (int) OWNER_MASK - 1;
+    private static final int LOCK_STRIPES = 64;
+
+    private final float voxelSize;
+    private final float invVoxelSize;
+    private final float slotDuration;
+    private final int horizon;
+    private final int bucketCapacity;
+    private final int bucketMask;
+    private final AtomicLongArray entries;
+
+    private volatile float now = 0f;
+    private volatile long currentSlot = 0;
+
+    // What each drone holds: entry index and value, so release can CAS it back
+    private final Holding[] holdings;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private final AtomicLong claims = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+
+    private static final class Holding {
+        int request = 0;
+        int count = 0;
+        int[] index = new int[64];
+        long[] value = new long[64];
+
+        void add(int i, long v) {
+            if (count == index.length) {
+                index = Arrays.copyOf(index, count * 2);
+                value = Arrays.copyOf(value, count * 2);
+            }
+            index[count] = i;
+            value[count] = v;
+            count++;
+        }
+    }
+
+    /**
+     * @param voxelSize      m per side of a reserved cell
+     * @param slotDuration   s per time slot
+     * @param horizon        slots ahead that can be reserved
+     * @param bucketCapacity entries per slot, rounded up to a power of two
+     * @param maxDrones      drone ids must stay below this
+     */
+    public ReservationTable(float voxelSize, float slotDuration, int horizon, int bucketCapacity, int maxDrones) {
+        if (maxDrones > MAX_DRONES) {
+            throw new IllegalArgumentException("Reservation table holds at most " + MAX_DRONES + " drones");
+        }
+        if (horizon < 2) {
+            throw new IllegalArgumentException("Reservation horizon must be at least 2 slots, got " + horizon);
+        }
+        this.voxelSize = voxelSize;
+        this.invVoxelSize = 1f / voxelSize;
+        this.slotDuration = slotDuration;
+        this.horizon = horizon;
+        this.bucketCapacity = Integer.highestOneBit(Math.max(2, bucketCapacity - 1)) << 1;
+        this.bucketMask = this.bucketCapacity - 1;
+        this.entries = new AtomicLongArray(horizon * this.bucketCapacity);
+        this.holdings = new Holding[maxDrones];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Move the clock; slots before the new time expire. Call once per update
+     * from the simulation thread.
+     */
+    public void advance(float time) {
+        now = time;
+        currentSlot = (long) Math.floor(time / slotDuration);
+    }
+
+    /**
+     * Reserve a path flown at constant speed from departTime, replacing
+     * whatever the drone held. Only the part of the path inside the horizon
+     * is reserved.
+     *
+     * @param waypoints x, y, z per waypoint
+     * @param conflict  if not null, gets x, y, z, t of the first conflict
+     * @return RESERVED, FULL if a slot's bucket ran out of entries, or the id
+     *         of the drone already holding a cell on the path (nothing is
+     *         held after a failure)
+     */
+    public int reserve(int droneId, float[] waypoints, float departTime, float speed, float[] conflict) {
+        return reserve(droneId, 0, null, waypoints, departTime, speed, conflict);
+    }
+
+    /**
+     * reserve() on behalf of a request that may have been superseded by the
+     * time it gets here.
+     *
+     * @param request tag kept with the holding, for release(droneId, request)
+     * @param current if not null, checked under the drone's lock; when false
+     *                nothing is touched and STALE is returned
+     */
+    public int reserve(int droneId, int request, BooleanSupplier current, float[] waypoints, float departTime,
+            float speed, float[] conflict) {
+        if (droneId < 0 || droneId >= holdings.length) {
+            throw new IllegalArgumentException("Drone id " + droneId + " is outside the reservation table");
+        }
+        synchronized (locks[droneId & (LOCK_STRIPES - 1)]) {
+            if (current != null && !current.getAsBoolean()) {
+                return STALE;
+            }
+            Holding holding = holdings[droneId];
+            if (holding == null) {
+                holding = holdings[droneId] = new Holding();
+            }
+            releaseHeld(holding);
+            holding.request = request;
+
+            long first = currentSlot;
+            long end = first + horizon;
+            long owner = droneId + 1;
+            float guard = slotDuration * 0.5f;
+            float t = departTime;
+
+            for (int w = 0; w + 5 < waypoints.length; w += 3) {
+                float ax = waypoints[w], ay = waypoints[w + 1], az = waypoints[w + 2];
+                float dx = waypoints[w + 3] - ax, dy = waypoints[w + 4] - ay, dz = waypoints[w + 5] - az;
+                float duration = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / speed;
+
+                // Walk the voxels the segment crosses (Amanatides-Woo), with the times it enters and leaves each
+                int vx = (int) Math.floor(ax * invVoxelSize);
+                int vy = (int) Math.floor(ay * invVoxelSize);
+                int vz = (int) Math.floor(az * invVoxelSize);
+                int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+                int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+                int stepZ = dz > 0 ? 1 : dz < 0 ? -1 : 0;
+                float deltaX = stepX != 0 ? voxelSize / Math.abs(dx) : Float.MAX_VALUE;
+                float deltaY = stepY != 0 ? voxelSize / Math.abs(dy) : Float.MAX_VALUE;
+                float deltaZ = stepZ != 0 ? voxelSize / Math.abs(dz) : Float.MAX_VALUE;
+                float nextX = stepX != 0 ? ((vx + (stepX > 0 ? 1 : 0)) * voxelSize - ax) / dx : Float.MAX_VALUE;
+                float nextY = stepY != 0 ? ((vy + (stepY > 0 ? 1 : 0)) * voxelSize - ay) / dy : Float.MAX_VALUE;
+                float nextZ = stepZ != 0 ? ((vz + (stepZ > 0 ? 1 : 0)) * voxelSize - az) / dz : Float.MAX_VALUE;
+
+                float enter = 0f;
+                while (true) {
+                    float exit = Math.min(1f, Math.min(nextX, Math.min(nextY, nextZ)));
+                    float enterTime = t + enter * duration;
+                    long low = Math.max(first, (long) Math.floor((enterTime - guard) / slotDuration));
+                    long high = Math.min(end - 1, (long) Math.floor((t + exit * duration + guard) / slotDuration));
+                    if (low >= end) {
+                        return RESERVED; // past the horizon, keep what we have
+                    }
+                    long cell = cell(vx, vy, vz);
+                    for (long slot = low; slot <= high; slot++) {
+                        int result = claim(holding, cell, slot, owner);
+                        if (result != RESERVED) {
+                            releaseHeld(holding);
+                            if (result >= 0) {
+                                conflicts.incrementAndGet();
+                            } else {
+                                overflows.incrementAndGet();
+                            }
+                            if (conflict != null) {
+                                conflict[0] = ax + dx * enter;
+                                conflict[1] = ay + dy * enter;
+                                conflict[2] = az + dz * enter;
+                                conflict[3] = enterTime;
+                            }
+                            return result;
+                        }
+                    }
+                    if (exit >= 1f) {
+                        break;
+                    }
+                    enter = exit;
+                    if (nextX <= nextY && nextX <= nextZ) {
+                        vx += stepX;
+                        nextX += deltaX;
+                    } else if (nextY <= nextZ) {
+                        vy += stepY;
+                        nextY += deltaY;
+                    } else {
+                        vz += stepZ;
+                        nextZ += deltaZ;
+                    }
+                }
+                t += duration;
+            }
+            return RESERVED;
+        }
+    }
+
+    /** Give up everything the drone holds */
+    public void release(int droneId) {
+        if (droneId < 0 || droneId >= holdings.length) {
+            return;
+        }
+        synchronized (locks[droneId & (LOCK_STRIPES - 1)]) {
+            Holding holding = holdings[droneId];
+            if (holding != null) {
+                releaseHeld(holding);
+            }
+        }
+    }
+
+    /** Give up what the drone holds, but only if that request reserved it */
+    public void release(int droneId, int request) {
+        if (droneId < 0 || droneId >= holdings.length) {
+            return;
+        }
+        synchronized (locks[droneId & (LOCK_STRIPES - 1)]) {
+            Holding holding = holdings[droneId];
+            if (holding != null && holding.request == request) {
+                releaseHeld(holding);
+            }
+        }
+    }
+
+    /**
+     * Drone holding a voxel at a time, or -1.
+     */
+    public int ownerAt(float x, float y, float z, float time) {
+        long slot = (long) Math.floor(time / slotDuration);
+        if (slot < currentSlot || slot >= currentSlot + horizon) {
+            return -1;
+        }
+        long key = key(cell(x, y, z), slot);
+        int base = bucket(slot);
+        int home = home(key);
+        for (int probe = 0; probe < bucketCapacity; probe++) {
+            long entry = entries.get(base + ((home + probe) & bucketMask));
+            if (entry == 0 || !live(entry, slot)) {
+                return -1;
+            }
+            if ((entry & KEY_MASK) == key) {
+                return (int) (entry & OWNER_MASK) - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Claim one (cell, slot) for owner.
+     *
+     * Probing stops at the first empty or expired entry: all entries of a
+     * bucket expire together, so no live entry of this round sits behind one.
+     */
+    private int claim(Holding holding, long cell, long slot, long owner) {
+        long key = key(cell, slot);
+        int base = bucket(slot);
+        int home = home(key);
+        for (int probe = 0; probe < bucketCapacity; ) {
+            int index = base + ((home + probe) & bucketMask);
+            long entry = entries.get(index);
+            if (entry == 0 || !live(entry, slot)) {
+                long value = key | owner;
+                if (entries.compareAndSet(index, entry, value)) {
+                    holding.add(index, value);
+                    claims.incrementAndGet();
+                    return RESERVED;
+                }
+                continue; // lost the race, look at what won it
+            }
+            if ((entry & KEY_MASK) == key) {
+                long holder = entry & OWNER_MASK;
+                if (holder == owner) {
+                    return RESERVED;
+                }
+                if (holder == 0) {
+                    // Released, same key: take it over
+                    long value = key | owner;
+                    if (entries.compareAndSet(index, entry, value)) {
+                        holding.add(index, value);
+                        claims.incrementAndGet();
+                        return RESERVED;
+                    }
+                    continue;
+                }
+                return (int) holder - 1;
+            }
+            probe++;
+        }
+        return FULL;
+    }
+
+    /** Mark held entries released; ones already expired and reused are left alone */
+    private void releaseHeld(Holding holding) {
+        for (int i = 0; i < holding.count; i++) {
+            long value = holding.value[i];
+            entries.compareAndSet(holding.index[i], value, value & KEY_MASK);
+        }
+        holding.count = 0;
+    }
+
+    /** Whether an entry in the slot's bucket belongs to the slot's round */
+    private boolean live(long entry, long slot) {
+        return ((entry >>> OWNER_BITS) & ROUND_MASK) == roundTag(slot);
+    }
+
+    private long key(long cell, long slot) {
+        return (cell << (OWNER_BITS + ROUND_BITS)) | (roundTag(slot) << OWNER_BITS);
+    }
+
+    private long roundTag(long slot) {
+        return (slot / horizon) % ROUND_MASK + 1;
+    }
+
+    private long cell(float x, float y, float z) {
+        return cell((int) Math.floor(x * invVoxelSize), (int) Math.floor(y * invVoxelSize),
+                (int) Math.floor(z * invVoxelSize));
+    }
+
+    private static long cell(int vx, int vy, int vz) {
+        return ((vx & 0x1FFFL) << 21) | ((vy & 0xFFL) << 13) | (vz & 0x1FFFL);
+    }
+
+    private int bucket(long slot) {
+        return (int) (slot % horizon) * bucketCapacity;
+    }
+
+    private int home(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & bucketMask;
+    }
+
+    /** Forget all reservations (e.g. when the simulation restarts) */
+    public void clear() {
+        for (int i = 0; i < holdings.length; i++) {
+            synchronized (locks[i & (LOCK_STRIPES - 1)]) {
+                if (holdings[i] != null) {
+                    holdings[i].count = 0;
+                }
+            }
+        }
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, 0);
+        }
+    }
+
+    public float getNow() {
+        return now;
+    }
+
+    public float getVoxelSize() {
+        return voxelSize;
+    }
+
+    public float getSlotDuration() {
+        return slotDuration;
+    }
+
+    /** Slots ahead that can be reserved */
+    public int getHorizon() {
+        return horizon;
+    }
+
+    /** Cells claimed so far */
+    public long getClaims() {
+        return claims.get();
+    }
+
+    /** reserve() calls refused because another drone held a cell */
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    /** reserve() calls refused because a slot's bucket was full */
+    public long getOverflows() {
+        return overflows.get();
+    }
+}
@@ -0,0 +1,148 @@
+package com.paperpiper.comms;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * One fixed-capacity message queue per drone, all in flat arrays: records of
+ * RadioNetwork.RECORD_INTS ints, no objects per message.
+ *
+ * Each mailbox is a bounded lock-free queue (Vyukov style): every slot has a
+ * sequence number that says whether it is free for the producer at position
+ * p (seq == p) or holds the message for the consumer at p (seq == p + 1).
+ * Producers claim a position with a CAS, write the record, then publish it by
+ * bumping the sequence; consumers do the mirror image. Any number of threads
+ * may offer into and poll from the same mailbox. A full mailbox rejects the
+ * message instead of blocking.
+ *
+ * ensureCapacity() and clear() are not thread-safe; call them between ticks.
+ */
+public class Mailboxes {
+
+    private final int capacity;  // per drone, power of two
+    private final int mask;
+    private final int recordInts;
+
+    private int drones = 0;
+    private int[] data = new int[0];
+    private AtomicLongArray sequence = new AtomicLongArray(0);
+    private AtomicLongArray enqueuePos = new AtomicLongArray(0);
+    private AtomicLongArray dequeuePos = new AtomicLongArray(0);
+
+    /**
+     * @param capacity messages per mailbox, rounded up to a power of two
+     */
+    public Mailboxes(int capacity, int recordInts) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.recordInts = recordInts;
+    }
+
+    /**
+     * Copy a record into a drone's mailbox.
+     *
+     * @return false if the mailbox is full
+     */
+    public boolean offer(int id, int[] record, int offset) {
+        int base = id * capacity;
+        long pos = enqueuePos.get(id);
+        int slot;
+        while (true) {
+            slot = (int) (pos & mask);
+            long dif = sequence.getAcquire(base + slot) - pos;
+            if (dif == 0) {
+                if (enqueuePos.weakCompareAndSetVolatile(id, pos, pos + 1)) {
+                    break;
+                }
+                pos = enqueuePos.get(id);
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = enqueuePos.get(id);
+            }
+        }
+        System.arraycopy(record, offset, data, (base + slot) * recordInts, recordInts);
+        sequence.setRelease(base + slot, pos + 1);
+        return true;
+    }
+
+    /**
+     * Take the oldest record from a drone's mailbox.
+     *
+     * @return true if a record was copied to out[offset..]
+     */
+    public boolean poll(int id, int[] out, int offset) {
+        int base = id * capacity;
+        long pos = dequeuePos.get(id);
+        int slot;
+        while (true) {
+            slot = (int) (pos & mask);
+            long dif = sequence.getAcquire(base + slot) - (pos + 1);
+            if (dif == 0) {
+                if (dequeuePos.weakCompareAndSetVolatile(id, pos, pos + 1)) {
+                    break;
+                }
+                pos = dequeuePos.get(id);
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = dequeuePos.get(id);
+            }
+        }
+        System.arraycopy(data, (base + slot) * recordInts, out, offset, recordInts);
+        sequence.setRelease(base + slot, pos + capacity);
+        return true;
+    }
+
+    /** Messages waiting (a snapshot while others are offering/polling) */
+    public int size(int id) {
+        return (int) Math.max(0, enqueuePos.get(id) - dequeuePos.get(id));
+    }
+
+    /**
+     * Make room for drone ids [0, drones).
+     */
+    public void ensureCapacity(int drones) {
+        if (this.drones >= drones) {
+            return;
+        }
+        int old = this.drones;
+        int grown = Math.max(drones, old * 2);
+        data = Arrays.copyOf(data, grown * capacity * recordInts);
+
+        AtomicLongArray newSequence = new AtomicLongArray(grown * capacity);
+        AtomicLongArray newEnqueue = new AtomicLongArray(grown);
+        AtomicLongArray newDequeue = new AtomicLongArray(grown);
+        for (int i = 0; i < old * capacity; i++) {
+            newSequence.set(i, sequence.get(i));
+        }
+        for (int i = 0; i < old; i++) {
+            newEnqueue.set(i, enqueuePos.get(i));
+            newDequeue.set(i, dequeuePos.get(i));
+        }
+        for (int i = old * capacity; i < grown * capacity; i++) {
+            newSequence.set(i, i & mask);
+        }
+        sequence = newSequence;
+        enqueuePos = newEnqueue;
+        dequeuePos = newDequeue;
+        this.drones = grown;
+    }
+
+    /** Drop everything queued for a drone (e.g. when its slot is reused) */
+    public void clear(int id) {
+        if (id >= drones) {
+            return;
+        }
+        int base = id * capacity;
+        for (int i = 0; i < capacity; i++) {
+            sequence.set(base + i, i);
+        }
+        enqueuePos.set(id, 0);
+        dequeuePos.set(id, 0);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
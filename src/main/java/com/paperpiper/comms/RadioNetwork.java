@@ -0,0 +1,381 @@
+package com.paperpiper.comms;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.spatial.SpatialHash;
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Drone-to-drone radio with limited range, packet loss and latency.
+ *
+ * Messages are flat int records (RECORD_INTS ints: header + up to
+ * PAYLOAD_INTS ints of payload). Sending copies the record into this tick's
+ * outbox segment with one atomic bump, from any thread. Once per tick:
+ *
+ *  1. fan out: every message sent since the last tick finds its receivers
+ *     (broadcast = every drone within range, from a spatial hash with
+ *     range-sized cells; unicast = the target if in range), rolls for loss
+ *     and latency, and is scheduled on a timing wheel slot latency ticks
+ *     ahead
+ *  2. deliver: the wheel slot for this tick copies its records into the
+ *     receivers' lock-free Mailboxes
+ *
+ * Outbox segments form a ring one longer than the wheel, so a record stays
+ * put until its last delivery (latency is capped at wheel length - 1 ticks,
+ * and a segment is only reopened for sends the tick after that) and the
+ * wheel only stores (receiver, generation, record) int triples. The
+ * generation is bumped when a drone is removed, so messages still in flight
+ * to it are dropped rather than handed to whoever reuses the id. Both passes
+ * run in parallel chunks. Loss and jitter come from a hash of (seed, tick, message,
+ * receiver), so results don't depend on scheduling. Nothing allocates per
+ * message; full outboxes, wheel slots or mailboxes drop and count instead.
+ */
+public class RadioNetwork {
+
+    // Record layout
+    public static final int SENDER = 0;
+    public static final int TARGET = 1;  // -1 = broadcast
+    public static final int TYPE = 2;
+    public static final int TICK = 3;    // tick it was sent in
+    public static final int LENGTH = 4;  // payload ints used
+    public static final int PAYLOAD = 5;
+    public static final int RECORD_INTS = 16;
+    public static final int PAYLOAD_INTS = RECORD_INTS - PAYLOAD;
+
+    public static final int BROADCAST = -1;
+
+    private static final int CHUNK_SIZE = 512;
+    private static final int MAX_FANOUT = 256; // receivers per broadcast
+
+    private float range;                 // m
+    private float reliableFraction = 0.7f; // loss ramps up beyond this share of the range
+    private float baseLoss = 0.01f;
+    private float baseLatency = 0.02f;   // s
+    private float jitter = 0.01f;        // s, uniform 0..jitter
+    private long seed = 11L;
+
+    private final ParallelFor parallel;
+    private final Mailboxes mailboxes;
+    private final SpatialHash index;      // cells of the initial range
+
+    // Outbox ring: wheelSize + 1 segments of segmentCapacity records. The cursor
+    // packs (segment << 32 | next index) so a send lands in exactly one
+    // segment even while tick() swaps it; written counts finished records.
+    private final int wheelSize;
+    private final int segments;
+    private final int segmentCapacity;
+    private final int[] outbox;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicIntegerArray written;
+    private int segment = 0; // being fanned out
+
+    // Per drone id: bumped on removal, and the stamp of the last tick it was on the air
+    private int[] generations = new int[0];
+    private int[] onAir = new int[0];
+    private int airStamp = 0;
+
+    // Timing wheel: per slot, (receiver, generation, record index) triples
+    private final int slotCapacity;
+    private final int[] wheel;
+    private final AtomicIntegerArray slotCount;
+
+    private long tick = 0;
+    private float tickPeriod = 1f / 60f;
+
+    // Pass in progress
+    private DroneState state;
+    private int deliverSlot;
+    private final ParallelFor.RangeBody fanOutBody = this::fanOut;
+    private final ParallelFor.RangeBody deliverBody = this::deliver;
+    private final ThreadLocal<int[]> receivers = ThreadLocal.withInitial(() -> new int[MAX_FANOUT]);
+
+    // Stats, totals since start
+    private final AtomicLong sentTotal = new AtomicLong();
+    private final AtomicLong deliveredTotal = new AtomicLong();
+    private final AtomicLong lostTotal = new AtomicLong();
+    private final AtomicLong droppedTotal = new AtomicLong(); // outbox, wheel or mailbox full
+
+    /**
+     * @param range           m
+     * @param mailboxCapacity messages queued per drone
+     * @param segmentCapacity messages that can be sent per tick
+     * @param wheelSize       ticks of latency the wheel covers
+     * @param fanOut          average receivers per message the wheel is sized for
+     */
+    public RadioNetwork(ParallelFor parallel, float range, int mailboxCapacity, int segmentCapacity, int wheelSize,
+            int fanOut) {
+        this.parallel = parallel;
+        this.range = range;
+        this.mailboxes = new Mailboxes(mailboxCapacity, RECORD_INTS);
+        this.index = new SpatialHash(range, 16384);
+        this.wheelSize = wheelSize;
+        this.segments = wheelSize + 1;
+        this.segmentCapacity = segmentCapacity;
+        this.outbox = new int[segments * segmentCapacity * RECORD_INTS];
+        this.written = new AtomicIntegerArray(segments);
+        this.slotCapacity = segmentCapacity * fanOut;
+        this.wheel = new int[wheelSize * slotCapacity * 3];
+        this.slotCount = new AtomicIntegerArray(wheelSize);
+    }
+
+    /**
+     * Send to every drone within range.
+     *
+     * @return false if this tick's outbox is full
+     */
+    public boolean broadcast(int sender, int type, int[] payload, int offset, int length) {
+        return send(sender, BROADCAST, type, payload, offset, length);
+    }
+
+    /**
+     * Send to one drone (delivered only if it is within range).
+     *
+     * @param length payload ints, at most PAYLOAD_INTS
+     * @return false if this tick's outbox is full
+     */
+    public boolean send(int sender, int target, int type, int[] payload, int offset, int length) {
+        if (length > PAYLOAD_INTS) {
+            throw new IllegalArgumentException("Payload is " + length + " ints, max " + PAYLOAD_INTS);
+        }
+        long slot = cursor.getAndIncrement();
+        int segment = (int) (slot >>> 32);
+        int index = (int) slot;
+        if (index >= segmentCapacity) {
+            droppedTotal.incrementAndGet();
+            return false;
+        }
+        int r = (segment * segmentCapacity + index) * RECORD_INTS;
+        outbox[r + SENDER] = sender;
+        outbox[r + TARGET] = target;
+        outbox[r + TYPE] = type;
+        outbox[r + TICK] = (int) tick;
+        outbox[r + LENGTH] = length;
+        System.arraycopy(payload, offset, outbox, r + PAYLOAD, length);
+        written.incrementAndGet(segment);
+        return true;
+    }
+
+    /**
+     * Take the oldest message for a drone.
+     *
+     * @param out receives RECORD_INTS ints at offset (read fields with SENDER, TYPE, ...)
+     * @return false if the mailbox is empty
+     */
+    public boolean receive(int id, int[] out, int offset) {
+        return mailboxes.poll(id, out, offset);
+    }
+
+    /**
+     * Route what was sent since the last tick and deliver what is due. Call
+     * once per update from the engine thread; sends may overlap it and go to
+     * this tick or the next one, never nowhere.
+     *
+     * @param ids drones on the air (indices into state), n of them
+     * @param dt  tick length, seconds (turns latency into ticks)
+     */
+    public void tick(DroneState state, int[] ids, int n, float dt) {
+        tickPeriod = dt;
+        mailboxes.ensureCapacity(state.getCapacity());
+        if (generations.length < state.getCapacity()) {
+            generations = Arrays.copyOf(generations, state.getCapacity());
+            onAir = Arrays.copyOf(onAir, state.getCapacity());
+        }
+        this.state = state;
+
+        // Close this tick's segment: later sends go to the next one. Wait for
+        // sends that already took a slot here to finish writing their record.
+        // The segment reopened here was last fanned out wheelSize ticks ago,
+        // so its final deliveries went out last tick.
+        segment = (int) (tick % segments);
+        int next = (int) ((tick + 1) % segments);
+        written.set(next, 0);
+        long closed = cursor.getAndSet((long) next << 32);
+        int count = Math.min((int) closed, segmentCapacity);
+        while (written.get(segment) < count) {
+            Thread.onSpinWait();
+        }
+
+        if (count > 0) {
+            airStamp++;
+            for (int i = 0; i < n; i++) {
+                onAir[ids[i]] = airStamp;
+            }
+            index.rebuild(state.getPosition(), ids, n, parallel);
+            sentTotal.addAndGet(count);
+            parallel.run(count, CHUNK_SIZE, fanOutBody);
+        }
+
+        deliverSlot = (int) (tick % wheelSize);
+        int due = Math.min(slotCount.get(deliverSlot), slotCapacity);
+        if (due > 0) {
+            parallel.run(due, CHUNK_SIZE, deliverBody);
+        }
+        slotCount.set(deliverSlot, 0);
+
+        this.state = null;
+        tick++;
+    }
+
+    /** Messages [from, to) of this tick's segment */
+    private void fanOut(int from, int to) {
+        final float[] position = state.getPosition();
+        final int[] found = receivers.get();
+        final int maxLatency = wheelSize - 1;
+        final float rangeSq = range * range;
+        int lost = 0, dropped = 0;
+
+        for (int m = from; m < to; m++) {
+            int record = segment * segmentCapacity + m;
+            int r = record * RECORD_INTS;
+            int sender = outbox[r + SENDER];
+            int target = outbox[r + TARGET];
+            int s = sender * 3;
+            float sx = position[s], sy = position[s + 1], sz = position[s + 2];
+
+            int n;
+            if (target == BROADCAST) {
+                n = index.queryRadius(sx, sy, sz, range, sender, found);
+            } else if (target >= 0 && target < onAir.length && onAir[target] == airStamp) {
+                int t = target * 3;
+                float dx = position[t] - sx, dy = position[t + 1] - sy, dz = position[t + 2] - sz;
+                found[0] = target;
+                n = dx * dx + dy * dy + dz * dz <= rangeSq ? 1 : 0;
+            } else {
+                n = 0;
+            }
+
+            for (int i = 0; i < n; i++) {
+                int receiver = found[i];
+                int o = receiver * 3;
+                float dx = position[o] - sx, dy = position[o + 1] - sy, dz = position[o + 2] - sz;
+                float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+                long key = mix(seed ^ (tick * 0x9E3779B97F4A7C15L) ^ (m * 0xC2B2AE3D27D4EB4FL)
+                        ^ (receiver * 0x165667B19E3779F9L));
+                if (toUnit(key) < lossAt(distance)) {
+                    lost++;
+                    continue;
+                }
+                float latency = baseLatency + jitter * toUnit(mix(key));
+                int ticks = Math.min(maxLatency, Math.round(latency / tickPeriod));
+                int slot = (int) ((tick + ticks) % wheelSize);
+                int entry = slotCount.getAndIncrement(slot);
+                if (entry >= slotCapacity) {
+                    dropped++;
+                    continue;
+                }
+                int w = (slot * slotCapacity + entry) * 3;
+                wheel[w] = receiver;
+                wheel[w + 1] = generations[receiver];
+                wheel[w + 2] = record;
+            }
+        }
+        if (lost > 0) {
+            lostTotal.addAndGet(lost);
+        }
+        if (dropped > 0) {
+            droppedTotal.addAndGet(dropped);
+        }
+    }
+
+    /** Wheel entries [from, to) of the slot due this tick */
+    private void deliver(int from, int to) {
+        int delivered = 0, dropped = 0;
+        for (int e = from; e < to; e++) {
+            int w = (deliverSlot * slotCapacity + e) * 3;
+            int receiver = wheel[w];
+            if (wheel[w + 1] != generations[receiver]) {
+                continue; // removed since it was sent
+            }
+            if (mailboxes.offer(receiver, outbox, wheel[w + 2] * RECORD_INTS)) {
+                delivered++;
+            } else {
+                dropped++;
+            }
+        }
+        deliveredTotal.addAndGet(delivered);
+        if (dropped > 0) {
+            droppedTotal.addAndGet(dropped);
+        }
+    }
+
+    /** Loss probability: baseLoss up to reliableFraction * range, then rising to 1 at the range */
+    private float lossAt(float distance) {
+        float edge = (distance / range - reliableFraction) / (1f - reliableFraction);
+        return edge <= 0 ? baseLoss : baseLoss + (1f - baseLoss) * edge * edge;
+    }
+
+    /** SplitMix64 finalizer */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static float toUnit(long bits) {
+        return (bits >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * Forget a drone's queued messages and drop those still in flight to it
+     * (call when its slot is freed).
+     */
+    public void clearMailbox(int id) {
+        mailboxes.clear(id);
+        if (id < generations.length) {
+            generations[id]++;
+            onAir[id] = 0;
+        }
+    }
+
+    public int getPending(int id) {
+        return mailboxes.size(id);
+    }
+
+    /**
+     * @param range            m; the index keeps the constructor's cell size,
+     *                         so a much larger range just scans more cells
+     * @param reliableFraction share of the range with only the base loss
+     */
+    public void setRange(float range, float reliableFraction) {
+        this.range = range;
+        this.reliableFraction = reliableFraction;
+    }
+
+    public void setLoss(float baseLoss, long seed) {
+        this.baseLoss = baseLoss;
+        this.seed = seed;
+    }
+
+    /**
+     * @param base   s
+     * @param jitter s, uniform on top of base
+     */
+    public void setLatency(float base, float jitter) {
+        this.baseLatency = base;
+        this.jitter = jitter;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public long getSentTotal() {
+        return sentTotal.get();
+    }
+
+    public long getDeliveredTotal() {
+        return deliveredTotal.get();
+    }
+
+    public long getLostTotal() {
+        return lostTotal.get();
+    }
+
+    public long getDroppedTotal() {
+        return droppedTotal.get();
+    }
+}
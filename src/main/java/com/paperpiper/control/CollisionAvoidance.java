@@ -0,0 +1,463 @@
+package com.paperpiper.control;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.spatial.SpatialHash;
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * ORCA (optimal reciprocal collision avoidance, 3D) between the swarm /
+ * planner and the VelocityController: nudges each drone's velocity setpoint
+ * to the closest velocity that keeps it clear of its neighbours for
+ * timeHorizon seconds.
+ *
+ * Every neighbour within neighborRadius (the maxNeighbors nearest, from the
+ * engine's neighbour index) adds one half-space of allowed velocities. Drones
+ * the VelocityController flies take half the avoidance each; others (manual,
+ * disarmed, falling) are treated as not cooperating and are avoided fully.
+ * The resulting small LP (a sphere of maxSpeed cut by at most maxNeighbors
+ * planes) is solved with the incremental RVO2-3D solver; when it is
+ * infeasible (too crowded), the velocity that violates the planes the least
+ * is used instead.
+ *
+ * Drones are solved independently in parallel chunks: each reads positions
+ * and velocities from DroneState and only rewrites its own setpoint, so the
+ * setpoints are adjusted in place. Cost per drone is bounded by maxNeighbors.
+ * Static geometry is not considered here.
+ */
+public class CollisionAvoidance {
+
+    private static final int CHUNK_SIZE = 256;
+    private static final float EPSILON = 1e-5f;
+
+    private final VelocityController velocityController;
+    private final ParallelFor parallel;
+
+    // ORCA assumes the new velocity is reached at once; the margin on top of
+    // the 0.25 m half-width and the longer horizon cover the velocity loop's lag
+    private float radius = 0.6f;         // m
+    private float timeHorizon = 3f;      // s
+    private float neighborRadius = 10f;  // m
+    private int maxNeighbors = 10;
+    private float maxSpeed = 10f;        // m/s
+    private boolean enabled = true;
+
+    // Update in progress
+    private DroneState state;
+    private SpatialHash neighbors;
+    private int[] ids;
+    private float timeStep;
+    private final ParallelFor.RangeBody solveBody = this::solveRange;
+    private final ThreadLocal<Solver> solvers = ThreadLocal.withInitial(Solver::new);
+
+    public CollisionAvoidance(VelocityController velocityController, ParallelFor parallel) {
+        this.velocityController = velocityController;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Adjust the velocity setpoints of every drone the VelocityController flies.
+     * Call after the setpoints are written and before VelocityController.update().
+     *
+     * @param neighbors index of all drones, rebuilt for this update
+     * @param ids       drones to consider (others are skipped), n of them
+     * @param dt        update period, seconds (resolves already overlapping pairs)
+     */
+    public void update(DroneState state, SpatialHash neighbors, int[] ids, int n, float dt) {
+        if (!enabled || n == 0) {
+            return;
+        }
+        this.state = state;
+        this.neighbors = neighbors;
+        this.ids = ids;
+        this.timeStep = Math.max(dt, 1e-3f);
+        parallel.run(n, CHUNK_SIZE, solveBody);
+        this.state = null;
+        this.neighbors = null;
+        this.ids = null;
+    }
+
+    private void solveRange(int from, int to) {
+        final float[] position = state.getPosition();
+        final float[] velocity = state.getLinearVelocity();
+        final boolean[] armed = state.getArmed();
+        final float[] setpoint = velocityController.getVelocitySetpoint();
+        final float combined = 2 * radius;
+        final float combinedSq = combined * combined;
+        final float invHorizon = 1f / timeHorizon;
+        final float invStep = 1f / timeStep;
+
+        Solver solver = solvers.get();
+        solver.ensureCapacity(maxNeighbors);
+        final int[] found = solver.ids;
+        final float[] distSq = solver.distSq;
+        final float[] planes = solver.planes;
+
+        for (int i = from; i < to; i++) {
+            int id = ids[i];
+            if (!velocityController.isEnabled(id) || !armed[id]) {
+                continue;
+            }
+            int p = id * 3;
+            float px = position[p], py = position[p + 1], pz = position[p + 2];
+            float vx = velocity[p], vy = velocity[p + 1], vz = velocity[p + 2];
+
+            int count = neighbors.queryNearest(px, py, pz, maxNeighbors, neighborRadius, id, found, distSq);
+            int planeCount = 0;
+            for (int j = 0; j < count; j++) {
+                int other = found[j];
+                int o = other * 3;
+                float rx = position[o] - px, ry = position[o + 1] - py, rz = position[o + 2] - pz;
+                float ux = vx - velocity[o], uy = vy - velocity[o + 1], uz = vz - velocity[o + 2];
+                float dSq = rx * rx + ry * ry + rz * rz;
+
+                float nx, ny, nz, u;
+                if (dSq > combinedSq) {
+                    // Vector from the cutoff sphere's center to the relative velocity
+                    float wx = ux - invHorizon * rx, wy = uy - invHorizon * ry, wz = uz - invHorizon * rz;
+                    float wSq = wx * wx + wy * wy + wz * wz;
+                    float dot = wx * rx + wy * ry + wz * rz;
+                    if (dot < 0 && dot * dot > combinedSq * wSq) {
+                        // Project on the cutoff sphere
+                        float w = (float) Math.sqrt(wSq);
+                        nx = wx / w;
+                        ny = wy / w;
+                        nz = wz / w;
+                        u = combined * invHorizon - w;
+                    } else {
+                        // Project on the cone
+                        float a = dSq;
+                        float b = rx * ux + ry * uy + rz * uz;
+                        float cx = ry * uz - rz * uy, cy = rz * ux - rx * uz, cz = rx * uy - ry * ux;
+                        float c = ux * ux + uy * uy + uz * uz - (cx * cx + cy * cy + cz * cz) / (dSq - combinedSq);
+                        float t = (b + (float) Math.sqrt(Math.max(0f, b * b - a * c))) / a;
+                        wx = ux - t * rx;
+                        wy = uy - t * ry;
+                        wz = uz - t * rz;
+                        float w = (float) Math.sqrt(wx * wx + wy * wy + wz * wz);
+                        if (w < EPSILON) {
+                            continue;
+                        }
+                        nx = wx / w;
+                        ny = wy / w;
+                        nz = wz / w;
+                        u = combined * t - w;
+                    }
+                } else {
+                    // Already overlapping: get apart within one update
+                    float wx = ux - invStep * rx, wy = uy - invStep * ry, wz = uz - invStep * rz;
+                    float w = (float) Math.sqrt(wx * wx + wy * wy + wz * wz);
+                    if (w < EPSILON) {
+                        continue;
+                    }
+                    nx = wx / w;
+                    ny = wy / w;
+                    nz = wz / w;
+                    u = combined * invStep - w;
+                }
+
+                // Cooperating drones each take half of the change
+                float share = velocityController.isEnabled(other) && armed[other] ? 0.5f : 1f;
+                int k = planeCount++ * 6;
+                planes[k] = vx + share * u * nx;
+                planes[k + 1] = vy + share * u * ny;
+                planes[k + 2] = vz + share * u * nz;
+                planes[k + 3] = nx;
+                planes[k + 4] = ny;
+                planes[k + 5] = nz;
+            }
+            if (planeCount == 0) {
+                continue;
+            }
+
+            float[] result = solver.result;
+            int failed = solver.linearProgram3(planes, planeCount, maxSpeed,
+                    setpoint[p], setpoint[p + 1], setpoint[p + 2], false, result);
+            if (failed < planeCount) {
+                solver.linearProgram4(planes, planeCount, failed, maxSpeed, result);
+            }
+            setpoint[p] = result[0];
+            setpoint[p + 1] = result[1];
+            setpoint[p + 2] = result[2];
+        }
+    }
+
+    /**
+     * Per-thread scratch and the RVO2-3D LP solver. Planes are flat
+     * [point xyz, normal xyz]; a plane allows velocities v with
+     * normal . (v - point) >= 0.
+     */
+    private static final class Solver {
+
+        int[] ids = new int[0];
+        float[] distSq = new float[0];
+        float[] planes = new float[0];
+        float[] projected = new float[0];
+        final float[] result = new float[3];
+        final float[] saved = new float[3];
+        final float[] line = new float[6]; // point xyz, direction xyz
+
+        void ensureCapacity(int maxNeighbors) {
+            if (ids.length < maxNeighbors) {
+                ids = new int[maxNeighbors];
+                distSq = new float[maxNeighbors];
+                planes = new float[maxNeighbors * 6];
+                projected = new float[maxNeighbors * 6];
+            }
+        }
+
+        /** Best point on a line, within the sphere and planes [0, planeNo) */
+        boolean linearProgram1(float[] planes, int planeNo, float radius,
+                float ox, float oy, float oz, boolean directionOpt, float[] result) {
+            float lpx = line[0], lpy = line[1], lpz = line[2];
+            float ldx = line[3], ldy = line[4], ldz = line[5];
+            float dot = lpx * ldx + lpy * ldy + lpz * ldz;
+            float discriminant = dot * dot + radius * radius - (lpx * lpx + lpy * lpy + lpz * lpz);
+            if (discriminant < 0) {
+                return false;
+            }
+            float sqrt = (float) Math.sqrt(discriminant);
+            float left = -dot - sqrt;
+            float right = -dot + sqrt;
+
+            for (int i = 0; i < planeNo; i++) {
+                int k = i * 6;
+                float nx = planes[k + 3], ny = planes[k + 4], nz = planes[k + 5];
+                float numerator = (planes[k] - lpx) * nx + (planes[k + 1] - lpy) * ny + (planes[k + 2] - lpz) * nz;
+                float denominator = ldx * nx + ldy * ny + ldz * nz;
+                if (denominator * denominator <= EPSILON) {
+                    // Line parallel to the plane
+                    if (numerator > 0) {
+                        return false;
+                    }
+                    continue;
+                }
+                float t = numerator / denominator;
+                if (denominator >= 0) {
+                    left = Math.max(left, t);
+                } else {
+                    right = Math.min(right, t);
+                }
+                if (left > right) {
+                    return false;
+                }
+            }
+
+            float t;
+            if (directionOpt) {
+                t = ox * ldx + oy * ldy + oz * ldz > 0 ? right : left;
+            } else {
+                t = ldx * (ox - lpx) + ldy * (oy - lpy) + ldz * (oz - lpz);
+                t = Math.max(left, Math.min(right, t));
+            }
+            result[0] = lpx + t * ldx;
+            result[1] = lpy + t * ldy;
+            result[2] = lpz + t * ldz;
+            return true;
+        }
+
+        /** Best point on plane planeNo, within the sphere and planes [0, planeNo) */
+        boolean linearProgram2(float[] planes, int planeNo, float radius,
+                float ox, float oy, float oz, boolean directionOpt, float[] result) {
+            int q = planeNo * 6;
+            float qx = planes[q], qy = planes[q + 1], qz = planes[q + 2];
+            float nx = planes[q + 3], ny = planes[q + 4], nz = planes[q + 5];
+            float planeDist = qx * nx + qy * ny + qz * nz;
+            float radiusSq = radius * radius;
+            if (planeDist * planeDist > radiusSq) {
+                return false;
+            }
+            float planeRadiusSq = radiusSq - planeDist * planeDist;
+            float cx = planeDist * nx, cy = planeDist * ny, cz = planeDist * nz;
+
+            if (directionOpt) {
+                float along = ox * nx + oy * ny + oz * nz;
+                float px = ox - along * nx, py = oy - along * ny, pz = oz - along * nz;
+                float lengthSq = px * px + py * py + pz * pz;
+                if (lengthSq <= EPSILON) {
+                    result[0] = cx;
+                    result[1] = cy;
+                    result[2] = cz;
+                } else {
+                    float scale = (float) Math.sqrt(planeRadiusSq / lengthSq);
+                    result[0] = cx + scale * px;
+                    result[1] = cy + scale * py;
+                    result[2] = cz + scale * pz;
+                }
+            } else {
+                float d = (qx - ox) * nx + (qy - oy) * ny + (qz - oz) * nz;
+                float rx = ox + d * nx, ry = oy + d * ny, rz = oz + d * nz;
+                if (rx * rx + ry * ry + rz * rz > radiusSq) {
+                    float px = rx - cx, py = ry - cy, pz = rz - cz;
+                    float scale = (float) Math.sqrt(planeRadiusSq / (px * px + py * py + pz * pz));
+                    rx = cx + scale * px;
+                    ry = cy + scale * py;
+                    rz = cz + scale * pz;
+                }
+                result[0] = rx;
+                result[1] = ry;
+                result[2] = rz;
+            }
+
+            for (int i = 0; i < planeNo; i++) {
+                int k = i * 6;
+                float mx = planes[k + 3], my = planes[k + 4], mz = planes[k + 5];
+                if (mx * (planes[k] - result[0]) + my * (planes[k + 1] - result[1])
+                        + mz * (planes[k + 2] - result[2]) <= 0) {
+                    continue;
+                }
+                // Result violates plane i: search along the intersection of planes i and planeNo
+                float dx = my * nz - mz * ny, dy = mz * nx - mx * nz, dz = mx * ny - my * nx;
+                float lengthSq = dx * dx + dy * dy + dz * dz;
+                if (lengthSq <= EPSILON) {
+                    // Parallel planes and this one is outside the other: infeasible
+                    return false;
+                }
+                float length = (float) Math.sqrt(lengthSq);
+                dx /= length;
+                dy /= length;
+                dz /= length;
+                float lnx = dy * nz - dz * ny, lny = dz * nx - dx * nz, lnz = dx * ny - dy * nx;
+                float t = ((planes[k] - qx) * mx + (planes[k + 1] - qy) * my + (planes[k + 2] - qz) * mz)
+                        / (lnx * mx + lny * my + lnz * mz);
+                line[0] = qx + t * lnx;
+                line[1] = qy + t * lny;
+                line[2] = qz + t * lnz;
+                line[3] = dx;
+                line[4] = dy;
+                line[5] = dz;
+                if (!linearProgram1(planes, i, radius, ox, oy, oz, directionOpt, result)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Velocity closest to (ox, oy, oz) (or furthest along it, with
+         * directionOpt and a unit vector) within the sphere and all planes.
+         *
+         * @return count if solved, else the first plane that made it infeasible
+         */
+        int linearProgram3(float[] planes, int count, float radius,
+                float ox, float oy, float oz, boolean directionOpt, float[] result) {
+            float lengthSq = ox * ox + oy * oy + oz * oz;
+            if (directionOpt) {
+                result[0] = ox * radius;
+                result[1] = oy * radius;
+                result[2] = oz * radius;
+            } else if (lengthSq > radius * radius) {
+                float scale = radius / (float) Math.sqrt(lengthSq);
+                result[0] = ox * scale;
+                result[1] = oy * scale;
+                result[2] = oz * scale;
+            } else {
+                result[0] = ox;
+                result[1] = oy;
+                result[2] = oz;
+            }
+
+            for (int i = 0; i < count; i++) {
+                int k = i * 6;
+                if (planes[k + 3] * (planes[k] - result[0]) + planes[k + 4] * (planes[k + 1] - result[1])
+                        + planes[k + 5] * (planes[k + 2] - result[2]) > 0) {
+                    saved[0] = result[0];
+                    saved[1] = result[1];
+                    saved[2] = result[2];
+                    if (!linearProgram2(planes, i, radius, ox, oy, oz, directionOpt, result)) {
+                        result[0] = saved[0];
+                        result[1] = saved[1];
+                        result[2] = saved[2];
+                        return i;
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Infeasible case: minimize the largest violation of planes
+         * [begin, count), keeping [0, begin) satisfied.
+         */
+        void linearProgram4(float[] planes, int count, int begin, float radius, float[] result) {
+            float[] projected = this.projected;
+            float distance = 0f;
+
+            for (int i = begin; i < count; i++) {
+                int q = i * 6;
+                float qx = planes[q], qy = planes[q + 1], qz = planes[q + 2];
+                float nx = planes[q + 3], ny = planes[q + 4], nz = planes[q + 5];
+                if (nx * (qx - result[0]) + ny * (qy - result[1]) + nz * (qz - result[2]) <= distance) {
+                    continue;
+                }
+                // Result doesn't satisfy plane i closely enough: project the earlier planes onto it
+                int projectedCount = 0;
+                for (int j = 0; j < i; j++) {
+                    int k = j * 6;
+                    float mx = planes[k + 3], my = planes[k + 4], mz = planes[k + 5];
+                    float cx = my * nz - mz * ny, cy = mz * nx - mx * nz, cz = mx * ny - my * nx;
+                    float px, py, pz;
+                    if (cx * cx + cy * cy + cz * cz <= EPSILON) {
+                        if (nx * mx + ny * my + nz * mz > 0) {
+                            // Same direction
+                            continue;
+                        }
+                        px = 0.5f * (qx + planes[k]);
+                        py = 0.5f * (qy + planes[k + 1]);
+                        pz = 0.5f * (qz + planes[k + 2]);
+                    } else {
+                        float lnx = cy * nz - cz * ny, lny = cz * nx - cx * nz, lnz = cx * ny - cy * nx;
+                        float t = ((planes[k] - qx) * mx + (planes[k + 1] - qy) * my + (planes[k + 2] - qz) * mz)
+                                / (lnx * mx + lny * my + lnz * mz);
+                        px = qx + t * lnx;
+                        py = qy + t * lny;
+                        pz = qz + t * lnz;
+                    }
+                    float dx = mx - nx, dy = my - ny, dz = mz - nz;
+                    float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+                    int o = projectedCount++ * 6;
+                    projected[o] = px;
+                    projected[o + 1] = py;
+                    projected[o + 2] = pz;
+                    projected[o + 3] = dx / length;
+                    projected[o + 4] = dy / length;
+                    projected[o + 5] = dz / length;
+                }
+
+                float sx = result[0], sy = result[1], sz = result[2];
+                if (linearProgram3(projected, projectedCount, radius, nx, ny, nz, true, result) < projectedCount) {
+                    // Only rounding can get here; keep the previous result
+                    result[0] = sx;
+                    result[1] = sy;
+                    result[2] = sz;
+                }
+                distance = nx * (qx - result[0]) + ny * (qy - result[1]) + nz * (qz - result[2]);
+            }
+        }
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param radius      m per drone (pairs keep 2 * radius apart)
+     * @param timeHorizon s of look-ahead; longer reacts earlier but more cautiously
+     */
+    public void setRadius(float radius, float timeHorizon) {
+        this.radius = radius;
+        this.timeHorizon = timeHorizon;
+    }
+
+    public void setNeighborhood(float radius, int maxNeighbors) {
+        this.neighborRadius = radius;
+        this.maxNeighbors = maxNeighbors;
+    }
+
+    public void setMaxSpeed(float maxSpeed) {
+        this.maxSpeed = maxSpeed;
+    }
+}
@@ -0,0 +1,32 @@
+package com.paperpiper.control;
+
+import com.paperpiper.drone.DroneState;
+
+/**
+ * Plug-in control logic for drones. Instead of being called once per drone, a
+ * controller gets a batch of drone ids and works straight on the DroneState
+ * arrays, so it can be written as a tight loop (or with the JDK Vector API
+ * for dense swarms).
+ *
+ * Contract:
+ *  - read pose/velocity (position, orientation, linearVelocity,
+ *    angularVelocity) for the ids in the batch, don't write them
+ *  - write control inputs (throttle 0..1, pitch/roll/yaw -1..1) only for the
+ *    ids in the batch
+ *  - don't touch Bullet or Drone objects; the engine owns the handoff to
+ *    physics
+ *
+ * The engine splits a controller's drones into chunks and may call compute()
+ * for different chunks at the same time from different threads, so any
+ * per-drone data the controller keeps should be indexed by drone id.
+ * compute() runs once per physics substep and shouldn't allocate.
+ */
+public interface DroneController {
+
+    /**
+     * Compute control inputs for drones ids[from..to).
+     *
+     * @param dt physics substep, seconds
+     */
+    void compute(int[] ids, int from, int to, DroneState state, float dt);
+}
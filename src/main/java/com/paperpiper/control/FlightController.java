@@ -0,0 +1,201 @@
+package com.paperpiper.control;
+
+import java.util.Arrays;
+
+import com.paperpiper.drone.DroneState;
+
+/**
+ * Built-in attitude + rate controller (cascaded PID) for every drone in a
+ * DroneState. Turns attitude setpoints (roll/pitch angle, yaw rate, collective
+ * thrust) into the throttle/pitch/roll/yaw control inputs the motor mixer
+ * expects.
+ *
+ *   angle error --P--> rate setpoint --PID--> torque command (-1..1)
+ *
+ * The controller runs once per physics substep (see DroneControlTickListener),
+ * so its rate is the physics rate; it is meant for 500 Hz - 1 kHz. update()
+ * loops over flat per-drone arrays for the whole swarm and doesn't allocate.
+ *
+ * Axes follow the mixer: pitch is rotation about body X, roll is rotation
+ * about body -Z, yaw is rotation about body Y. Attitude is extracted as
+ * yaw (world Y), then pitch, then roll.
+ */
+public class FlightController {
+
+    // Lowest physics rate the gains are tuned for, Hz
+    public static final int MIN_RATE = 500;
+
+    // Outer (angle) loop
+    private float angleP = 6.0f;        // (rad/s) per rad
+    private float maxTilt = 0.6f;       // rad, clamp on roll/pitch setpoints
+    private float maxTiltRate = 3.0f;   // rad/s
+    private float maxYawRate = 2.0f;    // rad/s
+
+    // Inner (rate) loop, output is the normalized torque command
+    private float rateP = 0.2f;
+    private float rateI = 0.1f;
+    private float rateD = 0.002f;
+    private float yawRateP = 0.15f;
+    private float yawRateI = 0.05f;
+    private float integratorLimit = 0.3f; // max share of the output the integrator may hold
+
+    // Per-drone arrays, indexed by DroneState id
+    private boolean[] enabled = new boolean[0];
+    private float[] rollSetpoint = new float[0];
+    private float[] pitchSetpoint = new float[0];
+    private float[] yawRateSetpoint = new float[0];
+    private float[] thrustSetpoint = new float[0];
+    private float[] integrator = new float[0];   // [pitch, roll, yaw] per drone
+    private float[] previousRate = new float[0]; // [pitch, roll, yaw] per drone, for D on measurement
+
+    /**
+     * Run one controller tick for every enabled, armed drone.
+     */
+    public void update(DroneState state, float dt) {
+        ensureCapacity(state.getCapacity());
+
+        final float[] q = state.getOrientation();
+        final float[] w = state.getAngularVelocity();
+        final boolean[] armed = state.getArmed();
+        final float[] throttleOut = state.getThrottle();
+        final float[] pitchOut = state.getPitch();
+        final float[] rollOut = state.getRoll();
+        final float[] yawOut = state.getYaw();
+
+        for (int id = 0, n = state.size(); id < n; id++) {
+            if (!enabled[id]) {
+                continue;
+            }
+            if (!armed[id]) {
+                resetIntegrators(id);
+                continue;
+            }
+
+            // Rotation matrix from the orientation quaternion
+            float qx = q[id * 4], qy = q[id * 4 + 1], qz = q[id * 4 + 2], qw = q[id * 4 + 3];
+            float r00 = 1 - 2 * (qy * qy + qz * qz), r01 = 2 * (qx * qy - qw * qz), r02 = 2 * (qx * qz + qw * qy);
+            float r10 = 2 * (qx * qy + qw * qz), r11 = 1 - 2 * (qx * qx + qz * qz), r12 = 2 * (qy * qz - qw * qx);
+            float r20 = 2 * (qx * qz - qw * qy), r21 = 2 * (qy * qz + qw * qx), r22 = 1 - 2 * (qx * qx + qy * qy);
+
+            // Euler angles (R = Ry(yaw) Rx(pitch) Rz(-roll))
+            float pitch = (float) Math.asin(Math.max(-1f, Math.min(1f, -r12)));
+            float roll = -(float) Math.atan2(r10, r11);
+
+            // Body rates = R^T * world angular velocity
+            float wx = w[id * 3], wy = w[id * 3 + 1], wz = w[id * 3 + 2];
+            float pitchRate = r00 * wx + r10 * wy + r20 * wz;
+            float yawRate = r01 * wx + r11 * wy + r21 * wz;
+            float rollRate = -(r02 * wx + r12 * wy + r22 * wz);
+
+            // Outer loop: angle error -> rate setpoint
+            float pitchRateSp = clamp(angleP * (pitchSetpoint[id] - pitch), maxTiltRate);
+            float rollRateSp = clamp(angleP * (rollSetpoint[id] - roll), maxTiltRate);
+            float yawRateSp = yawRateSetpoint[id];
+
+            // Inner loop
+            int k = id * 3;
+            pitchOut[id] = rateLoop(k, pitchRateSp, pitchRate, rateP, rateI, rateD, dt);
+            rollOut[id] = rateLoop(k + 1, rollRateSp, rollRate, rateP, rateI, rateD, dt);
+            yawOut[id] = rateLoop(k + 2, yawRateSp, yawRate, yawRateP, yawRateI, 0f, dt);
+
+            // Collective thrust, compensated for tilt so altitude holds in turns
+            float tiltFactor = Math.max(r11, 0.5f);
+            throttleOut[id] = Math.max(0f, Math.min(1f, thrustSetpoint[id] / tiltFactor));
+        }
+    }
+
+    /**
+     * One PID rate loop with derivative on measurement and anti-windup: the
+     * integrator is clamped, and frozen while the output is saturated in the
+     * direction of the error.
+     */
+    private float rateLoop(int k, float setpoint, float measured, float kp, float ki, float kd, float dt) {
+        float error = setpoint - measured;
+        float derivative = -(measured - previousRate[k]) / dt;
+        previousRate[k] = measured;
+
+        float unsaturated = kp * error + integrator[k] + kd * derivative;
+        float output = Math.max(-1f, Math.min(1f, unsaturated));
+
+        boolean saturatedSameWay = unsaturated != output && (error > 0) == (unsaturated > 0);
+        if (!saturatedSameWay) {
+            integrator[k] = clamp(integrator[k] + ki * error * dt, integratorLimit);
+        }
+        return output;
+    }
+
+    private static float clamp(float value, float limit) {
+        return Math.max(-limit, Math.min(limit, value));
+    }
+
+    /**
+     * Let the controller drive this drone's control inputs (true) or leave
+     * them to whoever sets them directly (false).
+     */
+    public void setEnabled(int id, boolean on) {
+        ensureCapacity(id + 1);
+        enabled[id] = on;
+        resetIntegrators(id);
+    }
+
+    public boolean isEnabled(int id) {
+        return id < enabled.length && enabled[id];
+    }
+
+    /**
+     * @param roll    desired roll angle, rad (positive = right)
+     * @param pitch   desired pitch angle, rad
+     * @param yawRate desired yaw rate, rad/s
+     * @param thrust  collective thrust 0..1 (before tilt compensation)
+     */
+    public void setAttitudeSetpoint(int id, float roll, float pitch, float yawRate, float thrust) {
+        ensureCapacity(id + 1);
+        rollSetpoint[id] = clamp(roll, maxTilt);
+        pitchSetpoint[id] = clamp(pitch, maxTilt);
+        yawRateSetpoint[id] = clamp(yawRate, maxYawRate);
+        thrustSetpoint[id] = Math.max(0f, Math.min(1f, thrust));
+    }
+
+    private void resetIntegrators(int id) {
+        int k = id * 3;
+        integrator[k] = 0;
+        integrator[k + 1] = 0;
+        integrator[k + 2] = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (enabled.length >= capacity) {
+            return;
+        }
+        enabled = Arrays.copyOf(enabled, capacity);
+        rollSetpoint = Arrays.copyOf(rollSetpoint, capacity);
+        pitchSetpoint = Arrays.copyOf(pitchSetpoint, capacity);
+        yawRateSetpoint = Arrays.copyOf(yawRateSetpoint, capacity);
+        thrustSetpoint = Arrays.copyOf(thrustSetpoint, capacity);
+        integrator = Arrays.copyOf(integrator, capacity * 3);
+        previousRate = Arrays.copyOf(previousRate, capacity * 3);
+    }
+
+    public void setAngleGain(float p) {
+        this.angleP = p;
+    }
+
+    public void setRateGains(float p, float i, float d) {
+        this.rateP = p;
+        this.rateI = i;
+        this.rateD = d;
+    }
+
+    public void setYawRateGains(float p, float i) {
+        this.yawRateP = p;
+        this.yawRateI = i;
+    }
+
+    public void setIntegratorLimit(float limit) {
+        this.integratorLimit = limit;
+    }
+
+    public void setMaxTilt(float maxTilt) {
+        this.maxTilt = maxTilt;
+    }
+}
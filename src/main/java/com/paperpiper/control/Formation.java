@@ -0,0 +1,85 @@
+package com.paperpiper.control;
+
+/**
+ * Slot layout for SwarmController: one offset per slot in the formation
+ * frame (forward -Z, right +X, up +Y, metres from the formation anchor).
+ * The swarm rotates it by the formation heading and moves it with the anchor.
+ */
+public class Formation {
+
+    private final float[] offsets; // x, y, z per slot
+
+    private Formation(float[] offsets) {
+        this.offsets = offsets;
+    }
+
+    /**
+     * Arbitrary slots.
+     *
+     * @param offsets x, y, z per slot
+     */
+    public static Formation of(float[] offsets) {
+        if (offsets.length % 3 != 0) {
+            throw new IllegalArgumentException("Slot offsets come in x, y, z triples, got " + offsets.length);
+        }
+        return new Formation(offsets.clone());
+    }
+
+    /**
+     * rows x columns in a horizontal plane, centered on the anchor. Rows run
+     * back from the front.
+     */
+    public static Formation grid(int rows, int columns, float spacing) {
+        float[] offsets = new float[rows * columns * 3];
+        int s = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                offsets[s++] = (c - (columns - 1) / 2f) * spacing;
+                offsets[s++] = 0f;
+                offsets[s++] = (r - (rows - 1) / 2f) * spacing;
+            }
+        }
+        return new Formation(offsets);
+    }
+
+    /**
+     * count slots evenly around a horizontal circle, the first one in front.
+     */
+    public static Formation ring(int count, float radius) {
+        float[] offsets = new float[count * 3];
+        for (int i = 0; i < count; i++) {
+            double angle = 2 * Math.PI * i / count;
+            offsets[i * 3] = (float) (radius * Math.sin(angle));
+            offsets[i * 3 + 2] = (float) (-radius * Math.cos(angle));
+        }
+        return new Formation(offsets);
+    }
+
+    /**
+     * Leader at the anchor, the others alternating left and right along two
+     * arms that trail back.
+     *
+     * @param halfAngle degrees between each arm and straight back
+     */
+    public static Formation vee(int count, float spacing, float halfAngle) {
+        float[] offsets = new float[count * 3];
+        double sin = Math.sin(Math.toRadians(halfAngle));
+        double cos = Math.cos(Math.toRadians(halfAngle));
+        for (int i = 1; i < count; i++) {
+            int rank = (i + 1) / 2;
+            int side = (i & 1) == 1 ? -1 : 1;
+            offsets[i * 3] = (float) (side * rank * spacing * sin);
+            offsets[i * 3 + 2] = (float) (rank * spacing * cos);
+        }
+        return new Formation(offsets);
+    }
+
+    public int getSlotCount() {
+        return offsets.length / 3;
+    }
+
+    /** Offsets x, y, z per slot; don't modify */
+    public float[] getOffsets() {
+        return offsets;
+    }
+}
@@ -0,0 +1,272 @@
+package com.paperpiper.control;
+
+import java.util.Arrays;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.spatial.SpatialHash;
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Boids plus formation keeping for any number of drones. Each update, every
+ * member gets a velocity setpoint (VelocityController) from:
+ *
+ *   formation  slot position error * formationGain + anchor velocity
+ *   separation push away from any drone closer than separationRadius
+ *   alignment  steer towards the mean velocity of neighbouring members
+ *   cohesion   steer towards the centroid of neighbouring members, only for
+ *              members without a slot (slots already hold the shape)
+ *
+ * Neighbours are the maxNeighbors nearest drones within neighborRadius from
+ * the engine's neighbour index, so the cost per drone is bounded however
+ * dense the swarm gets. Members are computed in parallel chunks over the
+ * DroneState arrays; each drone only writes its own setpoint.
+ *
+ * Member i flies slot i of the formation (in the order they were added);
+ * members beyond the slot count just flock.
+ */
+public class SwarmController {
+
+    private static final int CHUNK_SIZE = 256;
+
+    private final VelocityController velocityController;
+    private final ParallelFor parallel;
+
+    private float neighborRadius = 8f;    // m
+    private int maxNeighbors = 8;
+    private float separationRadius = 2.5f; // m
+    private float separationWeight = 6f;  // m/s at contact
+    private float alignmentWeight = 0.3f;
+    private float cohesionWeight = 0.2f;  // (m/s) per m
+    private float formationGain = 0.8f;   // (m/s) per m
+    private float maxSpeed = 10f;         // m/s
+
+    // Members in slot order, and member index per drone id (-1 = not a member)
+    private int[] members = new int[0];
+    private int memberCount = 0;
+    private int[] memberIndex = new int[0];
+
+    // Formation anchor, heading and velocity
+    private Formation formation;
+    private float anchorX, anchorY, anchorZ;
+    private float heading;
+    private float anchorVx, anchorVy, anchorVz;
+
+    // Update in progress
+    private DroneState state;
+    private SpatialHash neighbors;
+    private final ParallelFor.RangeBody memberBody = this::computeMembers;
+    private final ThreadLocal<int[]> neighborIds = ThreadLocal.withInitial(() -> new int[maxNeighbors]);
+    private final ThreadLocal<float[]> neighborDistSq = ThreadLocal.withInitial(() -> new float[maxNeighbors]);
+
+    public SwarmController(VelocityController velocityController, ParallelFor parallel) {
+        this.velocityController = velocityController;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Add a drone to the swarm (takes the next free slot) and hand it to the
+     * velocity controller.
+     */
+    public void addMember(int id) {
+        if (id < memberIndex.length && memberIndex[id] >= 0) {
+            return;
+        }
+        if (id >= memberIndex.length) {
+            int old = memberIndex.length;
+            memberIndex = Arrays.copyOf(memberIndex, Math.max(id + 1, old * 2));
+            Arrays.fill(memberIndex, old, memberIndex.length, -1);
+        }
+        if (memberCount == members.length) {
+            members = Arrays.copyOf(members, Math.max(16, memberCount * 2));
+        }
+        memberIndex[id] = memberCount;
+        members[memberCount++] = id;
+        velocityController.setEnabled(id, true);
+    }
+
+    /**
+     * Remove a drone; the last member takes over its slot.
+     */
+    public void removeMember(int id) {
+        if (id >= memberIndex.length || memberIndex[id] < 0) {
+            return;
+        }
+        int index = memberIndex[id];
+        int last = members[--memberCount];
+        members[index] = last;
+        memberIndex[last] = index;
+        memberIndex[id] = -1;
+        velocityController.setEnabled(id, false);
+    }
+
+    public boolean isMember(int id) {
+        return id < memberIndex.length && memberIndex[id] >= 0;
+    }
+
+    /**
+     * Compute velocity setpoints for all members.
+     *
+     * @param neighbors index of all drones, rebuilt for this update
+     * @param dt        time since the last update, seconds (moves the anchor)
+     */
+    public void update(DroneState state, SpatialHash neighbors, float dt) {
+        anchorX += anchorVx * dt;
+        anchorY += anchorVy * dt;
+        anchorZ += anchorVz * dt;
+        if (memberCount == 0) {
+            return;
+        }
+        this.state = state;
+        this.neighbors = neighbors;
+        parallel.run(memberCount, CHUNK_SIZE, memberBody);
+        this.state = null;
+        this.neighbors = null;
+    }
+
+    private void computeMembers(int from, int to) {
+        final float[] position = state.getPosition();
+        final float[] velocity = state.getLinearVelocity();
+        int[] ids = neighborIds.get();
+        float[] distSq = neighborDistSq.get();
+        if (ids.length < maxNeighbors) {
+            ids = new int[maxNeighbors];
+            distSq = new float[maxNeighbors];
+            neighborIds.set(ids);
+            neighborDistSq.set(distSq);
+        }
+        final Formation formation = this.formation;
+        final float[] offsets = formation != null ? formation.getOffsets() : null;
+        final int slots = formation != null ? formation.getSlotCount() : 0;
+        final float cos = (float) Math.cos(heading), sin = (float) Math.sin(heading);
+        final int k = maxNeighbors;
+
+        for (int m = from; m < to; m++) {
+            int id = members[m];
+            int p = id * 3;
+            float px = position[p], py = position[p + 1], pz = position[p + 2];
+            float vx = velocity[p], vy = velocity[p + 1], vz = velocity[p + 2];
+
+            float sepX = 0, sepY = 0, sepZ = 0;
+            float sumVx = 0, sumVy = 0, sumVz = 0;
+            float sumX = 0, sumY = 0, sumZ = 0;
+            int flock = 0;
+
+            int found = neighbors.queryNearest(px, py, pz, k, neighborRadius, id, ids, distSq);
+            for (int i = 0; i < found; i++) {
+                int other = ids[i];
+                int o = other * 3;
+                float dx = px - position[o], dy = py - position[o + 1], dz = pz - position[o + 2];
+                float d = (float) Math.sqrt(distSq[i]);
+                if (d < separationRadius && d > 1e-4f) {
+                    // Linear falloff from full weight at contact to 0 at the radius
+                    float push = (separationRadius - d) / (separationRadius * d);
+                    sepX += dx * push;
+                    sepY += dy * push;
+                    sepZ += dz * push;
+                }
+                if (other < memberIndex.length && memberIndex[other] >= 0) {
+                    sumVx += velocity[o];
+                    sumVy += velocity[o + 1];
+                    sumVz += velocity[o + 2];
+                    sumX += position[o];
+                    sumY += position[o + 1];
+                    sumZ += position[o + 2];
+                    flock++;
+                }
+            }
+
+            float tx = separationWeight * sepX;
+            float ty = separationWeight * sepY;
+            float tz = separationWeight * sepZ;
+            if (flock > 0) {
+                float inv = 1f / flock;
+                tx += alignmentWeight * (sumVx * inv - vx);
+                ty += alignmentWeight * (sumVy * inv - vy);
+                tz += alignmentWeight * (sumVz * inv - vz);
+            }
+
+            float targetHeading = Float.NaN;
+            if (m < slots) {
+                // Slot = anchor + Ry(heading) * offset
+                int s = m * 3;
+                float ox = offsets[s], oy = offsets[s + 1], oz = offsets[s + 2];
+                float slotX = anchorX + cos * ox + sin * oz;
+                float slotY = anchorY + oy;
+                float slotZ = anchorZ - sin * ox + cos * oz;
+                tx += anchorVx + formationGain * (slotX - px);
+                ty += anchorVy + formationGain * (slotY - py);
+                tz += anchorVz + formationGain * (slotZ - pz);
+                targetHeading = heading;
+            } else if (flock > 0) {
+                float inv = 1f / flock;
+                tx += cohesionWeight * (sumX * inv - px);
+                ty += cohesionWeight * (sumY * inv - py);
+                tz += cohesionWeight * (sumZ * inv - pz);
+            }
+
+            float speed = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+            if (speed > maxSpeed) {
+                float scale = maxSpeed / speed;
+                tx *= scale;
+                ty *= scale;
+                tz *= scale;
+            }
+            velocityController.setVelocitySetpoint(id, tx, ty, tz, targetHeading);
+        }
+    }
+
+    /**
+     * Fly the given formation (null = flock only) around an anchor point.
+     *
+     * @param heading rad about world Y, 0 = formation front facing -Z
+     */
+    public void setFormation(Formation formation, float anchorX, float anchorY, float anchorZ, float heading) {
+        this.formation = formation;
+        this.anchorX = anchorX;
+        this.anchorY = anchorY;
+        this.anchorZ = anchorZ;
+        this.heading = heading;
+    }
+
+    /** Move the anchor (and so the whole formation) at a constant velocity */
+    public void setFormationVelocity(float vx, float vy, float vz) {
+        this.anchorVx = vx;
+        this.anchorVy = vy;
+        this.anchorVz = vz;
+    }
+
+    public void setHeading(float heading) {
+        this.heading = heading;
+    }
+
+    public void setNeighborhood(float radius, int maxNeighbors) {
+        this.neighborRadius = radius;
+        this.maxNeighbors = maxNeighbors;
+    }
+
+    public void setSeparation(float radius, float weight) {
+        this.separationRadius = radius;
+        this.separationWeight = weight;
+    }
+
+    public void setFlocking(float alignment, float cohesion) {
+        this.alignmentWeight = alignment;
+        this.cohesionWeight = cohesion;
+    }
+
+    public void setFormationGain(float gain) {
+        this.formationGain = gain;
+    }
+
+    public void setMaxSpeed(float maxSpeed) {
+        this.maxSpeed = maxSpeed;
+    }
+
+    public Formation getFormation() {
+        return formation;
+    }
+
+    public int getMemberCount() {
+        return memberCount;
+    }
+}
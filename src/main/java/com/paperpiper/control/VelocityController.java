@@ -0,0 +1,171 @@
+package com.paperpiper.control;
+
+import java.util.Arrays;
+
+import com.paperpiper.drone.DroneState;
+
+/**
+ * Outer loop above FlightController: turns world-frame velocity setpoints
+ * (plus a heading) into attitude setpoints for every enabled drone.
+ *
+ *   velocity error --P--> acceleration --> roll/pitch angles + thrust
+ *
+ * Horizontal acceleration becomes tilt in the drone's heading frame, vertical
+ * acceleration scales the hover thrust, and a small integrator on vertical
+ * velocity trims out battery sag and drag. It runs once per engine update
+ * (tens of Hz, well below the attitude loop) and doesn't allocate.
+ *
+ * Velocity setpoints are flat [vx, vy, vz] per id, so planners, swarm logic
+ * and avoidance can write and adjust them in place from parallel chunks.
+ */
+public class VelocityController {
+
+    private static final float GRAVITY = 9.81f;
+
+    private final FlightController flightController;
+    private final float hoverThrust;
+
+    private float velocityGain = 2.0f;  // (m/s^2) per (m/s), horizontal
+    private float verticalGain = 2.5f;  // (m/s^2) per (m/s)
+    private float maxAccel = 6.0f;      // m/s^2, horizontal
+    private float trimGain = 0.05f;     // thrust per (m/s * s)
+    private float trimLimit = 0.15f;
+    private float yawGain = 1.5f;       // (rad/s) per rad
+
+    // Per-drone arrays, indexed by DroneState id
+    private boolean[] enabled = new boolean[0];
+    private float[] velocitySetpoint = new float[0]; // [vx, vy, vz] per drone
+    private float[] headingSetpoint = new float[0];  // rad, NaN = hold current heading
+    private float[] thrustTrim = new float[0];
+
+    /**
+     * @param hoverThrust collective thrust (0..1) that holds a drone level
+     */
+    public VelocityController(FlightController flightController, float hoverThrust) {
+        this.flightController = flightController;
+        this.hoverThrust = hoverThrust;
+    }
+
+    /**
+     * Compute attitude setpoints for every enabled, armed drone.
+     *
+     * @param dt time since the last update, seconds
+     */
+    public void update(DroneState state, float dt) {
+        ensureCapacity(state.getCapacity());
+
+        final float[] q = state.getOrientation();
+        final float[] v = state.getLinearVelocity();
+        final boolean[] armed = state.getArmed();
+
+        for (int id = 0, n = state.size(); id < n; id++) {
+            if (!enabled[id]) {
+                continue;
+            }
+            if (!armed[id]) {
+                thrustTrim[id] = 0;
+                continue;
+            }
+            int k = id * 3;
+            float ex = velocitySetpoint[k] - v[k];
+            float ey = velocitySetpoint[k + 1] - v[k + 1];
+            float ez = velocitySetpoint[k + 2] - v[k + 2];
+
+            float ax = velocityGain * ex;
+            float az = velocityGain * ez;
+            float horizontal = (float) Math.sqrt(ax * ax + az * az);
+            if (horizontal > maxAccel) {
+                ax *= maxAccel / horizontal;
+                az *= maxAccel / horizontal;
+            }
+            float ay = Math.max(-0.8f * GRAVITY, Math.min(GRAVITY, verticalGain * ey));
+            thrustTrim[id] = Math.max(-trimLimit, Math.min(trimLimit, thrustTrim[id] + trimGain * ey * dt));
+
+            // Heading from the body -Z axis (R = Ry(yaw) Rx(pitch) Rz(-roll))
+            int o = id * 4;
+            float qx = q[o], qy = q[o + 1], qz = q[o + 2], qw = q[o + 3];
+            float r02 = 2 * (qx * qz + qw * qy);
+            float r22 = 1 - 2 * (qx * qx + qy * qy);
+            float yaw = (float) Math.atan2(r02, r22);
+            float c = (float) Math.cos(yaw), s = (float) Math.sin(yaw);
+
+            // World acceleration into the heading frame; tilt towards +X is roll, towards +Z is pitch
+            float headingX = c * ax - s * az;
+            float headingZ = s * ax + c * az;
+            float roll = (float) Math.atan(headingX / GRAVITY);
+            float pitch = (float) Math.atan(headingZ / GRAVITY);
+
+            float yawRate = 0f;
+            float heading = headingSetpoint[id];
+            if (!Float.isNaN(heading)) {
+                float error = heading - yaw;
+                error -= (float) (2 * Math.PI * Math.floor((error + Math.PI) / (2 * Math.PI)));
+                yawRate = yawGain * error;
+            }
+
+            float thrust = (hoverThrust + thrustTrim[id]) * (1f + ay / GRAVITY);
+            flightController.setAttitudeSetpoint(id, roll, pitch, yawRate, thrust);
+        }
+    }
+
+    /**
+     * Let this controller (and the FlightController under it) fly the drone.
+     */
+    public void setEnabled(int id, boolean on) {
+        ensureCapacity(id + 1);
+        enabled[id] = on;
+        thrustTrim[id] = 0;
+        velocitySetpoint[id * 3] = 0;
+        velocitySetpoint[id * 3 + 1] = 0;
+        velocitySetpoint[id * 3 + 2] = 0;
+        headingSetpoint[id] = Float.NaN;
+        flightController.setEnabled(id, on);
+    }
+
+    public boolean isEnabled(int id) {
+        return id < enabled.length && enabled[id];
+    }
+
+    /**
+     * @param heading rad about world Y (0 = facing -Z), NaN to hold the current one
+     */
+    public void setVelocitySetpoint(int id, float vx, float vy, float vz, float heading) {
+        int k = id * 3;
+        velocitySetpoint[k] = vx;
+        velocitySetpoint[k + 1] = vy;
+        velocitySetpoint[k + 2] = vz;
+        headingSetpoint[id] = heading;
+    }
+
+    /** [vx, vy, vz] per id; may be adjusted in place before update() */
+    public float[] getVelocitySetpoint() {
+        return velocitySetpoint;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (enabled.length >= capacity) {
+            return;
+        }
+        int old = enabled.length;
+        enabled = Arrays.copyOf(enabled, capacity);
+        velocitySetpoint = Arrays.copyOf(velocitySetpoint, capacity * 3);
+        headingSetpoint = Arrays.copyOf(headingSetpoint, capacity);
+        Arrays.fill(headingSetpoint, old, capacity, Float.NaN);
+        thrustTrim = Arrays.copyOf(thrustTrim, capacity);
+    }
+
+    public void setGains(float velocityGain, float verticalGain, float maxAccel) {
+        this.velocityGain = velocityGain;
+        this.verticalGain = verticalGain;
+        this.maxAccel = maxAccel;
+    }
+
+    public void setTrim(float gain, float limit) {
+        this.trimGain = gain;
+        this.trimLimit = limit;
+    }
+
+    public void setYawGain(float yawGain) {
+        this.yawGain = yawGain;
+    }
+}
@@ -0,0 +1,119 @@
+package com.paperpiper.drone;
+
+import com.paperpiper.world.WindField;
+
+/**
+ * Aerodynamic effects for a whole DroneState in one loop:
+ *
+ *  - quadratic body drag against the air, F = -0.5 * rho * CdA * |v_rel| * v_rel
+ *    with v_rel = velocity - wind (separate CdA for horizontal and vertical
+ *    motion, world axes)
+ *  - ground effect: rotor thrust is scaled by 1 / (1 - (R / 4h)^2)
+ *    (Cheeseman-Bennett) within a few prop radii of the ground plane
+ *
+ * Drag goes into DroneState.externalForce, ground effect scales the
+ * rotorThrust the motor model produced. Disarmed drones that are (nearly)
+ * still get no force, so parked drones can still go to sleep.
+ *
+ * The wind clock moves once per substep (advance()), so update() can be
+ * called for disjoint ranges of drones, from several threads at once.
+ */
+public class AeroModel {
+
+    private static final int ROTORS = RotorMixer.ROTOR_COUNT;
+    private static final float AIR_DENSITY = 1.225f; // kg/m^3
+
+    // Below this speed a disarmed drone is left alone (m/s, squared)
+    private static final float REST_SPEED_SQ = 0.5f * 0.5f;
+
+    private final WindField wind;
+
+    private float horizontalCdA = 0.04f; // m^2
+    private float verticalCdA = 0.12f;   // m^2
+    private float propRadius = 0.12f;    // m
+    private float groundHeight = 0f;     // m, the ground plane
+    private float maxGroundEffect = 1.33f; // cap, the formula blows up at h = R/4
+
+    private float time = 0;
+
+    // Wind at the drone being processed, one per thread
+    private final ThreadLocal<float[]> windSamples = ThreadLocal.withInitial(() -> new float[3]);
+
+    public AeroModel(WindField wind) {
+        this.wind = wind;
+    }
+
+    /**
+     * Move the wind clock on by one substep. Call once per substep, before
+     * update().
+     */
+    public void advance(float dt) {
+        time += dt;
+    }
+
+    /**
+     * Compute drag and ground effect for drones [from, to). Call after the
+     * motor model, for every range once per substep.
+     */
+    public void update(int from, int to, DroneState state) {
+        final float time = this.time;
+
+        final float[] position = state.getPosition();
+        final float[] velocity = state.getLinearVelocity();
+        final float[] thrust = state.getRotorThrust();
+        final float[] force = state.getExternalForce();
+        final boolean[] armed = state.getArmed();
+
+        final float kh = 0.5f * AIR_DENSITY * horizontalCdA;
+        final float kv = 0.5f * AIR_DENSITY * verticalCdA;
+        final float ground = 4f * propRadius; // effect is under ~1% above this
+        final float[] w = windSamples.get();
+
+        for (int i = from; i < to; i++) {
+            int p = i * 3;
+            float vx = velocity[p], vy = velocity[p + 1], vz = velocity[p + 2];
+
+            if (!armed[i] && vx * vx + vy * vy + vz * vz < REST_SPEED_SQ) {
+                force[p] = 0;
+                force[p + 1] = 0;
+                force[p + 2] = 0;
+                continue;
+            }
+
+            wind.sample(position[p], position[p + 1], position[p + 2], time, w, 0);
+            float rx = vx - w[0], ry = vy - w[1], rz = vz - w[2];
+            float speed = (float) Math.sqrt(rx * rx + ry * ry + rz * rz);
+            force[p] = -kh * speed * rx;
+            force[p + 1] = -kv * speed * ry;
+            force[p + 2] = -kh * speed * rz;
+
+            float h = position[p + 1] - groundHeight;
+            if (h < ground) {
+                float ratio = propRadius / (4f * Math.max(h, 0.01f));
+                float scale = Math.min(maxGroundEffect, 1f / Math.max(1e-3f, 1f - ratio * ratio));
+                int r = i * ROTORS;
+                thrust[r] *= scale;
+                thrust[r + 1] *= scale;
+                thrust[r + 2] *= scale;
+                thrust[r + 3] *= scale;
+            }
+        }
+    }
+
+    public void setDragAreas(float horizontalCdA, float verticalCdA) {
+        this.horizontalCdA = horizontalCdA;
+        this.verticalCdA = verticalCdA;
+    }
+
+    public void setPropRadius(float propRadius) {
+        this.propRadius = propRadius;
+    }
+
+    public void setGroundHeight(float groundHeight) {
+        this.groundHeight = groundHeight;
+    }
+
+    public WindField getWind() {
+        return wind;
+    }
+}
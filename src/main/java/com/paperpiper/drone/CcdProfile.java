@@ -0,0 +1,99 @@
+package com.paperpiper.drone;
+
+import java.util.List;
+
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Vector3f;
+
+/**
+ * Continuous collision detection settings for one drone, derived from its
+ * collision compound. CCD is only switched on while the drone is fast enough
+ * to move more than its own thickness in one physics step, so slow drones
+ * don't pay for swept tests and fast ones don't tunnel through thin walls.
+ */
+public class CcdProfile {
+
+    // Switch CCD off again a bit below the on-speed so it doesn't flicker
+    private static final float HYSTERESIS = 0.8f;
+
+    private final float sweptSphereRadius; // m
+    private final float motionThreshold;   // m per step
+    private final float enableSpeedSq;     // (m/s)^2
+    private final float disableSpeedSq;
+
+    private boolean enabled = false;
+
+    public CcdProfile(float sweptSphereRadius, float motionThreshold, float enableSpeed) {
+        this.sweptSphereRadius = sweptSphereRadius;
+        this.motionThreshold = motionThreshold;
+        this.enableSpeedSq = enableSpeed * enableSpeed;
+        this.disableSpeedSq = enableSpeedSq * HYSTERESIS * HYSTERESIS;
+    }
+
+    /**
+     * Build a profile from the drone's collision boxes (compound children, in
+     * body space). The swept sphere has to stay inside the real shape, so its
+     * radius is the largest sphere around the center of mass that fits in one
+     * of the boxes (normally the main body). The motion threshold is the same
+     * distance: CCD kicks in once a step moves further than that.
+     */
+    public static CcdProfile fromCollisionBoxes(List<Drone.MeshCollisionBox> boxes, float physicsTimeStep) {
+        float radius = 0;
+        float minHalfExtent = Float.MAX_VALUE;
+
+        for (Drone.MeshCollisionBox box : boxes) {
+            Vector3f c = box.center;
+            Vector3f h = box.halfExtents;
+            minHalfExtent = Math.min(minHalfExtent, Math.min(h.x, Math.min(h.y, h.z)));
+
+            // Distance from the origin to the nearest face along each axis
+            float inX = h.x - Math.abs(c.x);
+            float inY = h.y - Math.abs(c.y);
+            float inZ = h.z - Math.abs(c.z);
+            float inscribed = Math.min(inX, Math.min(inY, inZ));
+            radius = Math.max(radius, inscribed);
+        }
+
+        // Center of mass isn't inside any box: fall back to the thinnest piece
+        if (radius <= 0) {
+            radius = boxes.isEmpty() ? 0.05f : minHalfExtent;
+        }
+
+        return new CcdProfile(radius, radius, radius / physicsTimeStep);
+    }
+
+    /**
+     * Turn CCD on or off for the given body based on its current speed.
+     */
+    public void update(PhysicsRigidBody body, float speedSq) {
+        if (!enabled && speedSq > enableSpeedSq) {
+            body.setCcdSweptSphereRadius(sweptSphereRadius);
+            body.setCcdMotionThreshold(motionThreshold);
+            enabled = true;
+        } else if (enabled && speedSq < disableSpeedSq) {
+            body.setCcdMotionThreshold(0f); // 0 disables CCD in Bullet
+            enabled = false;
+        }
+    }
+
+    public void disable(PhysicsRigidBody body) {
+        body.setCcdMotionThreshold(0f);
+        enabled = false;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public float getSweptSphereRadius() {
+        return sweptSphereRadius;
+    }
+
+    public float getMotionThreshold() {
+        return motionThreshold;
+    }
+
+    public float getEnableSpeed() {
+        return (float) Math.sqrt(enableSpeedSq);
+    }
+}
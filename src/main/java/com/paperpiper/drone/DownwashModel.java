@@ -0,0 +1,124 @@
+package com.paperpiper.drone;
+
+import java.util.Arrays;
+
+import com.paperpiper.spatial.SpatialHash;
+
+/**
+ * Rotor downwash between drones: air pushed down by a drone pushes down the
+ * drones flying below it.
+ *
+ * The wake of a drone with total thrust T leaves the rotors at the induced
+ * velocity v_i = sqrt(T / (2 * rho * A)) (momentum theory) and spreads as it
+ * falls: its radius grows linearly with depth and the centerline speed drops
+ * so the momentum flux stays constant. A drone at depth d and lateral
+ * distance r gets
+ *
+ *   v = v_i * (R / sigma(d)) * exp(-r^2 / (2 * sigma(d)^2)),  sigma = R + spread * d
+ *   F = 0.5 * rho * CdA * v^2, downwards
+ *
+ * Sources are found with a SpatialHash of armed drones rebuilt every tick,
+ * and each source only looks at a bounded box below it, at most maxNeighbors
+ * drones, so the cost per tick stays linear in the swarm size.
+ */
+public class DownwashModel {
+
+    private static final int ROTORS = RotorMixer.ROTOR_COUNT;
+    private static final float AIR_DENSITY = 1.225f; // kg/m^3
+
+    private float wakeRadius = 0.35f;  // m, radius of the disk the rotors cover together
+    private float rotorArea = 4f * (float) Math.PI * 0.12f * 0.12f; // m^2, all four props
+    private float spread = 0.2f;       // wake radius growth per m of depth
+    private float maxDepth = 6f;       // m, ignore the wake below this
+    private float receiverCdA = 0.12f; // m^2, vertical drag area of the drone below
+    private int maxNeighbors = 16;
+
+    private final SpatialHash hash;
+
+    // Armed drones this tick
+    private int[] sources = new int[256];
+    private int[] neighbors = new int[maxNeighbors];
+
+    public DownwashModel() {
+        this.hash = new SpatialHash(2f, 4096);
+    }
+
+    /**
+     * Add downwash forces to DroneState.externalForce for drones [0, size).
+     * Call once per substep after the aero model (which resets the force).
+     */
+    public void update(DroneState state) {
+        final float[] position = state.getPosition();
+        final float[] thrust = state.getRotorThrust();
+        final float[] force = state.getExternalForce();
+        final boolean[] armed = state.getArmed();
+
+        int count = 0;
+        for (int i = 0, n = state.size(); i < n; i++) {
+            if (armed[i]) {
+                if (count == sources.length) {
+                    sources = Arrays.copyOf(sources, count * 2);
+                }
+                sources[count++] = i;
+            }
+        }
+        if (count < 2) {
+            return;
+        }
+        hash.rebuild(position, sources, count);
+
+        final float lateralReach = wakeRadius + spread * maxDepth;
+        final float invTwoRhoA = 1f / (2f * AIR_DENSITY * rotorArea);
+        final float k = 0.5f * AIR_DENSITY * receiverCdA;
+
+        for (int s = 0; s < count; s++) {
+            int src = sources[s];
+            int r = src * ROTORS;
+            float total = thrust[r] + thrust[r + 1] + thrust[r + 2] + thrust[r + 3];
+            if (total <= 0) {
+                continue;
+            }
+            float induced = (float) Math.sqrt(total * invTwoRhoA);
+
+            float sx = position[src * 3], sy = position[src * 3 + 1], sz = position[src * 3 + 2];
+            int found = hash.queryBox(sx - lateralReach, sy - maxDepth, sz - lateralReach,
+                    sx + lateralReach, sy - 0.05f, sz + lateralReach, neighbors);
+
+            for (int j = 0; j < found; j++) {
+                int dst = neighbors[j];
+                if (dst == src) {
+                    continue;
+                }
+                float dx = position[dst * 3] - sx;
+                float dz = position[dst * 3 + 2] - sz;
+                float depth = sy - position[dst * 3 + 1];
+
+                float sigma = wakeRadius + spread * depth;
+                float lateralSq = dx * dx + dz * dz;
+                float v = induced * (wakeRadius / sigma) * (float) Math.exp(-lateralSq / (2f * sigma * sigma));
+                force[dst * 3 + 1] -= k * v * v;
+            }
+        }
+    }
+
+    public void setMaxNeighbors(int maxNeighbors) {
+        this.maxNeighbors = maxNeighbors;
+        this.neighbors = new int[maxNeighbors];
+    }
+
+    public void setMaxDepth(float maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public void setSpread(float spread) {
+        this.spread = spread;
+    }
+
+    public void setWakeRadius(float wakeRadius) {
+        this.wakeRadius = wakeRadius;
+    }
+
+    public void setRotorArea(float rotorArea) {
+        this.rotorArea = rotorArea;
+    }
+}
@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.joml.Matrix4f;
-import org.joml.Quaternionf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,7 +18,9 @@ import com.paperpiper.render.Mesh;
 import com.paperpiper.render.MeshData;
 import com.paperpiper.render.Model;
 
-// Represents a drone in the simulation
+// Represents a drone in the simulation. Per-tick state (pose, velocity,
+// controls, motor commands) lives in a shared DroneState at this drone's id;
+// this class is a view over that slot plus the Bullet body and the model.
 public class Drone {
 
     private static final Logger logger = LoggerFactory.getLogger(Drone.class);
@@ -30,20 +31,22 @@ public class Drone {
     private static final boolean DEBUG_MODE = Boolean.getBoolean("drone.debug");
 
     // physical properties
-    private static final float DRONE_MASS = 1.5f; // kg
-    /*
-    No longer needed since I'm using an actual model. I'll delete this later.
-    private static final float DRONE_WIDTH = 0.5f; // meters
-    private static final float DRONE_HEIGHT = 0.15f;
-    private static final float DRONE_DEPTH = 0.5f;
-    */
+    public static final float DRONE_MASS = 1.5f; // kg
+
+    // Rough size, only used by initPhysicsOnly() where there is no model
+    public static final float DRONE_WIDTH = 0.5f; // meters
+    public static final float DRONE_HEIGHT = 0.15f;
+    public static final float DRONE_DEPTH = 0.5f;
 
     // motor
-    private static final float MAX_THRUST = 25.0f; // N (must overcome gravity + margin)
+    public static final float MAX_THRUST = 25.0f; // N (must overcome gravity + margin)
     private static final float MAX_TORQUE = 5.0f;  // N⋅m
+    public static final float MAX_ROTOR_THRUST = 10.0f; // N per rotor, leaves headroom for attitude control
+    public static final float YAW_TORQUE_COEFFICIENT = 0.05f; // N⋅m of prop drag torque per N of thrust
 
     // physics body
     private PhysicsRigidBody rigidBody;
+    private CcdProfile ccdProfile;
 
     private Vector3f collisionCenter;
     private Vector3f collisionHalfExtents;
@@ -56,23 +59,53 @@ public class Drone {
     private Vector3f rear_left_propeller;
     private Vector3f rear_right_propeller;
 
+    // Rotor positions in body space, [x, y, z] for FL, FR, RL, RR
+    private final float[] rotorOffsets = new float[RotorMixer.ROTOR_COUNT * 3];
+    private RotorMixer rotorMixer;
+
     // visual representation
     private DroneBody droneBody;
     private Model model;
 
-    // control inputs (0.0 to 1.0)
-    private float throttle = 0.0f;
-    private float pitch = 0.0f;    // Forward/backward tilt
-    private float roll = 0.0f;     // Left/right tilt
-    private float yaw = 0.0f;      // Rotation around vertical axis
-
-    // motors state
-    private boolean motorsArmed = false;
+    // control inputs, motor state and pose live in state at index id
+    // (-1 until init() / initPhysicsOnly() takes a slot)
+    private final DroneState state;
+    private int id = -1;
 
     // transform matrix for rendering
     private final Matrix4f modelMatrix;
 
+    // Cached per-mesh world matrices and alphas for rendering. Only rebuilt
+    // while the drone is awake, see updateRenderCache().
+    private Matrix4f[] meshMatrices = new Matrix4f[0];
+    private float[] meshAlphas = new float[0];
+    private boolean renderCacheValid = false;
+
+    // Dormant = disarmed, deactivated by Bullet and not moving. The engine
+    // drops dormant drones from its per-frame loops until they wake up.
+    private boolean dormant = false;
+    private final float[] lastPose = new float[7]; // position + orientation at the last dormancy check
+
+    // Scratch for pullState()
+    private final Vector3f pullVector = new Vector3f();
+    private final Quaternion pullRotation = new Quaternion();
+
+    /**
+     * Standalone drone with its own single-slot state (tests, tools). The
+     * slot is taken right away, so inputs can be set before init.
+     */
     public Drone() {
+        this(new DroneState(1));
+        id = state.allocate();
+    }
+
+    /**
+     * Drone whose state lives in the given shared store. It only takes a slot
+     * once init() or initPhysicsOnly() builds its body, so a drone that is
+     * never initialized (or fails to) doesn't hold one.
+     */
+    public Drone(DroneState state) {
+        this.state = state;
         modelMatrix = new Matrix4f();
     }
 
@@ -95,10 +128,79 @@ public class Drone {
         logger.info("Propeller positions - FL: {}, FR: {}, RL: {}, RR: {}",
                 front_left_propeller, front_right_propeller, rear_left_propeller, rear_right_propeller);
 
+        Vector3f[] propellers = {front_left_propeller, front_right_propeller, rear_left_propeller, rear_right_propeller};
+        for (int i = 0; i < propellers.length; i++) {
+            rotorOffsets[i * 3] = propellers[i].x;
+            rotorOffsets[i * 3 + 1] = propellers[i].y;
+            rotorOffsets[i * 3 + 2] = propellers[i].z;
+        }
+
         // Build compound collision shape from all meshes before adding debug markers 
         // Since those shouldn't have collisions, just a visual aid for thrust direction.
         CompoundCollisionShape compoundShape = buildCompoundCollisionShape();
 
+        createRigidBody(physicsWorld, compoundShape, startPosition);
+
+        // logger.info("Created compound collision shape with {} mesh boxes", meshCollisionBoxes.size());
+
+        // Add debug markers AFTER physics setup - these are visual only, no collisions
+        if (DEBUG_MODE) {
+            addPropellerDebugMarkers();
+        }
+    }
+
+
+    /**
+     * Initialize only the physics side: no model is loaded, so no GL context is
+     * needed. Meant for tests and headless runs. The collision shape is a single
+     * box of the drone's rough size and the rotors sit at its corners.
+     */
+    public void initPhysicsOnly(PhysicsWorld physicsWorld, Vector3f startPosition) {
+        Vector3f halfExtents = new Vector3f(DRONE_WIDTH / 2f, DRONE_HEIGHT / 2f, DRONE_DEPTH / 2f);
+        meshCollisionBoxes.clear();
+        meshCollisionBoxes.add(new MeshCollisionBox("body", Vector3f.ZERO, halfExtents));
+        collisionCenter = new Vector3f();
+        collisionHalfExtents = new Vector3f(halfExtents);
+
+        CompoundCollisionShape compoundShape = new CompoundCollisionShape();
+        compoundShape.addChildShape(new BoxCollisionShape(halfExtents), Vector3f.ZERO);
+
+        // FL, FR, RL, RR with front = -Z
+        float[] corners = {-1, -1, 1, -1, -1, 1, 1, 1};
+        for (int i = 0; i < RotorMixer.ROTOR_COUNT; i++) {
+            rotorOffsets[i * 3] = corners[i * 2] * halfExtents.x;
+            rotorOffsets[i * 3 + 1] = 0;
+            rotorOffsets[i * 3 + 2] = corners[i * 2 + 1] * halfExtents.z;
+        }
+
+        createRigidBody(physicsWorld, compoundShape, startPosition);
+    }
+
+    private void createRigidBody(PhysicsWorld physicsWorld, CompoundCollisionShape compoundShape, Vector3f startPosition) {
+        boolean allocated = id < 0;
+        if (allocated) {
+            id = state.allocate();
+        }
+        try {
+            buildRigidBody(physicsWorld, compoundShape, startPosition);
+        } catch (RuntimeException e) {
+            if (rigidBody != null && rigidBody.isInWorld()) {
+                physicsWorld.removeRigidBody(rigidBody);
+            }
+            rigidBody = null;
+            if (allocated) {
+                state.release(id);
+                id = -1;
+            }
+            throw e;
+        }
+    }
+
+    private void buildRigidBody(PhysicsWorld physicsWorld, CompoundCollisionShape compoundShape, Vector3f startPosition) {
+        // Shared with every other drone of the same layout, so one mix() pass covers the store
+        rotorMixer = state.rotorMixerFor(rotorOffsets, MAX_THRUST, MAX_TORQUE, MAX_ROTOR_THRUST,
+                YAW_TORQUE_COEFFICIENT);
+
         // Create rigid body with compound shape
         rigidBody = new PhysicsRigidBody(compoundShape, DRONE_MASS);
         rigidBody.setPhysicsLocation(startPosition);
@@ -110,18 +212,16 @@ public class Drone {
         rigidBody.setAngularDamping(0.5f);
         rigidBody.setLinearDamping(0.1f);
 
+        // CCD against tunneling at high speed, switched on in updateCcd()
+        ccdProfile = CcdProfile.fromCollisionBoxes(meshCollisionBoxes, physicsWorld.getPhysicsTimeStep());
+        logger.debug("CCD profile: swept radius={}, threshold={}, on above {} m/s",
+                ccdProfile.getSweptSphereRadius(), ccdProfile.getMotionThreshold(), ccdProfile.getEnableSpeed());
+
         // Add to physics world
         physicsWorld.addRigidBody(rigidBody);
-
-        // logger.info("Created compound collision shape with {} mesh boxes", meshCollisionBoxes.size());
-
-        // Add debug markers AFTER physics setup - these are visual only, no collisions
-        if (DEBUG_MODE) {
-            addPropellerDebugMarkers();
-        }
+        pullState();
     }
 
-
     /**
      * Build a compound collision shape from all meshes in the model. Each mesh
      * gets its own box collision shape based on its AABB.
@@ -241,6 +341,7 @@ public class Drone {
         }
 
         this.collisionBoxesVisible = visible;
+        renderCacheValid = false;
         List<MeshData> meshForDeletion = new ArrayList<>();
 
         // Remove existing collision debug markers
@@ -297,99 +398,345 @@ public class Drone {
         return new ArrayList<>(meshCollisionBoxes);
     }
 
-    // Update drone physics based on control inputs
-    public void update(float deltaTime) {
-        if (!motorsArmed || rigidBody == null) {
+    // Scratch for applyRotorForces(), which runs once per physics substep
+    private final Vector3f gravityForce = new Vector3f();
+    private final Matrix3f bodyRotation = new Matrix3f();
+    private final Vector3f rotorForce = new Vector3f();
+    private final Vector3f rotorOffset = new Vector3f();
+    private final Vector3f yawTorque = new Vector3f();
+
+    /**
+     * Copy the body's pose and velocities from Bullet into this drone's
+     * DroneState slot. The engine calls it after every physics substep for
+     * awake drones; everything else reads the arrays.
+     */
+    public void pullState() {
+        if (rigidBody == null) {
             return;
         }
 
-        // Get current orientation as rotation matrix
-        Quaternion rotation = rigidBody.getPhysicsRotation(null);
-        Matrix3f rotMatrix = rotation.toRotationMatrix();
+        rigidBody.getPhysicsLocation(pullVector);
+        float[] position = state.getPosition();
+        position[id * 3] = pullVector.x;
+        position[id * 3 + 1] = pullVector.y;
+        position[id * 3 + 2] = pullVector.z;
+
+        rigidBody.getPhysicsRotation(pullRotation);
+        float[] orientation = state.getOrientation();
+        orientation[id * 4] = pullRotation.getX();
+        orientation[id * 4 + 1] = pullRotation.getY();
+        orientation[id * 4 + 2] = pullRotation.getZ();
+        orientation[id * 4 + 3] = pullRotation.getW();
+
+        rigidBody.getLinearVelocity(pullVector);
+        float[] velocity = state.getLinearVelocity();
+        velocity[id * 3] = pullVector.x;
+        velocity[id * 3 + 1] = pullVector.y;
+        velocity[id * 3 + 2] = pullVector.z;
+
+        rigidBody.getAngularVelocity(pullVector);
+        float[] angularVelocity = state.getAngularVelocity();
+        angularVelocity[id * 3] = pullVector.x;
+        angularVelocity[id * 3 + 1] = pullVector.y;
+        angularVelocity[id * 3 + 2] = pullVector.z;
+    }
 
-        Vector3f localUp = new Vector3f(0, 1, 0);
-        Vector3f worldUp = new Vector3f();
-        rotMatrix.mult(localUp, worldUp);
+    /**
+     * Apply the four rotor thrusts (in DroneState) at the propeller positions,
+     * plus the yaw reaction torque. The thrusts come from a RotorMixer and
+     * MotorBatteryModel batch run over the whole store (see
+     * DroneControlTickListener). Called before every internal Bullet substep so
+     * the forces follow the body's current orientation. The external force
+     * (drag, wind) is applied at the center of mass, also when disarmed.
+     *
+     * Bullet only clears forces after the whole step, so forces from the
+     * previous substep are cleared first (and gravity, which Bullet applies
+     * once per step, is put back).
+     */
+    public void applyRotorForces() {
+        if (rigidBody == null) {
+            return;
+        }
 
-        float thrustMagnitude = throttle * MAX_THRUST;
-        Vector3f thrustForce = worldUp.mult(thrustMagnitude);
-        rigidBody.applyCentralForce(thrustForce);
+        // Disarmed with no external force: leave the body alone, so it can
+        // deactivate (applying a force wakes it up)
+        boolean armed = state.getArmed()[id];
+        float[] external = state.getExternalForce();
+        int e = id * 3;
+        if (!armed && external[e] == 0 && external[e + 1] == 0 && external[e + 2] == 0) {
+            return;
+        }
 
-        Vector3f torque = new Vector3f();
+        rigidBody.clearForces();
+        rigidBody.getGravity(gravityForce).multLocal(rigidBody.getMass());
+        gravityForce.addLocal(external[e], external[e + 1], external[e + 2]);
+        rigidBody.applyCentralForce(gravityForce);
 
-        torque.x = pitch * MAX_TORQUE;
+        if (!armed) {
+            return;
+        }
 
-        torque.z = -roll * MAX_TORQUE;
+        rigidBody.getPhysicsRotationMatrix(bodyRotation);
+
+        float[] rotorThrust = state.getRotorThrust();
+        int rotorBase = id * RotorMixer.ROTOR_COUNT;
+        for (int i = 0; i < RotorMixer.ROTOR_COUNT; i++) {
+            // Thrust along body +Y, applied at the rotor (offset is relative to
+            // the center of mass, in world orientation)
+            rotorForce.set(0, rotorThrust[rotorBase + i], 0);
+            bodyRotation.mult(rotorForce, rotorForce);
+            rotorOffset.set(rotorOffsets[i * 3], rotorOffsets[i * 3 + 1], rotorOffsets[i * 3 + 2]);
+            bodyRotation.mult(rotorOffset, rotorOffset);
+            rigidBody.applyForce(rotorForce, rotorOffset);
+        }
 
-        torque.y = yaw * MAX_TORQUE;
+        yawTorque.set(0, state.getYawTorque()[id], 0);
+        bodyRotation.mult(yawTorque, yawTorque);
+        rigidBody.applyTorque(yawTorque);
+    }
 
-        Vector3f worldTorque = new Vector3f();
-        rotMatrix.mult(torque, worldTorque);
-        rigidBody.applyTorque(worldTorque);
+    public RotorMixer getRotorMixer() {
+        return rotorMixer;
     }
 
-    public Matrix4f getModelMatrix() {
+    /**
+     * Rotor positions in body space, [x, y, z] for FL, FR, RL, RR.
+     */
+    public float[] getRotorOffsets() {
+        return rotorOffsets;
+    }
+
+    /**
+     * Enable CCD while the drone is moving fast enough to tunnel, disable it
+     * otherwise. Called once per frame by the engine.
+     */
+    public void updateCcd() {
+        if (rigidBody == null || ccdProfile == null) {
+            return;
+        }
+        float[] v = state.getLinearVelocity();
+        int o = id * 3;
+        ccdProfile.update(rigidBody, v[o] * v[o] + v[o + 1] * v[o + 1] + v[o + 2] * v[o + 2]);
+    }
+
+    public CcdProfile getCcdProfile() {
+        return ccdProfile;
+    }
+
+    /**
+     * Re-check whether this (awake) drone has gone dormant. A drone is dormant
+     * when its motors are disarmed, Bullet has deactivated its body and its
+     * transform hasn't changed since the previous check.
+     *
+     * @return true if the drone is now dormant
+     */
+    public boolean updateDormancy() {
         if (rigidBody == null) {
-            return modelMatrix.identity();
+            return false;
         }
 
-        Vector3f pos = rigidBody.getPhysicsLocation(null);
+        float[] position = state.getPosition();
+        float[] orientation = state.getOrientation();
+        boolean unchanged = true;
+        for (int i = 0; i < 3; i++) {
+            unchanged &= lastPose[i] == position[id * 3 + i];
+            lastPose[i] = position[id * 3 + i];
+        }
+        for (int i = 0; i < 4; i++) {
+            unchanged &= lastPose[3 + i] == orientation[id * 4 + i];
+            lastPose[3 + i] = orientation[id * 4 + i];
+        }
 
-        Quaternion rot = rigidBody.getPhysicsRotation(null);
+        dormant = !state.getArmed()[id] && !rigidBody.isActive() && unchanged;
+        return dormant;
+    }
 
-        modelMatrix.identity()
-                .translate(pos.x, pos.y, pos.z)
-                .rotate(new Quaternionf(rot.getX(), rot.getY(), rot.getZ(), rot.getW()));
+    /**
+     * Cheap check for a dormant drone: wake it if it was armed, reset, or
+     * Bullet re-activated its body (e.g. something hit it).
+     *
+     * @return true if the drone is awake
+     */
+    public boolean wakeIfDisturbed() {
+        if (dormant && (state.getArmed()[id] || (rigidBody != null && rigidBody.isActive()))) {
+            dormant = false;
+            renderCacheValid = false;
+            pullState(); // may have been pushed since it was last pulled
+        }
+        return !dormant;
+    }
 
-        return modelMatrix;
+    public boolean isDormant() {
+        return dormant;
     }
 
-    public Vector3f getPosition() {
-        if (rigidBody == null) {
-            return new Vector3f();
+    /**
+     * Rebuild the per-mesh world matrices used for drawing. Dormant drones keep
+     * the matrices from when they parked; they are only rebuilt if the model's
+     * mesh list changed (e.g. collision boxes toggled).
+     */
+    public void updateRenderCache() {
+        if (model == null) {
+            return;
+        }
+
+        List<MeshData> meshes = model.getMeshesWithTransforms();
+        if (meshMatrices.length != meshes.size()) {
+            meshMatrices = new Matrix4f[meshes.size()];
+            meshAlphas = new float[meshes.size()];
+            for (int i = 0; i < meshMatrices.length; i++) {
+                meshMatrices[i] = new Matrix4f();
+            }
+            renderCacheValid = false;
+        }
+
+        if (dormant && renderCacheValid) {
+            return;
         }
-        return rigidBody.getPhysicsLocation(null);
+
+        Matrix4f droneMatrix = getModelMatrix();
+        for (int i = 0; i < meshMatrices.length; i++) {
+            MeshData meshData = meshes.get(i);
+            meshMatrices[i].set(droneMatrix).mul(meshData.getLocalTransform());
+
+            // Render collision debug boxes with 50% transparency
+            String meshName = meshData.getMesh().getMeshName();
+            boolean collisionBox = meshName != null
+                    && (meshName.startsWith("debug_collision_") || meshName.startsWith("collision_"));
+            meshAlphas[i] = collisionBox ? 0.5f : 1.0f;
+        }
+        renderCacheValid = true;
     }
 
-    public Vector3f getVelocity() {
+    /**
+     * World matrix per mesh, parallel to getModel().getMeshesWithTransforms().
+     * Valid after updateRenderCache().
+     */
+    public Matrix4f[] getMeshMatrices() {
+        return meshMatrices;
+    }
+
+    public float[] getMeshAlphas() {
+        return meshAlphas;
+    }
+
+    /**
+     * Render transform from the pose in DroneState (no Bullet call).
+     */
+    public Matrix4f getModelMatrix() {
         if (rigidBody == null) {
-            return new Vector3f();
+            return modelMatrix.identity();
         }
-        return rigidBody.getLinearVelocity(null);
+
+        float[] p = state.getPosition();
+        float[] q = state.getOrientation();
+        int o = id * 3;
+        int r = id * 4;
+        modelMatrix.translationRotate(p[o], p[o + 1], p[o + 2], q[r], q[r + 1], q[r + 2], q[r + 3]);
+
+        return modelMatrix;
+    }
+
+    public Vector3f getPosition() {
+        return getPosition(new Vector3f());
+    }
+
+    /**
+     * Allocation-free variant of getPosition().
+     */
+    public Vector3f getPosition(Vector3f store) {
+        float[] p = state.getPosition();
+        return store.set(p[id * 3], p[id * 3 + 1], p[id * 3 + 2]);
+    }
+
+    public Vector3f getVelocity() {
+        return getVelocity(new Vector3f());
+    }
+
+    /**
+     * Allocation-free variant of getVelocity().
+     */
+    public Vector3f getVelocity(Vector3f store) {
+        float[] v = state.getLinearVelocity();
+        return store.set(v[id * 3], v[id * 3 + 1], v[id * 3 + 2]);
+    }
+
+    public float getThrottle() {
+        return state.getThrottle()[id];
+    }
+
+    public float getPitch() {
+        return state.getPitch()[id];
+    }
+
+    public float getRoll() {
+        return state.getRoll()[id];
+    }
+
+    public float getYaw() {
+        return state.getYaw()[id];
     }
 
     public void setThrottle(float throttle) {
-        this.throttle = Math.max(0, Math.min(1, throttle));
+        state.getThrottle()[id] = Math.max(0, Math.min(1, throttle));
     }
 
     public void setPitch(float pitch) {
-        this.pitch = Math.max(-1, Math.min(1, pitch));
+        state.getPitch()[id] = Math.max(-1, Math.min(1, pitch));
     }
 
     // Set roll (-1.0 to 1.0)
     public void setRoll(float roll) {
-        this.roll = Math.max(-1, Math.min(1, roll));
+        state.getRoll()[id] = Math.max(-1, Math.min(1, roll));
     }
 
     // Set yaw (-1.0 to 1.0)
     public void setYaw(float yaw) {
-        this.yaw = Math.max(-1, Math.min(1, yaw));
+        state.getYaw()[id] = Math.max(-1, Math.min(1, yaw));
+    }
+
+    /**
+     * Battery state of charge, 0..1.
+     */
+    public float getBatteryCharge() {
+        return state.getBatteryCharge()[id];
+    }
+
+    /**
+     * Pack voltage under the current load.
+     */
+    public float getBatteryVoltage() {
+        return state.getBatteryVoltage()[id];
     }
 
     // Arm/disarm motors
     public void setMotorsArmed(boolean armed) {
-        this.motorsArmed = armed;
+        state.getArmed()[id] = armed;
         if (armed) {
             logger.info("Motors ARMED");
-            rigidBody.activate();
+            if (rigidBody != null) {
+                rigidBody.activate();
+            }
         } else {
             logger.info("Motors DISARMED");
-            throttle = 0;
+            state.getThrottle()[id] = 0;
         }
     }
 
     public boolean isMotorsArmed() {
-        return motorsArmed;
+        return state.getArmed()[id];
+    }
+
+    public DroneState getState() {
+        return state;
+    }
+
+    /**
+     * This drone's slot in getState(), -1 before init for a drone in a shared
+     * store.
+     */
+    public int getId() {
+        return id;
     }
 
     public PhysicsRigidBody getRigidBody() {
@@ -403,21 +750,47 @@ public class Drone {
     public void reset(Vector3f position) {
         if (rigidBody != null) {
             rigidBody.setPhysicsLocation(position);
-            rigidBody.setLinearVelocity(new Vector3f(0, 0, 0));
-            rigidBody.setAngularVelocity(new Vector3f(0, 0, 0));
-            rigidBody.setPhysicsRotation(new Quaternion());
-            motorsArmed = false;
-            throttle = 0;
-            pitch = 0;
-            roll = 0;
-            yaw = 0;
+            rigidBody.setLinearVelocity(Vector3f.ZERO);
+            rigidBody.setAngularVelocity(Vector3f.ZERO);
+            rigidBody.setPhysicsRotation(Quaternion.IDENTITY);
+            rigidBody.clearForces();
+            if (ccdProfile != null) {
+                ccdProfile.disable(rigidBody);
+            }
+            dormant = false;
+            renderCacheValid = false;
+            state.clear(id);
+            pullState();
+        }
+    }
+
+    /**
+     * Put an initialized (pooled) drone's body back into the physics world.
+     */
+    public void addToWorld(PhysicsWorld physicsWorld) {
+        if (rigidBody != null && !rigidBody.isInWorld()) {
+            physicsWorld.addRigidBody(rigidBody);
+            rigidBody.activate();
+        }
+    }
+
+    /**
+     * Take the body out of the physics world but keep it (and the model)
+     * alive so the drone can be reused. Use cleanup() to actually discard it.
+     */
+    public void removeFromWorld(PhysicsWorld physicsWorld) {
+        if (rigidBody != null && rigidBody.isInWorld()) {
+            physicsWorld.removeRigidBody(rigidBody);
         }
     }
 
     public void cleanup(PhysicsWorld physicsWorld) {
         if (rigidBody != null) {
-            physicsWorld.removeRigidBody(rigidBody);
+            if (rigidBody.isInWorld()) {
+                physicsWorld.removeRigidBody(rigidBody);
+            }
             rigidBody = null;
+            state.release(id);
         }
     }
 
@@ -448,6 +821,7 @@ public class Drone {
      */
     public void setDebugVisualization(boolean enabled) {
         if (model != null) {
+            renderCacheValid = false;
             model.clearDebugMarkers();
             if (enabled) {
                 addPropellerDebugMarkers();
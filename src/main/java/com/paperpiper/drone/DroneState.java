@@ -0,0 +1,279 @@
+package com.paperpiper.drone;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays store for per-drone state. Every drone owns one id
+ * (slot) and its data lives at that index in parallel primitive arrays, so
+ * batch code (mixing, controllers, telemetry, rendering) can stream through
+ * contiguous memory instead of chasing Drone/Bullet/JME objects.
+ *
+ * Layout per id:
+ *   position          [3] world, m
+ *   orientation       [4] world quaternion (x, y, z, w)
+ *   linearVelocity    [3] world, m/s
+ *   angularVelocity   [3] world, rad/s
+ *   throttle, pitch, roll, yaw   control inputs
+ *   armed             motors armed flag
+ *   rotorCommand      [4] mixer output in N (FL, FR, RL, RR)
+ *   rotorThrust       [4] thrust the motors actually make, N
+ *   yawTorque         yaw reaction torque in N⋅m
+ *   motorSpeed        [4] normalized rotor speed (1 = full speed on a full battery)
+ *   motorCurrent      [4] A
+ *   batteryCharge     state of charge 0..1
+ *   batteryVoltage    pack voltage under load, V
+ *   externalForce     [3] world force besides gravity and rotors (drag, wind), N
+ *
+ * Ids are reused after release(). Loops should run over [0, size()) and can
+ * skip free slots with isUsed(). Arrays are replaced when the store grows, so
+ * don't hold on to them across allocate() calls.
+ */
+public class DroneState {
+
+    private static final int ROTORS = RotorMixer.ROTOR_COUNT;
+
+    private int capacity;
+    private int size = 0; // one past the highest id ever handed out
+
+    private int[] freeIds;
+    private int freeCount = 0;
+    private boolean[] used;
+
+    private float[] position;
+    private float[] orientation;
+    private float[] linearVelocity;
+    private float[] angularVelocity;
+
+    private float[] throttle;
+    private float[] pitch;
+    private float[] roll;
+    private float[] yaw;
+    private boolean[] armed;
+
+    private float[] rotorCommand;
+    private float[] rotorThrust;
+    private float[] yawTorque;
+
+    private float[] motorSpeed;
+    private float[] motorCurrent;
+    private float[] batteryCharge;
+    private float[] batteryVoltage;
+
+    private float[] externalForce;
+
+    // Mixer shared by every drone with the common rotor layout (the first one
+    // asked for); drones with another layout get their own
+    private RotorMixer rotorMixer;
+    private boolean mixedLayouts = false;
+
+    public DroneState(int initialCapacity) {
+        capacity = Math.max(1, initialCapacity);
+        freeIds = new int[capacity];
+        used = new boolean[capacity];
+        position = new float[capacity * 3];
+        orientation = new float[capacity * 4];
+        linearVelocity = new float[capacity * 3];
+        angularVelocity = new float[capacity * 3];
+        throttle = new float[capacity];
+        pitch = new float[capacity];
+        roll = new float[capacity];
+        yaw = new float[capacity];
+        armed = new boolean[capacity];
+        rotorCommand = new float[capacity * ROTORS];
+        rotorThrust = new float[capacity * ROTORS];
+        yawTorque = new float[capacity];
+        motorSpeed = new float[capacity * ROTORS];
+        motorCurrent = new float[capacity * ROTORS];
+        batteryCharge = new float[capacity];
+        batteryVoltage = new float[capacity];
+        externalForce = new float[capacity * 3];
+    }
+
+    /**
+     * Hand out a slot, reusing released ones first. The slot starts zeroed
+     * with an identity orientation.
+     */
+    public int allocate() {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            if (size == capacity) {
+                grow(capacity * 2);
+            }
+            id = size++;
+        }
+        used[id] = true;
+        clear(id);
+        return id;
+    }
+
+    /**
+     * Mixer for a drone with this rotor layout: the shared one if the layout
+     * matches it, else one of the drone's own (and hasMixedLayouts() turns
+     * true, so per-substep mixing knows to look for them).
+     */
+    public RotorMixer rotorMixerFor(float[] rotorOffsets, float maxThrust, float maxTorque, float maxRotorThrust,
+            float yawCoefficient) {
+        if (rotorMixer == null) {
+            rotorMixer = new RotorMixer(rotorOffsets, maxThrust, maxTorque, maxRotorThrust, yawCoefficient);
+            return rotorMixer;
+        }
+        if (rotorMixer.matches(rotorOffsets, maxThrust, maxTorque, maxRotorThrust, yawCoefficient)) {
+            return rotorMixer;
+        }
+        mixedLayouts = true;
+        return new RotorMixer(rotorOffsets, maxThrust, maxTorque, maxRotorThrust, yawCoefficient);
+    }
+
+    /** The shared mixer, or null before any drone was initialized */
+    public RotorMixer getRotorMixer() {
+        return rotorMixer;
+    }
+
+    /** True once a drone got a mixer other than the shared one */
+    public boolean hasMixedLayouts() {
+        return mixedLayouts;
+    }
+
+    public void release(int id) {
+        if (!used[id]) {
+            return;
+        }
+        used[id] = false;
+        clear(id);
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * Reset a slot to rest: zero motion and controls, identity orientation,
+     * disarmed, motors stopped, full battery. Position is left at the origin.
+     */
+    public void clear(int id) {
+        Arrays.fill(position, id * 3, id * 3 + 3, 0f);
+        Arrays.fill(orientation, id * 4, id * 4 + 3, 0f);
+        orientation[id * 4 + 3] = 1f;
+        Arrays.fill(linearVelocity, id * 3, id * 3 + 3, 0f);
+        Arrays.fill(angularVelocity, id * 3, id * 3 + 3, 0f);
+        throttle[id] = 0;
+        pitch[id] = 0;
+        roll[id] = 0;
+        yaw[id] = 0;
+        armed[id] = false;
+        Arrays.fill(rotorCommand, id * ROTORS, id * ROTORS + ROTORS, 0f);
+        Arrays.fill(rotorThrust, id * ROTORS, id * ROTORS + ROTORS, 0f);
+        yawTorque[id] = 0;
+        Arrays.fill(motorSpeed, id * ROTORS, id * ROTORS + ROTORS, 0f);
+        Arrays.fill(motorCurrent, id * ROTORS, id * ROTORS + ROTORS, 0f);
+        batteryCharge[id] = 1f;
+        batteryVoltage[id] = 0f; // set by the motor model on its next tick
+        Arrays.fill(externalForce, id * 3, id * 3 + 3, 0f);
+    }
+
+    private void grow(int newCapacity) {
+        capacity = newCapacity;
+        freeIds = Arrays.copyOf(freeIds, newCapacity);
+        used = Arrays.copyOf(used, newCapacity);
+        position = Arrays.copyOf(position, newCapacity * 3);
+        orientation = Arrays.copyOf(orientation, newCapacity * 4);
+        linearVelocity = Arrays.copyOf(linearVelocity, newCapacity * 3);
+        angularVelocity = Arrays.copyOf(angularVelocity, newCapacity * 3);
+        throttle = Arrays.copyOf(throttle, newCapacity);
+        pitch = Arrays.copyOf(pitch, newCapacity);
+        roll = Arrays.copyOf(roll, newCapacity);
+        yaw = Arrays.copyOf(yaw, newCapacity);
+        armed = Arrays.copyOf(armed, newCapacity);
+        rotorCommand = Arrays.copyOf(rotorCommand, newCapacity * ROTORS);
+        rotorThrust = Arrays.copyOf(rotorThrust, newCapacity * ROTORS);
+        yawTorque = Arrays.copyOf(yawTorque, newCapacity);
+        motorSpeed = Arrays.copyOf(motorSpeed, newCapacity * ROTORS);
+        motorCurrent = Arrays.copyOf(motorCurrent, newCapacity * ROTORS);
+        batteryCharge = Arrays.copyOf(batteryCharge, newCapacity);
+        batteryVoltage = Arrays.copyOf(batteryVoltage, newCapacity);
+        externalForce = Arrays.copyOf(externalForce, newCapacity * 3);
+    }
+
+    /**
+     * One past the highest id in use (or ever used). Batch loops run over
+     * [0, size()).
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isUsed(int id) {
+        return used[id];
+    }
+
+    public float[] getPosition() {
+        return position;
+    }
+
+    public float[] getOrientation() {
+        return orientation;
+    }
+
+    public float[] getLinearVelocity() {
+        return linearVelocity;
+    }
+
+    public float[] getAngularVelocity() {
+        return angularVelocity;
+    }
+
+    public float[] getThrottle() {
+        return throttle;
+    }
+
+    public float[] getPitch() {
+        return pitch;
+    }
+
+    public float[] getRoll() {
+        return roll;
+    }
+
+    public float[] getYaw() {
+        return yaw;
+    }
+
+    public boolean[] getArmed() {
+        return armed;
+    }
+
+    public float[] getRotorCommand() {
+        return rotorCommand;
+    }
+
+    public float[] getRotorThrust() {
+        return rotorThrust;
+    }
+
+    public float[] getYawTorque() {
+        return yawTorque;
+    }
+
+    public float[] getMotorSpeed() {
+        return motorSpeed;
+    }
+
+    public float[] getMotorCurrent() {
+        return motorCurrent;
+    }
+
+    public float[] getBatteryCharge() {
+        return batteryCharge;
+    }
+
+    public float[] getBatteryVoltage() {
+        return batteryVoltage;
+    }
+
+    public float[] getExternalForce() {
+        return externalForce;
+    }
+}
@@ -0,0 +1,142 @@
+package com.paperpiper.drone;
+
+/**
+ * Motor/ESC lag and battery model for a whole DroneState in one loop.
+ *
+ * Per drone and tick:
+ *   pack voltage  V = cells * (V_empty + (V_full - V_empty) * charge) - R * I_prev
+ *   rotor speed   w follows sqrt(command / maxRotorThrust) with a first-order
+ *                 lag (time constant tau), capped at V / V_full, since a
+ *                 sagging pack can't spin the props as fast
+ *   thrust        T = maxRotorThrust * w^2
+ *   current       I = T^1.5 / (sqrt(2 rho A) * efficiency * V)   (momentum theory)
+ *   charge        -= I_total * dt / capacity
+ *
+ * The current from the previous tick is used for the sag, so there's no
+ * solve. Disarmed drones spin down and draw nothing; an empty pack gives no
+ * thrust. Only flat arrays are touched and nothing is allocated, so it can
+ * stay on for every drone.
+ */
+public class MotorBatteryModel {
+
+    private static final int ROTORS = RotorMixer.ROTOR_COUNT;
+    private static final float AIR_DENSITY = 1.225f; // kg/m^3
+
+    private final float maxRotorThrust; // N
+    private final float yawCoefficient; // N⋅m per N
+
+    private float motorTimeConstant = 0.03f; // s, spin-up/down
+    private float propRadius = 0.12f;        // m
+    private float efficiency = 0.5f;         // motor * ESC * prop figure of merit
+
+    // 4S LiPo
+    private int cells = 4;
+    private float cellFull = 4.2f;           // V
+    private float cellEmpty = 3.3f;          // V
+    private float internalResistance = 0.06f; // ohm, whole pack
+    private float capacity = 5.0f;           // Ah
+
+    private float lastDt = -1;
+    private float lagAlpha;
+    private float powerFactor;
+
+    public MotorBatteryModel(float maxRotorThrust, float yawCoefficient) {
+        this.maxRotorThrust = maxRotorThrust;
+        this.yawCoefficient = yawCoefficient;
+        updateConstants();
+    }
+
+    /**
+     * Turn the mixer's rotor commands into actual rotor thrust and yaw
+     * torque for drones [from, to), and drain their batteries.
+     */
+    public void update(int from, int to, DroneState state, float dt) {
+        if (dt != lastDt) {
+            lagAlpha = (float) (1.0 - Math.exp(-dt / motorTimeConstant));
+            lastDt = dt;
+        }
+
+        final float[] command = state.getRotorCommand();
+        final float[] thrust = state.getRotorThrust();
+        final float[] speed = state.getMotorSpeed();
+        final float[] current = state.getMotorCurrent();
+        final float[] yawTorque = state.getYawTorque();
+        final float[] charge = state.getBatteryCharge();
+        final float[] voltage = state.getBatteryVoltage();
+        final boolean[] armed = state.getArmed();
+
+        final float maxT = maxRotorThrust;
+        final float invMaxT = 1f / maxRotorThrust;
+        final float vFull = cells * cellFull;
+        final float vEmpty = cells * cellEmpty;
+        final float alpha = lagAlpha;
+        final float drainPerAmp = dt / (capacity * 3600f);
+
+        for (int i = from; i < to; i++) {
+            int r = i * ROTORS;
+
+            float soc = charge[i];
+            float v = vEmpty + (vFull - vEmpty) * soc
+                    - internalResistance * (current[r] + current[r + 1] + current[r + 2] + current[r + 3]);
+            v = soc > 0 ? Math.max(v, 0f) : 0f;
+            voltage[i] = v;
+
+            float cap = v / vFull;
+            float on = armed[i] ? 1f : 0f;
+            float invV = v > 0 ? 1f / v : 0f;
+
+            float total = 0;
+            float yaw = 0;
+            for (int k = 0; k < ROTORS; k++) {
+                float target = Math.min((float) Math.sqrt(Math.max(command[r + k], 0f) * invMaxT), cap) * on;
+                float w = speed[r + k] + (target - speed[r + k]) * alpha;
+                speed[r + k] = w;
+
+                float t = maxT * w * w;
+                thrust[r + k] = t;
+                yaw += RotorMixer.spin(k) * t;
+
+                float amps = t * (float) Math.sqrt(t) * powerFactor * invV;
+                current[r + k] = amps;
+                total += amps;
+            }
+            yawTorque[i] = yawCoefficient * yaw;
+            charge[i] = Math.max(0f, soc - total * drainPerAmp);
+        }
+    }
+
+    private void updateConstants() {
+        float diskArea = (float) (Math.PI * propRadius * propRadius);
+        powerFactor = 1f / ((float) Math.sqrt(2f * AIR_DENSITY * diskArea) * efficiency);
+    }
+
+    public void setMotorTimeConstant(float seconds) {
+        this.motorTimeConstant = seconds;
+        this.lastDt = -1;
+    }
+
+    public void setPropRadius(float meters) {
+        this.propRadius = meters;
+        updateConstants();
+    }
+
+    public void setEfficiency(float efficiency) {
+        this.efficiency = efficiency;
+        updateConstants();
+    }
+
+    /**
+     * @param cells              cells in series
+     * @param capacity           Ah
+     * @param internalResistance ohm, whole pack
+     */
+    public void setBattery(int cells, float capacity, float internalResistance) {
+        this.cells = cells;
+        this.capacity = capacity;
+        this.internalResistance = internalResistance;
+    }
+
+    public float getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,180 @@
+package com.paperpiper.drone;
+
+import java.util.Arrays;
+
+/**
+ * Motor mixing for a quadrotor: turns throttle/pitch/roll/yaw commands into
+ * four rotor thrusts plus the yaw reaction torque they produce.
+ *
+ * The mixing matrix is the inverse of the rotor geometry: given rotor offsets
+ * r_i and spin directions s_i, thrust T_i along body +Y gives
+ *
+ *   total thrust = sum(T_i)
+ *   torque x     = sum(-r_i.z * T_i)
+ *   torque z     = sum( r_i.x * T_i)
+ *   torque y     = sum( s_i * k * T_i)   (prop drag reaction)
+ *
+ * so it works for whatever rotor positions the model actually has. Rotors are
+ * ordered front-left, front-right, rear-left, rear-right. mix() runs over
+ * flat arrays for a whole batch of drones in one loop.
+ */
+public class RotorMixer {
+
+    public static final int ROTOR_COUNT = 4;
+
+    // Spin direction per rotor (+1 = CW seen from above, reaction torque +Y).
+    // Matches DroneBody: front-left and rear-right are CW.
+    private static final float[] SPIN = {1f, -1f, -1f, 1f};
+
+    // Used when the model doesn't give usable rotor positions
+    private static final float DEFAULT_ARM = 0.3f; // m
+
+    private final float maxThrust;      // N, total at full throttle
+    private final float maxTorque;      // N⋅m, at full pitch/roll/yaw command
+    private final float maxRotorThrust; // N, per rotor
+    private final float yawCoefficient; // N⋅m of reaction torque per N of thrust
+
+    // Row-major 4x4 inverse of the geometry matrix
+    private final float[] mix = new float[16];
+    private final float[] rotorOffsets;
+
+    /**
+     * @param rotorOffsets body-space rotor positions, [x, y, z] per rotor in FL, FR, RL, RR order
+     */
+    public RotorMixer(float[] rotorOffsets, float maxThrust, float maxTorque, float maxRotorThrust,
+            float yawCoefficient) {
+        this.maxThrust = maxThrust;
+        this.maxTorque = maxTorque;
+        this.maxRotorThrust = maxRotorThrust;
+        this.yawCoefficient = yawCoefficient;
+        this.rotorOffsets = rotorOffsets.clone();
+
+        if (!buildMixMatrix(rotorOffsets)) {
+            float a = DEFAULT_ARM;
+            buildMixMatrix(new float[]{-a, 0, -a, a, 0, -a, -a, 0, a, a, 0, a});
+        }
+    }
+
+    /** True if this mixer was built for exactly this rotor layout and these limits */
+    public boolean matches(float[] rotorOffsets, float maxThrust, float maxTorque, float maxRotorThrust,
+            float yawCoefficient) {
+        return Arrays.equals(this.rotorOffsets, rotorOffsets) && this.maxThrust == maxThrust
+                && this.maxTorque == maxTorque && this.maxRotorThrust == maxRotorThrust
+                && this.yawCoefficient == yawCoefficient;
+    }
+
+    /**
+     * Mix commands for drones [from, to) of a batch.
+     *
+     * @param thrustOut  rotor thrust in N, 4 per drone
+     * @param yawOut     yaw reaction torque in N⋅m (body Y), 1 per drone
+     */
+    public void mix(int from, int to, float[] throttle, float[] pitch, float[] roll, float[] yaw,
+            float[] thrustOut, float[] yawOut) {
+        final float[] m = mix;
+        final float max = maxRotorThrust;
+
+        for (int i = from; i < to; i++) {
+            float total = throttle[i] * maxThrust;
+            float tx = pitch[i] * maxTorque;
+            float tz = -roll[i] * maxTorque;
+            float ty = yaw[i] * maxTorque;
+
+            float t0 = m[0] * total + m[1] * tx + m[2] * tz + m[3] * ty;
+            float t1 = m[4] * total + m[5] * tx + m[6] * tz + m[7] * ty;
+            float t2 = m[8] * total + m[9] * tx + m[10] * tz + m[11] * ty;
+            float t3 = m[12] * total + m[13] * tx + m[14] * tz + m[15] * ty;
+
+            // Desaturate: keep the attitude part if possible and give up
+            // collective thrust first.
+            float lo = Math.min(Math.min(t0, t1), Math.min(t2, t3));
+            float hi = Math.max(Math.max(t0, t1), Math.max(t2, t3));
+            if (hi - lo > max) {
+                float mean = total * 0.25f;
+                float scale = max / (hi - lo);
+                t0 = mean + (t0 - mean) * scale;
+                t1 = mean + (t1 - mean) * scale;
+                t2 = mean + (t2 - mean) * scale;
+                t3 = mean + (t3 - mean) * scale;
+                lo = Math.min(Math.min(t0, t1), Math.min(t2, t3));
+                hi = Math.max(Math.max(t0, t1), Math.max(t2, t3));
+            }
+            float shift = lo < 0 ? -lo : (hi > max ? max - hi : 0);
+            t0 = Math.max(0, Math.min(max, t0 + shift));
+            t1 = Math.max(0, Math.min(max, t1 + shift));
+            t2 = Math.max(0, Math.min(max, t2 + shift));
+            t3 = Math.max(0, Math.min(max, t3 + shift));
+
+            int r = i * ROTOR_COUNT;
+            thrustOut[r] = t0;
+            thrustOut[r + 1] = t1;
+            thrustOut[r + 2] = t2;
+            thrustOut[r + 3] = t3;
+            yawOut[i] = yawCoefficient * (SPIN[0] * t0 + SPIN[1] * t1 + SPIN[2] * t2 + SPIN[3] * t3);
+        }
+    }
+
+    /**
+     * Invert the geometry matrix with Gauss-Jordan elimination.
+     *
+     * @return false if the rotor layout is degenerate (e.g. all at the origin)
+     */
+    private boolean buildMixMatrix(float[] offsets) {
+        double[][] a = new double[4][8];
+        for (int i = 0; i < ROTOR_COUNT; i++) {
+            a[0][i] = 1.0;
+            a[1][i] = -offsets[i * 3 + 2];
+            a[2][i] = offsets[i * 3];
+            a[3][i] = SPIN[i] * yawCoefficient;
+        }
+        for (int i = 0; i < 4; i++) {
+            a[i][4 + i] = 1.0;
+        }
+
+        for (int col = 0; col < 4; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < 4; row++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (Math.abs(a[pivot][col]) < 1e-9) {
+                return false;
+            }
+            double[] tmp = a[col];
+            a[col] = a[pivot];
+            a[pivot] = tmp;
+
+            double inv = 1.0 / a[col][col];
+            for (int k = 0; k < 8; k++) {
+                a[col][k] *= inv;
+            }
+            for (int row = 0; row < 4; row++) {
+                if (row != col) {
+                    double f = a[row][col];
+                    for (int k = 0; k < 8; k++) {
+                        a[row][k] -= f * a[col][k];
+                    }
+                }
+            }
+        }
+
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 4; col++) {
+                mix[row * 4 + col] = (float) a[row][4 + col];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spin direction of a rotor, +1 (CW, reaction torque +Y) or -1.
+     */
+    public static float spin(int rotor) {
+        return SPIN[rotor];
+    }
+
+    public float getMaxRotorThrust() {
+        return maxRotorThrust;
+    }
+}
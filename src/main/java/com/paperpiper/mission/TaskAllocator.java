@@ -0,0 +1,629 @@
+package com.paperpiper.mission;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Market-based task allocation: assigns point tasks (deliveries, inspections)
+ * to drones as ordered bundles of up to maxBundle tasks each.
+ *
+ * A task at position p with reward r is worth r * discount^t to a drone that
+ * would reach it t seconds from now, after flying (at cruiseSpeed) and
+ * servicing the tasks already in its bundle. Allocation is a sequential
+ * greedy auction (what CBBA converges to), run in rounds:
+ *
+ *   bid      every drone with room bids on its best free task (parallel)
+ *   resolve  each task goes to its highest bidder, who appends it
+ *
+ * until nobody bids. A full allocate() starts with one parallel scan of all
+ * drones x tasks that keeps each drone's top `candidates` tasks; later rounds
+ * only re-score those, and a drone rescans everything only if all its
+ * candidates were taken.
+ *
+ * reallocate() is the incremental step: tasks added since the last pass and
+ * tasks freed by removed drones are auctioned among drones with room, keeping
+ * every other assignment. Each round costs drones x changed tasks, never the
+ * full drones x tasks matrix. Assignments are never taken back from a drone
+ * (no preemption), so a full allocate() now and then can still improve on a
+ * long run of incremental ones.
+ *
+ * Everything is flat arrays indexed by task id or drone id; ids from
+ * addTask() are reused after removeTask().
+ */
+public class TaskAllocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskAllocator.class);
+
+    public static final int FREE = -1;
+    public static final int REMOVED = -2;
+
+    private static final int CHUNK_SIZE = 32;
+
+    private final ParallelFor parallel;
+    private final int maxBundle;
+
+    private float cruiseSpeed = 10f;   // m/s
+    private float logDiscount = (float) Math.log(0.99); // reward kept per second, as a log
+    private int candidates = 32;
+
+    // Tasks
+    private int taskCount = 0;         // ids in use are < taskCount
+    private float[] taskPosition = new float[0];
+    private float[] logReward = new float[0];
+    private float[] duration = new float[0]; // s spent at the task
+    private int[] owner = new int[0];        // drone id, FREE or REMOVED
+    private int[] freeIds = new int[0];
+    private int freeIdCount = 0;
+    private int openTasks = 0;
+
+    // Tasks waiting for the incremental step
+    private int[] pending = new int[0];
+    private int pendingCount = 0;
+    private boolean[] isPending = new boolean[0];
+    private boolean changed = false;         // tasks or room appeared since the last pass
+
+    // Agents (drone ids) and their bundles, indexed by drone id
+    private int[] agents = new int[0];
+    private int agentCount = 0;
+    private int[] agentIndex = new int[0];   // -1 = not an agent
+    private int[] bundle = new int[0];       // maxBundle task ids per drone
+    private int[] bundleSize = new int[0];
+    private float[] pathEnd = new float[0];  // x, y, z, time per drone
+
+    // Bidding, indexed by agent index
+    private int[] bidTask = new int[0];
+    private float[] bidScore = new float[0];
+    private int[] candidateTask = new int[0];  // candidates per agent, best first
+    private float[] candidateScore = new float[0];
+    private int[] candidateCount = new int[0];
+
+    // Highest bid per task in the current round
+    private float[] bestScore = new float[0];
+    private int[] bestBidder = new int[0];
+
+    // Pass in progress
+    private float[] position;
+    private boolean incremental; // bid over the pending list instead of candidate lists
+    private final ParallelFor.RangeBody pathBody = this::computePathEnds;
+    private final ParallelFor.RangeBody candidateBody = this::scanCandidates;
+    private final ParallelFor.RangeBody bidBody = this::computeBids;
+
+    private int lastRounds;
+    private long lastNanos;
+
+    /**
+     * @param maxBundle tasks a drone can hold at once
+     */
+    public TaskAllocator(ParallelFor parallel, int maxBundle) {
+        this.parallel = parallel;
+        this.maxBundle = maxBundle;
+    }
+
+    /**
+     * Add a task; it gets assigned by the next allocate()/reallocate().
+     *
+     * @param reward   value of doing it right now, > 0
+     * @param duration s the drone stays at the task
+     * @return task id
+     */
+    public int addTask(float x, float y, float z, float reward, float duration) {
+        if (!(reward > 0)) {
+            throw new IllegalArgumentException("Task reward must be positive, got " + reward);
+        }
+        int id;
+        if (freeIdCount > 0) {
+            id = freeIds[--freeIdCount];
+        } else {
+            id = taskCount++;
+            ensureTaskCapacity(taskCount);
+        }
+        taskPosition[id * 3] = x;
+        taskPosition[id * 3 + 1] = y;
+        taskPosition[id * 3 + 2] = z;
+        logReward[id] = (float) Math.log(reward);
+        this.duration[id] = duration;
+        owner[id] = FREE;
+        openTasks++;
+        markPending(id);
+        changed = true;
+        return id;
+    }
+
+    /**
+     * Cancel or finish a task, taking it out of its drone's bundle.
+     */
+    public void removeTask(int task) {
+        if (task >= taskCount || owner[task] == REMOVED) {
+            return;
+        }
+        int drone = owner[task];
+        if (drone >= 0) {
+            int base = drone * maxBundle;
+            int size = bundleSize[drone];
+            int at = 0;
+            while (bundle[base + at] != task) {
+                at++;
+            }
+            System.arraycopy(bundle, base + at + 1, bundle, base + at, size - at - 1);
+            bundleSize[drone] = size - 1;
+            changed = true;
+        } else {
+            openTasks--;
+        }
+        owner[task] = REMOVED;
+        if (freeIdCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, Math.max(16, freeIdCount * 2));
+        }
+        freeIds[freeIdCount++] = task;
+    }
+
+    /** Mark a task done (same as removing it) */
+    public void completeTask(int task) {
+        removeTask(task);
+    }
+
+    /** Let a drone take tasks */
+    public void addAgent(int droneId) {
+        ensureDroneCapacity(droneId + 1);
+        if (agentIndex[droneId] >= 0) {
+            return;
+        }
+        if (agentCount == agents.length) {
+            int capacity = Math.max(16, agentCount * 2);
+            agents = Arrays.copyOf(agents, capacity);
+            bidTask = Arrays.copyOf(bidTask, capacity);
+            bidScore = Arrays.copyOf(bidScore, capacity);
+            candidateCount = Arrays.copyOf(candidateCount, capacity);
+        }
+        agentIndex[droneId] = agentCount;
+        agents[agentCount++] = droneId;
+        bundleSize[droneId] = 0;
+        changed = true;
+    }
+
+    /**
+     * Take a drone out (failed, landed, removed); its tasks go back up for
+     * auction in the next reallocate().
+     */
+    public void removeAgent(int droneId) {
+        if (droneId >= agentIndex.length || agentIndex[droneId] < 0) {
+            return;
+        }
+        releaseBundle(droneId);
+        int index = agentIndex[droneId];
+        int last = agents[--agentCount];
+        agents[index] = last;
+        agentIndex[last] = index;
+        agentIndex[droneId] = -1;
+    }
+
+    public boolean isAgent(int droneId) {
+        return droneId < agentIndex.length && agentIndex[droneId] >= 0;
+    }
+
+    /**
+     * Drop all assignments and auction every open task from scratch.
+     *
+     * @return tasks assigned
+     */
+    public int allocate(DroneState state) {
+        long start = System.nanoTime();
+        changed = false;
+        for (int a = 0; a < agentCount; a++) {
+            releaseBundle(agents[a]);
+        }
+        clearPending();
+        for (int t = 0; t < taskCount; t++) {
+            if (owner[t] == FREE) {
+                markPending(t);
+            }
+        }
+        if (agentCount == 0 || openTasks == 0) {
+            return 0;
+        }
+        ensureCandidateCapacity();
+
+        position = state.getPosition();
+        parallel.run(agentCount, CHUNK_SIZE, pathBody);
+        incremental = false;
+        parallel.run(agentCount, CHUNK_SIZE, candidateBody);
+        int assigned = runAuction();
+        position = null;
+        dropAssignedPending();
+
+        lastNanos = System.nanoTime() - start;
+        logger.info("Allocated {} task(s) to {} drone(s) in {} round(s), took {} ms", assigned, agentCount,
+                lastRounds, lastNanos / 1_000_000);
+        return assigned;
+    }
+
+    /**
+     * Auction only what changed since the last pass (new tasks, tasks of
+     * removed drones, plus any left over for lack of room) among drones with
+     * room. Does nothing unless tasks or room appeared, so it can run every
+     * update.
+     *
+     * @return tasks assigned
+     */
+    public int reallocate(DroneState state) {
+        if (!changed) {
+            return 0;
+        }
+        changed = false;
+        if (pendingCount == 0 || agentCount == 0) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        dropAssignedPending();
+        if (pendingCount == 0) {
+            return 0;
+        }
+        position = state.getPosition();
+        parallel.run(agentCount, CHUNK_SIZE, pathBody);
+        incremental = true;
+        int assigned = runAuction();
+        position = null;
+        dropAssignedPending();
+        lastNanos = System.nanoTime() - start;
+        return assigned;
+    }
+
+    /** True if reallocate() has something to do */
+    public boolean hasChanges() {
+        return changed && pendingCount > 0;
+    }
+
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    /** Bid / resolve rounds until nobody bids */
+    private int runAuction() {
+        int assigned = 0;
+        int rounds = 0;
+        while (true) {
+            // Pending = every still-free task here, so scans shrink as rounds go by
+            dropAssignedPending();
+            parallel.run(agentCount, CHUNK_SIZE, bidBody);
+            rounds++;
+
+            // Highest bid per task (ties go to the lower drone id, so it's deterministic)
+            int bids = 0;
+            for (int a = 0; a < agentCount; a++) {
+                int task = bidTask[a];
+                if (task < 0) {
+                    continue;
+                }
+                bids++;
+                float score = bidScore[a];
+                int best = bestBidder[task];
+                if (best < 0 || score > bestScore[task]
+                        || (score == bestScore[task] && agents[a] < agents[best])) {
+                    bestScore[task] = score;
+                    bestBidder[task] = a;
+                }
+            }
+            if (bids == 0) {
+                break;
+            }
+            for (int a = 0; a < agentCount; a++) {
+                int task = bidTask[a];
+                if (task >= 0 && bestBidder[task] == a) {
+                    append(agents[a], task);
+                    assigned++;
+                }
+            }
+            for (int a = 0; a < agentCount; a++) {
+                if (bidTask[a] >= 0) {
+                    bestBidder[bidTask[a]] = -1;
+                }
+            }
+        }
+        lastRounds = rounds;
+        return assigned;
+    }
+
+    /** Where each agent's bundle ends, starting from its current position */
+    private void computePathEnds(int from, int to) {
+        for (int a = from; a < to; a++) {
+            int drone = agents[a];
+            int p = drone * 3;
+            float x = position[p], y = position[p + 1], z = position[p + 2];
+            float time = 0f;
+            for (int i = 0, base = drone * maxBundle; i < bundleSize[drone]; i++) {
+                int task = bundle[base + i];
+                int t = task * 3;
+                float dx = taskPosition[t] - x, dy = taskPosition[t + 1] - y, dz = taskPosition[t + 2] - z;
+                time += (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / cruiseSpeed + duration[task];
+                x = taskPosition[t];
+                y = taskPosition[t + 1];
+                z = taskPosition[t + 2];
+            }
+            int e = drone * 4;
+            pathEnd[e] = x;
+            pathEnd[e + 1] = y;
+            pathEnd[e + 2] = z;
+            pathEnd[e + 3] = time;
+        }
+    }
+
+    /** Top candidates per agent over all free (pending) tasks */
+    private void scanCandidates(int from, int to) {
+        for (int a = from; a < to; a++) {
+            scanAll(a);
+        }
+    }
+
+    private void scanAll(int a) {
+        int e = agents[a] * 4;
+        float x = pathEnd[e], y = pathEnd[e + 1], z = pathEnd[e + 2], time = pathEnd[e + 3];
+        int base = a * candidates;
+        int found = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            int t = pending[i];
+            if (owner[t] != FREE) {
+                continue;
+            }
+            float score = score(t, x, y, z, time);
+            if (found == candidates && score <= candidateScore[base + found - 1]) {
+                continue;
+            }
+            // Insertion into the sorted top list
+            int at = found < candidates ? found++ : found - 1;
+            while (at > 0 && candidateScore[base + at - 1] < score) {
+                candidateScore[base + at] = candidateScore[base + at - 1];
+                candidateTask[base + at] = candidateTask[base + at - 1];
+                at--;
+            }
+            candidateScore[base + at] = score;
+            candidateTask[base + at] = t;
+        }
+        candidateCount[a] = found;
+    }
+
+    private void computeBids(int from, int to) {
+        for (int a = from; a < to; a++) {
+            int drone = agents[a];
+            bidTask[a] = -1;
+            if (bundleSize[drone] >= maxBundle) {
+                continue;
+            }
+            int e = drone * 4;
+            float x = pathEnd[e], y = pathEnd[e + 1], z = pathEnd[e + 2], time = pathEnd[e + 3];
+            int best = -1;
+            float bestValue = Float.NEGATIVE_INFINITY;
+
+            if (incremental) {
+                for (int i = 0; i < pendingCount; i++) {
+                    int t = pending[i];
+                    if (owner[t] == FREE) {
+                        float score = score(t, x, y, z, time);
+                        if (score > bestValue) {
+                            bestValue = score;
+                            best = t;
+                        }
+                    }
+                }
+            } else {
+                best = bestCandidate(a, x, y, z, time);
+                if (best < 0 && openTasks > 0) {
+                    // Everything this drone liked is gone; look again from where its path ends now
+                    scanAll(a);
+                    best = bestCandidate(a, x, y, z, time);
+                }
+                if (best >= 0) {
+                    bestValue = score(best, x, y, z, time);
+                }
+            }
+            bidTask[a] = best;
+            bidScore[a] = bestValue;
+        }
+    }
+
+    private int bestCandidate(int a, float x, float y, float z, float time) {
+        int base = a * candidates;
+        int best = -1;
+        float bestValue = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < candidateCount[a]; i++) {
+            int t = candidateTask[base + i];
+            if (owner[t] == FREE) {
+                float score = score(t, x, y, z, time);
+                if (score > bestValue) {
+                    bestValue = score;
+                    best = t;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Log of the value of doing task t after a path that ends at (x, y, z) at
+     * time. Logs rank the same, cost no pow() and don't underflow far away.
+     */
+    private float score(int t, float x, float y, float z, float time) {
+        int p = t * 3;
+        float dx = taskPosition[p] - x, dy = taskPosition[p + 1] - y, dz = taskPosition[p + 2] - z;
+        float arrival = time + (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / cruiseSpeed;
+        return logReward[t] + logDiscount * arrival;
+    }
+
+    private void append(int drone, int task) {
+        int base = drone * maxBundle;
+        int size = bundleSize[drone];
+        bundle[base + size] = task;
+        bundleSize[drone] = size + 1;
+        owner[task] = drone;
+        openTasks--;
+
+        int e = drone * 4;
+        int t = task * 3;
+        float dx = taskPosition[t] - pathEnd[e], dy = taskPosition[t + 1] - pathEnd[e + 1];
+        float dz = taskPosition[t + 2] - pathEnd[e + 2];
+        pathEnd[e + 3] += (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / cruiseSpeed + duration[task];
+        pathEnd[e] = taskPosition[t];
+        pathEnd[e + 1] = taskPosition[t + 1];
+        pathEnd[e + 2] = taskPosition[t + 2];
+    }
+
+    private void releaseBundle(int drone) {
+        int base = drone * maxBundle;
+        for (int i = 0; i < bundleSize[drone]; i++) {
+            int task = bundle[base + i];
+            owner[task] = FREE;
+            openTasks++;
+            markPending(task);
+            changed = true;
+        }
+        bundleSize[drone] = 0;
+    }
+
+    private void markPending(int task) {
+        if (isPending[task]) {
+            return;
+        }
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(16, pendingCount * 2));
+        }
+        pending[pendingCount++] = task;
+        isPending[task] = true;
+    }
+
+    private void clearPending() {
+        for (int i = 0; i < pendingCount; i++) {
+            isPending[pending[i]] = false;
+        }
+        pendingCount = 0;
+    }
+
+    /** Keep only still-free tasks in the pending list */
+    private void dropAssignedPending() {
+        int kept = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            int task = pending[i];
+            if (owner[task] == FREE) {
+                pending[kept++] = task;
+            } else {
+                isPending[task] = false;
+            }
+        }
+        pendingCount = kept;
+    }
+
+    private void ensureTaskCapacity(int n) {
+        if (owner.length >= n) {
+            return;
+        }
+        int capacity = Math.max(n, owner.length * 2);
+        taskPosition = Arrays.copyOf(taskPosition, capacity * 3);
+        logReward = Arrays.copyOf(logReward, capacity);
+        duration = Arrays.copyOf(duration, capacity);
+        owner = Arrays.copyOf(owner, capacity);
+        isPending = Arrays.copyOf(isPending, capacity);
+        bestScore = Arrays.copyOf(bestScore, capacity);
+        int old = bestBidder.length;
+        bestBidder = Arrays.copyOf(bestBidder, capacity);
+        Arrays.fill(bestBidder, old, capacity, -1);
+    }
+
+    private void ensureDroneCapacity(int n) {
+        if (agentIndex.length >= n) {
+            return;
+        }
+        int capacity = Math.max(n, agentIndex.length * 2);
+        int old = agentIndex.length;
+        agentIndex = Arrays.copyOf(agentIndex, capacity);
+        Arrays.fill(agentIndex, old, capacity, -1);
+        bundle = Arrays.copyOf(bundle, capacity * maxBundle);
+        bundleSize = Arrays.copyOf(bundleSize, capacity);
+        pathEnd = Arrays.copyOf(pathEnd, capacity * 4);
+    }
+
+    private void ensureCandidateCapacity() {
+        if (candidateTask.length < agents.length * candidates) {
+            candidateTask = new int[agents.length * candidates];
+            candidateScore = new float[agents.length * candidates];
+        }
+    }
+
+    /**
+     * Tasks assigned to a drone, in the order it should fly them.
+     *
+     * @return number written to out
+     */
+    public int getBundle(int droneId, int[] out) {
+        if (droneId >= agentIndex.length) {
+            return 0;
+        }
+        int size = bundleSize[droneId];
+        System.arraycopy(bundle, droneId * maxBundle, out, 0, size);
+        return size;
+    }
+
+    /** First task in a drone's bundle, or -1 */
+    public int getNextTask(int droneId) {
+        return droneId < agentIndex.length && bundleSize[droneId] > 0 ? bundle[droneId * maxBundle] : -1;
+    }
+
+    /** Drone id the task is assigned to, FREE or REMOVED */
+    public int getOwner(int task) {
+        return owner[task];
+    }
+
+    public float getTaskX(int task) {
+        return taskPosition[task * 3];
+    }
+
+    public float getTaskY(int task) {
+        return taskPosition[task * 3 + 1];
+    }
+
+    public float getTaskZ(int task) {
+        return taskPosition[task * 3 + 2];
+    }
+
+    public int getOpenTaskCount() {
+        return openTasks;
+    }
+
+    public int getAgentCount() {
+        return agentCount;
+    }
+
+    public int getMaxBundle() {
+        return maxBundle;
+    }
+
+    /** Auction rounds in the last allocate()/reallocate() */
+    public int getLastRounds() {
+        return lastRounds;
+    }
+
+    /** Wall time of the last allocate()/reallocate() */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    public void setCruiseSpeed(float cruiseSpeed) {
+        this.cruiseSpeed = cruiseSpeed;
+    }
+
+    /**
+     * @param discount reward kept per second of delay (0..1)
+     */
+    public void setDiscount(float discount) {
+        this.logDiscount = (float) Math.log(discount);
+    }
+
+    /** Tasks remembered per drone from the full scan in allocate() */
+    public void setCandidates(int candidates) {
+        this.candidates = candidates;
+        candidateTask = new int[0];
+        candidateScore = new float[0];
+    }
+}
@@ -7,8 +7,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
 import com.jme3.bullet.collision.shapes.BoxCollisionShape;
 import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.MeshCollisionShape;
 import com.jme3.bullet.collision.shapes.PlaneCollisionShape;
 import com.jme3.bullet.objects.PhysicsRigidBody;
 import com.jme3.math.Plane;
@@ -27,6 +29,13 @@ public class PhysicsWorld {
     // Physics constants
     private static final float GRAVITY = -9.81f; // m/s^2
 
+    // Internal Bullet step rate. Control is applied per substep through tick
+    // listeners, so raising this (-Dphysics.rate=240) doesn't cost extra
+    // outer-loop iterations. SimulationEngine raises it to at least
+    // FlightController.MIN_RATE.
+    private static final int PHYSICS_RATE = Integer.getInteger("physics.rate", 60); // Hz
+    private static final int OUTER_RATE = 60; // Hz, see PaperPiper.run()
+
     // Static initializer to load native library (cross-platform)
     static {
         try {
@@ -97,8 +106,7 @@ public class PhysicsWorld {
 
         physicsSpace.setGravity(new Vector3f(0, GRAVITY, 0));
 
-        physicsSpace.setAccuracy(1f / 60f); // Update at 60 Hz
-        physicsSpace.setMaxSubSteps(4);
+        setPhysicsRate(PHYSICS_RATE);
 
         logger.info("Physics world initialized with gravity: {}", GRAVITY);
     }
@@ -107,6 +115,32 @@ public class PhysicsWorld {
         physicsSpace.update(deltaTime);
     }
 
+    /**
+     * Set the internal step rate. Max substeps is sized so a normal frame
+     * never hits the cap, with some room to catch up after a slow frame.
+     */
+    public void setPhysicsRate(int hz) {
+        physicsSpace.setAccuracy(1f / hz);
+        physicsSpace.setMaxSubSteps(Math.max(4, 2 * hz / OUTER_RATE));
+        logger.info("Physics rate set to {} Hz (max {} substeps per frame)", hz, physicsSpace.maxSubSteps());
+    }
+
+    public float getPhysicsTimeStep() {
+        return physicsSpace.getAccuracy();
+    }
+
+    /**
+     * Register a listener that Bullet calls before and after every internal
+     * substep. This is where per-substep forces should be applied.
+     */
+    public void addTickListener(PhysicsTickListener listener) {
+        physicsSpace.addTickListener(listener);
+    }
+
+    public void removeTickListener(PhysicsTickListener listener) {
+        physicsSpace.removeTickListener(listener);
+    }
+
     public void addRigidBody(PhysicsRigidBody body) {
         physicsSpace.addCollisionObject(body);
         bodies.add(body);
@@ -154,6 +188,20 @@ public class PhysicsWorld {
         }
     }
 
+    /**
+     * Create a static body from a triangle mesh (e.g. a region of buildings).
+     * The mesh is already in world space so the body sits at the origin.
+     */
+    public PhysicsRigidBody createStaticMesh(MeshCollisionShape shape) {
+        PhysicsRigidBody body = new PhysicsRigidBody(shape, PhysicsRigidBody.massForStatic);
+        body.setFriction(0.8f);
+        body.setRestitution(0.2f);
+
+        addRigidBody(body);
+
+        return body;
+    }
+
     /**
      * Create a rigid body with custom shape TODO: add overload to load glt
      * models
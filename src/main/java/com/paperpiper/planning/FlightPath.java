@@ -0,0 +1,72 @@
+package com.paperpiper.planning;
+
+/**
+ * Result of one planning request: the waypoints, or null if no path was found.
+ */
+public class FlightPath {
+
+    private final int droneId;
+    private final int request;
+    private final float[] waypoints;
+    private final boolean fromCache;
+    private final int expanded;
+    private final long nanos;
+    private final float departure;
+
+    FlightPath(int droneId, int request, float[] waypoints, boolean fromCache, int expanded, long nanos,
+            float departure) {
+        this.droneId = droneId;
+        this.request = request;
+        this.waypoints = waypoints;
+        this.fromCache = fromCache;
+        this.expanded = expanded;
+        this.nanos = nanos;
+        this.departure = departure;
+    }
+
+    public int getDroneId() {
+        return droneId;
+    }
+
+    /** Request number for the drone; only the newest request's result is kept */
+    public int getRequest() {
+        return request;
+    }
+
+    public boolean isFound() {
+        return waypoints != null;
+    }
+
+    /** x, y, z per waypoint, start first and goal last; null if not found */
+    public float[] getWaypoints() {
+        return waypoints;
+    }
+
+    public int getWaypointCount() {
+        return waypoints != null ? waypoints.length / 3 : 0;
+    }
+
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    /** Search nodes expanded (0 for cache hits and straight lines) */
+    public int getExpanded() {
+        return expanded;
+    }
+
+    /** Planning time, not counting the wait in the queue */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /** True if the path's airspace is reserved for this drone, leaving at getDeparture() */
+    public boolean isReserved() {
+        return !Float.isNaN(departure);
+    }
+
+    /** Simulation time the reservation assumes the drone sets off; NaN if not reserved */
+    public float getDeparture() {
+        return departure;
+    }
+}
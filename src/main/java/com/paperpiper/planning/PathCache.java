@@ -0,0 +1,81 @@
+package com.paperpiper.planning;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of planned paths keyed by (start cell, goal cell). Drones that
+ * leave from and head to the same places (a depot, a charging pad, the same
+ * delivery) share one search. Thread-safe; entries are the planner's
+ * waypoint arrays and must not be modified.
+ */
+public class PathCache {
+
+    private final Map<Key, float[]> entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    private static final class Key {
+        final long start;
+        final long goal;
+
+        Key(long start, long goal) {
+            this.start = start;
+            this.goal = goal;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && other.start == start && other.goal == goal;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(start * 31 + goal);
+        }
+    }
+
+    public PathCache(int capacity) {
+        // Access order + eviction of the eldest = LRU
+        this.entries = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, float[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return cached waypoints, or null
+     */
+    public synchronized float[] get(long startCell, long goalCell) {
+        float[] path = entries.get(new Key(startCell, goalCell));
+        if (path != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return path;
+    }
+
+    public synchronized void put(long startCell, long goalCell, float[] waypoints) {
+        entries.put(new Key(startCell, goalCell), waypoints);
+    }
+
+    /** Forget everything (e.g. after the map changed) */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
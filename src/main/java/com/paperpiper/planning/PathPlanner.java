@@ -0,0 +1,451 @@
+package com.paperpiper.planning;
+
+import java.util.Arrays;
+
+import com.paperpiper.spatial.OccupancyOctree;
+
+/**
+ * Any-angle path search (Lazy Theta*) over the leaf cells of an
+ * OccupancyOctree, 26-connected.
+ *
+ * Like A*, but a node may take its parent's parent as its own parent when the
+ * straight line between them is clear, so paths come out as a few long legs
+ * instead of a staircase of cell steps. The lazy variant assumes that line is
+ * clear when a node is queued and only checks it (with a voxel walk) when the
+ * node is expanded, which saves most line-of-sight checks.
+ *
+ * Search nodes come from pools that are reused across searches: flat arrays
+ * of cell key, cost, parent and heap slot, a binary heap of node indices and
+ * an open-addressing cell -> node table that is "cleared" by bumping a search
+ * stamp. Nothing is allocated per search except the returned waypoints. One
+ * planner per thread; the octree may be shared.
+ *
+ * The heuristic is inflated (1.5 by default), trading paths up to that factor
+ * longer than optimal for far fewer expansions: a plain admissible search
+ * across a dense city floods hundreds of thousands of cells.
+ */
+public class PathPlanner {
+
+    private static final float INFINITY = Float.MAX_VALUE;
+    private static final int BITS = 21;
+    private static final long MASK = (1L << BITS) - 1;
+
+    private final OccupancyOctree map;
+    private final int maxNodes;
+    private final float heuristicWeight;
+
+    // Node pool
+    private final long[] key;
+    private final float[] g;
+    private final int[] parent;
+    private final int[] heapIndex;   // -1 = not in the heap
+    private final boolean[] closed;
+    private int nodeCount;
+
+    // Cell key -> node, valid where stamp == search
+    private final long[] tableKey;
+    private final int[] tableNode;
+    private final int[] tableStamp;
+    private final int tableMask;
+    private int search = 0;
+
+    // Open list: min-heap on f = g + h
+    private final int[] heap;
+    private final float[] heapF;
+    private int heapSize;
+
+    private int startX, startY, startZ;
+    private int goalX, goalY, goalZ;
+    private int lastExpanded;
+
+    // Extra cells to keep out of, as inclusive cell boxes (see setAvoid)
+    private int[] avoid = new int[0];
+    private int avoidCount = 0;
+
+    public PathPlanner(OccupancyOctree map, int maxNodes) {
+        this(map, maxNodes, 1.5f);
+    }
+
+    /**
+     * @param maxNodes        search nodes before giving up
+     * @param heuristicWeight 1 for shortest paths, more for faster searches
+     */
+    public PathPlanner(OccupancyOctree map, int maxNodes, float heuristicWeight) {
+        if (heuristicWeight < 1f) {
+            throw new IllegalArgumentException("Heuristic weight must be >= 1, got " + heuristicWeight);
+        }
+        this.map = map;
+        this.maxNodes = maxNodes;
+        this.heuristicWeight = heuristicWeight;
+        key = new long[maxNodes];
+        g = new float[maxNodes];
+        parent = new int[maxNodes];
+        heapIndex = new int[maxNodes];
+        closed = new boolean[maxNodes];
+        int tableSize = Integer.highestOneBit(maxNodes * 2 - 1) << 1;
+        tableKey = new long[tableSize];
+        tableNode = new int[tableSize];
+        tableStamp = new int[tableSize];
+        tableMask = tableSize - 1;
+        heap = new int[maxNodes];
+        heapF = new float[maxNodes];
+    }
+
+    /**
+     * Plan from one point to another.
+     *
+     * @return waypoints x, y, z (start first, goal last), or null if either end
+     *         is blocked or no path was found within maxNodes
+     */
+    public float[] plan(float sx, float sy, float sz, float gx, float gy, float gz) {
+        lastExpanded = 0;
+        int ax = map.cellX(sx), ay = map.cellY(sy), az = map.cellZ(sz);
+        startX = ax;
+        startY = ay;
+        startZ = az;
+        goalX = map.cellX(gx);
+        goalY = map.cellY(gy);
+        goalZ = map.cellZ(gz);
+        if (map.isBlocked(ax, ay, az) || map.isBlocked(goalX, goalY, goalZ)) {
+            return null;
+        }
+        if (lineOfSight(ax, ay, az, goalX, goalY, goalZ)) {
+            return new float[] { sx, sy, sz, gx, gy, gz };
+        }
+
+        if (++search == 0) {
+            // Stamps wrapped: forget everything
+            Arrays.fill(tableStamp, 0);
+            search = 1;
+        }
+        nodeCount = 0;
+        heapSize = 0;
+
+        int start = node(pack(ax, ay, az));
+        g[start] = 0f;
+        parent[start] = start;
+        push(start, heuristic(ax, ay, az));
+        long goalKey = pack(goalX, goalY, goalZ);
+
+        while (heapSize > 0) {
+            int s = pop();
+            long sk = key[s];
+            int x = unpackX(sk), y = unpackY(sk), z = unpackZ(sk);
+            setVertex(s, x, y, z);
+            if (sk == goalKey) {
+                return waypoints(s, sx, sy, sz, gx, gy, gz);
+            }
+            closed[s] = true;
+            lastExpanded++;
+
+            int p = parent[s];
+            long pk = key[p];
+            int px = unpackX(pk), py = unpackY(pk), pz = unpackZ(pk);
+            float gp = g[p];
+
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        if ((dx | dy | dz) == 0) {
+                            continue;
+                        }
+                        int nx = x + dx, ny = y + dy, nz = z + dz;
+                        if (blocked(nx, ny, nz)) {
+                            continue;
+                        }
+                        int n = node(pack(nx, ny, nz));
+                        if (n < 0) {
+                            return null; // out of nodes
+                        }
+                        if (closed[n]) {
+                            continue;
+                        }
+                        // Assume the parent can see the neighbour; setVertex checks later
+                        float candidate = gp + distance(px, py, pz, nx, ny, nz);
+                        if (candidate < g[n]) {
+                            g[n] = candidate;
+                            parent[n] = p;
+                            float f = candidate + heuristic(nx, ny, nz);
+                            if (heapIndex[n] < 0) {
+                                push(n, f);
+                            } else {
+                                decrease(n, f);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** If the parent can't actually see s, fall back to the best expanded neighbour */
+    private void setVertex(int s, int x, int y, int z) {
+        int p = parent[s];
+        if (p == s) {
+            return;
+        }
+        long pk = key[p];
+        if (lineOfSight(unpackX(pk), unpackY(pk), unpackZ(pk), x, y, z)) {
+            return;
+        }
+        g[s] = INFINITY;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if ((dx | dy | dz) == 0) {
+                        continue;
+                    }
+                    int n = find(pack(x + dx, y + dy, z + dz));
+                    if (n < 0 || !closed[n]) {
+                        continue;
+                    }
+                    float candidate = g[n] + distance(x, y, z, x + dx, y + dy, z + dz);
+                    if (candidate < g[s]) {
+                        g[s] = candidate;
+                        parent[s] = n;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Walk the cells the segment between two cell centers passes through
+     * (Amanatides-Woo) and report whether they are all free.
+     */
+    public boolean lineOfSight(int x0, int y0, int z0, int x1, int y1, int z1) {
+        int dx = x1 - x0, dy = y1 - y0, dz = z1 - z0;
+        int stepX = Integer.signum(dx), stepY = Integer.signum(dy), stepZ = Integer.signum(dz);
+        // Parametric distance to cross one cell, and to the first boundary (centers start half a cell in)
+        float deltaX = dx != 0 ? 1f / Math.abs(dx) : INFINITY;
+        float deltaY = dy != 0 ? 1f / Math.abs(dy) : INFINITY;
+        float deltaZ = dz != 0 ? 1f / Math.abs(dz) : INFINITY;
+        float tx = dx != 0 ? 0.5f * deltaX : INFINITY;
+        float ty = dy != 0 ? 0.5f * deltaY : INFINITY;
+        float tz = dz != 0 ? 0.5f * deltaZ : INFINITY;
+        int x = x0, y = y0, z = z0;
+        int steps = Math.abs(dx) + Math.abs(dy) + Math.abs(dz);
+        for (int i = 0; i < steps; i++) {
+            if (tx <= ty && tx <= tz) {
+                x += stepX;
+                tx += deltaX;
+            } else if (ty <= tz) {
+                y += stepY;
+                ty += deltaY;
+            } else {
+                z += stepZ;
+                tz += deltaZ;
+            }
+            if (blocked(x, y, z)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cells to treat as blocked on top of the map until changed, e.g. around
+     * airspace another drone has reserved. The start and goal cells are never
+     * avoided.
+     *
+     * @param boxes minX, minY, minZ, maxX, maxY, maxZ cell indices per box, inclusive
+     */
+    public void setAvoid(int[] boxes, int count) {
+        if (avoid.length < count * 6) {
+            avoid = new int[count * 6];
+        }
+        System.arraycopy(boxes, 0, avoid, 0, count * 6);
+        avoidCount = count;
+    }
+
+    public void clearAvoid() {
+        avoidCount = 0;
+    }
+
+    private boolean blocked(int x, int y, int z) {
+        if (map.isBlocked(x, y, z)) {
+            return true;
+        }
+        for (int i = 0, b = 0; i < avoidCount; i++, b += 6) {
+            if (x >= avoid[b] && y >= avoid[b + 1] && z >= avoid[b + 2]
+                    && x <= avoid[b + 3] && y <= avoid[b + 4] && z <= avoid[b + 5]
+                    && !(x == goalX && y == goalY && z == goalZ)
+                    && !(x == startX && y == startY && z == startZ)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private float[] waypoints(int goal, float sx, float sy, float sz, float gx, float gy, float gz) {
+        int count = 1;
+        for (int n = goal; parent[n] != n; n = parent[n]) {
+            count++;
+        }
+        float[] out = new float[count * 3];
+        int i = count - 1;
+        for (int n = goal; ; n = parent[n]) {
+            long k = key[n];
+            out[i * 3] = map.centerX(unpackX(k));
+            out[i * 3 + 1] = map.centerY(unpackY(k));
+            out[i * 3 + 2] = map.centerZ(unpackZ(k));
+            i--;
+            if (parent[n] == n) {
+                break;
+            }
+        }
+        // Exact end points instead of their cell centers
+        out[0] = sx;
+        out[1] = sy;
+        out[2] = sz;
+        out[out.length - 3] = gx;
+        out[out.length - 2] = gy;
+        out[out.length - 1] = gz;
+        return out;
+    }
+
+    private float heuristic(int x, int y, int z) {
+        return heuristicWeight * distance(x, y, z, goalX, goalY, goalZ);
+    }
+
+    private static float distance(int x0, int y0, int z0, int x1, int y1, int z1) {
+        int dx = x1 - x0, dy = y1 - y0, dz = z1 - z0;
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    static long pack(int x, int y, int z) {
+        return (x & MASK) | ((y & MASK) << BITS) | ((z & MASK) << (2 * BITS));
+    }
+
+    private static int unpackX(long k) {
+        return (int) (k & MASK);
+    }
+
+    private static int unpackY(long k) {
+        return (int) ((k >>> BITS) & MASK);
+    }
+
+    private static int unpackZ(long k) {
+        return (int) ((k >>> (2 * BITS)) & MASK);
+    }
+
+    /** Node for a cell, created on first sight; -1 when the pool is used up */
+    private int node(long k) {
+        int slot = slot(k);
+        while (tableStamp[slot] == search) {
+            if (tableKey[slot] == k) {
+                return tableNode[slot];
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        if (nodeCount == maxNodes) {
+            return -1;
+        }
+        int n = nodeCount++;
+        key[n] = k;
+        g[n] = INFINITY;
+        parent[n] = -1;
+        heapIndex[n] = -1;
+        closed[n] = false;
+        tableStamp[slot] = search;
+        tableKey[slot] = k;
+        tableNode[slot] = n;
+        return n;
+    }
+
+    /** Node for a cell if this search has seen it, else -1 */
+    private int find(long k) {
+        int slot = slot(k);
+        while (tableStamp[slot] == search) {
+            if (tableKey[slot] == k) {
+                return tableNode[slot];
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        return -1;
+    }
+
+    private int slot(long k) {
+        long h = k * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & tableMask;
+    }
+
+    private void push(int n, float f) {
+        int i = heapSize++;
+        heap[i] = n;
+        heapF[i] = f;
+        heapIndex[n] = i;
+        siftUp(i);
+    }
+
+    private void decrease(int n, float f) {
+        int i = heapIndex[n];
+        heapF[i] = f;
+        siftUp(i);
+    }
+
+    private int pop() {
+        int top = heap[0];
+        heapIndex[top] = -1;
+        int last = --heapSize;
+        if (last > 0) {
+            heap[0] = heap[last];
+            heapF[0] = heapF[last];
+            heapIndex[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int i) {
+        int n = heap[i];
+        float f = heapF[i];
+        while (i > 0) {
+            int up = (i - 1) >> 1;
+            if (heapF[up] <= f) {
+                break;
+            }
+            heap[i] = heap[up];
+            heapF[i] = heapF[up];
+            heapIndex[heap[i]] = i;
+            i = up;
+        }
+        heap[i] = n;
+        heapF[i] = f;
+        heapIndex[n] = i;
+    }
+
+    private void siftDown(int i) {
+        int n = heap[i];
+        float f = heapF[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapF[child + 1] < heapF[child]) {
+                child++;
+            }
+            if (heapF[child] >= f) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapF[i] = heapF[child];
+            heapIndex[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = n;
+        heapF[i] = f;
+        heapIndex[n] = i;
+    }
+
+    /** Nodes expanded by the last plan() */
+    public int getLastExpanded() {
+        return lastExpanded;
+    }
+
+    public OccupancyOctree getMap() {
+        return map;
+    }
+}
@@ -0,0 +1,342 @@
+package com.paperpiper.planning;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BooleanSupplier;
+
+import com.paperpiper.airspace.ReservationTable;
+import com.paperpiper.spatial.OccupancyOctree;
+
+/**
+ * Serves path requests for many drones off the simulation thread.
+ *
+ * request() checks the PathCache and, on a miss, queues the search on a fixed
+ * pool of worker threads, each with its own PathPlanner (and so its own node
+ * pools). Finished paths wait in a queue until collect(), called once per
+ * update on the simulation thread, files them per drone. A newer request for
+ * the same drone supersedes an older one still in flight; its result is
+ * dropped on arrival. Nothing blocks the tick, however many drones replan.
+ *
+ * With a ReservationTable attached, every path is also reserved in space
+ * and time before it is handed out. A path that runs into another drone's
+ * reservation is replanned around the conflicting voxel, up to maxReplans
+ * times. If that fails, the drone waits: the last path is tried with later
+ * departures, one slot at a time, up to maxDelaySlots. Only unconstrained
+ * plans go into the cache, since detours depend on the traffic of the
+ * moment. Workers reserve only while their request is still the drone's
+ * latest (checked under the table's lock for that drone), and collect() /
+ * cancel() release anything a request made just before it was superseded,
+ * so the table always matches the collected path.
+ *
+ * request(), collect(), getPath() and cancel() belong to the simulation
+ * thread.
+ */
+public class PlannerService {
+
+    private final OccupancyOctree map;
+    private final PathCache cache;
+    private final ExecutorService workers;
+    private final ThreadLocal<PathPlanner> planners;
+    private final int maxQueued;
+
+    private volatile ReservationTable reservations;
+    private volatile float cruiseSpeed = 10f;
+    private volatile int maxReplans = 3;
+    private volatile int maxDelaySlots = 32;
+
+    private final ConcurrentLinkedQueue<FlightPath> finished = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    // Per drone id. Requests are only bumped on the simulation thread but read
+    // by workers; the array is replaced when it grows, hence volatile.
+    private volatile AtomicIntegerArray latestRequest = new AtomicIntegerArray(0);
+    private FlightPath[] paths = new FlightPath[0];
+
+    /**
+     * @param threads    worker threads
+     * @param maxNodes   search nodes per request before giving up
+     * @param cacheSize  paths kept in the LRU cache
+     * @param maxQueued  requests waiting or running before request() refuses more
+     */
+    public PlannerService(OccupancyOctree map, int threads, int maxNodes, int cacheSize, int maxQueued) {
+        this.map = map;
+        this.cache = new PathCache(cacheSize);
+        this.maxQueued = maxQueued;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "path-planner-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.planners = ThreadLocal.withInitial(() -> new PathPlanner(map, maxNodes));
+    }
+
+    /**
+     * Ask for a path; the result shows up in getPath() after a later collect()
+     * (or right away on a cache hit).
+     *
+     * @return false if too many requests are queued (try again next update)
+     */
+    public boolean request(int droneId, float sx, float sy, float sz, float gx, float gy, float gz) {
+        ensureCapacity(droneId + 1);
+        long startCell = PathPlanner.pack(map.cellX(sx), map.cellY(sy), map.cellZ(sz));
+        long goalCell = PathPlanner.pack(map.cellX(gx), map.cellY(gy), map.cellZ(gz));
+
+        float[] cached = cache.get(startCell, goalCell);
+        ReservationTable table = reservations;
+        if (cached != null && table == null) {
+            int request = latestRequest.incrementAndGet(droneId);
+            paths[droneId] = new FlightPath(droneId, request, withEnds(cached, sx, sy, sz, gx, gy, gz), true, 0, 0,
+                    Float.NaN);
+            return true;
+        }
+
+        // Anything else may end up on a worker: take its place in the queue
+        // before superseding the drone's request or touching the table, so a
+        // refusal leaves the drone exactly as it was
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            return false;
+        }
+        int request = latestRequest.incrementAndGet(droneId);
+        if (cached != null) {
+            float[] waypoints = withEnds(cached, sx, sy, sz, gx, gy, gz);
+            float now = table.getNow();
+            if (table.reserve(droneId, request, null, waypoints, now, cruiseSpeed, null)
+                    == ReservationTable.RESERVED) {
+                queued.decrementAndGet();
+                paths[droneId] = new FlightPath(droneId, request, waypoints, true, 0, 0, now);
+                return true;
+            }
+            // A cached path that conflicts goes to the workers to be replanned
+        }
+        BooleanSupplier current = () -> latestRequest.get(droneId) == request;
+        workers.execute(() -> {
+            try {
+                if (!current.getAsBoolean()) {
+                    return; // superseded while queued
+                }
+                PathPlanner planner = planners.get();
+                long start = System.nanoTime();
+                float[] waypoints = planner.plan(sx, sy, sz, gx, gy, gz);
+                int expanded = planner.getLastExpanded();
+                float departure = Float.NaN;
+                if (waypoints != null) {
+                    // The cache keeps its own copy: these waypoints are handed out below
+                    cache.put(startCell, goalCell, waypoints.clone());
+                    ReservationTable attached = reservations;
+                    if (attached != null) {
+                        Deconflicted result = deconflict(attached, planner, droneId, request, current, waypoints,
+                                sx, sy, sz, gx, gy, gz);
+                        waypoints = result.waypoints;
+                        departure = result.departure;
+                        expanded += result.expanded;
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                finished.add(new FlightPath(droneId, request, waypoints, false, expanded, nanos, departure));
+            } finally {
+                queued.decrementAndGet();
+            }
+        });
+        return true;
+    }
+
+    private static final class Deconflicted {
+        float[] waypoints;
+        float departure = Float.NaN;
+        int expanded;
+    }
+
+    /**
+     * Reserve a freshly planned path, replanning around conflicts and then
+     * delaying departure. Gives up as soon as the request is superseded.
+     * Runs on a worker.
+     */
+    private Deconflicted deconflict(ReservationTable table, PathPlanner planner, int droneId, int request,
+            BooleanSupplier current, float[] waypoints, float sx, float sy, float sz, float gx, float gy, float gz) {
+        Deconflicted result = new Deconflicted();
+        result.waypoints = waypoints;
+        float speed = cruiseSpeed;
+        float depart = table.getNow();
+        float[] conflict = new float[4];
+        int[] avoid = new int[maxReplans * 6];
+
+        for (int attempt = 0; ; attempt++) {
+            int outcome = table.reserve(droneId, request, current, result.waypoints, depart, speed, conflict);
+            if (outcome == ReservationTable.RESERVED) {
+                result.departure = depart;
+                return result;
+            }
+            if (outcome == ReservationTable.STALE) {
+                return result;
+            }
+            if (outcome == ReservationTable.FULL || attempt == maxReplans) {
+                break;
+            }
+            // Keep out of the whole conflicting voxel
+            float voxel = table.getVoxelSize();
+            float vx = (float) Math.floor(conflict[0] / voxel) * voxel;
+            float vy = (float) Math.floor(conflict[1] / voxel) * voxel;
+            float vz = (float) Math.floor(conflict[2] / voxel) * voxel;
+            float inset = map.getCellSize() * 0.01f;
+            int b = attempt * 6;
+            avoid[b] = map.cellX(vx);
+            avoid[b + 1] = map.cellY(vy);
+            avoid[b + 2] = map.cellZ(vz);
+            avoid[b + 3] = map.cellX(vx + voxel - inset);
+            avoid[b + 4] = map.cellY(vy + voxel - inset);
+            avoid[b + 5] = map.cellZ(vz + voxel - inset);
+            planner.setAvoid(avoid, attempt + 1);
+            float[] replanned = planner.plan(sx, sy, sz, gx, gy, gz);
+            planner.clearAvoid();
+            result.expanded += planner.getLastExpanded();
+            if (replanned == null) {
+                break;
+            }
+            result.waypoints = replanned;
+        }
+
+        // No way around: wait for the airspace to clear
+        for (int delay = 1; delay <= maxDelaySlots; delay++) {
+            float later = depart + delay * table.getSlotDuration();
+            int outcome = table.reserve(droneId, request, current, result.waypoints, later, speed, null);
+            if (outcome == ReservationTable.RESERVED) {
+                result.departure = later;
+                return result;
+            }
+            if (outcome == ReservationTable.STALE) {
+                return result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reserve every path handed out from now on in the table, for drones
+     * flying at cruiseSpeed m/s; null to stop.
+     */
+    public void setReservations(ReservationTable table, float cruiseSpeed) {
+        this.cruiseSpeed = cruiseSpeed;
+        this.reservations = table;
+    }
+
+    public ReservationTable getReservations() {
+        return reservations;
+    }
+
+    /** Replans around conflicts before falling back to a later departure */
+    public void setMaxReplans(int maxReplans) {
+        this.maxReplans = maxReplans;
+    }
+
+    /** Slots a drone may be held back when replanning didn't clear its path */
+    public void setMaxDelaySlots(int maxDelaySlots) {
+        this.maxDelaySlots = maxDelaySlots;
+    }
+
+    /**
+     * File finished paths under their drones. Call once per update.
+     *
+     * A stale result may have reserved just before it was superseded; that
+     * is undone here unless a newer request has replaced it already. A
+     * current result without a reservation leaves its drone holding nothing.
+     *
+     * @return paths that arrived (stale ones not counted)
+     */
+    public int collect() {
+        ReservationTable table = reservations;
+        int count = 0;
+        FlightPath path;
+        while ((path = finished.poll()) != null) {
+            int id = path.getDroneId();
+            if (path.getRequest() == latestRequest.get(id)) {
+                paths[id] = path;
+                count++;
+                if (table != null && !path.isReserved()) {
+                    table.release(id);
+                }
+            } else if (table != null && path.isReserved()) {
+                table.release(id, path.getRequest());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Latest collected path for a drone (may be an older one while a newer
+     * request is in flight), or null.
+     */
+    public FlightPath getPath(int droneId) {
+        return droneId < paths.length ? paths[droneId] : null;
+    }
+
+    /** True while the drone's newest request hasn't been collected */
+    public boolean isPending(int droneId) {
+        if (droneId >= paths.length) {
+            return false;
+        }
+        FlightPath path = paths[droneId];
+        return latestRequest.get(droneId) != (path != null ? path.getRequest() : 0);
+    }
+
+    /**
+     * Drop the drone's path, its reservation and any result still in flight
+     * (e.g. when it is removed).
+     */
+    public void cancel(int droneId) {
+        if (droneId < paths.length) {
+            latestRequest.incrementAndGet(droneId);
+            paths[droneId] = null;
+            ReservationTable table = reservations;
+            if (table != null) {
+                table.release(droneId);
+            }
+        }
+    }
+
+    /** Copy of cached waypoints with this request's exact end points */
+    private static float[] withEnds(float[] cached, float sx, float sy, float sz, float gx, float gy, float gz) {
+        float[] out = cached.clone();
+        out[0] = sx;
+        out[1] = sy;
+        out[2] = sz;
+        out[out.length - 3] = gx;
+        out[out.length - 2] = gy;
+        out[out.length - 1] = gz;
+        return out;
+    }
+
+    private void ensureCapacity(int n) {
+        if (paths.length >= n) {
+            return;
+        }
+        int capacity = Math.max(n, paths.length * 2);
+        paths = Arrays.copyOf(paths, capacity);
+        AtomicIntegerArray grown = new AtomicIntegerArray(capacity);
+        for (int i = 0, old = latestRequest.length(); i < old; i++) {
+            grown.set(i, latestRequest.get(i));
+        }
+        latestRequest = grown;
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public PathCache getCache() {
+        return cache;
+    }
+
+    public OccupancyOctree getMap() {
+        return map;
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
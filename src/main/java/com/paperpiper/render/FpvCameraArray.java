@@ -0,0 +1,412 @@
+package com.paperpiper.render;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import static org.lwjgl.opengl.GL11.GL_COLOR_BUFFER_BIT;
+import static org.lwjgl.opengl.GL11.GL_DEPTH_BUFFER_BIT;
+import static org.lwjgl.opengl.GL11.GL_DEPTH_COMPONENT;
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_NEAREST;
+import static org.lwjgl.opengl.GL11.GL_RGBA;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.GL_VIEWPORT;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL11.glClear;
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+import static org.lwjgl.opengl.GL11.glGenTextures;
+import static org.lwjgl.opengl.GL11.glGetIntegerv;
+import static org.lwjgl.opengl.GL11.glReadPixels;
+import static org.lwjgl.opengl.GL11.glTexParameteri;
+import static org.lwjgl.opengl.GL11.glViewport;
+import static org.lwjgl.opengl.GL12.glTexImage3D;
+import static org.lwjgl.opengl.GL15.GL_READ_ONLY;
+import static org.lwjgl.opengl.GL15.GL_STREAM_READ;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL15.glMapBuffer;
+import static org.lwjgl.opengl.GL15.glUnmapBuffer;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_PACK_BUFFER;
+import static org.lwjgl.opengl.GL30.GL_COLOR_ATTACHMENT0;
+import static org.lwjgl.opengl.GL30.GL_DEPTH_ATTACHMENT;
+import static org.lwjgl.opengl.GL30.GL_DEPTH_COMPONENT32F;
+import static org.lwjgl.opengl.GL30.GL_FRAMEBUFFER;
+import static org.lwjgl.opengl.GL30.GL_FRAMEBUFFER_COMPLETE;
+import static org.lwjgl.opengl.GL30.GL_RGBA8;
+import static org.lwjgl.opengl.GL30.GL_TEXTURE_2D_ARRAY;
+import static org.lwjgl.opengl.GL30.glBindFramebuffer;
+import static org.lwjgl.opengl.GL30.glCheckFramebufferStatus;
+import static org.lwjgl.opengl.GL30.glDeleteFramebuffers;
+import static org.lwjgl.opengl.GL30.glFramebufferTextureLayer;
+import static org.lwjgl.opengl.GL30.glGenFramebuffers;
+import static org.lwjgl.opengl.GL32.GL_ALREADY_SIGNALED;
+import static org.lwjgl.opengl.GL32.GL_CONDITION_SATISFIED;
+import static org.lwjgl.opengl.GL32.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static org.lwjgl.opengl.GL32.glClientWaitSync;
+import static org.lwjgl.opengl.GL32.glDeleteSync;
+import static org.lwjgl.opengl.GL32.glFenceSync;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.sensor.CameraImage;
+
+/**
+ * First-person cameras on any number of drones, rendered offscreen at low
+ * resolution into the layers of one texture array (color + depth) and read
+ * back without ever waiting on the GPU.
+ *
+ * Each frame up to getLayers() cameras are drawn, one per layer, round robin
+ * over the attached drones, and glReadPixels copies every layer into a pixel
+ * buffer object. The PBO filled in the previous frame is mapped afterwards,
+ * by which time the GPU has normally finished it, and unpacked into each
+ * drone's CameraImage (flipped to top row first, depth linearized to m). So
+ * images are one frame old; if the GPU is still behind, that batch is
+ * dropped instead of stalling.
+ *
+ * GL objects are created on the first render() with a camera attached, so
+ * headless runs never touch OpenGL.
+ */
+public class FpvCameraArray {
+
+    private static final Logger logger = LoggerFactory.getLogger(FpvCameraArray.class);
+
+    // Default camera: vertical field of view (degrees), near plane (m) and
+    // mount in the drone frame (m, upward tilt in degrees)
+    public static final float DEFAULT_FOV = 75f;
+    public static final float DEFAULT_NEAR_PLANE = 0.05f;
+    public static final float DEFAULT_MOUNT_X = 0f;
+    public static final float DEFAULT_MOUNT_Y = 0.02f;
+    public static final float DEFAULT_MOUNT_Z = -0.08f;
+    public static final float DEFAULT_TILT = 20f;
+
+    /** Draws the scene with the renderer's current view, leaving out one drone */
+    public interface SceneDrawer {
+        void draw(Renderer renderer, int hiddenDroneId);
+    }
+
+    private final int width;
+    private final int height;
+    private final int layers;
+    private final float verticalFov; // rad
+    private float nearPlane = DEFAULT_NEAR_PLANE;
+    private float farPlane = 300f;
+
+    // Camera mount in the drone frame: offset (m) and upward tilt (rad)
+    private float mountX = DEFAULT_MOUNT_X, mountY = DEFAULT_MOUNT_Y, mountZ = DEFAULT_MOUNT_Z;
+    private float tilt = (float) Math.toRadians(DEFAULT_TILT);
+
+    // Attached drones, rendered round robin from cursor
+    private int[] droneIds = new int[0];
+    private CameraImage[] images = new CameraImage[0];
+    private int count = 0;
+    private int cursor = 0;
+
+    // GL objects: one framebuffer per layer, two PBOs used in turn
+    private int colorTexture = 0;
+    private int depthTexture = 0;
+    private int[] framebuffers;
+    private final int[] pbos = new int[2];
+    private final long[] fences = new long[2];
+    private final CameraImage[][] pending; // what each PBO holds, by layer
+    private final int[] pendingCount = new int[2];
+    private int frame = 0;
+    private long droppedFrames = 0;
+
+    // PBO layout: all color layers, then all depth layers
+    private final int colorBytes;
+    private final int depthBytes;
+    private final long depthOffset;
+    private ByteBuffer mapped;
+
+    // Scratch
+    private final Matrix4f projection = new Matrix4f();
+    private final Matrix4f camera = new Matrix4f();
+    private final Matrix4f view = new Matrix4f();
+    private final Vector3f eye = new Vector3f();
+    private final Quaternionf rotation = new Quaternionf();
+    private final int[] savedViewport = new int[4];
+
+    /**
+     * @param layers      cameras rendered per frame
+     * @param verticalFov degrees
+     */
+    public FpvCameraArray(int width, int height, int layers, float verticalFov) {
+        this.width = width;
+        this.height = height;
+        this.layers = layers;
+        this.verticalFov = (float) Math.toRadians(verticalFov);
+        this.colorBytes = width * height * 4;
+        this.depthBytes = width * height * Float.BYTES;
+        this.depthOffset = (long) colorBytes * layers;
+        this.pending = new CameraImage[2][layers];
+        projection.perspective(this.verticalFov, (float) width / height, nearPlane, farPlane);
+    }
+
+    /**
+     * Mount a camera on a drone. The returned image is refreshed in place.
+     */
+    public CameraImage attach(int droneId) {
+        for (int i = 0; i < count; i++) {
+            if (droneIds[i] == droneId) {
+                return images[i];
+            }
+        }
+        if (count == droneIds.length) {
+            int capacity = Math.max(4, count * 2);
+            droneIds = Arrays.copyOf(droneIds, capacity);
+            images = Arrays.copyOf(images, capacity);
+        }
+        CameraImage image = new CameraImage(width, height, verticalFov, true, false);
+        droneIds[count] = droneId;
+        images[count] = image;
+        count++;
+        return image;
+    }
+
+    public void detach(int droneId) {
+        for (int i = 0; i < count; i++) {
+            if (droneIds[i] == droneId) {
+                count--;
+                droneIds[i] = droneIds[count];
+                images[i] = images[count];
+                images[count] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Render this frame's batch of cameras and unpack the previous one. Call
+     * from the render thread; restores the default framebuffer and viewport.
+     */
+    public void render(Renderer renderer, DroneState state, SceneDrawer drawer) {
+        if (count == 0 && pendingCount[0] == 0 && pendingCount[1] == 0) {
+            return;
+        }
+        if (framebuffers == null) {
+            init();
+        }
+        int write = frame & 1;
+        int read = write ^ 1;
+        frame++;
+
+        if (count > 0) {
+            glGetIntegerv(GL_VIEWPORT, savedViewport);
+            glViewport(0, 0, width, height);
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, pbos[write]);
+
+            final float[] position = state.getPosition();
+            final float[] orientation = state.getOrientation();
+            int batch = Math.min(count, layers);
+            for (int layer = 0; layer < batch; layer++) {
+                int index = (cursor + layer) % count;
+                int id = droneIds[index];
+                setView(id, position, orientation);
+
+                glBindFramebuffer(GL_FRAMEBUFFER, framebuffers[layer]);
+                glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+                renderer.beginView(projection, view, eye);
+                drawer.draw(renderer, id);
+                renderer.endRender();
+
+                // Into the PBO: queued on the GPU, returns immediately
+                glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, (long) layer * colorBytes);
+                glReadPixels(0, 0, width, height, GL_DEPTH_COMPONENT, GL_FLOAT,
+                        depthOffset + (long) layer * depthBytes);
+                pending[write][layer] = images[index];
+            }
+            pendingCount[write] = batch;
+            cursor = (cursor + batch) % count;
+            fences[write] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+
+            glBindFramebuffer(GL_FRAMEBUFFER, 0);
+            glViewport(savedViewport[0], savedViewport[1], savedViewport[2], savedViewport[3]);
+        } else {
+            pendingCount[write] = 0;
+        }
+
+        readBack(read);
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+    }
+
+    /** Camera pose from the drone pose and the mount, and its inverse */
+    private void setView(int id, float[] position, float[] orientation) {
+        int p = id * 3;
+        int q = id * 4;
+        rotation.set(orientation[q], orientation[q + 1], orientation[q + 2], orientation[q + 3]);
+        camera.translation(position[p], position[p + 1], position[p + 2])
+                .rotate(rotation)
+                .translate(mountX, mountY, mountZ)
+                .rotateX(tilt);
+        camera.getTranslation(eye);
+        view.set(camera).invertAffine();
+    }
+
+    /** Unpack the PBO filled last frame, if the GPU is done with it */
+    private void readBack(int read) {
+        int n = pendingCount[read];
+        if (n == 0) {
+            return;
+        }
+        pendingCount[read] = 0;
+        long fence = fences[read];
+        fences[read] = 0;
+        int status = glClientWaitSync(fence, 0, 0);
+        glDeleteSync(fence);
+        if (status != GL_ALREADY_SIGNALED && status != GL_CONDITION_SATISFIED) {
+            droppedFrames++;
+            return;
+        }
+
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, pbos[read]);
+        mapped = glMapBuffer(GL_PIXEL_PACK_BUFFER, GL_READ_ONLY, mapped);
+        if (mapped == null) {
+            return;
+        }
+        mapped.order(ByteOrder.nativeOrder());
+
+        // Linear depth from the window depth value: z_ndc = 2d - 1
+        final float a = 2f * nearPlane * farPlane;
+        final float b = farPlane + nearPlane;
+        final float c = farPlane - nearPlane;
+        final int rowBytes = width * 4;
+
+        for (int layer = 0; layer < n; layer++) {
+            CameraImage image = pending[read][layer];
+            pending[read][layer] = null;
+            ByteBuffer color = image.getColor();
+            FloatBuffer depth = image.getDepth();
+            int colorBase = layer * colorBytes;
+            long depthBase = depthOffset + (long) layer * depthBytes;
+
+            // GL rows are bottom-up
+            for (int row = 0; row < height; row++) {
+                int src = height - 1 - row;
+                color.put(row * rowBytes, mapped, colorBase + src * rowBytes, rowBytes);
+                int d = (int) (depthBase + (long) src * width * Float.BYTES);
+                for (int x = 0; x < width; x++) {
+                    float window = mapped.getFloat(d + x * Float.BYTES);
+                    depth.put(row * width + x, window >= 1f ? 0f : a / (b - (2f * window - 1f) * c));
+                }
+            }
+            image.setFrame(image.getFrame() + 1);
+        }
+        glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+    }
+
+    private void init() {
+        colorTexture = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D_ARRAY, colorTexture);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA8, width, height, layers, 0, GL_RGBA, GL_UNSIGNED_BYTE,
+                (ByteBuffer) null);
+
+        depthTexture = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D_ARRAY, depthTexture);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_DEPTH_COMPONENT32F, width, height, layers, 0, GL_DEPTH_COMPONENT,
+                GL_FLOAT, (ByteBuffer) null);
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+
+        // One framebuffer per layer so nothing is re-attached (and re-validated) per camera
+        framebuffers = new int[layers];
+        for (int layer = 0; layer < layers; layer++) {
+            framebuffers[layer] = glGenFramebuffers();
+            glBindFramebuffer(GL_FRAMEBUFFER, framebuffers[layer]);
+            glFramebufferTextureLayer(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, colorTexture, 0, layer);
+            glFramebufferTextureLayer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, depthTexture, 0, layer);
+            int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+            if (status != GL_FRAMEBUFFER_COMPLETE) {
+                glBindFramebuffer(GL_FRAMEBUFFER, 0);
+                throw new RuntimeException("FPV framebuffer incomplete: 0x" + Integer.toHexString(status));
+            }
+        }
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+
+        for (int i = 0; i < 2; i++) {
+            pbos[i] = glGenBuffers();
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, pbos[i]);
+            glBufferData(GL_PIXEL_PACK_BUFFER, depthOffset + (long) depthBytes * layers, GL_STREAM_READ);
+        }
+        glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+
+        logger.info("FPV cameras: {}x{}, {} per frame", width, height, layers);
+    }
+
+    /**
+     * Where the camera sits on the drone.
+     *
+     * @param tilt degrees, positive = looking up
+     */
+    public void setMount(float x, float y, float z, float tilt) {
+        this.mountX = x;
+        this.mountY = y;
+        this.mountZ = z;
+        this.tilt = (float) Math.toRadians(tilt);
+    }
+
+    public void setClipPlanes(float near, float far) {
+        this.nearPlane = near;
+        this.farPlane = far;
+        projection.identity().perspective(verticalFov, (float) width / height, nearPlane, farPlane);
+    }
+
+    public CameraImage getImage(int droneId) {
+        for (int i = 0; i < count; i++) {
+            if (droneIds[i] == droneId) {
+                return images[i];
+            }
+        }
+        return null;
+    }
+
+    public int getCameraCount() {
+        return count;
+    }
+
+    /** Cameras rendered per frame */
+    public int getLayers() {
+        return layers;
+    }
+
+    /** The color texture array, e.g. for drawing picture-in-picture views */
+    public int getColorTexture() {
+        return colorTexture;
+    }
+
+    /** Batches thrown away because the GPU hadn't finished them a frame later */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public void cleanup() {
+        if (framebuffers == null) {
+            return;
+        }
+        for (int i = 0; i < 2; i++) {
+            if (fences[i] != 0) {
+                glDeleteSync(fences[i]);
+                fences[i] = 0;
+            }
+        }
+        glDeleteBuffers(pbos);
+        for (int fb : framebuffers) {
+            glDeleteFramebuffers(fb);
+        }
+        glDeleteTextures(colorTexture);
+        glDeleteTextures(depthTexture);
+        framebuffers = null;
+    }
+}
@@ -254,4 +254,8 @@ public class Mesh {
     public float[] getPositions() {
         return positions;
     }
+
+    public int[] getIndices() {
+        return indices;
+    }
 }
@@ -53,6 +53,11 @@ public class Renderer {
     private Matrix4f projectionMatrix;
     private Matrix4f viewMatrix;
 
+    // View being drawn right now: the viewer camera, or an offscreen FPV camera
+    private Matrix4f activeProjection;
+    private Matrix4f activeView;
+    private Vector3f activeEye;
+
     // Camera
     private Camera camera;
 
@@ -263,6 +268,19 @@ public class Renderer {
     public void render(float deltaTime) {
         time += deltaTime;
         updateView();
+        beginView(projectionMatrix, viewMatrix, camera.getPosition());
+    }
+
+    /**
+     * Start drawing the scene from an arbitrary view (sky first, then the
+     * main shader is left bound for renderMesh()/renderGround()). Used by the
+     * viewer camera and by offscreen FPV cameras; the framebuffer and
+     * viewport are up to the caller.
+     */
+    public void beginView(Matrix4f projection, Matrix4f view, Vector3f eye) {
+        activeProjection = projection;
+        activeView = view;
+        activeEye = eye;
 
         // Render sky first with depth write disabled
         renderSky();
@@ -272,9 +290,9 @@ public class Renderer {
         glDepthFunc(GL_LESS);
 
         shaderProgram.bind();
-        shaderProgram.setUniform("projectionMatrix", projectionMatrix);
-        shaderProgram.setUniform("viewMatrix", viewMatrix);
-        shaderProgram.setUniform("cameraPos", camera.getPosition());
+        shaderProgram.setUniform("projectionMatrix", activeProjection);
+        shaderProgram.setUniform("viewMatrix", activeView);
+        shaderProgram.setUniform("cameraPos", activeEye);
         shaderProgram.setUniform("fogColor", fogColor);
         shaderProgram.setUniform("fogDensity", fogDensity);
         shaderProgram.setUniform("fogStart", fogStart);
@@ -289,8 +307,8 @@ public class Renderer {
         glDisable(GL_CULL_FACE);
 
         skyShaderProgram.bind();
-        skyShaderProgram.setUniform("projectionMatrix", projectionMatrix);
-        skyShaderProgram.setUniform("viewMatrix", viewMatrix);
+        skyShaderProgram.setUniform("projectionMatrix", activeProjection);
+        skyShaderProgram.setUniform("viewMatrix", activeView);
         skyShaderProgram.setUniform("time", time);
         skyShaderProgram.setUniform("skyColorTop", skyColorTop);
         skyShaderProgram.setUniform("skyColorBottom", skyColorBottom);
@@ -338,10 +356,10 @@ public class Renderer {
         shaderProgram.unbind();
         groundShaderProgram.bind();
 
-        groundShaderProgram.setUniform("projectionMatrix", projectionMatrix);
-        groundShaderProgram.setUniform("viewMatrix", viewMatrix);
+        groundShaderProgram.setUniform("projectionMatrix", activeProjection);
+        groundShaderProgram.setUniform("viewMatrix", activeView);
         groundShaderProgram.setUniform("modelMatrix", modelMatrix);
-        groundShaderProgram.setUniform("cameraPos", camera.getPosition());
+        groundShaderProgram.setUniform("cameraPos", activeEye);
         groundShaderProgram.setUniform("fogColor", fogColor);
         groundShaderProgram.setUniform("fogDensity", fogDensity);
         groundShaderProgram.setUniform("checkerColor1", color1);
@@ -0,0 +1,77 @@
+package com.paperpiper.sensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * One camera's latest image, shared by the GPU (render.FpvCameraArray) and
+ * CPU (ray-cast) camera sensors so vision code doesn't care which one made it.
+ *
+ * All planes are row-major, top row first, width * height pixels, in direct
+ * buffers that are overwritten in place by every new frame:
+ *
+ *   color    RGBA8, 4 bytes per pixel (null if the sensor has no color)
+ *   depth    float, distance along the optical axis in m, 0 = nothing hit
+ *   instance int, RayCastScene instance id (null if the sensor has no ids)
+ *
+ * The camera looks down its -Z axis with +Y up, verticalFov spans the image
+ * height. getFrame() bumps after a new image has been written.
+ */
+public class CameraImage {
+
+    private final int width;
+    private final int height;
+    private final float verticalFov; // rad
+    private final ByteBuffer color;
+    private final FloatBuffer depth;
+    private final IntBuffer instance;
+    private volatile long frame = 0;
+
+    public CameraImage(int width, int height, float verticalFov, boolean hasColor, boolean hasInstance) {
+        this.width = width;
+        this.height = height;
+        this.verticalFov = verticalFov;
+        int pixels = width * height;
+        color = hasColor ? ByteBuffer.allocateDirect(pixels * 4).order(ByteOrder.nativeOrder()) : null;
+        depth = ByteBuffer.allocateDirect(pixels * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        instance = hasInstance
+                ? ByteBuffer.allocateDirect(pixels * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer()
+                : null;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float getVerticalFov() {
+        return verticalFov;
+    }
+
+    public ByteBuffer getColor() {
+        return color;
+    }
+
+    public FloatBuffer getDepth() {
+        return depth;
+    }
+
+    public IntBuffer getInstance() {
+        return instance;
+    }
+
+    /** Number of images written so far */
+    public long getFrame() {
+        return frame;
+    }
+
+    /** Called by the producing sensor once the planes hold a complete image */
+    public void setFrame(long frame) {
+        this.frame = frame;
+    }
+}
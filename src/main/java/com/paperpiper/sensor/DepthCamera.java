@@ -0,0 +1,106 @@
+package com.paperpiper.sensor;
+
+import com.paperpiper.render.FpvCameraArray;
+import com.paperpiper.spatial.RayHit;
+
+/**
+ * Depth + instance-id camera done entirely on the CPU by ray casting the
+ * RayCastScene, one ray per pixel, for machines without a GPU.
+ *
+ * Produces the same CameraImage as render.FpvCameraArray (depth along the
+ * optical axis in m, 0 = nothing within range, top row first) plus an
+ * instance plane with RayCastScene ids, and no color. Camera frame and mount
+ * also match the FPV cameras: looking down -Z, tilted up about the drone's X
+ * axis.
+ *
+ * Like LidarSensor, one DepthCamera is one image size and rate shared by all
+ * the drones it is attached to; a scan casts rows of all of them in one
+ * parallel pass (rows = drone x image row, see RayCastSensor), so the pool
+ * balances cameras that look at busy and empty parts of the scene.
+ */
+public class DepthCamera extends RayCastSensor<CameraImage> {
+
+    private static final int ROW_CHUNK = 4;
+
+    private final int width;
+    private final int height;
+    private final float verticalFov; // rad
+
+    // Per pixel: cos(angle to the optical axis)
+    private final float[] axial;
+
+    /**
+     * @param verticalFov degrees
+     * @param tilt        degrees, positive = looking up
+     * @param rate        images per second
+     */
+    public DepthCamera(int width, int height, float verticalFov, float minRange, float maxRange, float rate,
+            float mountX, float mountY, float mountZ, float tilt) {
+        super(height, width, ROW_CHUNK, minRange, maxRange, rate, mountX, mountY, mountZ);
+        this.width = width;
+        this.height = height;
+        this.verticalFov = (float) Math.toRadians(verticalFov);
+
+        axial = new float[width * height];
+        float tanHalf = (float) Math.tan(this.verticalFov / 2);
+        float aspect = (float) width / height;
+        float cosTilt = (float) Math.cos(Math.toRadians(tilt));
+        float sinTilt = (float) Math.sin(Math.toRadians(tilt));
+        for (int row = 0; row < height; row++) {
+            float y = (1f - 2f * (row + 0.5f) / height) * tanHalf;
+            for (int col = 0; col < width; col++) {
+                float x = (2f * (col + 0.5f) / width - 1f) * tanHalf * aspect;
+                float inv = 1f / (float) Math.sqrt(x * x + y * y + 1f);
+                float cx = x * inv, cy = y * inv, cz = -inv;
+                int pixel = row * width + col;
+                // Camera frame -> drone frame: rotate by tilt about X
+                directions[pixel * 3] = cx;
+                directions[pixel * 3 + 1] = cy * cosTilt - cz * sinTilt;
+                directions[pixel * 3 + 2] = cy * sinTilt + cz * cosTilt;
+                axial[pixel] = inv;
+            }
+        }
+    }
+
+    /** Same image and mount as the default FPV camera */
+    public static DepthCamera fpv(int width, int height, float maxRange, float rate) {
+        return new DepthCamera(width, height, FpvCameraArray.DEFAULT_FOV, FpvCameraArray.DEFAULT_NEAR_PLANE,
+                maxRange, rate, FpvCameraArray.DEFAULT_MOUNT_X, FpvCameraArray.DEFAULT_MOUNT_Y,
+                FpvCameraArray.DEFAULT_MOUNT_Z, FpvCameraArray.DEFAULT_TILT);
+    }
+
+    @Override
+    protected CameraImage createOutput() {
+        return new CameraImage(width, height, verticalFov, false, true);
+    }
+
+    @Override
+    protected void store(CameraImage image, int droneId, int pixel, RayHit hit) {
+        if (hit != null) {
+            image.getDepth().put(pixel, hit.t * axial[pixel]);
+            image.getInstance().put(pixel, hit.instance);
+        } else {
+            image.getDepth().put(pixel, 0f);
+            image.getInstance().put(pixel, RayCastScene.NONE);
+        }
+    }
+
+    @Override
+    protected void scanned() {
+        for (int i = 0, n = getDroneCount(); i < n; i++) {
+            outputAt(i).setFrame(getScanCount());
+        }
+    }
+
+    public CameraImage getImage(int droneId) {
+        return output(droneId);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,136 @@
+package com.paperpiper.sensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import com.paperpiper.spatial.RayHit;
+
+/**
+ * Scanning lidar (3D, 2D or a single-beam rangefinder) mounted on any number
+ * of drones. One LidarSensor is one beam pattern and rate; attach() it to the
+ * drones that carry it.
+ *
+ * Every scan casts all beams of all attached drones against a RayCastScene in
+ * one parallel pass (rows = drone x channel) and writes a range image per
+ * drone into a direct FloatBuffer that is reused between scans:
+ *
+ *   ranges[channel * samples + sample] = distance in m, 0 = no return
+ *
+ * Beam directions are in the drone frame (forward -Z, up +Y): channel =
+ * elevation from minElevation to maxElevation, sample = azimuth across
+ * horizontalFov centered on forward, counterclockwise seen from above.
+ *
+ * Range noise is Gaussian and dropout drops a return with a fixed probability.
+ * Both come from a hash of (seed, drone, scan, beam) rather than a shared
+ * generator, so scans are reproducible and threads don't contend.
+ */
+public class LidarSensor extends RayCastSensor<FloatBuffer> {
+
+    private static final int ROW_CHUNK = 8;
+
+    private final int channels;
+    private final int samples;
+
+    private float rangeNoise = 0.02f;  // m, 1 sigma
+    private float dropout = 0.01f;     // probability of no return
+    private long seed = 7L;
+
+    /**
+     * @param minElevation degrees, negative = down
+     * @param maxElevation degrees
+     * @param horizontalFov degrees, 360 for a spinning lidar
+     * @param rate scans per second
+     */
+    public LidarSensor(int channels, int samples, float minElevation, float maxElevation, float horizontalFov,
+            float minRange, float maxRange, float rate) {
+        super(channels, samples, ROW_CHUNK, minRange, maxRange, rate, 0f, 0f, 0f);
+        this.channels = channels;
+        this.samples = samples;
+
+        for (int c = 0; c < channels; c++) {
+            double elevation = Math.toRadians(channels == 1 ? minElevation
+                    : minElevation + (maxElevation - minElevation) * c / (channels - 1));
+            for (int s = 0; s < samples; s++) {
+                double azimuth = Math.toRadians(horizontalFov * ((s + 0.5) / samples - 0.5));
+                int d = (c * samples + s) * 3;
+                directions[d] = (float) (-Math.sin(azimuth) * Math.cos(elevation));
+                directions[d + 1] = (float) Math.sin(elevation);
+                directions[d + 2] = (float) (-Math.cos(azimuth) * Math.cos(elevation));
+            }
+        }
+    }
+
+    /** e.g. 64 x 512, -25..15 degrees, 100 m, 10 Hz */
+    public static LidarSensor lidar3d(int channels, int samples, float minElevation, float maxElevation,
+            float maxRange, float rate) {
+        return new LidarSensor(channels, samples, minElevation, maxElevation, 360f, 0.1f, maxRange, rate);
+    }
+
+    /** Single horizontal plane */
+    public static LidarSensor lidar2d(int samples, float maxRange, float rate) {
+        return new LidarSensor(1, samples, 0f, 0f, 360f, 0.1f, maxRange, rate);
+    }
+
+    /** One beam straight down (altitude rangefinder) */
+    public static LidarSensor rangefinder(float maxRange, float rate) {
+        return new LidarSensor(1, 1, -90f, -90f, 0f, 0.05f, maxRange, rate);
+    }
+
+    @Override
+    protected FloatBuffer createOutput() {
+        return ByteBuffer.allocateDirect(channels * samples * Float.BYTES)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    @Override
+    protected void store(FloatBuffer ranges, int droneId, int beam, RayHit hit) {
+        float range = 0;
+        if (hit != null) {
+            long key = mix(seed ^ (droneId * 0x9E3779B97F4A7C15L) ^ (getScanCount() * 0xC2B2AE3D27D4EB4FL)
+                    ^ (beam * 0x165667B19E3779F9L));
+            if (toUnit(key) >= dropout) {
+                range = Math.max(minRange, hit.t + rangeNoise * gaussian(key));
+            }
+        }
+        ranges.put(beam, range);
+    }
+
+    /** SplitMix64 finalizer */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static float toUnit(long bits) {
+        return (bits >>> 40) * 0x1.0p-24f;
+    }
+
+    /** Box-Muller from two more mixes of the beam key */
+    private static float gaussian(long key) {
+        long a = mix(key + 0x9E3779B97F4A7C15L);
+        long b = mix(key + 0x3C6EF372FE94F82AL);
+        double u1 = ((a >>> 11) + 1) * 0x1.0p-53;
+        double u2 = (b >>> 11) * 0x1.0p-53;
+        return (float) (Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2));
+    }
+
+    public void setNoise(float rangeNoise, float dropout, long seed) {
+        this.rangeNoise = rangeNoise;
+        this.dropout = dropout;
+        this.seed = seed;
+    }
+
+    public FloatBuffer getRanges(int droneId) {
+        return output(droneId);
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+}
@@ -0,0 +1,276 @@
+package com.paperpiper.sensor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.spatial.RayHit;
+import com.paperpiper.spatial.SpatialHash;
+import com.paperpiper.spatial.TriangleBvh;
+
+/**
+ * Everything CPU ray-casting sensors can see: the ground plane, static
+ * boxes, static triangle meshes (one TriangleBvh each) and the drones as
+ * oriented boxes posed from DroneState.
+ *
+ * Drones move, so refreshDynamic() re-indexes them in a SpatialHash before a
+ * sensor pass; each sensor then gathers the drones within its range once and
+ * tests only those per ray. Casting is read-only and thread-safe as long as
+ * every thread has its own RayHit and candidate array.
+ *
+ * Instance ids (also used for segmentation images):
+ *   NONE = 0, GROUND = 1, STATIC = 2, drones = DRONE_BASE + drone id
+ */
+public class RayCastScene {
+
+    public static final int NONE = 0;
+    public static final int GROUND = 1;
+    public static final int STATIC = 2;
+    public static final int DRONE_BASE = 16;
+
+    private float groundHeight = 0f;
+    private boolean groundEnabled = true;
+
+    private final List<TriangleBvh> meshes = new ArrayList<>();
+    private float[] meshBounds = new float[0]; // 6 per mesh
+    private float[] boxes = new float[0];      // 6 per box: min, max
+    private final float[] tmpBounds = new float[6];
+    private int boxCount = 0;
+
+    // Dynamic drones
+    private final float droneHalfX, droneHalfY, droneHalfZ;
+    private final float droneRadiusSq;
+    private final SpatialHash droneHash = new SpatialHash(8f, 8192);
+    private int[] droneIds = new int[256];
+    private DroneState state;
+
+    public RayCastScene(float droneHalfX, float droneHalfY, float droneHalfZ) {
+        this.droneHalfX = droneHalfX;
+        this.droneHalfY = droneHalfY;
+        this.droneHalfZ = droneHalfZ;
+        this.droneRadiusSq = droneHalfX * droneHalfX + droneHalfY * droneHalfY + droneHalfZ * droneHalfZ;
+    }
+
+    /**
+     * Add static triangle geometry (world space), e.g. a render Mesh's
+     * getPositions()/getIndices() when its model matrix is the identity.
+     */
+    public void addStaticMesh(float[] positions, int[] indices) {
+        TriangleBvh bvh = new TriangleBvh(positions, indices);
+        if (bvh.getTriangleCount() == 0) {
+            return;
+        }
+        meshBounds = Arrays.copyOf(meshBounds, (meshes.size() + 1) * 6);
+        bvh.getBounds(tmpBounds);
+        System.arraycopy(tmpBounds, 0, meshBounds, meshes.size() * 6, 6);
+        meshes.add(bvh);
+    }
+
+    /**
+     * Add a static axis-aligned box given by center and half extents.
+     */
+    public void addStaticBox(float cx, float cy, float cz, float hx, float hy, float hz) {
+        boxes = Arrays.copyOf(boxes, (boxCount + 1) * 6);
+        int b = boxCount * 6;
+        boxes[b] = cx - hx;
+        boxes[b + 1] = cy - hy;
+        boxes[b + 2] = cz - hz;
+        boxes[b + 3] = cx + hx;
+        boxes[b + 4] = cy + hy;
+        boxes[b + 5] = cz + hz;
+        boxCount++;
+    }
+
+    /**
+     * Re-index the drones at their current poses. Call once per sensor pass,
+     * before casting. Only ids[0..count) are indexed, so pass the active
+     * drones rather than every used slot: pooled drones parked at the origin
+     * would otherwise show up as obstacles.
+     */
+    public void refreshDynamic(DroneState state, int[] ids, int count) {
+        this.state = state;
+        if (count > droneIds.length) {
+            droneIds = Arrays.copyOf(droneIds, Math.max(count, droneIds.length * 2));
+        }
+        System.arraycopy(ids, 0, droneIds, 0, count);
+        droneHash.rebuild(state.getPosition(), droneIds, count);
+    }
+
+    /**
+     * Drones within range of a point (a box query, conservative). The query
+     * stops when out is full, so a return of out.length means there may be
+     * more: grow out and ask again.
+     *
+     * @return number of ids written to out
+     */
+    public int gatherDrones(float x, float y, float z, float range, int[] out) {
+        if (state == null) {
+            return 0;
+        }
+        float r = range + (float) Math.sqrt(droneRadiusSq);
+        return droneHash.queryBox(x - r, y - r, z - r, x + r, y + r, z + r, out);
+    }
+
+    /**
+     * Closest hit along a unit ray within hit.t (set it with hit.reset()).
+     *
+     * @param drones      candidate drone ids (from gatherDrones()) in drones[from..to)
+     * @param ignoreDrone drone id not to hit (the sensor's own), or -1
+     * @return true if something was hit; hit.t and hit.instance are set
+     */
+    public boolean cast(float ox, float oy, float oz, float dx, float dy, float dz, RayHit hit,
+            int[] drones, int from, int to, int ignoreDrone) {
+        boolean found = false;
+
+        if (groundEnabled && dy < 0) {
+            float t = (groundHeight - oy) / dy;
+            if (t > 0 && t < hit.t) {
+                hit.t = t;
+                hit.instance = GROUND;
+                hit.triangle = -1;
+                found = true;
+            }
+        }
+
+        float invDx = 1f / dx, invDy = 1f / dy, invDz = 1f / dz;
+
+        for (int b = 0; b < boxCount * 6; b += 6) {
+            float t = slab(boxes, b, ox, oy, oz, invDx, invDy, invDz, hit.t);
+            if (t >= 0) {
+                hit.t = t;
+                hit.instance = STATIC;
+                hit.triangle = -1;
+                found = true;
+            }
+        }
+
+        for (int m = 0, n = meshes.size(); m < n; m++) {
+            if (!overlaps(meshBounds, m * 6, ox, oy, oz, invDx, invDy, invDz, hit.t)) {
+                continue;
+            }
+            if (meshes.get(m).intersect(ox, oy, oz, dx, dy, dz, invDx, invDy, invDz, hit)) {
+                hit.instance = STATIC;
+                found = true;
+            }
+        }
+
+        if (to > from) {
+            final float[] position = state.getPosition();
+            final float[] orientation = state.getOrientation();
+            for (int i = from; i < to; i++) {
+                int id = drones[i];
+                if (id == ignoreDrone) {
+                    continue;
+                }
+                float t = intersectDrone(id, position, orientation, ox, oy, oz, dx, dy, dz, hit.t);
+                if (t >= 0) {
+                    hit.t = t;
+                    hit.instance = DRONE_BASE + id;
+                    hit.triangle = -1;
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Ray against a drone's oriented box: bounding sphere reject, then a slab
+     * test in the drone's frame.
+     *
+     * @return hit distance, or -1
+     */
+    private float intersectDrone(int id, float[] position, float[] orientation, float ox, float oy, float oz,
+            float dx, float dy, float dz, float maxT) {
+        int p = id * 3;
+        float cx = position[p] - ox, cy = position[p + 1] - oy, cz = position[p + 2] - oz;
+        float along = cx * dx + cy * dy + cz * dz;
+        float perpSq = cx * cx + cy * cy + cz * cz - along * along;
+        if (perpSq > droneRadiusSq || along < -1f || along - 1f > maxT) {
+            return -1;
+        }
+
+        // Into the drone frame: R^T * (origin - center), R^T * direction
+        int q = id * 4;
+        float qx = orientation[q], qy = orientation[q + 1], qz = orientation[q + 2], qw = orientation[q + 3];
+        float r00 = 1 - 2 * (qy * qy + qz * qz), r01 = 2 * (qx * qy - qw * qz), r02 = 2 * (qx * qz + qw * qy);
+        float r10 = 2 * (qx * qy + qw * qz), r11 = 1 - 2 * (qx * qx + qz * qz), r12 = 2 * (qy * qz - qw * qx);
+        float r20 = 2 * (qx * qz - qw * qy), r21 = 2 * (qy * qz + qw * qx), r22 = 1 - 2 * (qx * qx + qy * qy);
+
+        float lox = -(r00 * cx + r10 * cy + r20 * cz);
+        float loy = -(r01 * cx + r11 * cy + r21 * cz);
+        float loz = -(r02 * cx + r12 * cy + r22 * cz);
+        float ldx = r00 * dx + r10 * dy + r20 * dz;
+        float ldy = r01 * dx + r11 * dy + r21 * dz;
+        float ldz = r02 * dx + r12 * dy + r22 * dz;
+
+        float tMin = 0, tMax = maxT;
+        float inv = 1f / ldx;
+        float t1 = (-droneHalfX - lox) * inv, t2 = (droneHalfX - lox) * inv;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        inv = 1f / ldy;
+        t1 = (-droneHalfY - loy) * inv;
+        t2 = (droneHalfY - loy) * inv;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        inv = 1f / ldz;
+        t1 = (-droneHalfZ - loz) * inv;
+        t2 = (droneHalfZ - loz) * inv;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        return tMin <= tMax && tMin > 0 ? tMin : -1;
+    }
+
+    /**
+     * Ray against an AABB stored at boxes[b..b+5].
+     *
+     * @return entry distance in (0, maxT), or -1
+     */
+    private static float slab(float[] boxes, int b, float ox, float oy, float oz,
+            float invDx, float invDy, float invDz, float maxT) {
+        float t1 = (boxes[b] - ox) * invDx, t2 = (boxes[b + 3] - ox) * invDx;
+        float tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+        t1 = (boxes[b + 1] - oy) * invDy;
+        t2 = (boxes[b + 4] - oy) * invDy;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        t1 = (boxes[b + 2] - oz) * invDz;
+        t2 = (boxes[b + 5] - oz) * invDz;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        if (tMax < 0 || tMin > tMax || tMin >= maxT) {
+            return -1;
+        }
+        // Origin inside the box: report the exit instead of 0
+        return tMin > 0 ? tMin : (tMax < maxT ? tMax : -1);
+    }
+
+    /**
+     * Does the ray segment [0, maxT) pass through the AABB at boxes[b..b+5]?
+     */
+    private static boolean overlaps(float[] boxes, int b, float ox, float oy, float oz,
+            float invDx, float invDy, float invDz, float maxT) {
+        float t1 = (boxes[b] - ox) * invDx, t2 = (boxes[b + 3] - ox) * invDx;
+        float tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+        t1 = (boxes[b + 1] - oy) * invDy;
+        t2 = (boxes[b + 4] - oy) * invDy;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        t1 = (boxes[b + 2] - oz) * invDz;
+        t2 = (boxes[b + 5] - oz) * invDz;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        return tMax >= Math.max(tMin, 0f) && tMin < maxT;
+    }
+
+    public void setGround(boolean enabled, float height) {
+        this.groundEnabled = enabled;
+        this.groundHeight = height;
+    }
+
+    public int getStaticMeshCount() {
+        return meshes.size();
+    }
+}
@@ -0,0 +1,272 @@
+package com.paperpiper.sensor;
+
+import java.util.Arrays;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.spatial.RayHit;
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Common part of the ray-cast sensors (LidarSensor, DepthCamera): a fixed
+ * fan of rays in the drone frame, cast from every attached drone at a fixed
+ * rate.
+ *
+ * The rays are rows x rowLength, row after row, in directions[] (filled in
+ * by the subclass constructor). A scan takes each attached drone's pose and
+ * mount once, collects the drones near it once, then casts rows of all
+ * drones in one parallel pass (rows = drone x sensor row) and hands every
+ * ray's result to store(). Subclasses only say what a return is written as.
+ *
+ * @param <T> per-drone output, refreshed in place on every scan
+ */
+public abstract class RayCastSensor<T> {
+
+    private final int rows;
+    private final int rowLength;
+    private final int rowChunk;
+    protected final float minRange;
+    protected final float maxRange;
+    private final float period; // s
+
+    // Mount in the drone frame
+    private final float mountX, mountY, mountZ;
+
+    // Unit ray directions in the drone frame, 3 per ray
+    protected final float[] directions;
+
+    // Attached drones and their outputs
+    private int[] droneIds = new int[0];
+    private Object[] outputs = new Object[0];
+    private int droneCount = 0;
+
+    // Per-scan, per attached drone: rotation (9) + origin (3), and nearby
+    // drones in candidates[candidateStarts[i] .. + candidateCounts[i])
+    private float[] poses = new float[0];
+    private int[] candidates = new int[256];
+    private int[] candidateStarts = new int[0];
+    private int[] candidateCounts = new int[0];
+    private int[] candidateScratch = new int[128];
+
+    private float timer = 0;
+    private long scanCount = 0;
+    private long raysCast = 0;
+    private double raysPerSecond = 0;
+
+    // Scan in progress
+    private RayCastScene scene;
+    private final ParallelFor.RangeBody rowBody = this::castRows;
+    private final ThreadLocal<RayHit> hits = ThreadLocal.withInitial(RayHit::new);
+
+    /**
+     * @param rowChunk rows per parallel task
+     * @param rate     scans per second
+     */
+    protected RayCastSensor(int rows, int rowLength, int rowChunk, float minRange, float maxRange, float rate,
+            float mountX, float mountY, float mountZ) {
+        this.rows = rows;
+        this.rowLength = rowLength;
+        this.rowChunk = rowChunk;
+        this.minRange = minRange;
+        this.maxRange = maxRange;
+        this.period = 1f / rate;
+        this.mountX = mountX;
+        this.mountY = mountY;
+        this.mountZ = mountZ;
+        this.directions = new float[rows * rowLength * 3];
+    }
+
+    /** A fresh output for a newly attached drone */
+    protected abstract T createOutput();
+
+    /**
+     * Write one ray's result. Called from the pool, concurrently for
+     * different rows.
+     *
+     * @param ray index into directions / 3
+     * @param hit the return, or null if there was none within range
+     */
+    protected abstract void store(T output, int droneId, int ray, RayHit hit);
+
+    /** Called on the scanning thread once all rays are stored */
+    protected void scanned() {
+    }
+
+    /**
+     * Mount this sensor on a drone and allocate its output.
+     */
+    public T attach(int droneId) {
+        T output = output(droneId);
+        if (output != null) {
+            return output;
+        }
+        if (droneCount == droneIds.length) {
+            int capacity = Math.max(4, droneCount * 2);
+            droneIds = Arrays.copyOf(droneIds, capacity);
+            outputs = Arrays.copyOf(outputs, capacity);
+            poses = Arrays.copyOf(poses, capacity * 12);
+            candidateStarts = Arrays.copyOf(candidateStarts, capacity);
+            candidateCounts = Arrays.copyOf(candidateCounts, capacity);
+        }
+        output = createOutput();
+        droneIds[droneCount] = droneId;
+        outputs[droneCount] = output;
+        droneCount++;
+        return output;
+    }
+
+    public void detach(int droneId) {
+        for (int i = 0; i < droneCount; i++) {
+            if (droneIds[i] == droneId) {
+                droneCount--;
+                droneIds[i] = droneIds[droneCount];
+                outputs[i] = outputs[droneCount];
+                outputs[droneCount] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Advance the scan clock.
+     *
+     * @return true if a scan is due (call scan())
+     */
+    public boolean advance(float dt) {
+        timer += dt;
+        return droneCount > 0 && timer >= period;
+    }
+
+    /**
+     * Cast every ray of every attached drone. The scene's dynamic drones
+     * must have been refreshed for this frame.
+     */
+    public void scan(DroneState state, RayCastScene scene, ParallelFor parallel) {
+        timer = Math.max(0f, timer - period);
+        long start = System.nanoTime();
+
+        final float[] position = state.getPosition();
+        final float[] orientation = state.getOrientation();
+        int candidateTotal = 0;
+        for (int i = 0; i < droneCount; i++) {
+            int id = droneIds[i];
+            int q = id * 4;
+            float qx = orientation[q], qy = orientation[q + 1], qz = orientation[q + 2], qw = orientation[q + 3];
+            int p = i * 12;
+            float r00 = 1 - 2 * (qy * qy + qz * qz), r01 = 2 * (qx * qy - qw * qz), r02 = 2 * (qx * qz + qw * qy);
+            float r10 = 2 * (qx * qy + qw * qz), r11 = 1 - 2 * (qx * qx + qz * qz), r12 = 2 * (qy * qz - qw * qx);
+            float r20 = 2 * (qx * qz - qw * qy), r21 = 2 * (qy * qz + qw * qx), r22 = 1 - 2 * (qx * qx + qy * qy);
+            poses[p] = r00;
+            poses[p + 1] = r01;
+            poses[p + 2] = r02;
+            poses[p + 3] = r10;
+            poses[p + 4] = r11;
+            poses[p + 5] = r12;
+            poses[p + 6] = r20;
+            poses[p + 7] = r21;
+            poses[p + 8] = r22;
+            poses[p + 9] = position[id * 3] + r00 * mountX + r01 * mountY + r02 * mountZ;
+            poses[p + 10] = position[id * 3 + 1] + r10 * mountX + r11 * mountY + r12 * mountZ;
+            poses[p + 11] = position[id * 3 + 2] + r20 * mountX + r21 * mountY + r22 * mountZ;
+
+            // Drones are only collected once per scan, not per ray
+            candidateStarts[i] = candidateTotal;
+            candidateCounts[i] = gatherCandidates(scene, i, candidateTotal);
+            candidateTotal += candidateCounts[i];
+        }
+
+        this.scene = scene;
+        parallel.run(droneCount * rows, rowChunk, rowBody);
+        this.scene = null;
+
+        long rays = (long) droneCount * rows * rowLength;
+        raysCast += rays;
+        scanCount++;
+        scanned();
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        raysPerSecond = rays * 1e9 / elapsed;
+    }
+
+    /** Every drone in range, however many: a full scratch means the query was cut short */
+    private int gatherCandidates(RayCastScene scene, int index, int start) {
+        int p = index * 12;
+        int found;
+        while ((found = scene.gatherDrones(poses[p + 9], poses[p + 10], poses[p + 11], maxRange,
+                candidateScratch)) == candidateScratch.length) {
+            candidateScratch = new int[candidateScratch.length * 2];
+        }
+        if (start + found > candidates.length) {
+            candidates = Arrays.copyOf(candidates, Math.max(start + found, candidates.length * 2));
+        }
+        System.arraycopy(candidateScratch, 0, candidates, start, found);
+        return found;
+    }
+
+    /** Rows [from, to) of drone x sensor row */
+    @SuppressWarnings("unchecked")
+    private void castRows(int from, int to) {
+        final RayHit hit = hits.get();
+        final RayCastScene scene = this.scene;
+
+        for (int task = from; task < to; task++) {
+            int index = task / rows;
+            int row = task - index * rows;
+            int droneId = droneIds[index];
+            int p = index * 12;
+            float r00 = poses[p], r01 = poses[p + 1], r02 = poses[p + 2];
+            float r10 = poses[p + 3], r11 = poses[p + 4], r12 = poses[p + 5];
+            float r20 = poses[p + 6], r21 = poses[p + 7], r22 = poses[p + 8];
+            float ox = poses[p + 9], oy = poses[p + 10], oz = poses[p + 11];
+            T output = (T) outputs[index];
+            int candidateBase = candidateStarts[index];
+            int candidateCount = candidateCounts[index];
+
+            for (int ray = row * rowLength, end = ray + rowLength; ray < end; ray++) {
+                int d = ray * 3;
+                float bx = directions[d], by = directions[d + 1], bz = directions[d + 2];
+                float dx = r00 * bx + r01 * by + r02 * bz;
+                float dy = r10 * bx + r11 * by + r12 * bz;
+                float dz = r20 * bx + r21 * by + r22 * bz;
+
+                hit.reset(maxRange);
+                boolean hasReturn = scene.cast(ox, oy, oz, dx, dy, dz, hit, candidates, candidateBase,
+                        candidateBase + candidateCount, droneId) && hit.t >= minRange;
+                store(output, droneId, ray, hasReturn ? hit : null);
+            }
+        }
+    }
+
+    /** Output of an attached drone, or null */
+    @SuppressWarnings("unchecked")
+    protected T output(int droneId) {
+        for (int i = 0; i < droneCount; i++) {
+            if (droneIds[i] == droneId) {
+                return (T) outputs[i];
+            }
+        }
+        return null;
+    }
+
+    /** Outputs of the attached drones, droneCount of them (index order is arbitrary) */
+    @SuppressWarnings("unchecked")
+    protected T outputAt(int index) {
+        return (T) outputs[index];
+    }
+
+    protected int getDroneCount() {
+        return droneCount;
+    }
+
+    /** Scans finished so far (during a scan: the number of the one in progress, from 0) */
+    public long getScanCount() {
+        return scanCount;
+    }
+
+    public long getRaysCast() {
+        return raysCast;
+    }
+
+    /** Throughput of the last scan */
+    public double getRaysPerSecond() {
+        return raysPerSecond;
+    }
+}
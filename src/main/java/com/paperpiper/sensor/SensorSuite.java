@@ -0,0 +1,299 @@
+package com.paperpiper.sensor;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Noisy IMU, barometer and GPS readings for every drone, generated from the
+ * DroneState ground truth in one parallel pass per tick.
+ *
+ * Each sensor has its own rate; on a tick where none is due nothing runs.
+ * Readings go into flat arrays indexed by drone id:
+ *
+ *   accel        [3] body-frame specific force, m/s^2 (average over the IMU period)
+ *   gyro         [3] body-frame angular rate (X, Y, Z), rad/s
+ *   baroAltitude     height above the ground plane, m
+ *   gpsPosition  [3] world position, m
+ *   gpsVelocity  [3] world velocity, m/s
+ *
+ * Noise: white noise on every reading, random-walk biases on the IMU and
+ * barometer, and a first-order Gauss-Markov (slowly wandering) GPS position
+ * error. Every drone has its own SplittableRandom, split off the root seed in
+ * id order, so results don't depend on how the pass is chunked or scheduled.
+ */
+public class SensorSuite {
+
+    private static final float GRAVITY = 9.81f;
+    private static final int CHUNK_SIZE = 256;
+
+    // Rates, Hz
+    private float imuRate = 500f;
+    private float baroRate = 50f;
+    private float gpsRate = 10f;
+
+    // Noise (1 sigma)
+    private float accelNoise = 0.05f;       // m/s^2
+    private float accelBiasWalk = 0.002f;   // m/s^2 per sqrt(s)
+    private float gyroNoise = 0.005f;       // rad/s
+    private float gyroBiasWalk = 0.0002f;   // rad/s per sqrt(s)
+    private float baroNoise = 0.3f;         // m
+    private float baroBiasWalk = 0.02f;     // m per sqrt(s)
+    private float gpsHorizontalNoise = 1.5f; // m, Gauss-Markov
+    private float gpsVerticalNoise = 3.0f;   // m, Gauss-Markov
+    private float gpsCorrelationTime = 60f;  // s
+    private float gpsVelocityNoise = 0.1f;   // m/s
+
+    private final ParallelFor parallel;
+    private final long seed;
+
+    private float imuTimer = 0;
+    private float baroTimer = 0;
+    private float gpsTimer = 0;
+    private long imuSamples = 0;
+    private long baroSamples = 0;
+    private long gpsSamples = 0;
+
+    // Per-tick parameters for the parallel pass
+    private DroneState state;
+    private boolean imuDue, baroDue, gpsDue;
+    private float imuDt, baroDt, gpsDt;
+    private final ParallelFor.RangeBody sampleBody = this::sample;
+
+    // Per-drone streams, split from root in id order
+    private final SplittableRandom root;
+    private SplittableRandom[] random = new SplittableRandom[0];
+
+    // Outputs
+    private float[] accel = new float[0];
+    private float[] gyro = new float[0];
+    private float[] baroAltitude = new float[0];
+    private float[] gpsPosition = new float[0];
+    private float[] gpsVelocity = new float[0];
+
+    // Internal state
+    private float[] lastVelocity = new float[0]; // at the previous IMU sample
+    private float[] accelBias = new float[0];
+    private float[] gyroBias = new float[0];
+    private float[] baroBias = new float[0];
+    private float[] gpsError = new float[0];
+
+    public SensorSuite(ParallelFor parallel, long seed) {
+        this.parallel = parallel;
+        this.seed = seed;
+        this.root = new SplittableRandom(seed);
+    }
+
+    /**
+     * Advance the sensor clocks by dt and produce readings for every sensor
+     * that is due.
+     */
+    public void update(DroneState state, float dt) {
+        imuTimer += dt;
+        baroTimer += dt;
+        gpsTimer += dt;
+
+        // Small slack so 500 Hz at a 500 Hz tick samples every tick
+        imuDue = imuTimer >= 0.999f / imuRate;
+        baroDue = baroTimer >= 0.999f / baroRate;
+        gpsDue = gpsTimer >= 0.999f / gpsRate;
+        if (!imuDue && !baroDue && !gpsDue) {
+            return;
+        }
+
+        ensureCapacity(state.getCapacity());
+
+        imuDt = imuTimer;
+        baroDt = baroTimer;
+        gpsDt = gpsTimer;
+        this.state = state;
+        parallel.run(state.size(), CHUNK_SIZE, sampleBody);
+        this.state = null;
+
+        if (imuDue) {
+            imuTimer = 0;
+            imuSamples++;
+        }
+        if (baroDue) {
+            baroTimer = 0;
+            baroSamples++;
+        }
+        if (gpsDue) {
+            gpsTimer = 0;
+            gpsSamples++;
+        }
+    }
+
+    private void sample(int from, int to) {
+        final DroneState s = state;
+        final float[] position = s.getPosition();
+        final float[] orientation = s.getOrientation();
+        final float[] velocity = s.getLinearVelocity();
+        final float[] angular = s.getAngularVelocity();
+
+        final float accelBiasStep = accelBiasWalk * (float) Math.sqrt(imuDt);
+        final float gyroBiasStep = gyroBiasWalk * (float) Math.sqrt(imuDt);
+        final float baroBiasStep = baroBiasWalk * (float) Math.sqrt(baroDt);
+        final float gpsDecay = (float) Math.exp(-gpsDt / gpsCorrelationTime);
+        final float gpsDrive = (float) Math.sqrt(1 - gpsDecay * gpsDecay);
+
+        for (int id = from; id < to; id++) {
+            if (!s.isUsed(id)) {
+                continue;
+            }
+            SplittableRandom rng = random[id];
+            int v = id * 3;
+
+            if (imuDue) {
+                // Body axes = columns of the rotation matrix
+                int q = id * 4;
+                float qx = orientation[q], qy = orientation[q + 1], qz = orientation[q + 2], qw = orientation[q + 3];
+                float r00 = 1 - 2 * (qy * qy + qz * qz), r01 = 2 * (qx * qy - qw * qz), r02 = 2 * (qx * qz + qw * qy);
+                float r10 = 2 * (qx * qy + qw * qz), r11 = 1 - 2 * (qx * qx + qz * qz), r12 = 2 * (qy * qz - qw * qx);
+                float r20 = 2 * (qx * qz - qw * qy), r21 = 2 * (qy * qz + qw * qx), r22 = 1 - 2 * (qx * qx + qy * qy);
+
+                // Specific force = acceleration - gravity, world frame
+                float ax = (velocity[v] - lastVelocity[v]) / imuDt;
+                float ay = (velocity[v + 1] - lastVelocity[v + 1]) / imuDt + GRAVITY;
+                float az = (velocity[v + 2] - lastVelocity[v + 2]) / imuDt;
+                lastVelocity[v] = velocity[v];
+                lastVelocity[v + 1] = velocity[v + 1];
+                lastVelocity[v + 2] = velocity[v + 2];
+
+                float wx = angular[v], wy = angular[v + 1], wz = angular[v + 2];
+
+                for (int c = 0; c < 3; c++) {
+                    accelBias[v + c] += accelBiasStep * (float) rng.nextGaussian();
+                    gyroBias[v + c] += gyroBiasStep * (float) rng.nextGaussian();
+                }
+
+                // R^T * world vector
+                accel[v] = r00 * ax + r10 * ay + r20 * az + accelBias[v] + accelNoise * (float) rng.nextGaussian();
+                accel[v + 1] = r01 * ax + r11 * ay + r21 * az + accelBias[v + 1] + accelNoise * (float) rng.nextGaussian();
+                accel[v + 2] = r02 * ax + r12 * ay + r22 * az + accelBias[v + 2] + accelNoise * (float) rng.nextGaussian();
+                gyro[v] = r00 * wx + r10 * wy + r20 * wz + gyroBias[v] + gyroNoise * (float) rng.nextGaussian();
+                gyro[v + 1] = r01 * wx + r11 * wy + r21 * wz + gyroBias[v + 1] + gyroNoise * (float) rng.nextGaussian();
+                gyro[v + 2] = r02 * wx + r12 * wy + r22 * wz + gyroBias[v + 2] + gyroNoise * (float) rng.nextGaussian();
+            }
+
+            if (baroDue) {
+                baroBias[id] += baroBiasStep * (float) rng.nextGaussian();
+                baroAltitude[id] = position[v + 1] + baroBias[id] + baroNoise * (float) rng.nextGaussian();
+            }
+
+            if (gpsDue) {
+                gpsError[v] = gpsError[v] * gpsDecay + gpsHorizontalNoise * gpsDrive * (float) rng.nextGaussian();
+                gpsError[v + 1] = gpsError[v + 1] * gpsDecay + gpsVerticalNoise * gpsDrive * (float) rng.nextGaussian();
+                gpsError[v + 2] = gpsError[v + 2] * gpsDecay + gpsHorizontalNoise * gpsDrive * (float) rng.nextGaussian();
+                for (int c = 0; c < 3; c++) {
+                    gpsPosition[v + c] = position[v + c] + gpsError[v + c];
+                    gpsVelocity[v + c] = velocity[v + c] + gpsVelocityNoise * (float) rng.nextGaussian();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the sensor history of a drone slot (call when it is reused or
+     * teleported), so its first IMU sample doesn't see a velocity jump.
+     */
+    public void reset(int id, DroneState state) {
+        ensureCapacity(state.getCapacity());
+        int v = id * 3;
+        System.arraycopy(state.getLinearVelocity(), v, lastVelocity, v, 3);
+        Arrays.fill(accelBias, v, v + 3, 0f);
+        Arrays.fill(gyroBias, v, v + 3, 0f);
+        Arrays.fill(gpsError, v, v + 3, 0f);
+        baroBias[id] = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        int old = random.length;
+        if (old >= capacity) {
+            return;
+        }
+        random = Arrays.copyOf(random, capacity);
+        for (int id = old; id < capacity; id++) {
+            random[id] = root.split();
+        }
+        accel = Arrays.copyOf(accel, capacity * 3);
+        gyro = Arrays.copyOf(gyro, capacity * 3);
+        baroAltitude = Arrays.copyOf(baroAltitude, capacity);
+        gpsPosition = Arrays.copyOf(gpsPosition, capacity * 3);
+        gpsVelocity = Arrays.copyOf(gpsVelocity, capacity * 3);
+        lastVelocity = Arrays.copyOf(lastVelocity, capacity * 3);
+        accelBias = Arrays.copyOf(accelBias, capacity * 3);
+        gyroBias = Arrays.copyOf(gyroBias, capacity * 3);
+        baroBias = Arrays.copyOf(baroBias, capacity);
+        gpsError = Arrays.copyOf(gpsError, capacity * 3);
+    }
+
+    /**
+     * @param imu  Hz
+     * @param baro Hz
+     * @param gps  Hz
+     */
+    public void setRates(float imu, float baro, float gps) {
+        this.imuRate = imu;
+        this.baroRate = baro;
+        this.gpsRate = gps;
+    }
+
+    public void setImuNoise(float accelNoise, float accelBiasWalk, float gyroNoise, float gyroBiasWalk) {
+        this.accelNoise = accelNoise;
+        this.accelBiasWalk = accelBiasWalk;
+        this.gyroNoise = gyroNoise;
+        this.gyroBiasWalk = gyroBiasWalk;
+    }
+
+    public void setBaroNoise(float noise, float biasWalk) {
+        this.baroNoise = noise;
+        this.baroBiasWalk = biasWalk;
+    }
+
+    public void setGpsNoise(float horizontal, float vertical, float correlationTime, float velocity) {
+        this.gpsHorizontalNoise = horizontal;
+        this.gpsVerticalNoise = vertical;
+        this.gpsCorrelationTime = correlationTime;
+        this.gpsVelocityNoise = velocity;
+    }
+
+    public float[] getAccel() {
+        return accel;
+    }
+
+    public float[] getGyro() {
+        return gyro;
+    }
+
+    public float[] getBaroAltitude() {
+        return baroAltitude;
+    }
+
+    public float[] getGpsPosition() {
+        return gpsPosition;
+    }
+
+    public float[] getGpsVelocity() {
+        return gpsVelocity;
+    }
+
+    /** Number of IMU samples taken so far, bumps when new readings are in */
+    public long getImuSamples() {
+        return imuSamples;
+    }
+
+    public long getBaroSamples() {
+        return baroSamples;
+    }
+
+    public long getGpsSamples() {
+        return gpsSamples;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+}
@@ -0,0 +1,165 @@
+package com.paperpiper.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.paperpiper.control.DroneController;
+import com.paperpiper.drone.Drone;
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Runs the DroneControllers assigned to drones, once per physics substep.
+ *
+ * Awake drones are grouped by controller into flat id lists (rebuilt only
+ * when assignments or the awake set change). Each group is cut into chunks
+ * of -Dcontrol.chunk ids (default 256) and the chunks run in parallel on the
+ * engine's shared ParallelFor pool, one chunk per task. A single chunk runs
+ * inline on the physics thread. Chunks are flat arrays reused between
+ * ticks, so a tick doesn't allocate.
+ */
+public class ControllerScheduler {
+
+    private static final int CHUNK_SIZE = Math.max(1, Integer.getInteger("control.chunk", 256));
+
+    private final ParallelFor parallel;
+
+    // Controller per drone id, null = not controlled
+    private DroneController[] assigned = new DroneController[0];
+
+    private final List<Group> groups = new ArrayList<>();
+
+    // Chunks: controller, its group's ids and the [from, to) range of them
+    private DroneController[] chunkController = new DroneController[16];
+    private int[][] chunkIds = new int[16][];
+    private int[] chunkFrom = new int[16];
+    private int[] chunkTo = new int[16];
+    private int chunkCount = 0;
+
+    // Tick in progress
+    private DroneState state;
+    private float dt;
+    private final ParallelFor.RangeBody chunkBody = this::runChunks;
+
+    private boolean dirty = true;
+
+    /** Drones of one controller */
+    private static class Group {
+        final DroneController controller;
+        int[] ids = new int[64];
+        int count = 0;
+
+        Group(DroneController controller) {
+            this.controller = controller;
+        }
+    }
+
+    public ControllerScheduler(ParallelFor parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Assign a controller to a drone (null to remove it).
+     */
+    public void setController(int id, DroneController controller) {
+        if (id >= assigned.length) {
+            assigned = Arrays.copyOf(assigned, Math.max(id + 1, assigned.length * 2));
+        }
+        assigned[id] = controller;
+        dirty = true;
+    }
+
+    public DroneController getController(int id) {
+        return id < assigned.length ? assigned[id] : null;
+    }
+
+    /**
+     * Call when the set of awake drones changes.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Run every controller over its awake drones and wait for all of them.
+     */
+    public void run(DroneState state, List<Drone> awakeDrones, float dt) {
+        if (dirty) {
+            rebuildGroups(awakeDrones);
+        }
+        if (chunkCount == 0) {
+            return;
+        }
+
+        this.state = state;
+        this.dt = dt;
+        parallel.run(chunkCount, 1, chunkBody);
+        this.state = null;
+    }
+
+    private void runChunks(int from, int to) {
+        for (int i = from; i < to; i++) {
+            chunkController[i].compute(chunkIds[i], chunkFrom[i], chunkTo[i], state, dt);
+        }
+    }
+
+    private void rebuildGroups(List<Drone> awakeDrones) {
+        for (Group group : groups) {
+            group.count = 0;
+        }
+
+        for (int i = 0, n = awakeDrones.size(); i < n; i++) {
+            int id = awakeDrones.get(i).getId();
+            DroneController controller = getController(id);
+            if (controller == null) {
+                continue;
+            }
+            Group group = findGroup(controller);
+            if (group.count == group.ids.length) {
+                group.ids = Arrays.copyOf(group.ids, group.count * 2);
+            }
+            group.ids[group.count++] = id;
+        }
+
+        // Drop controllers nobody uses any more
+        groups.removeIf(group -> group.count == 0);
+
+        // Sorted ids keep each chunk's array accesses close together
+        chunkCount = 0;
+        for (Group group : groups) {
+            Arrays.sort(group.ids, 0, group.count);
+            for (int from = 0; from < group.count; from += CHUNK_SIZE) {
+                if (chunkCount == chunkFrom.length) {
+                    int capacity = chunkCount * 2;
+                    chunkController = Arrays.copyOf(chunkController, capacity);
+                    chunkIds = Arrays.copyOf(chunkIds, capacity);
+                    chunkFrom = Arrays.copyOf(chunkFrom, capacity);
+                    chunkTo = Arrays.copyOf(chunkTo, capacity);
+                }
+                chunkController[chunkCount] = group.controller;
+                chunkIds[chunkCount] = group.ids;
+                chunkFrom[chunkCount] = from;
+                chunkTo[chunkCount] = Math.min(group.count, from + CHUNK_SIZE);
+                chunkCount++;
+            }
+        }
+
+        dirty = false;
+    }
+
+    private Group findGroup(DroneController controller) {
+        for (Group group : groups) {
+            if (group.controller == controller) {
+                return group;
+            }
+        }
+        Group group = new Group(controller);
+        groups.add(group);
+        return group;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+}
@@ -0,0 +1,106 @@
+package com.paperpiper.simulation;
+
+import java.util.List;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+import com.paperpiper.drone.Drone;
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.drone.RotorMixer;
+
+/**
+ * Applies drone control forces before every internal Bullet substep, so
+ * control runs at the physics rate instead of once per outer frame.
+ *
+ * Before each substep the plug-in DroneControllers compute control inputs
+ * in parallel chunks, and the flight controller does the same for the
+ * drones it drives. Motor mixing, the motor/battery model, the aero model
+ * and rotor downwash then run over the whole DroneState in one pass each.
+ * Last, every awake drone applies its rotor thrusts and external forces;
+ * only this step touches Bullet, and it stays on this thread.
+ *
+ * After each substep the awake drones' poses are pulled back into
+ * DroneState, so batch code always sees the state Bullet just produced, and
+ * the sensors that are due sample it.
+ */
+public class DroneControlTickListener implements PhysicsTickListener {
+
+    private final SimulationEngine engine;
+
+    private long substepCount = 0;
+
+    public DroneControlTickListener(SimulationEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+        if (engine.isPaused()) {
+            return;
+        }
+
+        // Dormant drones are disarmed, so there is nothing to apply
+        List<Drone> drones = engine.getAwakeDrones();
+        int n = drones.size();
+        if (n == 0) {
+            return;
+        }
+
+        DroneState state = engine.getDroneState();
+        engine.getControllerScheduler().run(state, drones, timeStep);
+        engine.getFlightController().update(state, timeStep);
+
+        // Drones with the common rotor layout share the store's mixer, so one
+        // pass mixes them all. Only drones built with another layout (none
+        // unless hasMixedLayouts()) get re-mixed with their own.
+        RotorMixer batchMixer = state.getRotorMixer();
+        if (batchMixer == null) {
+            return;
+        }
+        batchMixer.mix(0, state.size(), state.getThrottle(), state.getPitch(), state.getRoll(), state.getYaw(),
+                state.getRotorCommand(), state.getYawTorque());
+
+        if (state.hasMixedLayouts()) {
+            for (int i = 0; i < n; i++) {
+                Drone drone = drones.get(i);
+                RotorMixer mixer = drone.getRotorMixer();
+                if (mixer != batchMixer && mixer != null) {
+                    int id = drone.getId();
+                    mixer.mix(id, id + 1, state.getThrottle(), state.getPitch(), state.getRoll(), state.getYaw(),
+                            state.getRotorCommand(), state.getYawTorque());
+                }
+            }
+        }
+
+        engine.getMotorModel().update(0, state.size(), state, timeStep);
+        engine.getAeroModel().advance(timeStep);
+        engine.getAeroModel().update(0, state.size(), state);
+        engine.getDownwashModel().update(state);
+
+        for (int i = 0; i < n; i++) {
+            drones.get(i).applyRotorForces();
+        }
+    }
+
+    @Override
+    public void physicsTick(PhysicsSpace space, float timeStep) {
+        substepCount++;
+
+        List<Drone> drones = engine.getAwakeDrones();
+        for (int i = 0, n = drones.size(); i < n; i++) {
+            drones.get(i).pullState();
+        }
+
+        if (!engine.isPaused()) {
+            engine.getSensors().update(engine.getDroneState(), timeStep);
+        }
+    }
+
+    /**
+     * Number of internal substeps run so far (handy for checking the real
+     * physics rate against the frame rate).
+     */
+    public long getSubstepCount() {
+        return substepCount;
+    }
+}
@@ -0,0 +1,171 @@
+package com.paperpiper.simulation;
+
+import java.util.ArrayDeque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jme3.math.Vector3f;
+import com.paperpiper.drone.Drone;
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.physics.PhysicsWorld;
+
+/**
+ * Pool of fully initialized drones (model, GPU meshes, collision shape and
+ * rigid body) so spawning and retiring drones doesn't re-import the model or
+ * allocate native/GPU objects mid-run.
+ *
+ * Idle drones are kept out of the PhysicsSpace. acquire() resets one with
+ * Drone.reset and puts its body back; release() takes it out again. The pool
+ * is filled with warmUpSize drones up front and keeps at most highWaterMark
+ * idle drones, anything released beyond that is destroyed.
+ *
+ * Must be used from the GL thread since creating a drone uploads its meshes,
+ * unless the pool is physics-only (drones built with Drone.initPhysicsOnly,
+ * for tests and headless runs).
+ */
+public class DronePool {
+
+    private static final Logger logger = LoggerFactory.getLogger(DronePool.class);
+
+    private final PhysicsWorld physicsWorld;
+    private final DroneState droneState;
+    private final int warmUpSize;
+    private final int highWaterMark;
+    private final boolean physicsOnly;
+    private final ArrayDeque<Drone> idle;
+
+    private boolean collisionShapesVisible = false;
+
+    private int created = 0;
+    private int destroyed = 0;
+
+    public DronePool(PhysicsWorld physicsWorld, DroneState droneState, int warmUpSize, int highWaterMark) {
+        this(physicsWorld, droneState, warmUpSize, highWaterMark, false);
+    }
+
+    /**
+     * @param physicsOnly build drones without a model or GPU meshes
+     */
+    public DronePool(PhysicsWorld physicsWorld, DroneState droneState, int warmUpSize, int highWaterMark,
+            boolean physicsOnly) {
+        if (warmUpSize < 0 || highWaterMark < warmUpSize) {
+            throw new IllegalArgumentException("Need 0 <= warmUpSize <= highWaterMark, got "
+                    + warmUpSize + " and " + highWaterMark);
+        }
+        this.physicsWorld = physicsWorld;
+        this.droneState = droneState;
+        this.warmUpSize = warmUpSize;
+        this.highWaterMark = highWaterMark;
+        this.physicsOnly = physicsOnly;
+        this.idle = new ArrayDeque<>(highWaterMark);
+    }
+
+    /**
+     * Create warmUpSize drones ahead of time. Call once at startup, after the
+     * physics world (and GL context) exist.
+     */
+    public void warmUp() {
+        long start = System.nanoTime();
+        Vector3f parking = new Vector3f();
+        for (int i = idle.size(); i < warmUpSize; i++) {
+            Drone drone = create(parking);
+            drone.removeFromWorld(physicsWorld);
+            idle.push(drone);
+        }
+        logger.info("Drone pool warmed up with {} drone(s) in {} ms",
+                idle.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Take a drone from the pool, reset it to the given position and add it to
+     * the physics world. Only allocates if the pool has run dry.
+     */
+    public Drone acquire(Vector3f position) {
+        Drone drone = idle.poll();
+        if (drone == null) {
+            logger.warn("Drone pool empty, creating a new drone (consider a bigger warm-up size)");
+            drone = create(position);
+        } else {
+            drone.reset(position);
+            drone.addToWorld(physicsWorld);
+        }
+        return drone;
+    }
+
+    /**
+     * Return a drone to the pool. Its body leaves the physics world; if the pool
+     * is already at its high-water mark the drone is destroyed instead.
+     */
+    public void release(Drone drone) {
+        drone.removeFromWorld(physicsWorld);
+        drone.reset(Vector3f.ZERO);
+
+        if (idle.size() < highWaterMark) {
+            idle.push(drone);
+        } else {
+            destroy(drone);
+        }
+    }
+
+    /**
+     * Match collision shape visibility on pooled drones so reused drones look
+     * the same as the ones already flying.
+     */
+    public void setCollisionShapesVisible(boolean visible) {
+        collisionShapesVisible = visible;
+        for (Drone drone : idle) {
+            drone.setCollisionShapesVisible(visible);
+        }
+    }
+
+    private Drone create(Vector3f position) {
+        Drone drone = new Drone(droneState);
+        if (physicsOnly) {
+            drone.initPhysicsOnly(physicsWorld, position);
+        } else {
+            drone.init(physicsWorld, position);
+            drone.setCollisionShapesVisible(collisionShapesVisible);
+        }
+        created++;
+        return drone;
+    }
+
+    private void destroy(Drone drone) {
+        drone.cleanup(physicsWorld);
+        if (drone.getModel() != null) {
+            drone.getModel().cleanup();
+        }
+        destroyed++;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getCreatedCount() {
+        return created;
+    }
+
+    public int getDestroyedCount() {
+        return destroyed;
+    }
+
+    public int getWarmUpSize() {
+        return warmUpSize;
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Destroy every idle drone. Drones currently in use are not tracked by the
+     * pool and must be cleaned up by their owner.
+     */
+    public void cleanup() {
+        while (!idle.isEmpty()) {
+            destroy(idle.pop());
+        }
+    }
+}
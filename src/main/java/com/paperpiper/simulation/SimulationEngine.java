@@ -1,5 +1,7 @@
 package com.paperpiper.simulation;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -8,11 +10,38 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jme3.math.Vector3f;
+import com.paperpiper.airspace.Geofence;
+import com.paperpiper.airspace.ReservationTable;
+import com.paperpiper.comms.RadioNetwork;
+import com.paperpiper.control.CollisionAvoidance;
+import com.paperpiper.control.DroneController;
+import com.paperpiper.control.FlightController;
+import com.paperpiper.control.SwarmController;
+import com.paperpiper.control.VelocityController;
+import com.paperpiper.drone.AeroModel;
 import com.paperpiper.drone.Drone;
+import com.paperpiper.drone.DownwashModel;
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.drone.MotorBatteryModel;
+import com.paperpiper.mission.TaskAllocator;
 import com.paperpiper.physics.PhysicsWorld;
+import com.paperpiper.planning.PlannerService;
+import com.paperpiper.render.FpvCameraArray;
 import com.paperpiper.render.Mesh;
 import com.paperpiper.render.MeshData;
 import com.paperpiper.render.Renderer;
+import com.paperpiper.sensor.CameraImage;
+import com.paperpiper.sensor.DepthCamera;
+import com.paperpiper.sensor.LidarSensor;
+import com.paperpiper.sensor.RayCastScene;
+import com.paperpiper.sensor.SensorSuite;
+import com.paperpiper.spatial.OccupancyOctree;
+import com.paperpiper.spatial.SpatialHash;
+import com.paperpiper.util.ParallelFor;
+import com.paperpiper.world.BuildingFootprint;
+import com.paperpiper.world.GeoJsonFootprintLoader;
+import com.paperpiper.world.StaticObstacleWorld;
+import com.paperpiper.world.WindField;
 
 /**
  * Main simulation engine that coordinates drones, physics, and rendering.
@@ -26,11 +55,39 @@ public class SimulationEngine {
     private List<Drone> drones;
     private Drone activeDrone;
 
+    // Per-drone state arrays shared by every drone (see Drone.getId())
+    private final DroneState droneState = new DroneState(256);
+
+    // Every drone is in exactly one of these. Dormant drones (parked and
+    // disarmed) skip control, CCD and matrix updates until they wake up.
+    private final List<Drone> awakeDrones = new ArrayList<>();
+    private final List<Drone> dormantDrones = new ArrayList<>();
+
+    // Pre-initialized drones for spawn/despawn churn. Sizes can be overridden
+    // with -Ddrone.pool.warmup and -Ddrone.pool.max
+    private DronePool dronePool;
+    private static final int DRONE_POOL_WARMUP = Integer.getInteger("drone.pool.warmup", 128);
+    private static final int DRONE_POOL_MAX = Integer.getInteger("drone.pool.max", 512);
+
     private Mesh droneMesh;
     private Mesh groundMesh;
     private Mesh testCubeMesh;
     private Matrix4f testCubeMatrix;
 
+    // Static buildings, loaded from -Dworld.footprints=<file.geojson>
+    private StaticObstacleWorld staticWorld;
+    private static final float STATIC_REGION_SIZE = 500.0f; // meters
+
+    // Path planning over an occupancy octree of the static geometry (-Dplan.cell m per leaf,
+    // -Dplan.clearance m kept from obstacles, -Dplan.threads workers)
+    private static final float PLAN_CELL = Float.parseFloat(System.getProperty("plan.cell", "2"));
+    private static final float PLAN_CLEARANCE = Float.parseFloat(System.getProperty("plan.clearance", "1.5"));
+    private static final int PLAN_THREADS = Integer.getInteger("plan.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private PlannerService planner;
+    private final Matrix4f staticWorldMatrix = new Matrix4f().identity(); // regions are already in world space
+    private final org.joml.Vector3f buildingColor = new org.joml.Vector3f(0.6f, 0.6f, 0.65f);
+
     private final org.joml.Vector3f droneColor = new org.joml.Vector3f(0.2f, 0.6f, 0.9f);
     private final org.joml.Vector3f testCubeColor = new org.joml.Vector3f(1.0f, 0.3f, 0.3f); // Red
     private final org.joml.Vector3f groundColor1 = new org.joml.Vector3f(0.35f, 0.55f, 0.35f);
@@ -39,6 +96,82 @@ public class SimulationEngine {
 
     private final Matrix4f groundMatrix;
 
+    // Applies drone forces once per physics substep
+    private DroneControlTickListener controlListener;
+
+    // Attitude/rate controller, runs after the plug-in controllers
+    private final FlightController flightController = new FlightController();
+
+    // Motor lag and battery drain, between mixing and applying forces
+    private final MotorBatteryModel motorModel =
+            new MotorBatteryModel(Drone.MAX_ROTOR_THRUST, Drone.YAW_TORQUE_COEFFICIENT);
+
+    // Drag, ground effect and wind. Wind is off unless -Dwind.speed or
+    // -Dwind.gust (m/s) is set; -Dwind.heading is in degrees from +X to +Z.
+    private final WindField windField = new WindField(64, 16, 64, 8f,
+            Float.parseFloat(System.getProperty("wind.speed", "0")),
+            (float) Math.toRadians(Float.parseFloat(System.getProperty("wind.heading", "0"))),
+            Float.parseFloat(System.getProperty("wind.gust", "0")),
+            Long.getLong("wind.seed", 42L));
+    private final AeroModel aeroModel = new AeroModel(windField);
+
+    // Wake of drones above pushing down on drones below
+    private final DownwashModel downwashModel = new DownwashModel();
+
+    // Worker pool for the per-tick batch passes (-Dsim.threads, default one per core)
+    private final ParallelFor parallel = new ParallelFor(
+            Integer.getInteger("sim.threads", Runtime.getRuntime().availableProcessors()));
+
+    // Plug-in controllers, run in parallel chunks on the same pool inside the substeps
+    private final ControllerScheduler controllerScheduler = new ControllerScheduler(parallel);
+
+    // Noisy IMU/baro/GPS readings, reproducible for a given -Dsensor.seed
+    private final SensorSuite sensors = new SensorSuite(parallel, Long.getLong("sensor.seed", 1L));
+
+    // What ray-cast sensors see, and the lidars and CPU depth cameras mounted on drones
+    private final RayCastScene rayScene =
+            new RayCastScene(Drone.DRONE_WIDTH / 2f, Drone.DRONE_HEIGHT / 2f, Drone.DRONE_DEPTH / 2f);
+    private final List<LidarSensor> lidars = new ArrayList<>();
+    private final List<DepthCamera> depthCameras = new ArrayList<>();
+
+    // Who is near whom, rebuilt once per update from all drones (-Dneighbor.cell metres per cell)
+    private final SpatialHash neighborIndex =
+            new SpatialHash(Float.parseFloat(System.getProperty("neighbor.cell", "6")), 16384);
+    private int[] neighborIds = new int[256];
+
+    // Velocity setpoints -> attitude setpoints, fed by the swarm (boids + formations) and cleared by ORCA avoidance
+    private final VelocityController velocityController =
+            new VelocityController(flightController, Drone.DRONE_MASS * 9.81f / Drone.MAX_THRUST);
+    private final SwarmController swarmController = new SwarmController(velocityController, parallel);
+    private final CollisionAvoidance avoidance = new CollisionAvoidance(velocityController, parallel);
+
+    // Mission tasks auctioned to drones (-Dtasks.bundle tasks per drone at once)
+    private final TaskAllocator taskAllocator = new TaskAllocator(parallel, Integer.getInteger("tasks.bundle", 5));
+
+    // Keep-out zones, ceilings and corridors (-Dgeofence.margin m counts as a near breach,
+    // -Dgeofence.events breach/near events kept)
+    private final Geofence geofence = new Geofence(parallel,
+            Float.parseFloat(System.getProperty("geofence.margin", "10")), Integer.getInteger("geofence.events", 4096));
+
+    // Space-time airspace reservations for planned paths (-Dreserve.voxel m, -Dreserve.slot s,
+    // -Dreserve.horizon slots ahead, -Dreserve.bucket entries per slot, -Dreserve.speed m/s assumed cruise)
+    private final ReservationTable reservations = new ReservationTable(
+            Float.parseFloat(System.getProperty("reserve.voxel", "4")),
+            Float.parseFloat(System.getProperty("reserve.slot", "2")), Integer.getInteger("reserve.horizon", 64),
+            Integer.getInteger("reserve.bucket", 16384), Integer.getInteger("reserve.drones", 65536));
+
+    // Drone-to-drone radio (-Dradio.range m, -Dradio.outbox messages per tick, -Dradio.wheel ticks of
+    // latency, -Dradio.fanout receivers per message the wheel has room for on average)
+    private final RadioNetwork radio = new RadioNetwork(parallel,
+            Float.parseFloat(System.getProperty("radio.range", "50")), Integer.getInteger("radio.mailbox", 64),
+            Integer.getInteger("radio.outbox", 16384), Integer.getInteger("radio.wheel", 8),
+            Integer.getInteger("radio.fanout", 16));
+
+    // Per-drone FPV cameras, rendered offscreen (-Dfpv.width/height, -Dfpv.perFrame cameras per frame)
+    private final FpvCameraArray fpvCameras = new FpvCameraArray(Integer.getInteger("fpv.width", 160),
+            Integer.getInteger("fpv.height", 120), Integer.getInteger("fpv.perFrame", 32), FpvCameraArray.DEFAULT_FOV);
+    private final FpvCameraArray.SceneDrawer sceneDrawer = this::renderScene;
+
     private boolean paused = false;
     private float simulationTime = 0;
 
@@ -53,18 +186,17 @@ public class SimulationEngine {
      */
     public void init() {
         logger.info("Initializing simulation engine...");
-
-        physicsWorld.createGroundPlane();
-
-        // Add test cube (10x1x10) platform
-        // Half-extents of (5, 0.5, 5) = 10x1x10 cube, positioned at (0, 0.5, 0)
-        physicsWorld.createBox(new Vector3f(5.0f, 0.5f, 5.0f), 0f, new Vector3f(0f, 0.5f, 0f));
-        logger.info("Added test collision cube at (0, 0.5, 0)");
+        initPhysics(false);
 
         // Create render meshes
         groundMesh = Mesh.createPlane(10000f, 10000f);
         testCubeMesh = Mesh.createBox(10.0f, 1.0f, 10.0f); // 10x1x10 cube
         testCubeMatrix = new Matrix4f().identity().translate(0f, 0.5f, 0f);
+        if (staticWorld != null) {
+            staticWorld.createRenderMeshes();
+        }
+        dronePool.setCollisionShapesVisible(true); // Debug: show collision shapes
+        dronePool.warmUp();
 
         // Spawn 100 drones in a 10x10 grid
         int gridSize = 10;
@@ -81,10 +213,127 @@ public class SimulationEngine {
         }
 
         setActiveDrone(drones.get(0));
+        buildPlanner();
 
         logger.info("Simulation initialized with {} drone(s)", drones.size());
     }
 
+    /**
+     * Initialize everything but rendering: no GL context is needed, drones
+     * are built with Drone.initPhysicsOnly and none are spawned. For tests
+     * and headless runs; don't call render().
+     */
+    public void initPhysicsOnly() {
+        logger.info("Initializing simulation engine without rendering...");
+        initPhysics(true);
+        dronePool.warmUp();
+        buildPlanner();
+    }
+
+    private void initPhysics(boolean physicsOnly) {
+        physicsWorld.createGroundPlane();
+
+        // The flight controller runs once per substep, so the physics rate is
+        // its loop rate. Do this before any drone is built (CCD depends on it).
+        if (physicsWorld.getPhysicsTimeStep() > 1f / FlightController.MIN_RATE) {
+            physicsWorld.setPhysicsRate(FlightController.MIN_RATE);
+        }
+
+        // Turbulence grid fills in the background, drones get the mean wind until then
+        if (!windField.isCalm()) {
+            windField.startBuild();
+        }
+
+        controlListener = new DroneControlTickListener(this);
+        physicsWorld.addTickListener(controlListener);
+
+        // Add test cube (10x1x10) platform
+        // Half-extents of (5, 0.5, 5) = 10x1x10 cube, positioned at (0, 0.5, 0)
+        physicsWorld.createBox(new Vector3f(5.0f, 0.5f, 5.0f), 0f, new Vector3f(0f, 0.5f, 0f));
+        rayScene.addStaticBox(0f, 0.5f, 0f, 5.0f, 0.5f, 5.0f);
+        logger.info("Added test collision cube at (0, 0.5, 0)");
+
+        String footprintFile = System.getProperty("world.footprints");
+        if (footprintFile != null) {
+            loadStaticWorld(Path.of(footprintFile));
+        }
+
+        dronePool = new DronePool(physicsWorld, droneState, DRONE_POOL_WARMUP,
+                Math.max(DRONE_POOL_WARMUP, DRONE_POOL_MAX), physicsOnly);
+    }
+
+    /**
+     * Load building footprints and add them as static obstacles. The region
+     * BVHs are cached under cache/bvh (override with -Dworld.bvhCache).
+     */
+    public void loadStaticWorld(Path footprintFile) {
+        Path cacheDir = Path.of(System.getProperty("world.bvhCache", "cache/bvh"));
+        try {
+            List<BuildingFootprint> footprints = new GeoJsonFootprintLoader().load(footprintFile);
+            staticWorld = new StaticObstacleWorld(STATIC_REGION_SIZE, cacheDir);
+            staticWorld.build(footprints, physicsWorld);
+            for (StaticObstacleWorld.Region region : staticWorld.getRegions()) {
+                rayScene.addStaticMesh(region.getPositions(), region.getIndices());
+            }
+            if (planner != null) {
+                buildPlanner();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load building footprints from " + footprintFile, e);
+        }
+    }
+
+    public StaticObstacleWorld getStaticWorld() {
+        return staticWorld;
+    }
+
+    /**
+     * Rasterize the static geometry into the planning octree (covering it
+     * plus a margin, and at least the area around the spawn) and start the
+     * planner workers on it.
+     */
+    private void buildPlanner() {
+        long start = System.nanoTime();
+        float minX = -512f, minZ = -512f, maxX = 512f, maxZ = 512f, maxY = 600f;
+        if (staticWorld != null) {
+            for (StaticObstacleWorld.Region region : staticWorld.getRegions()) {
+                float[] positions = region.getPositions();
+                for (int i = 0; i < positions.length; i += 3) {
+                    minX = Math.min(minX, positions[i] - 100f);
+                    maxX = Math.max(maxX, positions[i] + 100f);
+                    maxY = Math.max(maxY, positions[i + 1] + 100f);
+                    minZ = Math.min(minZ, positions[i + 2] - 100f);
+                    maxZ = Math.max(maxZ, positions[i + 2] + 100f);
+                }
+            }
+        }
+        OccupancyOctree map = OccupancyOctree.covering(minX, 0f, minZ, maxX, maxY, maxZ, PLAN_CELL, PLAN_CLEARANCE);
+        map.addBox(0f, 0.5f, 0f, 5.0f, 0.5f, 5.0f); // test cube
+        if (staticWorld != null) {
+            for (StaticObstacleWorld.Region region : staticWorld.getRegions()) {
+                map.addMesh(region.getPositions(), region.getIndices());
+            }
+        }
+
+        if (planner != null) {
+            planner.shutdown();
+        }
+        planner = new PlannerService(map, PLAN_THREADS, Integer.getInteger("plan.nodes", 100_000),
+                Integer.getInteger("plan.cache", 1024), Integer.getInteger("plan.queue", 4096));
+        planner.setReservations(reservations, Float.parseFloat(System.getProperty("reserve.speed", "10")));
+        logger.info("Planning octree {}^3 cells @ {} m: {} nodes, {} occupied leaves, took {} ms",
+                map.getResolution(), PLAN_CELL, map.getNodeCount(), map.getOccupiedLeaves(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Path planning for drones: request() paths, read them with getPath()
+     * after a later update.
+     */
+    public PlannerService getPlanner() {
+        return planner;
+    }
+
     /**
      * Update simulation
      */
@@ -94,10 +343,88 @@ public class SimulationEngine {
         }
 
         simulationTime += deltaTime;
+        reservations.advance(simulationTime);
+
+        // Drone forces are applied per substep by controlListener, not here.
+
+        // Wake dormant drones that were armed or hit. Iterate backwards so
+        // swap-removal doesn't skip anything.
+        for (int i = dormantDrones.size() - 1; i >= 0; i--) {
+            Drone drone = dormantDrones.get(i);
+            if (drone.wakeIfDisturbed()) {
+                swapRemove(dormantDrones, i);
+                awakeDrones.add(drone);
+                controllerScheduler.markDirty();
+            }
+        }
 
-        for (Drone drone : drones) {
-            drone.update(deltaTime);
+        for (int i = awakeDrones.size() - 1; i >= 0; i--) {
+            Drone drone = awakeDrones.get(i);
+            drone.updateCcd();
+            if (drone.updateDormancy()) {
+                swapRemove(awakeDrones, i);
+                dormantDrones.add(drone);
+                controllerScheduler.markDirty();
+            }
+        }
+
+        if (planner != null) {
+            planner.collect();
         }
+
+        rebuildNeighborIndex();
+        radio.tick(droneState, neighborIds, drones.size(), deltaTime);
+        geofence.check(droneState, neighborIds, drones.size());
+
+        // New tasks and tasks of removed drones get auctioned as they come
+        if (taskAllocator.hasChanges()) {
+            taskAllocator.reallocate(droneState);
+        }
+
+        // Swarm, avoidance and velocity loops run at the update rate, the attitude loop per substep
+        swarmController.update(droneState, neighborIndex, deltaTime);
+        avoidance.update(droneState, neighborIndex, neighborIds, drones.size(), deltaTime);
+        velocityController.update(droneState, deltaTime);
+
+        // Lidar scans and depth images (each at its own rate) share one refresh of the drone poses
+        boolean sceneRefreshed = false;
+        for (int i = 0, n = lidars.size(); i < n; i++) {
+            LidarSensor lidar = lidars.get(i);
+            if (lidar.advance(deltaTime)) {
+                if (!sceneRefreshed) {
+                    rayScene.refreshDynamic(droneState, neighborIds, drones.size());
+                    sceneRefreshed = true;
+                }
+                lidar.scan(droneState, rayScene, parallel);
+            }
+        }
+        for (int i = 0, n = depthCameras.size(); i < n; i++) {
+            DepthCamera camera = depthCameras.get(i);
+            if (camera.advance(deltaTime)) {
+                if (!sceneRefreshed) {
+                    rayScene.refreshDynamic(droneState, neighborIds, drones.size());
+                    sceneRefreshed = true;
+                }
+                camera.scan(droneState, rayScene, parallel);
+            }
+        }
+    }
+
+    private void rebuildNeighborIndex() {
+        int n = drones.size();
+        if (neighborIds.length < n) {
+            neighborIds = new int[Math.max(n, neighborIds.length * 2)];
+        }
+        for (int i = 0; i < n; i++) {
+            neighborIds[i] = drones.get(i).getId();
+        }
+        neighborIndex.rebuild(droneState.getPosition(), neighborIds, n, parallel);
+    }
+
+    private static void swapRemove(List<Drone> list, int index) {
+        int last = list.size() - 1;
+        list.set(index, list.get(last));
+        list.remove(last);
     }
 
     /**
@@ -105,53 +432,98 @@ public class SimulationEngine {
      */
     public void render(Renderer renderer) {
 
+        // No-op for dormant drones, they keep their cached matrices
+        for (Drone drone : drones) {
+            drone.updateRenderCache();
+        }
+
+        // FPV cameras first, into their own framebuffers
+        fpvCameras.render(renderer, droneState, sceneDrawer);
+
         renderer.updateProjection(1280, 720);
 
         renderer.render();
 
+        renderScene(renderer, -1);
+
+        renderer.endRender();
+    }
+
+    /**
+     * Draw the world with the renderer's current view, skipping one drone
+     * (the one an FPV camera sits on), or none with -1.
+     */
+    private void renderScene(Renderer renderer, int hiddenDroneId) {
         renderer.renderGround(groundMesh, groundMatrix, groundColor1, groundColor2, checkerScale);
 
         // Render test cube
         renderer.renderMesh(testCubeMesh, testCubeMatrix, testCubeColor);
 
-        for (Drone drone : drones) {
-            if (drone.getModel() != null) {
-
-                for (MeshData meshData : drone.getModel().getMeshesWithTransforms()) {
-                    // Combine drone's model matrix with mesh's local transform
-                    Matrix4f combinedMatrix = new Matrix4f(drone.getModelMatrix()).mul(meshData.getLocalTransform());
-
-                    // Render collision debug boxes with 50% transparency
-                    String meshName = meshData.getMesh().getMeshName();
-                    if (meshName != null && (meshName.startsWith("debug_collision_") || meshName.startsWith("collision_"))) {
-                        renderer.renderMesh(meshData.getMesh(), combinedMatrix, meshData.getColor(), 0.5f);
-                    } else {
-                        renderer.renderMesh(meshData.getMesh(), combinedMatrix, meshData.getColor());
-                    }
+        // Render static buildings, one draw per region
+        if (staticWorld != null) {
+            for (StaticObstacleWorld.Region region : staticWorld.getRegions()) {
+                if (region.getRenderMesh() != null) {
+                    renderer.renderMesh(region.getRenderMesh(), staticWorldMatrix, buildingColor);
                 }
             }
         }
 
-        renderer.endRender();
+        for (int d = 0, n = drones.size(); d < n; d++) {
+            Drone drone = drones.get(d);
+            if (drone.getModel() != null && drone.getId() != hiddenDroneId) {
+                List<MeshData> meshes = drone.getModel().getMeshesWithTransforms();
+                Matrix4f[] meshMatrices = drone.getMeshMatrices();
+                float[] meshAlphas = drone.getMeshAlphas();
+                for (int i = 0; i < meshMatrices.length; i++) {
+                    MeshData meshData = meshes.get(i);
+                    renderer.renderMesh(meshData.getMesh(), meshMatrices[i], meshData.getColor(), meshAlphas[i]);
+                }
+            }
+        }
     }
 
     /**
      * Add a new drone to the simulation
      */
     public Drone addDrone(Vector3f position) {
-        Drone drone = new Drone();
-        drone.init(physicsWorld, position);
-        drone.setCollisionShapesVisible(true); // Debug: show collision shapes
+        Drone drone = dronePool.acquire(position);
         drones.add(drone);
+        awakeDrones.add(drone);
+        controllerScheduler.markDirty();
+        sensors.reset(drone.getId(), droneState);
         return drone;
     }
 
     /**
-     * Remove a drone from the simulation
+     * Remove a drone from the simulation. The drone goes back to the pool, so
+     * callers must not keep using it.
      */
     public void removeDrone(Drone drone) {
-        drone.cleanup(physicsWorld);
-        drones.remove(drone);
+        if (!drones.remove(drone)) {
+            return;
+        }
+        if (!awakeDrones.remove(drone)) {
+            dormantDrones.remove(drone);
+        }
+        controllerScheduler.setController(drone.getId(), null);
+        swarmController.removeMember(drone.getId());
+        velocityController.setEnabled(drone.getId(), false);
+        radio.clearMailbox(drone.getId());
+        taskAllocator.removeAgent(drone.getId());
+        geofence.forget(drone.getId());
+        // Cancel first so no planner worker can reserve for the drone after the release
+        if (planner != null) {
+            planner.cancel(drone.getId());
+        }
+        reservations.release(drone.getId());
+        fpvCameras.detach(drone.getId());
+        for (int i = 0, n = lidars.size(); i < n; i++) {
+            lidars.get(i).detach(drone.getId());
+        }
+        for (int i = 0, n = depthCameras.size(); i < n; i++) {
+            depthCameras.get(i).detach(drone.getId());
+        }
+        dronePool.release(drone);
         if (activeDrone == drone) {
             activeDrone = drones.isEmpty() ? null : drones.get(0);
         }
@@ -180,6 +552,153 @@ public class SimulationEngine {
         return drones;
     }
 
+    public DroneState getDroneState() {
+        return droneState;
+    }
+
+    public FlightController getFlightController() {
+        return flightController;
+    }
+
+    public VelocityController getVelocityController() {
+        return velocityController;
+    }
+
+    public SwarmController getSwarmController() {
+        return swarmController;
+    }
+
+    public CollisionAvoidance getAvoidance() {
+        return avoidance;
+    }
+
+    public TaskAllocator getTaskAllocator() {
+        return taskAllocator;
+    }
+
+    public Geofence getGeofence() {
+        return geofence;
+    }
+
+    public ReservationTable getReservations() {
+        return reservations;
+    }
+
+    /**
+     * Arm a drone and let the swarm fly it; it takes the next formation slot.
+     */
+    public void addToSwarm(Drone drone) {
+        drone.setMotorsArmed(true);
+        swarmController.addMember(drone.getId());
+    }
+
+    public void removeFromSwarm(Drone drone) {
+        swarmController.removeMember(drone.getId());
+    }
+
+    /**
+     * Hand a drone's control inputs to a controller (null to go back to
+     * setting them directly).
+     */
+    public void setController(Drone drone, DroneController controller) {
+        controllerScheduler.setController(drone.getId(), controller);
+    }
+
+    public MotorBatteryModel getMotorModel() {
+        return motorModel;
+    }
+
+    public AeroModel getAeroModel() {
+        return aeroModel;
+    }
+
+    public DownwashModel getDownwashModel() {
+        return downwashModel;
+    }
+
+    public SensorSuite getSensors() {
+        return sensors;
+    }
+
+    public ParallelFor getParallel() {
+        return parallel;
+    }
+
+    /**
+     * Register a lidar; attach() it to the drones that carry it.
+     */
+    public void addLidar(LidarSensor lidar) {
+        lidars.add(lidar);
+    }
+
+    public void removeLidar(LidarSensor lidar) {
+        lidars.remove(lidar);
+    }
+
+    /**
+     * Register a CPU depth camera; attach() it to the drones that carry it.
+     */
+    public void addDepthCamera(DepthCamera camera) {
+        depthCameras.add(camera);
+    }
+
+    public void removeDepthCamera(DepthCamera camera) {
+        depthCameras.remove(camera);
+    }
+
+    /**
+     * Mount an FPV camera on a drone. The image is refreshed in place, one
+     * rendered frame behind; see FpvCameraArray.
+     */
+    public CameraImage attachFpvCamera(Drone drone) {
+        return fpvCameras.attach(drone.getId());
+    }
+
+    public void detachFpvCamera(Drone drone) {
+        fpvCameras.detach(drone.getId());
+    }
+
+    public FpvCameraArray getFpvCameras() {
+        return fpvCameras;
+    }
+
+    /**
+     * Spatial index of every drone (ids into getDroneState()) as of the last
+     * update(). Use queryRadius()/queryNearest() instead of looping over
+     * getDrones().
+     */
+    public SpatialHash getNeighborIndex() {
+        return neighborIndex;
+    }
+
+    public RadioNetwork getRadio() {
+        return radio;
+    }
+
+    public RayCastScene getRayScene() {
+        return rayScene;
+    }
+
+    /** Runs drone control before, and pulls drone state after, every physics substep */
+    public DroneControlTickListener getControlListener() {
+        return controlListener;
+    }
+
+    public ControllerScheduler getControllerScheduler() {
+        return controllerScheduler;
+    }
+
+    /**
+     * Drones that are not dormant. This is what the per-tick loops iterate.
+     */
+    public List<Drone> getAwakeDrones() {
+        return awakeDrones;
+    }
+
+    public int getDormantDroneCount() {
+        return dormantDrones.size();
+    }
+
     /**
      * Pause/unpause simulation
      */
@@ -208,6 +727,8 @@ public class SimulationEngine {
     public void reset() {
         logger.info("Resetting simulation...");
         simulationTime = 0;
+        reservations.clear();
+        reservations.advance(0);
 
         int i = 0;
         for (Drone drone : drones) {
@@ -220,25 +741,47 @@ public class SimulationEngine {
      * Toggle collision shape visualization for all drones.
      */
     public void toggleCollisionShapesVisible() {
+        boolean newState = false;
         for (Drone drone : drones) {
-            boolean newState = !drone.isCollisionShapesVisible();
+            newState = !drone.isCollisionShapesVisible();
             drone.setCollisionShapesVisible(newState);
         }
+        if (dronePool != null) {
+            dronePool.setCollisionShapesVisible(newState);
+        }
     }
 
     public void cleanup() {
         logger.info("Cleaning up simulation...");
 
+        if (controlListener != null) {
+            physicsWorld.removeTickListener(controlListener);
+        }
+        parallel.shutdown();
+
         for (Drone drone : drones) {
             drone.cleanup(physicsWorld);
         }
         drones.clear();
+        awakeDrones.clear();
+        dormantDrones.clear();
+
+        if (dronePool != null) {
+            dronePool.cleanup();
+        }
 
+        if (staticWorld != null) {
+            staticWorld.cleanup(physicsWorld);
+        }
         if (droneMesh != null) {
             droneMesh.cleanup();
         }
         if (groundMesh != null) {
             groundMesh.cleanup();
         }
+        fpvCameras.cleanup();
+        if (planner != null) {
+            planner.shutdown();
+        }
     }
 }
@@ -0,0 +1,312 @@
+package com.paperpiper.spatial;
+
+import java.util.Arrays;
+
+/**
+ * Sparse occupancy octree over a cube of 2^depth leaf cells per side. Only
+ * the branches that touch geometry are subdivided, so open sky costs nothing
+ * and a city block costs roughly its surface area in leaves.
+ *
+ * Nodes live in one flat int array, 8 child slots per node:
+ *   0   empty (free all the way down)
+ *   -1  occupied (leaf, or a branch whose 8 children were all occupied)
+ *   >0  index of the child node
+ *
+ * Geometry is inflated by a clearance while inserting (a cell is occupied if
+ * the triangle comes within clearance of it, per axis), so planners can treat
+ * drones as points. The ground (below the cube's bottom + clearance) and
+ * anything outside the cube count as blocked.
+ *
+ * Building is single-threaded; once built, queries are read-only and safe
+ * from any number of threads.
+ */
+public class OccupancyOctree {
+
+    private static final int FULL = -1;
+
+    private final float originX, originY, originZ;
+    private final float cellSize;
+    private final int depth;
+    private final int cells;        // per side, 2^depth
+    private final float clearance;
+    private final int floorCells;   // rows above the bottom that count as ground
+
+    private int[] children = new int[8 * 1024];
+    private int nodeCount = 1;      // node 0 is the root
+    private int occupiedLeaves = 0;
+
+    /**
+     * @param depth     levels below the root; the cube is cellSize * 2^depth per side
+     * @param clearance m of inflation around geometry and above the ground
+     */
+    public OccupancyOctree(float originX, float originY, float originZ, float cellSize, int depth, float clearance) {
+        if (depth < 1 || depth > 20) {
+            throw new IllegalArgumentException("Octree depth must be 1..20, got " + depth);
+        }
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.cellSize = cellSize;
+        this.depth = depth;
+        this.cells = 1 << depth;
+        this.clearance = clearance;
+        this.floorCells = (int) Math.ceil(clearance / cellSize);
+    }
+
+    /**
+     * Smallest octree with cells of cellSize that covers the box, with its
+     * bottom on minY (the ground).
+     */
+    public static OccupancyOctree covering(float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+            float cellSize, float clearance) {
+        float extent = Math.max(Math.max(maxX - minX, maxZ - minZ), maxY - minY);
+        int depth = 1;
+        while (cellSize * (1 << depth) < extent) {
+            depth++;
+        }
+        float side = cellSize * (1 << depth);
+        float cx = (minX + maxX) * 0.5f, cz = (minZ + maxZ) * 0.5f;
+        return new OccupancyOctree(cx - side * 0.5f, minY, cz - side * 0.5f, cellSize, depth, clearance);
+    }
+
+    /**
+     * Mark every cell within clearance of the mesh's triangles.
+     */
+    public void addMesh(float[] positions, int[] indices) {
+        float[] triangle = new float[9];
+        for (int t = 0; t < indices.length; t += 3) {
+            for (int v = 0; v < 3; v++) {
+                int p = indices[t + v] * 3;
+                triangle[v * 3] = positions[p];
+                triangle[v * 3 + 1] = positions[p + 1];
+                triangle[v * 3 + 2] = positions[p + 2];
+            }
+            insertTriangle(0, depth, 0, 0, 0, triangle);
+        }
+    }
+
+    /**
+     * Mark a solid axis-aligned box (plus clearance).
+     */
+    public void addBox(float cx, float cy, float cz, float hx, float hy, float hz) {
+        float[] box = {
+                cx - hx - clearance, cy - hy - clearance, cz - hz - clearance,
+                cx + hx + clearance, cy + hy + clearance, cz + hz + clearance
+        };
+        insertBox(0, depth, 0, 0, 0, box);
+    }
+
+    private void insertTriangle(int node, int level, int ix, int iy, int iz, float[] triangle) {
+        int half = 1 << (level - 1);
+        for (int child = 0; child < 8; child++) {
+            int slot = node * 8 + child;
+            if (children[slot] == FULL) {
+                continue;
+            }
+            int cx = ix + ((child & 1) != 0 ? half : 0);
+            int cy = iy + ((child & 2) != 0 ? half : 0);
+            int cz = iz + ((child & 4) != 0 ? half : 0);
+            // Child box, grown by the clearance
+            float size = half * cellSize;
+            float minX = originX + cx * cellSize, minY = originY + cy * cellSize, minZ = originZ + cz * cellSize;
+            float e = size * 0.5f + clearance;
+            if (!triangleOverlapsBox(triangle, minX + size * 0.5f, minY + size * 0.5f, minZ + size * 0.5f, e)) {
+                continue;
+            }
+            if (half == 1) {
+                children[slot] = FULL;
+                occupiedLeaves++;
+            } else {
+                insertTriangle(childNode(slot), level - 1, cx, cy, cz, triangle);
+                collapseIfFull(slot);
+            }
+        }
+    }
+
+    private void insertBox(int node, int level, int ix, int iy, int iz, float[] box) {
+        int half = 1 << (level - 1);
+        for (int child = 0; child < 8; child++) {
+            int slot = node * 8 + child;
+            if (children[slot] == FULL) {
+                continue;
+            }
+            int cx = ix + ((child & 1) != 0 ? half : 0);
+            int cy = iy + ((child & 2) != 0 ? half : 0);
+            int cz = iz + ((child & 4) != 0 ? half : 0);
+            float size = half * cellSize;
+            float minX = originX + cx * cellSize, minY = originY + cy * cellSize, minZ = originZ + cz * cellSize;
+            if (minX > box[3] || minX + size < box[0] || minY > box[4] || minY + size < box[1]
+                    || minZ > box[5] || minZ + size < box[2]) {
+                continue;
+            }
+            boolean inside = minX >= box[0] && minX + size <= box[3] && minY >= box[1] && minY + size <= box[4]
+                    && minZ >= box[2] && minZ + size <= box[5];
+            if (half == 1 || inside) {
+                // Whole child covered; drop whatever was below it
+                children[slot] = FULL;
+                occupiedLeaves += half * half * half;
+            } else {
+                insertBox(childNode(slot), level - 1, cx, cy, cz, box);
+                collapseIfFull(slot);
+            }
+        }
+    }
+
+    /** Child node behind a slot, created empty if needed */
+    private int childNode(int slot) {
+        int node = children[slot];
+        if (node > 0) {
+            return node;
+        }
+        if ((nodeCount + 1) * 8 > children.length) {
+            children = Arrays.copyOf(children, children.length * 2);
+        }
+        node = nodeCount++;
+        children[slot] = node;
+        return node;
+    }
+
+    /** Replace a branch whose children are all occupied with one FULL slot (its node is left unused) */
+    private void collapseIfFull(int slot) {
+        int node = children[slot];
+        for (int i = 0; i < 8; i++) {
+            if (children[node * 8 + i] != FULL) {
+                return;
+            }
+        }
+        children[slot] = FULL;
+    }
+
+    /**
+     * Triangle vs. cube overlap (separating axis test, Akenine-Moller):
+     * box axes, triangle normal and the 9 edge cross products.
+     */
+    private static boolean triangleOverlapsBox(float[] t, float cx, float cy, float cz, float e) {
+        float v0x = t[0] - cx, v0y = t[1] - cy, v0z = t[2] - cz;
+        float v1x = t[3] - cx, v1y = t[4] - cy, v1z = t[5] - cz;
+        float v2x = t[6] - cx, v2y = t[7] - cy, v2z = t[8] - cz;
+
+        // Box axes
+        if (Math.min(v0x, Math.min(v1x, v2x)) > e || Math.max(v0x, Math.max(v1x, v2x)) < -e
+                || Math.min(v0y, Math.min(v1y, v2y)) > e || Math.max(v0y, Math.max(v1y, v2y)) < -e
+                || Math.min(v0z, Math.min(v1z, v2z)) > e || Math.max(v0z, Math.max(v1z, v2z)) < -e) {
+            return false;
+        }
+
+        float e0x = v1x - v0x, e0y = v1y - v0y, e0z = v1z - v0z;
+        float e1x = v2x - v1x, e1y = v2y - v1y, e1z = v2z - v1z;
+        float e2x = v0x - v2x, e2y = v0y - v2y, e2z = v0z - v2z;
+
+        // Triangle plane
+        float nx = e0y * e1z - e0z * e1y, ny = e0z * e1x - e0x * e1z, nz = e0x * e1y - e0y * e1x;
+        float d = nx * v0x + ny * v0y + nz * v0z;
+        float r = e * (Math.abs(nx) + Math.abs(ny) + Math.abs(nz));
+        if (Math.abs(d) > r) {
+            return false;
+        }
+
+        // Edge x box axis
+        return axis(e0x, e0y, e0z, v0x, v0y, v0z, v1x, v1y, v1z, v2x, v2y, v2z, e)
+                && axis(e1x, e1y, e1z, v0x, v0y, v0z, v1x, v1y, v1z, v2x, v2y, v2z, e)
+                && axis(e2x, e2y, e2z, v0x, v0y, v0z, v1x, v1y, v1z, v2x, v2y, v2z, e);
+    }
+
+    /** The three axes edge x (1,0,0), edge x (0,1,0), edge x (0,0,1); false if any separates */
+    private static boolean axis(float ex, float ey, float ez, float v0x, float v0y, float v0z,
+            float v1x, float v1y, float v1z, float v2x, float v2y, float v2z, float e) {
+        // edge x X = (0, ez, -ey)
+        float p0 = ez * v0y - ey * v0z, p1 = ez * v1y - ey * v1z, p2 = ez * v2y - ey * v2z;
+        float r = e * (Math.abs(ez) + Math.abs(ey));
+        if (Math.min(p0, Math.min(p1, p2)) > r || Math.max(p0, Math.max(p1, p2)) < -r) {
+            return false;
+        }
+        // edge x Y = (-ez, 0, ex)
+        p0 = -ez * v0x + ex * v0z;
+        p1 = -ez * v1x + ex * v1z;
+        p2 = -ez * v2x + ex * v2z;
+        r = e * (Math.abs(ez) + Math.abs(ex));
+        if (Math.min(p0, Math.min(p1, p2)) > r || Math.max(p0, Math.max(p1, p2)) < -r) {
+            return false;
+        }
+        // edge x Z = (ey, -ex, 0)
+        p0 = ey * v0x - ex * v0y;
+        p1 = ey * v1x - ex * v1y;
+        p2 = ey * v2x - ex * v2y;
+        r = e * (Math.abs(ey) + Math.abs(ex));
+        return !(Math.min(p0, Math.min(p1, p2)) > r || Math.max(p0, Math.max(p1, p2)) < -r);
+    }
+
+    /**
+     * True if a leaf cell can't be flown through: occupied, ground or outside
+     * the cube.
+     */
+    public boolean isBlocked(int ix, int iy, int iz) {
+        if (ix < 0 || iy < floorCells || iz < 0 || ix >= cells || iy >= cells || iz >= cells) {
+            return true;
+        }
+        int node = 0;
+        for (int level = depth - 1; level >= 0; level--) {
+            int child = ((ix >> level) & 1) | (((iy >> level) & 1) << 1) | (((iz >> level) & 1) << 2);
+            int next = children[node * 8 + child];
+            if (next == 0) {
+                return false;
+            }
+            if (next == FULL) {
+                return true;
+            }
+            node = next;
+        }
+        return true;
+    }
+
+    public boolean isBlocked(float x, float y, float z) {
+        return isBlocked(cellX(x), cellY(y), cellZ(z));
+    }
+
+    public int cellX(float x) {
+        return (int) Math.floor((x - originX) / cellSize);
+    }
+
+    public int cellY(float y) {
+        return (int) Math.floor((y - originY) / cellSize);
+    }
+
+    public int cellZ(float z) {
+        return (int) Math.floor((z - originZ) / cellSize);
+    }
+
+    /** Center of a cell along each axis */
+    public float centerX(int ix) {
+        return originX + (ix + 0.5f) * cellSize;
+    }
+
+    public float centerY(int iy) {
+        return originY + (iy + 0.5f) * cellSize;
+    }
+
+    public float centerZ(int iz) {
+        return originZ + (iz + 0.5f) * cellSize;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /** Cells per side */
+    public int getResolution() {
+        return cells;
+    }
+
+    public float getClearance() {
+        return clearance;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /** Occupied leaf cells, roughly (a box over partly occupied space counts some twice) */
+    public int getOccupiedLeaves() {
+        return occupiedLeaves;
+    }
+}
@@ -0,0 +1,516 @@
+package com.paperpiper.spatial;
+
+import java.util.Arrays;
+
+/**
+ * R-tree over axis-aligned boxes, one per integer item id (ids are small and
+ * dense, like drone or zone ids).
+ *
+ * load() and repack() build the tree bottom-up with Sort-Tile-Recursive
+ * packing: sort by x center, cut into vertical slices, sort each slice by z
+ * center and fill nodes to the brim. That gives full nodes with little
+ * overlap, much better than inserting one by one.
+ *
+ * insert(), remove() and update() then edit the packed tree in place:
+ * insert descends by least enlargement and splits an overflowing node in
+ * half along its longest axis, remove takes the item out of its leaf (found
+ * through a per-id back pointer) and drops emptied nodes. Bounds along the
+ * path are recomputed, nothing else moves. Underfull nodes are left alone,
+ * so after many edits a repack() pays off again; getEditsSincePack() says
+ * when.
+ *
+ * Nodes and item boxes live in flat arrays. Edits belong to one thread;
+ * queries are read-only and safe from any number of threads between edits.
+ */
+public class RTree {
+
+    private final int maxEntries;
+    private final int stride;          // entry slots per node: one extra while overflowing
+
+    // Nodes
+    private float[] bounds = new float[0];   // minX, minY, minZ, maxX, maxY, maxZ per node
+    private int[] entries = new int[0];      // child node ids or item ids
+    private int[] entryCount = new int[0];
+    private boolean[] leaf = new boolean[0];
+    private int[] parent = new int[0];       // -1 for the root
+    private int nodeCount = 0;
+    private int[] freeNodes = new int[0];
+    private int freeNodeCount = 0;
+    private int root = -1;
+
+    // Items
+    private float[] itemBox = new float[0];
+    private int[] itemLeaf = new int[0];     // -1 = not in the tree
+    private int itemCount = 0;
+    private int edits = 0;
+
+    // Packing scratch
+    private long[] sortKeys = new long[0];
+    private int[] level = new int[0];
+    private int[] nextLevel = new int[0];
+
+    public RTree(int maxEntries) {
+        if (maxEntries < 4) {
+            throw new IllegalArgumentException("R-tree nodes need at least 4 entries, got " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.stride = maxEntries + 1;
+    }
+
+    /**
+     * Insert an item, or move it if it is already in.
+     */
+    public void insert(int id, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        ensureItemCapacity(id + 1);
+        if (itemLeaf[id] >= 0) {
+            update(id, minX, minY, minZ, maxX, maxY, maxZ);
+            return;
+        }
+        setItemBox(id, minX, minY, minZ, maxX, maxY, maxZ);
+        itemCount++;
+        edits++;
+        if (root < 0) {
+            root = newNode(true, -1);
+        }
+
+        // Descend by least enlargement (then smallest volume)
+        int node = root;
+        while (!leaf[node]) {
+            int best = entries[node * stride];
+            float bestGrowth = Float.MAX_VALUE, bestVolume = Float.MAX_VALUE;
+            for (int i = 0; i < entryCount[node]; i++) {
+                int child = entries[node * stride + i];
+                float volume = volume(bounds, child * 6);
+                float growth = enlargedVolume(child, id) - volume;
+                if (growth < bestGrowth || (growth == bestGrowth && volume < bestVolume)) {
+                    best = child;
+                    bestGrowth = growth;
+                    bestVolume = volume;
+                }
+            }
+            node = best;
+        }
+        entries[node * stride + entryCount[node]++] = id;
+        itemLeaf[id] = node;
+        if (entryCount[node] > maxEntries) {
+            split(node);
+        } else {
+            refitUp(node);
+        }
+    }
+
+    /**
+     * Change an item's box. If it still fits its leaf only the box changes,
+     * otherwise it is reinserted.
+     */
+    public void update(int id, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if (id >= itemLeaf.length || itemLeaf[id] < 0) {
+            insert(id, minX, minY, minZ, maxX, maxY, maxZ);
+            return;
+        }
+        int node = itemLeaf[id];
+        int b = node * 6;
+        if (minX >= bounds[b] && minY >= bounds[b + 1] && minZ >= bounds[b + 2]
+                && maxX <= bounds[b + 3] && maxY <= bounds[b + 4] && maxZ <= bounds[b + 5]) {
+            // Leaf bounds may end up loose, which only costs a little pruning
+            setItemBox(id, minX, minY, minZ, maxX, maxY, maxZ);
+            edits++;
+            return;
+        }
+        remove(id);
+        insert(id, minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * Take an item out; no-op if it isn't in.
+     */
+    public void remove(int id) {
+        if (id >= itemLeaf.length || itemLeaf[id] < 0) {
+            return;
+        }
+        int node = itemLeaf[id];
+        itemLeaf[id] = -1;
+        itemCount--;
+        edits++;
+        removeEntry(node, id);
+
+        // Drop emptied nodes up the path
+        while (entryCount[node] == 0 && node != root) {
+            int up = parent[node];
+            removeEntry(up, node);
+            freeNode(node);
+            node = up;
+        }
+        if (entryCount[node] == 0) {
+            // Tree is empty
+            freeNode(root);
+            root = -1;
+            return;
+        }
+        refitUp(node);
+
+        // Shorten a root with a single child
+        while (!leaf[root] && entryCount[root] == 1) {
+            int child = entries[root * stride];
+            freeNode(root);
+            root = child;
+            parent[root] = -1;
+        }
+    }
+
+    /**
+     * Bulk load items ids[0..n) with boxes[id * 6 ..] (minX, minY, minZ,
+     * maxX, maxY, maxZ), replacing whatever was in the tree.
+     */
+    public void load(int[] ids, float[] boxes, int n) {
+        clear();
+        for (int i = 0; i < n; i++) {
+            int id = ids[i];
+            ensureItemCapacity(id + 1);
+            System.arraycopy(boxes, id * 6, itemBox, id * 6, 6);
+            itemLeaf[id] = 0; // mark present, pack() sets the real leaf
+        }
+        itemCount = n;
+        pack();
+    }
+
+    /**
+     * Rebuild the current items with STR packing.
+     */
+    public void repack() {
+        pack();
+    }
+
+    public void clear() {
+        Arrays.fill(itemLeaf, -1);
+        itemCount = 0;
+        nodeCount = 0;
+        freeNodeCount = 0;
+        root = -1;
+        edits = 0;
+    }
+
+    /**
+     * Items whose boxes overlap the query box.
+     *
+     * @param out   receives item ids; stops when full
+     * @param stack scratch, depth * maxEntries is plenty
+     * @return ids written
+     */
+    public int query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int[] out, int[] stack) {
+        if (root < 0) {
+            return 0;
+        }
+        int count = 0;
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            int start = node * stride, end = start + entryCount[node];
+            if (leaf[node]) {
+                for (int i = start; i < end; i++) {
+                    int id = entries[i];
+                    if (overlaps(itemBox, id * 6, minX, minY, minZ, maxX, maxY, maxZ)) {
+                        if (count == out.length) {
+                            return count;
+                        }
+                        out[count++] = id;
+                    }
+                }
+            } else {
+                for (int i = start; i < end; i++) {
+                    int child = entries[i];
+                    if (overlaps(bounds, child * 6, minX, minY, minZ, maxX, maxY, maxZ)) {
+                        stack[top++] = child;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Levels from the root down to the leaves, 0 when empty */
+    public int getHeight() {
+        int height = 0;
+        for (int node = root; node >= 0; node = leaf[node] ? -1 : entries[node * stride]) {
+            height++;
+        }
+        return height;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /** Nodes in use */
+    public int getNodeCount() {
+        return nodeCount - freeNodeCount;
+    }
+
+    /** insert/remove/update calls since the last load or repack */
+    public int getEditsSincePack() {
+        return edits;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    // ---- STR packing ----
+
+    private void pack() {
+        nodeCount = 0;
+        freeNodeCount = 0;
+        root = -1;
+        edits = 0;
+        if (itemCount == 0) {
+            return;
+        }
+        if (level.length < itemCount) {
+            level = new int[itemCount];
+            nextLevel = new int[itemCount];
+            sortKeys = new long[itemCount];
+        }
+        int n = 0;
+        for (int id = 0; id < itemLeaf.length; id++) {
+            if (itemLeaf[id] >= 0) {
+                level[n++] = id;
+            }
+        }
+
+        boolean leafLevel = true;
+        while (true) {
+            n = packLevel(n, leafLevel);
+            int[] swap = level;
+            level = nextLevel;
+            nextLevel = swap;
+            if (n == 1) {
+                root = level[0];
+                parent[root] = -1;
+                return;
+            }
+            leafLevel = false;
+        }
+    }
+
+    /** Pack level[0..n) (items or nodes) into parent nodes, written to nextLevel */
+    private int packLevel(int n, boolean leafLevel) {
+        float[] boxes = leafLevel ? itemBox : bounds;
+        int nodes = (n + maxEntries - 1) / maxEntries;
+        int slices = (int) Math.ceil(Math.sqrt(nodes));
+        int sliceSize = slices * maxEntries;
+
+        sortByCenter(level, 0, n, boxes, 0);
+        int made = 0;
+        for (int sliceStart = 0; sliceStart < n; sliceStart += sliceSize) {
+            int sliceEnd = Math.min(n, sliceStart + sliceSize);
+            sortByCenter(level, sliceStart, sliceEnd, boxes, 2);
+            for (int from = sliceStart; from < sliceEnd; from += maxEntries) {
+                int to = Math.min(sliceEnd, from + maxEntries);
+                int node = newNode(leafLevel, -1);
+                for (int i = from; i < to; i++) {
+                    int entry = level[i];
+                    entries[node * stride + entryCount[node]++] = entry;
+                    if (leafLevel) {
+                        itemLeaf[entry] = node;
+                    } else {
+                        parent[entry] = node;
+                    }
+                }
+                refit(node);
+                nextLevel[made++] = node;
+            }
+        }
+        return made;
+    }
+
+    /** Sort ids[from, to) by box center along an axis (0 = x, 2 = z) */
+    private void sortByCenter(int[] ids, int from, int to, float[] boxes, int axis) {
+        for (int i = from; i < to; i++) {
+            int id = ids[i];
+            float center = boxes[id * 6 + axis] + boxes[id * 6 + 3 + axis];
+            // Float bits made to sort as signed ints, id in the low half
+            int bits = Float.floatToIntBits(center);
+            bits ^= (bits >> 31) & 0x7fffffff;
+            sortKeys[i] = ((long) bits << 32) | (id & 0xffffffffL);
+        }
+        Arrays.sort(sortKeys, from, to);
+        for (int i = from; i < to; i++) {
+            ids[i] = (int) sortKeys[i];
+        }
+    }
+
+    // ---- Editing ----
+
+    /** Split an overflowing node in half along the longest spread of entry centers */
+    private void split(int node) {
+        int start = node * stride;
+        int count = entryCount[node];
+        float[] boxes = leaf[node] ? itemBox : bounds;
+
+        int axis = 0;
+        float widest = -1f;
+        for (int a = 0; a < 3; a++) {
+            float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                int e = entries[start + i] * 6;
+                float center = boxes[e + a] + boxes[e + 3 + a];
+                min = Math.min(min, center);
+                max = Math.max(max, center);
+            }
+            if (max - min > widest) {
+                widest = max - min;
+                axis = a;
+            }
+        }
+        // Insertion sort, count is at most maxEntries + 1
+        for (int i = start + 1; i < start + count; i++) {
+            int e = entries[i];
+            float center = boxes[e * 6 + axis] + boxes[e * 6 + 3 + axis];
+            int j = i - 1;
+            while (j >= start && boxes[entries[j] * 6 + axis] + boxes[entries[j] * 6 + 3 + axis] > center) {
+                entries[j + 1] = entries[j];
+                j--;
+            }
+            entries[j + 1] = e;
+        }
+
+        int sibling = newNode(leaf[node], parent[node]);
+        int keep = count / 2;
+        for (int i = keep; i < count; i++) {
+            int e = entries[start + i];
+            entries[sibling * stride + entryCount[sibling]++] = e;
+            if (leaf[node]) {
+                itemLeaf[e] = sibling;
+            } else {
+                parent[e] = sibling;
+            }
+        }
+        entryCount[node] = keep;
+        refit(node);
+        refit(sibling);
+
+        int up = parent[node];
+        if (up < 0) {
+            // Root split: the tree grows a level
+            int newRoot = newNode(false, -1);
+            entries[newRoot * stride] = node;
+            entries[newRoot * stride + 1] = sibling;
+            entryCount[newRoot] = 2;
+            parent[node] = newRoot;
+            parent[sibling] = newRoot;
+            refit(newRoot);
+            root = newRoot;
+            return;
+        }
+        entries[up * stride + entryCount[up]++] = sibling;
+        if (entryCount[up] > maxEntries) {
+            split(up);
+        } else {
+            refitUp(up);
+        }
+    }
+
+    private void removeEntry(int node, int entry) {
+        int start = node * stride;
+        int last = start + entryCount[node] - 1;
+        for (int i = start; i <= last; i++) {
+            if (entries[i] == entry) {
+                entries[i] = entries[last];
+                entryCount[node]--;
+                return;
+            }
+        }
+    }
+
+    private void refitUp(int node) {
+        for (; node >= 0; node = parent[node]) {
+            refit(node);
+        }
+    }
+
+    /** Bounds of a node from its entries */
+    private void refit(int node) {
+        float[] boxes = leaf[node] ? itemBox : bounds;
+        int b = node * 6;
+        bounds[b] = bounds[b + 1] = bounds[b + 2] = Float.MAX_VALUE;
+        bounds[b + 3] = bounds[b + 4] = bounds[b + 5] = -Float.MAX_VALUE;
+        for (int i = node * stride, end = i + entryCount[node]; i < end; i++) {
+            int e = entries[i] * 6;
+            bounds[b] = Math.min(bounds[b], boxes[e]);
+            bounds[b + 1] = Math.min(bounds[b + 1], boxes[e + 1]);
+            bounds[b + 2] = Math.min(bounds[b + 2], boxes[e + 2]);
+            bounds[b + 3] = Math.max(bounds[b + 3], boxes[e + 3]);
+            bounds[b + 4] = Math.max(bounds[b + 4], boxes[e + 4]);
+            bounds[b + 5] = Math.max(bounds[b + 5], boxes[e + 5]);
+        }
+    }
+
+    private float enlargedVolume(int node, int id) {
+        int b = node * 6, e = id * 6;
+        float dx = Math.max(bounds[b + 3], itemBox[e + 3]) - Math.min(bounds[b], itemBox[e]);
+        float dy = Math.max(bounds[b + 4], itemBox[e + 4]) - Math.min(bounds[b + 1], itemBox[e + 1]);
+        float dz = Math.max(bounds[b + 5], itemBox[e + 5]) - Math.min(bounds[b + 2], itemBox[e + 2]);
+        return dx * dy * dz;
+    }
+
+    private static float volume(float[] boxes, int b) {
+        return (boxes[b + 3] - boxes[b]) * (boxes[b + 4] - boxes[b + 1]) * (boxes[b + 5] - boxes[b + 2]);
+    }
+
+    private static boolean overlaps(float[] boxes, int b, float minX, float minY, float minZ,
+            float maxX, float maxY, float maxZ) {
+        return boxes[b] <= maxX && boxes[b + 3] >= minX && boxes[b + 1] <= maxY && boxes[b + 4] >= minY
+                && boxes[b + 2] <= maxZ && boxes[b + 5] >= minZ;
+    }
+
+    private void setItemBox(int id, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int b = id * 6;
+        itemBox[b] = minX;
+        itemBox[b + 1] = minY;
+        itemBox[b + 2] = minZ;
+        itemBox[b + 3] = maxX;
+        itemBox[b + 4] = maxY;
+        itemBox[b + 5] = maxZ;
+    }
+
+    private int newNode(boolean isLeaf, int up) {
+        int node;
+        if (freeNodeCount > 0) {
+            node = freeNodes[--freeNodeCount];
+        } else {
+            node = nodeCount++;
+            if (nodeCount > leaf.length) {
+                int capacity = Math.max(16, leaf.length * 2);
+                bounds = Arrays.copyOf(bounds, capacity * 6);
+                entries = Arrays.copyOf(entries, capacity * stride);
+                entryCount = Arrays.copyOf(entryCount, capacity);
+                leaf = Arrays.copyOf(leaf, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+            }
+        }
+        leaf[node] = isLeaf;
+        parent[node] = up;
+        entryCount[node] = 0;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        if (freeNodeCount == freeNodes.length) {
+            freeNodes = Arrays.copyOf(freeNodes, Math.max(16, freeNodes.length * 2));
+        }
+        freeNodes[freeNodeCount++] = node;
+        entryCount[node] = 0;
+    }
+
+    private void ensureItemCapacity(int n) {
+        if (itemLeaf.length >= n) {
+            return;
+        }
+        int old = itemLeaf.length;
+        int capacity = Math.max(n, old * 2);
+        itemBox = Arrays.copyOf(itemBox, capacity * 6);
+        itemLeaf = Arrays.copyOf(itemLeaf, capacity);
+        Arrays.fill(itemLeaf, old, capacity, -1);
+    }
+}
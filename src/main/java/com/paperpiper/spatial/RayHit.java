@@ -0,0 +1,32 @@
+package com.paperpiper.spatial;
+
+import java.util.Arrays;
+
+/**
+ * Result and scratch space for one ray cast. Keep one per thread and reuse
+ * it; set t to the max distance before each cast.
+ */
+public class RayHit {
+
+    /** Distance along the (unit) ray to the closest hit so far */
+    public float t;
+
+    /** Triangle index within the BVH that was hit, -1 if none */
+    public int triangle = -1;
+
+    /** What was hit (see sensor.RayCastScene instance ids), 0 if nothing */
+    public int instance = 0;
+
+    // Traversal stack for TriangleBvh
+    int[] stack = new int[64];
+
+    public void reset(float maxDistance) {
+        t = maxDistance;
+        triangle = -1;
+        instance = 0;
+    }
+
+    void growStack() {
+        stack = Arrays.copyOf(stack, stack.length * 2);
+    }
+}
@@ -0,0 +1,327 @@
+package com.paperpiper.spatial;
+
+import java.util.Arrays;
+
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Uniform grid over an unbounded world, hashed into a fixed-size table.
+ * Rebuilt from scratch with a counting sort (count per bucket, prefix sum,
+ * scatter), so a rebuild is O(n) with no per-entry objects and entries of
+ * the same bucket end up next to each other in memory.
+ *
+ * Entries are drone ids with positions taken from a flat [x, y, z] array
+ * indexed by id (DroneState layout). Different cells can share a bucket, so
+ * queries check each entry's own cell and bounds.
+ *
+ * With a ParallelFor the rebuild hashes entries and gathers their positions
+ * in parallel; only the count/prefix/scatter of ints stays serial. Queries
+ * are read-only and write into caller arrays, so any number of threads can
+ * query between rebuilds.
+ */
+public class SpatialHash {
+
+    private static final int PARALLEL_CHUNK = 2048;
+
+    private final float cellSize;
+    private final float invCellSize;
+    private final int tableMask;
+
+    private final int[] bucketStart; // tableSize + 1 prefix sums
+    private int[] entryBucket = new int[0]; // scratch, bucket per input entry
+
+    // Sorted by bucket
+    private int[] ids = new int[0];
+    private float[] xs = new float[0];
+    private float[] ys = new float[0];
+    private float[] zs = new float[0];
+    private int[] cells = new int[0]; // cx, cy, cz per entry, for the own-cell check
+    private int count = 0;
+
+    // Rebuild in progress
+    private float[] buildPositions;
+    private int[] buildEntries;
+    private final ParallelFor.RangeBody keysBody = this::computeKeys;
+    private final ParallelFor.RangeBody gatherBody = this::gather;
+
+    /**
+     * @param tableSize number of buckets, rounded up to a power of two
+     */
+    public SpatialHash(float cellSize, int tableSize) {
+        this.cellSize = cellSize;
+        this.invCellSize = 1f / cellSize;
+        int size = Integer.highestOneBit(Math.max(2, tableSize - 1)) << 1;
+        this.tableMask = size - 1;
+        this.bucketStart = new int[size + 1];
+    }
+
+    /**
+     * Index entries ids[0..n).
+     *
+     * @param positions [x, y, z] per id
+     */
+    public void rebuild(float[] positions, int[] entries, int n) {
+        rebuild(positions, entries, n, null);
+    }
+
+    /**
+     * Index entries ids[0..n), hashing and gathering on the given pool
+     * (null = on this thread).
+     */
+    public void rebuild(float[] positions, int[] entries, int n, ParallelFor parallel) {
+        ensureCapacity(n);
+        buildPositions = positions;
+        buildEntries = entries;
+
+        if (parallel != null) {
+            parallel.run(n, PARALLEL_CHUNK, keysBody);
+        } else {
+            computeKeys(0, n);
+        }
+
+        Arrays.fill(bucketStart, 0);
+        for (int i = 0; i < n; i++) {
+            bucketStart[entryBucket[i] + 1]++;
+        }
+        for (int b = 0; b < tableMask + 1; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+
+        // Scatter, using bucketStart[b] as the write cursor, then shift back
+        for (int i = 0; i < n; i++) {
+            ids[bucketStart[entryBucket[i]]++] = entries[i];
+        }
+        System.arraycopy(bucketStart, 0, bucketStart, 1, tableMask + 1);
+        bucketStart[0] = 0;
+
+        if (parallel != null) {
+            parallel.run(n, PARALLEL_CHUNK, gatherBody);
+        } else {
+            gather(0, n);
+        }
+        buildPositions = null;
+        buildEntries = null;
+
+        count = n;
+    }
+
+    private void computeKeys(int from, int to) {
+        final float[] positions = buildPositions;
+        final int[] entries = buildEntries;
+        for (int i = from; i < to; i++) {
+            int p = entries[i] * 3;
+            entryBucket[i] = bucketOf(positions[p], positions[p + 1], positions[p + 2]);
+        }
+    }
+
+    /** Positions in sorted order, so queries stream through xs/ys/zs */
+    private void gather(int from, int to) {
+        final float[] positions = buildPositions;
+        for (int s = from; s < to; s++) {
+            int p = ids[s] * 3;
+            float x = positions[p], y = positions[p + 1], z = positions[p + 2];
+            xs[s] = x;
+            ys[s] = y;
+            zs[s] = z;
+            cells[s * 3] = cell(x);
+            cells[s * 3 + 1] = cell(y);
+            cells[s * 3 + 2] = cell(z);
+        }
+    }
+
+    /**
+     * Collect ids inside an axis-aligned box.
+     *
+     * @return number of ids written to out (at most out.length)
+     */
+    public int queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int[] out) {
+        int cx0 = cell(minX), cy0 = cell(minY), cz0 = cell(minZ);
+        int cx1 = cell(maxX), cy1 = cell(maxY), cz1 = cell(maxZ);
+        int found = 0;
+
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cz = cz0; cz <= cz1; cz++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    int bucket = hash(cx, cy, cz);
+                    for (int s = bucketStart[bucket], e = bucketStart[bucket + 1]; s < e; s++) {
+                        // Own cell check skips entries of other cells that share this bucket
+                        if (cells[s * 3] != cx || cells[s * 3 + 1] != cy || cells[s * 3 + 2] != cz) {
+                            continue;
+                        }
+                        float x = xs[s], y = ys[s], z = zs[s];
+                        if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) {
+                            continue;
+                        }
+                        out[found++] = ids[s];
+                        if (found == out.length) {
+                            return found;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Collect ids within radius of a point.
+     *
+     * @param exclude id to leave out (the asking drone), or -1
+     * @return number of ids written to out (at most out.length)
+     */
+    public int queryRadius(float x, float y, float z, float radius, int exclude, int[] out) {
+        int cx0 = cell(x - radius), cy0 = cell(y - radius), cz0 = cell(z - radius);
+        int cx1 = cell(x + radius), cy1 = cell(y + radius), cz1 = cell(z + radius);
+        float radiusSq = radius * radius;
+        int found = 0;
+
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cz = cz0; cz <= cz1; cz++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    int bucket = hash(cx, cy, cz);
+                    for (int s = bucketStart[bucket], e = bucketStart[bucket + 1]; s < e; s++) {
+                        if (cells[s * 3] != cx || cells[s * 3 + 1] != cy || cells[s * 3 + 2] != cz
+                                || ids[s] == exclude) {
+                            continue;
+                        }
+                        float dx = xs[s] - x, dy = ys[s] - y, dz = zs[s] - z;
+                        if (dx * dx + dy * dy + dz * dz > radiusSq) {
+                            continue;
+                        }
+                        out[found++] = ids[s];
+                        if (found == out.length) {
+                            return found;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The k nearest ids to a point within maxRadius, closest first. Searches
+     * shells of cells outward from the point's cell, skips cells that can't
+     * beat the current k-th best, and stops once no unvisited cell can.
+     *
+     * @param k        at most outIds.length
+     * @param exclude  id to leave out (the asking drone), or -1
+     * @param outDistSq squared distances, parallel to outIds
+     * @return number found (less than k if there aren't enough in range)
+     */
+    public int queryNearest(float x, float y, float z, int k, float maxRadius, int exclude,
+            int[] outIds, float[] outDistSq) {
+        if (k <= 0 || count == 0) {
+            return 0;
+        }
+        int ccx = cell(x), ccy = cell(y), ccz = cell(z);
+        // Query point within its cell, 0..cellSize per axis
+        float fx = x - ccx * cellSize, fy = y - ccy * cellSize, fz = z - ccz * cellSize;
+        // Distance from the point to the nearest face of its cell
+        float inner = Math.min(Math.min(Math.min(fx, cellSize - fx), Math.min(fy, cellSize - fy)),
+                Math.min(fz, cellSize - fz));
+        float maxSq = maxRadius * maxRadius;
+        int maxRing = (int) Math.ceil(maxRadius * invCellSize);
+        int found = 0;
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            float boundSq = found == k ? Math.min(maxSq, outDistSq[k - 1]) : maxSq;
+            for (int dy = -ring; dy <= ring; dy++) {
+                float gy = gap(dy, fy);
+                boolean yEdge = dy == -ring || dy == ring;
+                for (int dz = -ring; dz <= ring; dz++) {
+                    float gz = gap(dz, fz);
+                    if (gy * gy + gz * gz > boundSq) {
+                        continue;
+                    }
+                    boolean edge = yEdge || dz == -ring || dz == ring;
+                    // Only the shell: inside faces the x loop visits just the two end cells
+                    int step = edge ? 1 : Math.max(1, 2 * ring);
+                    for (int dx = -ring; dx <= ring; dx += step) {
+                        float gx = gap(dx, fx);
+                        if (gx * gx + gy * gy + gz * gz > boundSq) {
+                            continue;
+                        }
+                        int cx = ccx + dx, cy = ccy + dy, cz = ccz + dz;
+                        int bucket = hash(cx, cy, cz);
+                        for (int s = bucketStart[bucket], e = bucketStart[bucket + 1]; s < e; s++) {
+                            if (cells[s * 3] != cx || cells[s * 3 + 1] != cy || cells[s * 3 + 2] != cz
+                                    || ids[s] == exclude) {
+                                continue;
+                            }
+                            float ddx = xs[s] - x, ddy = ys[s] - y, ddz = zs[s] - z;
+                            float distSq = ddx * ddx + ddy * ddy + ddz * ddz;
+                            if (distSq > boundSq) {
+                                continue;
+                            }
+                            // Insertion into the sorted top k
+                            int at = found < k ? found++ : k - 1;
+                            while (at > 0 && outDistSq[at - 1] > distSq) {
+                                outDistSq[at] = outDistSq[at - 1];
+                                outIds[at] = outIds[at - 1];
+                                at--;
+                            }
+                            outDistSq[at] = distSq;
+                            outIds[at] = ids[s];
+                            if (found == k) {
+                                boundSq = Math.min(maxSq, outDistSq[k - 1]);
+                            }
+                        }
+                    }
+                }
+            }
+            // Everything past this ring is at least this far away
+            if (found == k) {
+                float reach = ring * cellSize + inner;
+                if (outDistSq[k - 1] <= reach * reach) {
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Distance along one axis from a point (at f within its cell) to the cell d steps away */
+    private float gap(int d, float f) {
+        if (d > 0) {
+            return (d - 1) * cellSize + (cellSize - f);
+        }
+        if (d < 0) {
+            return (-d - 1) * cellSize + f;
+        }
+        return 0f;
+    }
+
+    private int cell(float v) {
+        return (int) Math.floor(v * invCellSize);
+    }
+
+    private int bucketOf(float x, float y, float z) {
+        return hash(cell(x), cell(y), cell(z));
+    }
+
+    private int hash(int cx, int cy, int cz) {
+        return ((cx * 73856093) ^ (cy * 19349663) ^ (cz * 83492791)) & tableMask;
+    }
+
+    private void ensureCapacity(int n) {
+        if (ids.length >= n) {
+            return;
+        }
+        int capacity = Math.max(n, ids.length * 2);
+        ids = new int[capacity];
+        xs = new float[capacity];
+        ys = new float[capacity];
+        zs = new float[capacity];
+        cells = new int[capacity * 3];
+        entryBucket = new int[capacity];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+}
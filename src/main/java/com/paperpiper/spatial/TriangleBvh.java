@@ -0,0 +1,241 @@
+package com.paperpiper.spatial;
+
+/**
+ * Bounding volume hierarchy over a static triangle mesh for ray casting on
+ * the CPU. Nodes and triangles live in flat arrays; build splits at the
+ * centroid median of the longest axis, which is cheap and good enough for
+ * extruded city blocks.
+ *
+ * Queries are read-only and take their traversal stack from the caller
+ * (RayHit), so any number of threads can cast against one BVH without
+ * allocating.
+ */
+public class TriangleBvh {
+
+    private static final int LEAF_SIZE = 4;
+
+    // Triangle vertices, 9 floats per triangle, in BVH order
+    private final float[] triangles;
+    private final int triangleCount;
+
+    // Per node: bounds [minX, minY, minZ, maxX, maxY, maxZ]
+    private float[] bounds;
+    // Per node: leaf = first triangle, inner = right child (left child is node + 1)
+    private int[] offset;
+    // Per node: triangles in a leaf, 0 for inner nodes
+    private int[] count;
+    private int nodeCount = 0;
+
+    public TriangleBvh(float[] positions, int[] indices) {
+        triangleCount = indices.length / 3;
+
+        float[] centroids = new float[triangleCount * 3];
+        int[] order = new int[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            order[t] = t;
+            for (int c = 0; c < 3; c++) {
+                centroids[t * 3 + c] = (positions[indices[t * 3] * 3 + c] + positions[indices[t * 3 + 1] * 3 + c]
+                        + positions[indices[t * 3 + 2] * 3 + c]) / 3f;
+            }
+        }
+
+        int maxNodes = Math.max(1, 2 * triangleCount);
+        bounds = new float[maxNodes * 6];
+        offset = new int[maxNodes];
+        count = new int[maxNodes];
+        build(positions, indices, centroids, order, 0, triangleCount);
+
+        triangles = new float[triangleCount * 9];
+        for (int i = 0; i < triangleCount; i++) {
+            int t = order[i];
+            for (int v = 0; v < 3; v++) {
+                int p = indices[t * 3 + v] * 3;
+                triangles[i * 9 + v * 3] = positions[p];
+                triangles[i * 9 + v * 3 + 1] = positions[p + 1];
+                triangles[i * 9 + v * 3 + 2] = positions[p + 2];
+            }
+        }
+    }
+
+    private int build(float[] positions, int[] indices, float[] centroids, int[] order, int from, int to) {
+        int node = nodeCount++;
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        float cMinX = Float.MAX_VALUE, cMinY = Float.MAX_VALUE, cMinZ = Float.MAX_VALUE;
+        float cMaxX = -Float.MAX_VALUE, cMaxY = -Float.MAX_VALUE, cMaxZ = -Float.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            int t = order[i];
+            for (int v = 0; v < 3; v++) {
+                int p = indices[t * 3 + v] * 3;
+                minX = Math.min(minX, positions[p]);
+                minY = Math.min(minY, positions[p + 1]);
+                minZ = Math.min(minZ, positions[p + 2]);
+                maxX = Math.max(maxX, positions[p]);
+                maxY = Math.max(maxY, positions[p + 1]);
+                maxZ = Math.max(maxZ, positions[p + 2]);
+            }
+            cMinX = Math.min(cMinX, centroids[t * 3]);
+            cMinY = Math.min(cMinY, centroids[t * 3 + 1]);
+            cMinZ = Math.min(cMinZ, centroids[t * 3 + 2]);
+            cMaxX = Math.max(cMaxX, centroids[t * 3]);
+            cMaxY = Math.max(cMaxY, centroids[t * 3 + 1]);
+            cMaxZ = Math.max(cMaxZ, centroids[t * 3 + 2]);
+        }
+        int b = node * 6;
+        bounds[b] = minX;
+        bounds[b + 1] = minY;
+        bounds[b + 2] = minZ;
+        bounds[b + 3] = maxX;
+        bounds[b + 4] = maxY;
+        bounds[b + 5] = maxZ;
+
+        if (to - from <= LEAF_SIZE) {
+            offset[node] = from;
+            count[node] = to - from;
+            return node;
+        }
+
+        float ex = cMaxX - cMinX, ey = cMaxY - cMinY, ez = cMaxZ - cMinZ;
+        int axis = ex >= ey && ex >= ez ? 0 : (ey >= ez ? 1 : 2);
+        int mid = (from + to) >>> 1;
+        select(centroids, order, from, to - 1, mid, axis);
+
+        build(positions, indices, centroids, order, from, mid);
+        offset[node] = build(positions, indices, centroids, order, mid, to);
+        count[node] = 0;
+        return node;
+    }
+
+    /** Quickselect: put the k-th smallest centroid (on axis) at order[k]. */
+    private static void select(float[] centroids, int[] order, int lo, int hi, int k, int axis) {
+        while (lo < hi) {
+            float pivot = centroids[order[(lo + hi) >>> 1] * 3 + axis];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (centroids[order[i] * 3 + axis] < pivot) {
+                    i++;
+                }
+                while (centroids[order[j] * 3 + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closest hit along the ray within (0, hit.t). On a hit, hit.t and
+     * hit.triangle are updated and true is returned.
+     *
+     * @param invDx 1 / direction, precomputed by the caller (may be infinite)
+     */
+    public boolean intersect(float ox, float oy, float oz, float dx, float dy, float dz,
+            float invDx, float invDy, float invDz, RayHit hit) {
+        if (triangleCount == 0) {
+            return false;
+        }
+        int[] stack = hit.stack;
+        int top = 0;
+        stack[top++] = 0;
+        boolean found = false;
+
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+
+            // Slab test
+            float t1 = (bounds[b] - ox) * invDx, t2 = (bounds[b + 3] - ox) * invDx;
+            float tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+            t1 = (bounds[b + 1] - oy) * invDy;
+            t2 = (bounds[b + 4] - oy) * invDy;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+            t1 = (bounds[b + 2] - oz) * invDz;
+            t2 = (bounds[b + 5] - oz) * invDz;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+            if (tMax < Math.max(tMin, 0f) || tMin > hit.t) {
+                continue;
+            }
+
+            int n = count[node];
+            if (n > 0) {
+                for (int i = offset[node], end = offset[node] + n; i < end; i++) {
+                    if (intersectTriangle(i, ox, oy, oz, dx, dy, dz, hit)) {
+                        found = true;
+                    }
+                }
+            } else {
+                if (top + 2 > stack.length) {
+                    hit.growStack();
+                    stack = hit.stack;
+                }
+                stack[top++] = offset[node];
+                stack[top++] = node + 1;
+            }
+        }
+        return found;
+    }
+
+    /** Möller-Trumbore, two-sided */
+    private boolean intersectTriangle(int i, float ox, float oy, float oz, float dx, float dy, float dz,
+            RayHit hit) {
+        int p = i * 9;
+        float ax = triangles[p], ay = triangles[p + 1], az = triangles[p + 2];
+        float e1x = triangles[p + 3] - ax, e1y = triangles[p + 4] - ay, e1z = triangles[p + 5] - az;
+        float e2x = triangles[p + 6] - ax, e2y = triangles[p + 7] - ay, e2z = triangles[p + 8] - az;
+
+        float px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+        if (Math.abs(det) < 1e-12f) {
+            return false;
+        }
+        float inv = 1f / det;
+        float sx = ox - ax, sy = oy - ay, sz = oz - az;
+        float u = (sx * px + sy * py + sz * pz) * inv;
+        if (u < 0 || u > 1) {
+            return false;
+        }
+        float qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+        float v = (dx * qx + dy * qy + dz * qz) * inv;
+        if (v < 0 || u + v > 1) {
+            return false;
+        }
+        float t = (e2x * qx + e2y * qy + e2z * qz) * inv;
+        if (t <= 1e-4f || t >= hit.t) {
+            return false;
+        }
+        hit.t = t;
+        hit.triangle = i;
+        return true;
+    }
+
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Root bounds [minX, minY, minZ, maxX, maxY, maxZ] into out.
+     */
+    public void getBounds(float[] out) {
+        System.arraycopy(bounds, 0, out, 0, 6);
+    }
+}
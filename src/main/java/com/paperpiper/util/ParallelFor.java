@@ -0,0 +1,98 @@
+package com.paperpiper.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits an index range into chunks and runs them on a ForkJoinPool, waiting
+ * for all of them. Chunk tasks are reused between calls, so a per-tick pass
+ * doesn't allocate (keep the RangeBody in a field instead of writing a new
+ * lambda per call). A range that fits in one chunk runs on the calling thread.
+ *
+ * One pass at a time: run() is synchronized.
+ */
+public class ParallelFor {
+
+    /** Work for indices [from, to) */
+    @FunctionalInterface
+    public interface RangeBody {
+        void run(int from, int to);
+    }
+
+    private final ForkJoinPool pool;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private int chunkCount = 0;
+    private final Root root = new Root();
+
+    @SuppressWarnings("serial") // never serialized
+    private static class Chunk extends RecursiveAction {
+        RangeBody body;
+        int from;
+        int to;
+
+        @Override
+        protected void compute() {
+            body.run(from, to);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class Root extends RecursiveAction {
+        @Override
+        protected void compute() {
+            for (int i = 1; i < chunkCount; i++) {
+                chunks.get(i).fork();
+            }
+            chunks.get(0).compute();
+            for (int i = 1; i < chunkCount; i++) {
+                chunks.get(i).join();
+            }
+        }
+    }
+
+    public ParallelFor(int threads) {
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+    }
+
+    /**
+     * Run body over [0, n) in chunks of chunkSize and wait for it.
+     */
+    public synchronized void run(int n, int chunkSize, RangeBody body) {
+        if (n <= 0) {
+            return;
+        }
+        if (n <= chunkSize) {
+            body.run(0, n);
+            return;
+        }
+
+        chunkCount = 0;
+        for (int from = 0; from < n; from += chunkSize) {
+            if (chunkCount == chunks.size()) {
+                chunks.add(new Chunk());
+            }
+            Chunk chunk = chunks.get(chunkCount++);
+            chunk.body = body;
+            chunk.from = from;
+            chunk.to = Math.min(n, from + chunkSize);
+            chunk.reinitialize();
+        }
+        root.reinitialize();
+        pool.invoke(root);
+
+        // Don't keep the caller's body reachable
+        for (int i = 0; i < chunkCount; i++) {
+            chunks.get(i).body = null;
+        }
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,60 @@
+package com.paperpiper.world;
+
+/**
+ * A single building outline in local simulation coordinates. The outline is a
+ * closed ring of (x, z) pairs in meters (last point not repeated), extruded
+ * from baseHeight up to baseHeight + height.
+ */
+public class BuildingFootprint {
+
+    private final float[] outline; // [x0, z0, x1, z1, ...]
+    private final float baseHeight;
+    private final float height;
+
+    public BuildingFootprint(float[] outline, float baseHeight, float height) {
+        if (outline.length < 6 || outline.length % 2 != 0) {
+            throw new IllegalArgumentException("Footprint needs at least 3 (x, z) points, got " + outline.length / 2);
+        }
+        this.outline = outline.clone();
+        this.baseHeight = baseHeight;
+        this.height = height;
+    }
+
+    public float[] getOutline() {
+        return outline;
+    }
+
+    public int getPointCount() {
+        return outline.length / 2;
+    }
+
+    public float getBaseHeight() {
+        return baseHeight;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    /**
+     * Center of the outline's bounding rectangle. Used to bucket buildings into
+     * regions, so it only needs to be stable, not exact.
+     */
+    public float getCenterX() {
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        for (int i = 0; i < outline.length; i += 2) {
+            min = Math.min(min, outline[i]);
+            max = Math.max(max, outline[i]);
+        }
+        return (min + max) / 2f;
+    }
+
+    public float getCenterZ() {
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        for (int i = 1; i < outline.length; i += 2) {
+            min = Math.min(min, outline[i]);
+            max = Math.max(max, outline[i]);
+        }
+        return (min + max) / 2f;
+    }
+}
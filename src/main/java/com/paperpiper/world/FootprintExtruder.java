@@ -0,0 +1,189 @@
+package com.paperpiper.world;
+
+import java.util.Arrays;
+
+/**
+ * Extrudes building footprints into one merged triangle soup: a wall quad per
+ * outline edge plus an ear-clipped flat roof. Walls and roof get their own
+ * vertices so the render mesh has flat normals. Floors are skipped since
+ * nothing ever sees (or hits) the underside of a building.
+ */
+public class FootprintExtruder {
+
+    private float[] positions = new float[3 * 1024];
+    private float[] normals = new float[3 * 1024];
+    private int[] indices = new int[3 * 1024];
+    private int vertexCount = 0;
+    private int indexCount = 0;
+
+    public void add(BuildingFootprint footprint) {
+        float[] ring = footprint.getOutline();
+        int n = footprint.getPointCount();
+
+        // Make the ring wind so roof triangles face +Y and walls face outward
+        if (signedArea(ring, n) > 0) {
+            ring = reversed(ring, n);
+        }
+
+        float bottom = footprint.getBaseHeight();
+        float top = bottom + footprint.getHeight();
+
+        // Walls
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            float x0 = ring[i * 2], z0 = ring[i * 2 + 1];
+            float x1 = ring[j * 2], z1 = ring[j * 2 + 1];
+
+            float nx = -(z1 - z0);
+            float nz = x1 - x0;
+            float len = (float) Math.sqrt(nx * nx + nz * nz);
+            if (len < 1e-6f) {
+                continue; // duplicate point
+            }
+            nx /= len;
+            nz /= len;
+
+            int base = vertexCount;
+            addVertex(x0, bottom, z0, nx, 0, nz);
+            addVertex(x1, bottom, z1, nx, 0, nz);
+            addVertex(x1, top, z1, nx, 0, nz);
+            addVertex(x0, top, z0, nx, 0, nz);
+            addTriangle(base, base + 1, base + 2);
+            addTriangle(base + 2, base + 3, base);
+        }
+
+        // Roof
+        int roofBase = vertexCount;
+        for (int i = 0; i < n; i++) {
+            addVertex(ring[i * 2], top, ring[i * 2 + 1], 0, 1, 0);
+        }
+        triangulate(ring, n, roofBase);
+    }
+
+    /**
+     * Ear clipping for a simple polygon that is already wound for +Y facing
+     * output. Falls back to a fan for the remaining points if the outline is
+     * self-intersecting and no ear can be found.
+     */
+    private void triangulate(float[] ring, int n, int base) {
+        int[] remaining = new int[n];
+        for (int i = 0; i < n; i++) {
+            remaining[i] = i;
+        }
+        int count = n;
+        int guard = 0;
+        int i = 0;
+
+        while (count > 3 && guard < count * 2) {
+            int a = remaining[(i + count - 1) % count];
+            int b = remaining[i % count];
+            int c = remaining[(i + 1) % count];
+
+            if (isEar(ring, remaining, count, a, b, c)) {
+                addTriangle(base + a, base + b, base + c);
+                System.arraycopy(remaining, i % count + 1, remaining, i % count, count - i % count - 1);
+                count--;
+                guard = 0;
+            } else {
+                i++;
+                guard++;
+            }
+            i %= count;
+        }
+
+        for (int k = 1; k + 1 < count; k++) {
+            addTriangle(base + remaining[0], base + remaining[k], base + remaining[k + 1]);
+        }
+    }
+
+    private static boolean isEar(float[] ring, int[] remaining, int count, int a, int b, int c) {
+        float ax = ring[a * 2], az = ring[a * 2 + 1];
+        float bx = ring[b * 2], bz = ring[b * 2 + 1];
+        float cx = ring[c * 2], cz = ring[c * 2 + 1];
+
+        // Convex corner for our (negative area) winding
+        if (cross(ax, az, bx, bz, cx, cz) >= 0) {
+            return false;
+        }
+
+        for (int k = 0; k < count; k++) {
+            int p = remaining[k];
+            if (p == a || p == b || p == c) {
+                continue;
+            }
+            float px = ring[p * 2], pz = ring[p * 2 + 1];
+            if (cross(ax, az, bx, bz, px, pz) <= 0
+                    && cross(bx, bz, cx, cz, px, pz) <= 0
+                    && cross(cx, cz, ax, az, px, pz) <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static float cross(float ax, float az, float bx, float bz, float cx, float cz) {
+        return (bx - ax) * (cz - az) - (bz - az) * (cx - ax);
+    }
+
+    private static float signedArea(float[] ring, int n) {
+        float area = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            area += ring[i * 2] * ring[j * 2 + 1] - ring[j * 2] * ring[i * 2 + 1];
+        }
+        return area / 2f;
+    }
+
+    private static float[] reversed(float[] ring, int n) {
+        float[] out = new float[n * 2];
+        for (int i = 0; i < n; i++) {
+            out[i * 2] = ring[(n - 1 - i) * 2];
+            out[i * 2 + 1] = ring[(n - 1 - i) * 2 + 1];
+        }
+        return out;
+    }
+
+    private void addVertex(float x, float y, float z, float nx, float ny, float nz) {
+        if ((vertexCount + 1) * 3 > positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+            normals = Arrays.copyOf(normals, normals.length * 2);
+        }
+        int o = vertexCount * 3;
+        positions[o] = x;
+        positions[o + 1] = y;
+        positions[o + 2] = z;
+        normals[o] = nx;
+        normals[o + 1] = ny;
+        normals[o + 2] = nz;
+        vertexCount++;
+    }
+
+    private void addTriangle(int a, int b, int c) {
+        if (indexCount + 3 > indices.length) {
+            indices = Arrays.copyOf(indices, indices.length * 2);
+        }
+        indices[indexCount++] = a;
+        indices[indexCount++] = b;
+        indices[indexCount++] = c;
+    }
+
+    public float[] getPositions() {
+        return Arrays.copyOf(positions, vertexCount * 3);
+    }
+
+    public float[] getNormals() {
+        return Arrays.copyOf(normals, vertexCount * 3);
+    }
+
+    public int[] getIndices() {
+        return Arrays.copyOf(indices, indexCount);
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getTriangleCount() {
+        return indexCount / 3;
+    }
+}
@@ -0,0 +1,181 @@
+package com.paperpiper.world;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Reads building footprints from a local GeoJSON FeatureCollection (the kind
+ * exported from OSM or city open-data portals). Polygon and MultiPolygon
+ * geometries are supported; only the outer ring is used, holes (courtyards)
+ * are ignored.
+ *
+ * Longitude/latitude are projected to local meters around an origin with a
+ * simple equirectangular projection: x = east, z = south, y = up. Good enough
+ * for a city-sized area, not for a continent.
+ */
+public class GeoJsonFootprintLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeoJsonFootprintLoader.class);
+
+    private static final double EARTH_RADIUS = 6378137.0; // meters (WGS84)
+    private static final float METERS_PER_LEVEL = 3.0f;
+
+    private float defaultHeight = 10.0f; // used when a feature has no height info
+
+    // projection origin in degrees, NaN until set or taken from the first point
+    private double originLon = Double.NaN;
+    private double originLat = Double.NaN;
+
+    public GeoJsonFootprintLoader() {
+    }
+
+    public GeoJsonFootprintLoader(double originLon, double originLat) {
+        this.originLon = originLon;
+        this.originLat = originLat;
+    }
+
+    public void setDefaultHeight(float defaultHeight) {
+        this.defaultHeight = defaultHeight;
+    }
+
+    public List<BuildingFootprint> load(Path file) throws IOException {
+        logger.info("Loading building footprints from: {}", file);
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<BuildingFootprint> footprints = parse(JsonParser.parseReader(reader).getAsJsonObject());
+            logger.info("Loaded {} building footprint(s) from {}", footprints.size(), file.getFileName());
+            return footprints;
+        }
+    }
+
+    public List<BuildingFootprint> parse(JsonObject root) {
+        List<BuildingFootprint> footprints = new ArrayList<>();
+
+        JsonArray features = root.has("features") ? root.getAsJsonArray("features") : new JsonArray();
+        int skipped = 0;
+
+        for (JsonElement element : features) {
+            JsonObject feature = element.getAsJsonObject();
+            if (!feature.has("geometry") || feature.get("geometry").isJsonNull()) {
+                skipped++;
+                continue;
+            }
+
+            JsonObject geometry = feature.getAsJsonObject("geometry");
+            JsonObject properties = feature.has("properties") && feature.get("properties").isJsonObject()
+                    ? feature.getAsJsonObject("properties")
+                    : new JsonObject();
+
+            float baseHeight = readFloat(properties, "min_height", 0f);
+            float height = readHeight(properties) - baseHeight;
+            if (height <= 0) {
+                skipped++;
+                continue;
+            }
+
+            String type = geometry.get("type").getAsString();
+            JsonArray coordinates = geometry.getAsJsonArray("coordinates");
+
+            if ("Polygon".equals(type)) {
+                addPolygon(footprints, coordinates, baseHeight, height);
+            } else if ("MultiPolygon".equals(type)) {
+                for (JsonElement polygon : coordinates) {
+                    addPolygon(footprints, polygon.getAsJsonArray(), baseHeight, height);
+                }
+            } else {
+                skipped++;
+            }
+        }
+
+        if (skipped > 0) {
+            logger.debug("Skipped {} feature(s) without usable polygon geometry or height", skipped);
+        }
+        return footprints;
+    }
+
+    private void addPolygon(List<BuildingFootprint> footprints, JsonArray rings, float baseHeight, float height) {
+        if (rings.isEmpty()) {
+            return;
+        }
+
+        JsonArray outer = rings.get(0).getAsJsonArray();
+        int pointCount = outer.size();
+
+        // GeoJSON rings repeat the first point at the end
+        if (pointCount > 1 && outer.get(0).equals(outer.get(pointCount - 1))) {
+            pointCount--;
+        }
+        if (pointCount < 3) {
+            return;
+        }
+
+        float[] outline = new float[pointCount * 2];
+        for (int i = 0; i < pointCount; i++) {
+            JsonArray coord = outer.get(i).getAsJsonArray();
+            double lon = coord.get(0).getAsDouble();
+            double lat = coord.get(1).getAsDouble();
+
+            if (Double.isNaN(originLon)) {
+                originLon = lon;
+                originLat = lat;
+                logger.info("Footprint projection origin set to lon={}, lat={}", lon, lat);
+            }
+
+            double cosLat = Math.cos(Math.toRadians(originLat));
+            outline[i * 2] = (float) (Math.toRadians(lon - originLon) * EARTH_RADIUS * cosLat);
+            outline[i * 2 + 1] = (float) (-Math.toRadians(lat - originLat) * EARTH_RADIUS);
+        }
+
+        footprints.add(new BuildingFootprint(outline, baseHeight, height));
+    }
+
+    /**
+     * Height from "height", then "building:levels", then the default.
+     */
+    private float readHeight(JsonObject properties) {
+        float height = readFloat(properties, "height", Float.NaN);
+        if (!Float.isNaN(height)) {
+            return height;
+        }
+        float levels = readFloat(properties, "building:levels", Float.NaN);
+        if (!Float.isNaN(levels)) {
+            return levels * METERS_PER_LEVEL;
+        }
+        return defaultHeight;
+    }
+
+    // OSM exports often store numbers as strings like "12" or "12 m"
+    private static float readFloat(JsonObject properties, String key, float fallback) {
+        JsonElement value = properties.get(key);
+        if (value == null || value.isJsonNull() || !value.isJsonPrimitive()) {
+            return fallback;
+        }
+        try {
+            String text = value.getAsString().trim();
+            int space = text.indexOf(' ');
+            return Float.parseFloat(space > 0 ? text.substring(0, space) : text);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    public double getOriginLon() {
+        return originLon;
+    }
+
+    public double getOriginLat() {
+        return originLat;
+    }
+}
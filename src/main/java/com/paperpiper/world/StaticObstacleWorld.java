@@ -0,0 +1,205 @@
+package com.paperpiper.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jme3.bullet.collision.shapes.MeshCollisionShape;
+import com.jme3.bullet.collision.shapes.infos.IndexedMesh;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.util.BufferUtils;
+import com.paperpiper.physics.PhysicsWorld;
+import com.paperpiper.render.Mesh;
+
+/**
+ * Static city geometry built from building footprints. Buildings are bucketed
+ * into square regions and each region becomes ONE static triangle-mesh body,
+ * so thousands of buildings cost a handful of broadphase entries instead of
+ * one box each.
+ *
+ * Building the BVH for a big mesh is the slow part, so each region's BVH is
+ * serialized to the cache directory keyed by a checksum of its geometry.
+ * Later launches with the same footprints load it instead of rebuilding.
+ */
+public class StaticObstacleWorld {
+
+    private static final Logger logger = LoggerFactory.getLogger(StaticObstacleWorld.class);
+
+    private final float regionSize; // meters per region side
+    private final Path cacheDir;
+    private final List<Region> regions = new ArrayList<>();
+
+    public StaticObstacleWorld(float regionSize, Path cacheDir) {
+        this.regionSize = regionSize;
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Extrude the footprints, build (or load) one collision mesh per region and
+     * add the resulting static bodies to the physics world.
+     */
+    public void build(List<BuildingFootprint> footprints, PhysicsWorld physicsWorld) {
+        long start = System.nanoTime();
+
+        // Sorted so region order (and cache names) don't depend on hash order
+        Map<Long, FootprintExtruder> buckets = new TreeMap<>();
+        for (BuildingFootprint footprint : footprints) {
+            int rx = (int) Math.floor(footprint.getCenterX() / regionSize);
+            int rz = (int) Math.floor(footprint.getCenterZ() / regionSize);
+            long key = ((long) rx << 32) | (rz & 0xffffffffL);
+            buckets.computeIfAbsent(key, k -> new FootprintExtruder()).add(footprint);
+        }
+
+        int cacheHits = 0;
+        for (Map.Entry<Long, FootprintExtruder> entry : buckets.entrySet()) {
+            int rx = (int) (entry.getKey() >> 32);
+            int rz = (int) (long) entry.getKey();
+            FootprintExtruder extruder = entry.getValue();
+
+            Region region = new Region(rx, rz, extruder.getPositions(), extruder.getNormals(), extruder.getIndices());
+            if (region.buildCollisionShape(cacheDir)) {
+                cacheHits++;
+            }
+            region.body = physicsWorld.createStaticMesh(region.shape);
+            regions.add(region);
+        }
+
+        logger.info("Static world built: {} building(s) in {} region(s), {} BVH(s) loaded from cache, took {} ms",
+                footprints.size(), regions.size(), cacheHits, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Create the merged render mesh for every region. Needs a GL context, so
+     * it is kept separate from build() (and headless runs just skip it).
+     */
+    public void createRenderMeshes() {
+        for (Region region : regions) {
+            if (region.renderMesh == null) {
+                int vertexCount = region.positions.length / 3;
+                region.renderMesh = new Mesh(region.positions, region.normals, new float[vertexCount * 2],
+                        region.indices, "static_region_" + region.rx + "_" + region.rz);
+            }
+        }
+    }
+
+    public List<Region> getRegions() {
+        return regions;
+    }
+
+    public int getTriangleCount() {
+        int count = 0;
+        for (Region region : regions) {
+            count += region.indices.length / 3;
+        }
+        return count;
+    }
+
+    public void cleanup(PhysicsWorld physicsWorld) {
+        for (Region region : regions) {
+            if (region.body != null) {
+                physicsWorld.removeRigidBody(region.body);
+            }
+            if (region.renderMesh != null) {
+                region.renderMesh.cleanup();
+            }
+        }
+        regions.clear();
+    }
+
+    /**
+     * One region: the merged triangles in world space, its collision shape and
+     * static body, and (optionally) its render mesh.
+     */
+    public static class Region {
+
+        private final int rx;
+        private final int rz;
+        private final float[] positions;
+        private final float[] normals;
+        private final int[] indices;
+
+        private MeshCollisionShape shape;
+        private PhysicsRigidBody body;
+        private Mesh renderMesh;
+
+        Region(int rx, int rz, float[] positions, float[] normals, int[] indices) {
+            this.rx = rx;
+            this.rz = rz;
+            this.positions = positions;
+            this.normals = normals;
+            this.indices = indices;
+        }
+
+        /**
+         * @return true if the BVH was loaded from the cache
+         */
+        private boolean buildCollisionShape(Path cacheDir) {
+            IndexedMesh mesh = new IndexedMesh(BufferUtils.createFloatBuffer(positions),
+                    BufferUtils.createIntBuffer(indices));
+
+            Path cacheFile = cacheDir != null
+                    ? cacheDir.resolve(String.format("region_%d_%d_%08x.bvh", rx, rz, geometryChecksum()))
+                    : null;
+
+            if (cacheFile != null && Files.exists(cacheFile)) {
+                try {
+                    shape = new MeshCollisionShape(Files.readAllBytes(cacheFile), mesh);
+                    return true;
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Ignoring unreadable BVH cache {}: {}", cacheFile, e.getMessage());
+                }
+            }
+
+            shape = new MeshCollisionShape(true, mesh);
+
+            if (cacheFile != null) {
+                try {
+                    Files.createDirectories(cacheDir);
+                    Files.write(cacheFile, shape.serializeBvh());
+                } catch (IOException e) {
+                    logger.warn("Could not write BVH cache {}: {}", cacheFile, e.getMessage());
+                }
+            }
+            return false;
+        }
+
+        private long geometryChecksum() {
+            ByteBuffer bytes = ByteBuffer.allocate(positions.length * 4 + indices.length * 4)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asFloatBuffer().put(positions);
+            bytes.position(positions.length * 4);
+            bytes.asIntBuffer().put(indices);
+            bytes.rewind();
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            return crc.getValue();
+        }
+
+        public float[] getPositions() {
+            return positions;
+        }
+
+        public int[] getIndices() {
+            return indices;
+        }
+
+        public PhysicsRigidBody getBody() {
+            return body;
+        }
+
+        public Mesh getRenderMesh() {
+            return renderMesh;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.paperpiper.world;
+
+import java.util.SplittableRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Precomputed 3D wind grid: a mean wind with a log height profile plus
+ * turbulence from a few octaves of lattice noise. The grid is filled once on a
+ * background thread; sample() is then a trilinear lookup, so wind costs the
+ * same per drone no matter how the turbulence is made.
+ *
+ * The grid wraps horizontally so it covers any area. Gusts move with the mean
+ * wind (frozen turbulence): sampling at (position - mean * time) makes the
+ * field change over time at no extra cost. Until the grid is ready only the
+ * mean profile is returned.
+ */
+public class WindField {
+
+    private static final Logger logger = LoggerFactory.getLogger(WindField.class);
+
+    private static final float REFERENCE_HEIGHT = 10f; // m, height the mean speed is given at
+    private static final float ROUGHNESS = 0.1f;       // m, surface roughness length
+    private static final int OCTAVES = 3;
+
+    private final int nx, ny, nz;
+    private final float spacing; // m between grid points
+    private final float meanX, meanZ; // m/s at the reference height
+    private final float gust;    // m/s, turbulence amplitude
+    private final long seed;
+
+    // [x, y, z] per grid point, x fastest. Null until the background fill is done.
+    private volatile float[] grid;
+
+    /**
+     * @param heading mean wind direction it blows towards, radians from +X towards +Z
+     */
+    public WindField(int nx, int ny, int nz, float spacing, float meanSpeed, float heading, float gust,
+            long seed) {
+        this.nx = nx;
+        this.ny = ny;
+        this.nz = nz;
+        this.spacing = spacing;
+        this.meanX = meanSpeed * (float) Math.cos(heading);
+        this.meanZ = meanSpeed * (float) Math.sin(heading);
+        this.gust = gust;
+        this.seed = seed;
+    }
+
+    /**
+     * Fill the grid on a daemon thread.
+     */
+    public Thread startBuild() {
+        Thread thread = new Thread(this::build, "wind-field");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Fill the grid on the calling thread.
+     */
+    public void build() {
+        long start = System.nanoTime();
+        float[] g = new float[nx * ny * nz * 3];
+        SplittableRandom random = new SplittableRandom(seed);
+
+        // Lattice every 8, 4, 2 grid points, half the amplitude each octave
+        float amplitude = gust;
+        for (int octave = 0; octave < OCTAVES; octave++) {
+            int step = 8 >> octave;
+            addOctave(g, step, amplitude, random.split());
+            amplitude *= 0.5f;
+        }
+
+        for (int y = 0; y < ny; y++) {
+            float profile = profile(y * spacing);
+            for (int z = 0; z < nz; z++) {
+                for (int x = 0; x < nx; x++) {
+                    int i = ((y * nz + z) * nx + x) * 3;
+                    g[i] += meanX * profile;
+                    g[i + 2] += meanZ * profile;
+                }
+            }
+        }
+
+        grid = g;
+        logger.info("Wind field {}x{}x{} @ {} m ready in {} ms", nx, ny, nz, spacing,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Random vectors on a coarse lattice (periodic in x/z), smoothly
+     * interpolated onto the grid.
+     */
+    private void addOctave(float[] g, int step, float amplitude, SplittableRandom random) {
+        int lx = Math.max(1, nx / step);
+        int ly = ny / step + 2;
+        int lz = Math.max(1, nz / step);
+        float[] lattice = new float[lx * ly * lz * 3];
+        for (int i = 0; i < lattice.length; i++) {
+            lattice[i] = (float) (random.nextDouble() * 2 - 1) * amplitude;
+        }
+
+        for (int y = 0; y < ny; y++) {
+            float fy = (float) y / step;
+            int y0 = (int) fy;
+            float ty = smooth(fy - y0);
+            for (int z = 0; z < nz; z++) {
+                float fz = (float) z / step;
+                int z0 = (int) fz;
+                float tz = smooth(fz - z0);
+                for (int x = 0; x < nx; x++) {
+                    float fx = (float) x / step;
+                    int x0 = (int) fx;
+                    float tx = smooth(fx - x0);
+                    int i = ((y * nz + z) * nx + x) * 3;
+                    for (int c = 0; c < 3; c++) {
+                        g[i + c] += lerp3(lattice, lx, ly, lz, x0, y0, z0, tx, ty, tz, c);
+                    }
+                }
+            }
+        }
+    }
+
+    private static float lerp3(float[] l, int lx, int ly, int lz, int x0, int y0, int z0,
+            float tx, float ty, float tz, int c) {
+        int x1 = (x0 + 1) % lx, y1 = Math.min(y0 + 1, ly - 1), z1 = (z0 + 1) % lz;
+        x0 %= lx;
+        z0 %= lz;
+        float c00 = lerp(l[((y0 * lz + z0) * lx + x0) * 3 + c], l[((y0 * lz + z0) * lx + x1) * 3 + c], tx);
+        float c10 = lerp(l[((y1 * lz + z0) * lx + x0) * 3 + c], l[((y1 * lz + z0) * lx + x1) * 3 + c], tx);
+        float c01 = lerp(l[((y0 * lz + z1) * lx + x0) * 3 + c], l[((y0 * lz + z1) * lx + x1) * 3 + c], tx);
+        float c11 = lerp(l[((y1 * lz + z1) * lx + x0) * 3 + c], l[((y1 * lz + z1) * lx + x1) * 3 + c], tx);
+        return lerp(lerp(c00, c10, ty), lerp(c01, c11, ty), tz);
+    }
+
+    private static float smooth(float t) {
+        return t * t * (3 - 2 * t);
+    }
+
+    private static float lerp(float a, float b, float t) {
+        return a + (b - a) * t;
+    }
+
+    /** Log wind profile, 1 at the reference height, 0 at the ground. */
+    private static float profile(float height) {
+        float h = Math.max(height, ROUGHNESS);
+        return (float) (Math.log(h / ROUGHNESS) / Math.log(REFERENCE_HEIGHT / ROUGHNESS));
+    }
+
+    /**
+     * Wind velocity at a world position and time, trilinear from the grid.
+     *
+     * @param out receives [x, y, z] in m/s at out[offset..offset+2]
+     */
+    public void sample(float px, float py, float pz, float time, float[] out, int offset) {
+        float[] g = grid;
+        if (g == null) {
+            float profile = profile(py);
+            out[offset] = meanX * profile;
+            out[offset + 1] = 0;
+            out[offset + 2] = meanZ * profile;
+            return;
+        }
+
+        // Frozen turbulence: the pattern drifts with the mean wind
+        float gx = (px - meanX * time) / spacing;
+        float gy = Math.max(0f, Math.min(ny - 1.001f, py / spacing));
+        float gz = (pz - meanZ * time) / spacing;
+
+        int x0 = (int) Math.floor(gx);
+        int y0 = (int) gy;
+        int z0 = (int) Math.floor(gz);
+        float tx = gx - x0, ty = gy - y0, tz = gz - z0;
+
+        x0 = Math.floorMod(x0, nx);
+        z0 = Math.floorMod(z0, nz);
+        int x1 = x0 + 1 == nx ? 0 : x0 + 1;
+        int z1 = z0 + 1 == nz ? 0 : z0 + 1;
+        int y1 = y0 + 1;
+
+        int i000 = ((y0 * nz + z0) * nx + x0) * 3, i100 = ((y0 * nz + z0) * nx + x1) * 3;
+        int i010 = ((y1 * nz + z0) * nx + x0) * 3, i110 = ((y1 * nz + z0) * nx + x1) * 3;
+        int i001 = ((y0 * nz + z1) * nx + x0) * 3, i101 = ((y0 * nz + z1) * nx + x1) * 3;
+        int i011 = ((y1 * nz + z1) * nx + x0) * 3, i111 = ((y1 * nz + z1) * nx + x1) * 3;
+
+        for (int c = 0; c < 3; c++) {
+            float c00 = g[i000 + c] + (g[i100 + c] - g[i000 + c]) * tx;
+            float c10 = g[i010 + c] + (g[i110 + c] - g[i010 + c]) * tx;
+            float c01 = g[i001 + c] + (g[i101 + c] - g[i001 + c]) * tx;
+            float c11 = g[i011 + c] + (g[i111 + c] - g[i011 + c]) * tx;
+            float c0 = c00 + (c10 - c00) * ty;
+            float c1 = c01 + (c11 - c01) * ty;
+            out[offset + c] = c0 + (c1 - c0) * tz;
+        }
+    }
+
+    public boolean isReady() {
+        return grid != null;
+    }
+
+    public boolean isCalm() {
+        return meanX == 0 && meanZ == 0 && gust == 0;
+    }
+}
@@ -0,0 +1,143 @@
+package com.paperpiper.airspace;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Unit tests for Geofence.
+ *
+ * The layout: a 100 x 100 m keep-out from the ground to 50 m, a 20 m wide
+ * corridor crossing it along Z (x 40..60) up to 60 m, and a 120 m ceiling
+ * over everything. The near margin is 5 m.
+ */
+class GeofenceTest {
+
+    private static final float MARGIN = 5f;
+
+    private ParallelFor parallel;
+    private Geofence fence;
+    private int keepOut, corridor, ceiling;
+
+    private void build() {
+        parallel = new ParallelFor(2);
+        fence = new Geofence(parallel, MARGIN, 64);
+        keepOut = fence.addKeepOut(new float[] {0, 0, 100, 0, 100, 100, 0, 100}, 0, 50);
+        corridor = fence.addCorridor(new float[] {40, -10, 60, -10, 60, 110, 40, 110}, 0, 60);
+        ceiling = fence.addCeiling(new float[] {-500, -500, 500, -500, 500, 500, -500, 500}, 120);
+    }
+
+    @Test
+    void testStatusAroundZones() {
+        build();
+        float[][] points = {
+            {-20, 10, 50},  // well outside
+            {-3, 10, 50},   // 3 m from the keep-out's side
+            {20, 53, 20},   // 3 m above the keep-out
+            {30, 10, 50},   // inside the keep-out
+            {50, 10, 50},   // middle of the corridor
+            {42, 10, 50},   // 2 m from the corridor wall, keep-out behind it
+            {200, 117, 200}, // 3 m under the ceiling
+            {200, 130, 200}, // above the ceiling
+        };
+        int[] expectedStatus = {
+            Geofence.CLEAR, Geofence.NEAR, Geofence.NEAR, Geofence.BREACH,
+            Geofence.CLEAR, Geofence.NEAR, Geofence.NEAR, Geofence.BREACH,
+        };
+        int[] expectedZone = {-1, keepOut, keepOut, keepOut, -1, corridor, ceiling, ceiling};
+        float[] expectedDistance = {0, 3, 3, 10, 0, 2, 3, 10};
+
+        DroneState state = new DroneState(points.length);
+        int[] ids = place(state, points);
+        fence.check(state, ids, ids.length);
+
+        for (int i = 0; i < points.length; i++) {
+            assertEquals(expectedStatus[i], fence.getStatus(ids[i]), "Drone " + i + " status");
+            assertEquals(expectedZone[i], fence.getStatusZone(ids[i]), "Drone " + i + " zone");
+        }
+        // Every drone that isn't CLEAR raised one event, in drone order
+        long sequence = fence.getOldestEvent();
+        for (int i = 0; i < points.length; i++) {
+            if (expectedStatus[i] == Geofence.CLEAR) {
+                continue;
+            }
+            assertEquals(ids[i], fence.getEventDrone(sequence));
+            assertEquals(expectedStatus[i], fence.getEventStatus(sequence));
+            assertEquals(expectedZone[i], fence.getEventZone(sequence));
+            assertEquals(expectedDistance[i], fence.getEventDistance(sequence), 1e-3f, "Drone " + i + " distance");
+            sequence++;
+        }
+        assertEquals(fence.getEventCount(), sequence);
+
+        parallel.shutdown();
+    }
+
+    /**
+     * One drone flies into the keep-out, through the corridor and out. Each
+     * change raises exactly one event; holding still raises none.
+     */
+    @Test
+    void testEventsFollowStatusChanges() {
+        build();
+        DroneState state = new DroneState(1);
+        int[] ids = place(state, new float[][] {{-20, 10, 50}});
+        float[] position = state.getPosition();
+        int p = ids[0] * 3;
+
+        float[] xs = {-20, -3, 30, 30, 42, 50, 50};
+        int[] expectedStatus = {
+            Geofence.CLEAR, Geofence.NEAR, Geofence.BREACH, Geofence.BREACH,
+            Geofence.NEAR, Geofence.CLEAR, Geofence.CLEAR,
+        };
+        int[] expectedZone = {-1, keepOut, keepOut, keepOut, corridor, -1, -1};
+        long events = 0;
+        for (int step = 0; step < xs.length; step++) {
+            position[p] = xs[step];
+            fence.check(state, ids, 1);
+            assertEquals(expectedStatus[step], fence.getStatus(ids[0]), "Step " + step);
+            boolean changed = step > 0 && (expectedStatus[step] != expectedStatus[step - 1]
+                    || expectedZone[step] != expectedZone[step - 1]);
+            if (changed) {
+                events++;
+                long last = fence.getEventCount() - 1;
+                assertEquals(expectedStatus[step], fence.getEventStatus(last), "Step " + step);
+                assertEquals(expectedZone[step], fence.getEventZone(last), "Step " + step);
+                assertEquals(step + 1, fence.getEventTick(last), "Step " + step);
+            }
+            assertEquals(events, fence.getEventCount(), "Step " + step);
+        }
+
+        // Back into the keep-out, then move the keep-out away
+        position[p] = 30;
+        fence.check(state, ids, 1);
+        assertEquals(Geofence.BREACH, fence.getStatus(ids[0]));
+        fence.updateZone(keepOut, new float[] {300, 300, 400, 300, 400, 400, 300, 400}, 0, 50);
+        fence.check(state, ids, 1);
+        assertEquals(Geofence.CLEAR, fence.getStatus(ids[0]));
+        assertEquals(-1, fence.getEventZone(fence.getEventCount() - 1));
+
+        // Removing the ceiling clears a drone above it
+        position[p] = 200;
+        position[p + 1] = 130;
+        position[p + 2] = 200;
+        fence.check(state, ids, 1);
+        assertEquals(Geofence.BREACH, fence.getStatus(ids[0]));
+        fence.removeZone(ceiling);
+        fence.check(state, ids, 1);
+        assertEquals(Geofence.CLEAR, fence.getStatus(ids[0]));
+
+        parallel.shutdown();
+    }
+
+    private static int[] place(DroneState state, float[][] points) {
+        int[] ids = new int[points.length];
+        float[] position = state.getPosition();
+        for (int i = 0; i < points.length; i++) {
+            ids[i] = state.allocate();
+            System.arraycopy(points[i], 0, position, ids[i] * 3, 3);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,175 @@
+package com.paperpiper.airspace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for ReservationTable.
+ */
+class ReservationTableTest {
+
+    private static final float SPEED = 10f;
+
+    /**
+     * Many threads start the same path for different drones at the same
+     * moment: exactly one gets it and everyone else is told who.
+     */
+    @Test
+    void testConcurrentClaimsOnOnePathHaveOneWinner() throws Exception {
+        ReservationTable table = new ReservationTable(4f, 1f, 64, 4096, 1024);
+        float[] path = {0, 20, 0, 200, 20, 0};
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int d = 0; d < threads; d++) {
+            int drone = d;
+            results.add(executor.submit(() -> {
+                start.await();
+                return table.reserve(drone, path, 0f, SPEED, null);
+            }));
+        }
+        start.countDown();
+
+        int winner = -1;
+        List<Integer> outcomes = new ArrayList<>();
+        for (int d = 0; d < threads; d++) {
+            int outcome = results.get(d).get();
+            outcomes.add(outcome);
+            if (outcome == ReservationTable.RESERVED) {
+                assertEquals(-1, winner, "Two drones reserved the same path");
+                winner = d;
+            }
+        }
+        executor.shutdown();
+
+        assertTrue(winner >= 0, "Someone should get the path");
+        for (int d = 0; d < threads; d++) {
+            if (d != winner) {
+                assertEquals(winner, outcomes.get(d), "Drone " + d + " should be told who holds the path");
+            }
+        }
+        for (float f = 0f; f <= 1f; f += 0.05f) {
+            assertEquals(winner, table.ownerAt(200 * f, 20, 0, 200 * f / SPEED));
+        }
+    }
+
+    /**
+     * Random crossing paths reserved from 8 threads at once: every path that
+     * was granted must still be owned by its drone all the way along, so no
+     * (cell, slot) went to two drones.
+     */
+    @Test
+    void testConcurrentClaimsNeverShareACell() throws Exception {
+        ReservationTable table = new ReservationTable(4f, 2f, 64, 16384, 16384);
+        int threads = 8;
+        int perThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<List<float[]>>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int base = t * perThread;
+            results.add(executor.submit(() -> {
+                Random random = new Random(base);
+                List<float[]> granted = new ArrayList<>();
+                for (int d = base; d < base + perThread; d++) {
+                    float y = 10f + random.nextInt(3) * 4f;
+                    float[] path = {random.nextFloat() * 400, y, random.nextFloat() * 400,
+                            random.nextFloat() * 400, y, random.nextFloat() * 400};
+                    float departure = random.nextFloat() * 20f;
+                    if (table.reserve(d, path, departure, SPEED, null) == ReservationTable.RESERVED) {
+                        granted.add(new float[] {d, path[0], path[1], path[2], path[3], path[5], departure});
+                    }
+                }
+                return granted;
+            }));
+        }
+        List<float[]> granted = new ArrayList<>();
+        for (Future<List<float[]>> result : results) {
+            granted.addAll(result.get());
+        }
+        executor.shutdown();
+
+        assertTrue(granted.size() > 0 && table.getConflicts() > 0, "Paths should both succeed and collide");
+        float end = table.getHorizon() * table.getSlotDuration();
+        for (float[] g : granted) {
+            int drone = (int) g[0];
+            float dx = g[4] - g[1], dz = g[5] - g[3];
+            float length = (float) Math.sqrt(dx * dx + dz * dz);
+            for (float f = 0f; f <= 1f; f += 0.05f) {
+                float time = g[6] + length * f / SPEED;
+                if (time >= end) {
+                    break;
+                }
+                assertEquals(drone, table.ownerAt(g[1] + dx * f, g[2], g[3] + dz * f, time),
+                        "Drone " + drone + " should still own its path at " + f);
+            }
+        }
+    }
+
+    /**
+     * Buckets are fixed size, so running for many rounds only works if
+     * entries from past rounds are overwritten. Claims older than the clock
+     * are gone, and the same cells can be claimed again by someone else.
+     */
+    @Test
+    void testRoundsExpireAndSlotsAreReused() {
+        int horizon = 4;
+        float slot = 1f;
+        ReservationTable table = new ReservationTable(4f, slot, horizon, 16, 64);
+
+        for (int round = 0; round < 200; round++) {
+            float now = round * horizon * slot;
+            table.advance(now);
+            for (int d = 0; d < 10; d++) {
+                // A different drone each round for the same 10 cells
+                int drone = (d + round) % 64;
+                float x = d * 8f;
+                float[] path = {x, 10, 0, x + 0.1f, 10, 0};
+                assertEquals(ReservationTable.RESERVED, table.reserve(drone, path, now, SPEED, null),
+                        "Round " + round + ": drone " + drone + " should get a cell freed by expiry");
+                assertEquals(drone, table.ownerAt(x, 10, 0, now));
+            }
+            if (round > 0) {
+                assertEquals(-1, table.ownerAt(0, 10, 0, now - horizon * slot), "Past rounds should be gone");
+            }
+        }
+        assertEquals(0, table.getOverflows());
+    }
+
+    @Test
+    void testReleaseThenReclaim() {
+        ReservationTable table = new ReservationTable(4f, 1f, 64, 4096, 64);
+        float[] east = {0, 20, 0, 200, 20, 0};
+        float[] north = {100, 20, 100, 100, 20, -100};
+        float[] conflict = new float[4];
+
+        assertEquals(ReservationTable.RESERVED, table.reserve(1, east, 0f, SPEED, null));
+        assertEquals(1, table.reserve(2, north, 0f, SPEED, conflict), "The crossing should be taken by drone 1");
+        assertEquals(100f, conflict[0], 4f);
+        assertEquals(0f, conflict[2], 4f);
+        assertEquals(-1, table.ownerAt(100, 20, 50, 5f), "A refused drone holds nothing");
+
+        table.release(1);
+        assertEquals(-1, table.ownerAt(50, 20, 0, 5f));
+        assertEquals(ReservationTable.RESERVED, table.reserve(2, north, 0f, SPEED, null));
+        assertEquals(2, table.ownerAt(100, 20, 0, 10f));
+        assertEquals(2, table.reserve(1, east, 0f, SPEED, null), "Now drone 1 runs into drone 2");
+
+        // Tagged holdings are only released by the request that made them
+        assertEquals(ReservationTable.RESERVED, table.reserve(3, 7, null, east, 30f, SPEED, null));
+        table.release(3, 6);
+        assertEquals(3, table.ownerAt(50, 20, 0, 35f));
+        table.release(3, 7);
+        assertEquals(-1, table.ownerAt(50, 20, 0, 35f));
+        assertEquals(ReservationTable.STALE, table.reserve(3, 8, () -> false, east, 30f, SPEED, null));
+    }
+}
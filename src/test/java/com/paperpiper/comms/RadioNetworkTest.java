@@ -0,0 +1,78 @@
+package com.paperpiper.comms;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Unit tests for RadioNetwork.
+ */
+class RadioNetworkTest {
+
+    /**
+     * Every message takes the longest latency the wheel allows while another
+     * thread keeps sending through tick(). The segment a tick reopens for
+     * sends must not still hold records due that tick, so each message
+     * arrives once, after everything sent before its tick, and wheelSize - 1
+     * ticks after it was fanned out.
+     */
+    @Test
+    void testMaxLatencySendsDuringTickArriveIntact() throws InterruptedException {
+        int wheelSize = 4;
+        int perTick = 2048; // enough that fan-out forks, so the sender gets in mid-tick
+        ParallelFor parallel = new ParallelFor(2);
+        DroneState state = new DroneState(2);
+        RadioNetwork radio = new RadioNetwork(parallel, 100f, 4 * perTick, perTick, wheelSize, 1);
+        radio.setLoss(0f, 1L);
+        radio.setLatency(10f, 0f); // far beyond the wheel, so capped at wheelSize - 1 ticks
+        int[] ids = {state.allocate(), state.allocate()};
+        float[] position = state.getPosition();
+        position[ids[1] * 3] = 10f;
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread sender = new Thread(() -> {
+            int[] payload = new int[1];
+            while (running.get()) {
+                if (radio.send(ids[0], ids[1], 7, payload, 0, 1)) {
+                    payload[0]++;
+                }
+            }
+        }, "radio-test-sender");
+        sender.start();
+
+        int[] record = new int[RadioNetwork.RECORD_INTS];
+        BitSet seen = new BitSet();
+        int last = -1;
+        int received = 0;
+        for (int t = 0; t < 2000; t++) {
+            radio.tick(state, ids, 2, 1f / 60f);
+            // Chunks fan out in any order, so only ticks are ordered
+            int newest = last;
+            while (radio.receive(ids[1], record, 0)) {
+                int sequence = record[RadioNetwork.PAYLOAD];
+                assertTrue(sequence > last, "Tick " + t + ": message " + sequence + " after " + last);
+                assertTrue(!seen.get(sequence), "Tick " + t + ": message " + sequence + " arrived twice");
+                seen.set(sequence);
+                newest = Math.max(newest, sequence);
+                // Sent during the tick before the one that fanned it out, or just after it
+                int age = t - record[RadioNetwork.TICK];
+                assertTrue(age == wheelSize - 1 || age == wheelSize,
+                        "Tick " + t + ": message " + sequence + " is " + age + " ticks old");
+                received++;
+            }
+            last = newest;
+        }
+        running.set(false);
+        sender.join();
+
+        assertTrue(received > 0, "Messages should get through");
+        assertTrue(radio.getSentTotal() - radio.getDeliveredTotal() <= (long) perTick * (wheelSize - 1),
+                "Only the last wheelSize - 1 ticks' messages may still be in flight");
+        parallel.shutdown();
+    }
+}
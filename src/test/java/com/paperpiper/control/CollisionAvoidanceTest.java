@@ -0,0 +1,95 @@
+package com.paperpiper.control;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.spatial.SpatialHash;
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Unit tests for CollisionAvoidance.
+ */
+class CollisionAvoidanceTest {
+
+    /**
+     * Antipodal ring swap: 20 drones on a 10 m ring all fly through the
+     * center to the opposite side. Velocities follow the setpoints with a
+     * first-order lag (about what the velocity loop does) instead of full
+     * physics. Everyone should arrive and no pair should come closer than
+     * 0.53 m.
+     */
+    @Test
+    void testAntipodalRingSwapKeepsSeparation() {
+        int count = 20;
+        float ringRadius = 10f;
+        DroneState state = new DroneState(count);
+        VelocityController velocityController = new VelocityController(new FlightController(), 0.5f);
+        ParallelFor parallel = new ParallelFor(2);
+        CollisionAvoidance avoidance = new CollisionAvoidance(velocityController, parallel);
+
+        int[] ids = new int[count];
+        float[] goals = new float[count * 3];
+        float[] position = state.getPosition();
+        for (int i = 0; i < count; i++) {
+            ids[i] = state.allocate();
+            state.getArmed()[ids[i]] = true;
+            velocityController.setEnabled(ids[i], true);
+            double angle = 2 * Math.PI * i / count;
+            int p = ids[i] * 3;
+            // Small height wobble so the swap isn't a perfectly planar (degenerate) case
+            position[p] = (float) (ringRadius * Math.cos(angle));
+            position[p + 1] = 20f + (float) (0.5 * Math.sin(7 * angle));
+            position[p + 2] = (float) (ringRadius * Math.sin(angle));
+            goals[p] = -position[p];
+            goals[p + 1] = position[p + 1];
+            goals[p + 2] = -position[p + 2];
+        }
+
+        SpatialHash neighbors = new SpatialHash(6f, 64);
+        float[] velocity = state.getLinearVelocity();
+        float[] setpoint = velocityController.getVelocitySetpoint();
+        float dt = 1f / 60f;
+        float lag = Math.min(1f, 6f * dt);
+        float minDistance = Float.MAX_VALUE;
+        boolean arrived = false;
+
+        for (int frame = 0; frame < 60 * 30 && !arrived; frame++) {
+            arrived = true;
+            for (int i = 0; i < count; i++) {
+                int p = ids[i] * 3;
+                float dx = goals[p] - position[p], dy = goals[p + 1] - position[p + 1], dz = goals[p + 2] - position[p + 2];
+                float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+                if (distance > 0.5f) {
+                    arrived = false;
+                }
+                float scale = Math.min(5f, distance) / Math.max(distance, 1e-6f);
+                velocityController.setVelocitySetpoint(ids[i], dx * scale, dy * scale, dz * scale, Float.NaN);
+            }
+
+            neighbors.rebuild(position, ids, count, parallel);
+            avoidance.update(state, neighbors, ids, count, dt);
+
+            for (int i = 0; i < count; i++) {
+                int p = ids[i] * 3;
+                for (int c = 0; c < 3; c++) {
+                    velocity[p + c] += (setpoint[p + c] - velocity[p + c]) * lag;
+                    position[p + c] += velocity[p + c] * dt;
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    int a = ids[i] * 3, b = ids[j] * 3;
+                    float dx = position[a] - position[b], dy = position[a + 1] - position[b + 1];
+                    float dz = position[a + 2] - position[b + 2];
+                    minDistance = Math.min(minDistance, (float) Math.sqrt(dx * dx + dy * dy + dz * dz));
+                }
+            }
+        }
+
+        assertTrue(arrived, "Every drone should reach the opposite side of the ring within 30 s");
+        assertTrue(minDistance >= 0.53f, "Drones should stay at least 0.53 m apart, closest was " + minDistance + " m");
+
+        parallel.shutdown();
+    }
+}
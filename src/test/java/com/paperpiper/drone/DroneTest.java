@@ -1,13 +1,31 @@
 package com.paperpiper.drone;
 
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
 import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
+import com.sun.management.ThreadMXBean;
+import com.paperpiper.control.FlightController;
+import com.paperpiper.control.DroneController;
+import com.paperpiper.control.Formation;
+import com.paperpiper.control.SwarmController;
+import com.paperpiper.control.VelocityController;
 import com.paperpiper.physics.PhysicsWorld;
+import com.paperpiper.simulation.SimulationEngine;
+import com.paperpiper.spatial.SpatialHash;
+import com.paperpiper.util.ParallelFor;
+import com.paperpiper.world.WindField;
 
 /**
  * Unit tests for Drone class.
@@ -51,6 +69,33 @@ class DroneTest {
 
     }
 
+    /**
+     * A drone in a shared store only takes a slot once it is initialized,
+     * and gives it back if initialization fails.
+     */
+    @Test
+    void testSharedStoreSlotTakenByInit() {
+        DroneState state = new DroneState(4);
+        Drone idle = new Drone(state);
+        Drone failing = new Drone(state);
+        assertEquals(0, state.size(), "Constructing drones takes no slot");
+
+        assertThrows(NullPointerException.class, () -> failing.initPhysicsOnly(null, new Vector3f()));
+        assertFalse(state.isUsed(0), "A failed init gives its slot back");
+
+        PhysicsWorld physicsWorld = new PhysicsWorld();
+        physicsWorld.init();
+        Drone drone = new Drone(state);
+        drone.initPhysicsOnly(physicsWorld, new Vector3f(0, 10, 0));
+        assertEquals(0, drone.getId(), "The released slot is reused");
+        assertTrue(state.isUsed(0));
+        assertEquals(-1, idle.getId());
+
+        drone.cleanup(physicsWorld);
+        assertFalse(state.isUsed(0));
+        physicsWorld.cleanup();
+    }
+
     /**
      * Test that the drone's collision shape settles properly on the ground
      * plane. - Initialize drone with physics - Drop from height - Let physics
@@ -146,4 +191,280 @@ class DroneTest {
         // Cleanup
         drone.cleanup(physicsWorld);
     }
+
+    /**
+     * Everything the engine runs per drone per physics substep (the tick
+     * listener's plug-in controllers, flight controller, mixing, motor, aero
+     * and downwash passes, force application and state pull) must not
+     * allocate. Drives a physics-only engine through real Bullet steps and
+     * measures allocated bytes on this thread over several windows after a
+     * warm-up, so JIT and one-time setup don't count. Every window must be
+     * clean.
+     */
+    @Test
+    void testDroneTickDoesNotAllocate() {
+        PhysicsWorld physicsWorld = new PhysicsWorld();
+        physicsWorld.init();
+        SimulationEngine engine = new SimulationEngine(physicsWorld);
+        engine.initPhysicsOnly();
+
+        // Holds 500 m by throttle alone, level and without yaw
+        float altitude = 500f;
+        float hover = Drone.DRONE_MASS * 9.81f / (RotorMixer.ROTOR_COUNT * Drone.MAX_ROTOR_THRUST);
+        DroneController holdAltitude = (ids, from, to, s, step) -> {
+            float[] positions = s.getPosition();
+            float[] velocity = s.getLinearVelocity();
+            for (int i = from; i < to; i++) {
+                int id = ids[i];
+                s.getThrottle()[id] = hoverThrottle(hover, altitude, positions[id * 3 + 1], velocity[id * 3 + 1]);
+                s.getPitch()[id] = 0f;
+                s.getRoll()[id] = 0f;
+                s.getYaw()[id] = 0f;
+            }
+        };
+
+        // Half the drones on a plug-in controller, half on the flight
+        // controller, whose thrust setpoint is updated once per frame below
+        Drone[] drones = new Drone[8];
+        for (int i = 0; i < drones.length; i++) {
+            drones[i] = engine.addDrone(new Vector3f(i * 5f, altitude, 0f));
+            drones[i].setMotorsArmed(true);
+            if (i % 2 == 0) {
+                engine.getFlightController().setEnabled(drones[i].getId(), true);
+                engine.getFlightController().setAttitudeSetpoint(drones[i].getId(), 0.05f, -0.05f, 0.2f, hover);
+            } else {
+                engine.setController(drones[i], holdAltitude);
+            }
+        }
+
+        Vector3f position = new Vector3f();
+        Vector3f velocity = new Vector3f();
+        float dt = 1f / 60f;
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        int warmUpFrames = 5_000;
+        int windows = 5;
+        int measuredFrames = 250;
+        long substepsBefore = engine.getControlListener().getSubstepCount();
+        for (int window = -1; window < windows; window++) {
+            int frames = window < 0 ? warmUpFrames : measuredFrames;
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int f = 0; f < frames; f++) {
+                for (int i = 0; i < drones.length; i += 2) {
+                    drones[i].getPosition(position);
+                    drones[i].getVelocity(velocity);
+                    engine.getFlightController().setAttitudeSetpoint(drones[i].getId(), 0.05f, -0.05f, 0.2f,
+                            hoverThrottle(hover, altitude, position.y, velocity.y));
+                }
+                physicsWorld.stepSimulation(dt);
+                for (Drone drone : drones) {
+                    drone.updateCcd();
+                    drone.updateDormancy();
+                    drone.getModelMatrix();
+                    drone.getPosition(position);
+                    drone.getVelocity(velocity);
+                }
+            }
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+            if (window >= 0) {
+                assertEquals(0, allocated, "Window " + window + " allocated " + allocated + " bytes over "
+                        + measuredFrames + " frames");
+            }
+        }
+
+        long substeps = engine.getControlListener().getSubstepCount() - substepsBefore;
+        assertTrue(substeps >= (long) (warmUpFrames + windows * measuredFrames) * (FlightController.MIN_RATE / 60),
+                "The tick listener should have run on every substep, ran " + substeps);
+        for (int i = 0; i < drones.length; i++) {
+            drones[i].getPosition(position);
+            assertEquals(altitude, position.y, 5f, "Drone " + drones[i].getId() + " should hold its altitude");
+        }
+
+        engine.cleanup();
+        physicsWorld.cleanup();
+    }
+
+    /** Throttle holding a drone at altitude, from the hover throttle */
+    private static float hoverThrottle(float hover, float altitude, float y, float vy) {
+        return Math.max(0f, Math.min(1f, hover + 0.1f * (altitude - y) - 0.3f * vy));
+    }
+
+    /**
+     * The flight controller should bring a tilted, hovering drone back to
+     * level and hold it there, running once per substep at its minimum rate.
+     */
+    @Test
+    void testFlightControllerLevelsDrone() {
+        PhysicsWorld physicsWorld = new PhysicsWorld();
+        physicsWorld.init();
+        physicsWorld.setPhysicsRate(FlightController.MIN_RATE);
+
+        Drone drone = new Drone();
+        drone.initPhysicsOnly(physicsWorld, new Vector3f(0, 50, 0));
+        drone.getRigidBody().setPhysicsRotation(new Quaternion().fromAngles(0.4f, 0f, -0.3f));
+        drone.pullState();
+        drone.setMotorsArmed(true);
+
+        DroneState state = drone.getState();
+        FlightController controller = new FlightController();
+        float hoverThrust = Drone.DRONE_MASS * 9.81f / Drone.MAX_THRUST;
+        controller.setEnabled(drone.getId(), true);
+        controller.setAttitudeSetpoint(drone.getId(), 0f, 0f, 0f, hoverThrust);
+        MotorBatteryModel motors = new MotorBatteryModel(Drone.MAX_ROTOR_THRUST, Drone.YAW_TORQUE_COEFFICIENT);
+
+        PhysicsTickListener listener = new PhysicsTickListener() {
+            @Override
+            public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+                controller.update(state, timeStep);
+                drone.getRotorMixer().mix(0, state.size(), state.getThrottle(), state.getPitch(),
+                        state.getRoll(), state.getYaw(), state.getRotorCommand(), state.getYawTorque());
+                motors.update(0, state.size(), state, timeStep);
+                drone.applyRotorForces();
+            }
+
+            @Override
+            public void physicsTick(PhysicsSpace space, float timeStep) {
+                drone.pullState();
+            }
+        };
+        physicsWorld.addTickListener(listener);
+
+        for (int i = 0; i < 120; i++) {
+            physicsWorld.stepSimulation(1f / 60f);
+        }
+
+        // Body up vector's Y component: 1 when level
+        float[] q = state.getOrientation();
+        int o = drone.getId() * 4;
+        float upY = 1 - 2 * (q[o] * q[o] + q[o + 2] * q[o + 2]);
+        float[] w = state.getAngularVelocity();
+        int a = drone.getId() * 3;
+        float spin = (float) Math.sqrt(w[a] * w[a] + w[a + 1] * w[a + 1] + w[a + 2] * w[a + 2]);
+
+        assertTrue(upY > 0.999f, "Drone should be level after 2 s, up.y = " + upY);
+        assertTrue(spin < 0.05f, "Drone should not be rotating, |w| = " + spin);
+
+        physicsWorld.removeTickListener(listener);
+        drone.cleanup(physicsWorld);
+        physicsWorld.cleanup();
+    }
+
+    @Test
+    void testSwarmHoldsRingFormation() {
+        PhysicsWorld physicsWorld = new PhysicsWorld();
+        physicsWorld.init();
+        physicsWorld.setPhysicsRate(FlightController.MIN_RATE);
+
+        int count = 6;
+        DroneState state = new DroneState(count);
+        Drone[] drones = new Drone[count];
+        int[] ids = new int[count];
+        FlightController flightController = new FlightController();
+        VelocityController velocityController =
+                new VelocityController(flightController, Drone.DRONE_MASS * 9.81f / Drone.MAX_THRUST);
+        ParallelFor parallel = new ParallelFor(2);
+        SwarmController swarm = new SwarmController(velocityController, parallel);
+        for (int i = 0; i < count; i++) {
+            drones[i] = new Drone(state);
+            drones[i].initPhysicsOnly(physicsWorld, new Vector3f(i * 3f - 7.5f, 20, 0));
+            drones[i].pullState();
+            drones[i].setMotorsArmed(true);
+            ids[i] = drones[i].getId();
+            swarm.addMember(ids[i]);
+        }
+        Formation ring = Formation.ring(count, 6f);
+        swarm.setFormation(ring, 0f, 20f, 0f, 0f);
+        MotorBatteryModel motors = new MotorBatteryModel(Drone.MAX_ROTOR_THRUST, Drone.YAW_TORQUE_COEFFICIENT);
+
+        PhysicsTickListener listener = new PhysicsTickListener() {
+            @Override
+            public void prePhysicsTick(PhysicsSpace space, float timeStep) {
+                flightController.update(state, timeStep);
+                drones[0].getRotorMixer().mix(0, state.size(), state.getThrottle(), state.getPitch(),
+                        state.getRoll(), state.getYaw(), state.getRotorCommand(), state.getYawTorque());
+                motors.update(0, state.size(), state, timeStep);
+                for (Drone drone : drones) {
+                    drone.applyRotorForces();
+                }
+            }
+
+            @Override
+            public void physicsTick(PhysicsSpace space, float timeStep) {
+                for (Drone drone : drones) {
+                    drone.pullState();
+                }
+            }
+        };
+        physicsWorld.addTickListener(listener);
+
+        SpatialHash neighbors = new SpatialHash(4f, 64);
+        float dt = 1f / 60f;
+        for (int frame = 0; frame < 60 * 10; frame++) {
+            neighbors.rebuild(state.getPosition(), ids, count, parallel);
+            swarm.update(state, neighbors, dt);
+            velocityController.update(state, dt);
+            physicsWorld.stepSimulation(dt);
+        }
+
+        float[] position = state.getPosition();
+        float[] slots = ring.getOffsets();
+        for (int i = 0; i < count; i++) {
+            int p = ids[i] * 3;
+            float dx = position[p] - slots[i * 3];
+            float dy = position[p + 1] - 20f;
+            float dz = position[p + 2] - slots[i * 3 + 2];
+            float error = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            assertTrue(error < 0.5f, "Drone " + i + " should hold its slot, off by " + error + " m");
+        }
+
+        physicsWorld.removeTickListener(listener);
+        parallel.shutdown();
+        for (Drone drone : drones) {
+            drone.cleanup(physicsWorld);
+        }
+        physicsWorld.cleanup();
+    }
+
+    /**
+     * The aero model's wind clock moves once per substep, however the drones
+     * are split: chunks run on the pool must give the forces one pass over
+     * all drones gives.
+     */
+    @Test
+    void testAeroModelChunksMatchWholeRange() {
+        int count = 2048;
+        DroneState state = new DroneState(count);
+        SplittableRandom random = new SplittableRandom(1);
+        float[] position = state.getPosition();
+        float[] velocity = state.getLinearVelocity();
+        for (int i = 0; i < count; i++) {
+            int id = state.allocate();
+            state.getArmed()[id] = true;
+            for (int c = 0; c < 3; c++) {
+                position[id * 3 + c] = (float) random.nextDouble(0, 100);
+                velocity[id * 3 + c] = (float) random.nextDouble(-10, 10);
+            }
+        }
+        WindField wind = new WindField(16, 4, 16, 8f, 3f, 0.5f, 2f, 1L);
+        wind.build();
+        AeroModel whole = new AeroModel(wind);
+        AeroModel chunked = new AeroModel(wind);
+        ParallelFor parallel = new ParallelFor(2);
+        float dt = 1f / FlightController.MIN_RATE;
+
+        for (int substep = 0; substep < 50; substep++) {
+            whole.advance(dt);
+            whole.update(0, count, state);
+            float[] expected = state.getExternalForce().clone();
+
+            chunked.advance(dt);
+            parallel.run(count, 64, (from, to) -> chunked.update(from, to, state));
+            float[] force = state.getExternalForce();
+            for (int i = 0; i < count * 3; i++) {
+                assertEquals(expected[i], force[i], "Substep " + substep + ", drone " + i / 3);
+            }
+        }
+        parallel.shutdown();
+    }
 }
@@ -0,0 +1,206 @@
+package com.paperpiper.mission;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.paperpiper.drone.DroneState;
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Unit tests for TaskAllocator.
+ */
+class TaskAllocatorTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskAllocatorTest.class);
+
+    @Test
+    void testAllocateAssignsEveryTaskWithinBundleLimit() {
+        ParallelFor parallel = new ParallelFor(2);
+        DroneState state = new DroneState(50);
+        TaskAllocator allocator = new TaskAllocator(parallel, 5);
+        int[] ids = addAgents(allocator, state, 50, 1000f, new Random(1));
+        int[] tasks = addTasks(allocator, 200, 1000f, new Random(2));
+
+        int assigned = allocator.allocate(state);
+
+        assertEquals(200, assigned, "All 200 tasks fit in 50 bundles of 5");
+        assertEquals(0, allocator.getOpenTaskCount());
+        for (int task : tasks) {
+            assertTrue(allocator.isAgent(allocator.getOwner(task)), "Task " + task + " should have a drone");
+        }
+        checkBundles(allocator, ids, tasks.length);
+
+        parallel.shutdown();
+    }
+
+    /**
+     * More tasks than room: every drone fills up to maxBundle and the rest
+     * stay open.
+     */
+    @Test
+    void testAllocateFillsBundlesWhenTasksExceedRoom() {
+        ParallelFor parallel = new ParallelFor(2);
+        DroneState state = new DroneState(20);
+        TaskAllocator allocator = new TaskAllocator(parallel, 3);
+        int[] ids = addAgents(allocator, state, 20, 500f, new Random(3));
+        addTasks(allocator, 100, 500f, new Random(4));
+
+        int assigned = allocator.allocate(state);
+
+        assertEquals(60, assigned);
+        assertEquals(40, allocator.getOpenTaskCount());
+        int[] bundle = new int[allocator.getMaxBundle()];
+        for (int id : ids) {
+            assertEquals(3, allocator.getBundle(id, bundle), "Drone " + id + " should be full");
+        }
+        checkBundles(allocator, ids, 60);
+
+        parallel.shutdown();
+    }
+
+    /**
+     * A removed drone's tasks go to the drones that still have room, and
+     * nothing else moves.
+     */
+    @Test
+    void testReallocateAfterRemoveAgent() {
+        ParallelFor parallel = new ParallelFor(2);
+        DroneState state = new DroneState(30);
+        TaskAllocator allocator = new TaskAllocator(parallel, 4);
+        int[] ids = addAgents(allocator, state, 30, 800f, new Random(5));
+        int[] tasks = addTasks(allocator, 60, 800f, new Random(6));
+        allocator.allocate(state);
+
+        int removed = -1;
+        int[] bundle = new int[allocator.getMaxBundle()];
+        for (int id : ids) {
+            if (allocator.getBundle(id, bundle) > 0) {
+                removed = id;
+                break;
+            }
+        }
+        int[] before = new int[tasks.length];
+        for (int t = 0; t < tasks.length; t++) {
+            before[t] = allocator.getOwner(tasks[t]);
+        }
+        int freed = allocator.getBundle(removed, bundle);
+
+        allocator.removeAgent(removed);
+        assertTrue(allocator.hasChanges(), "Freed tasks should be waiting for reallocate()");
+        int assigned = allocator.reallocate(state);
+
+        assertEquals(freed, assigned, "Every freed task should be re-auctioned");
+        assertEquals(0, allocator.getOpenTaskCount());
+        int[] remaining = new int[ids.length - 1];
+        for (int i = 0, n = 0; i < ids.length; i++) {
+            if (ids[i] != removed) {
+                remaining[n++] = ids[i];
+            }
+        }
+        for (int t = 0; t < tasks.length; t++) {
+            int owner = allocator.getOwner(tasks[t]);
+            assertTrue(owner != removed && allocator.isAgent(owner), "Task " + tasks[t] + " should have a live drone");
+            if (before[t] != removed) {
+                assertEquals(before[t], owner, "Task " + tasks[t] + " should not have moved");
+            }
+        }
+        checkBundles(allocator, remaining, tasks.length);
+
+        parallel.shutdown();
+    }
+
+    @Test
+    void testReallocateAfterAddTask() {
+        ParallelFor parallel = new ParallelFor(2);
+        DroneState state = new DroneState(10);
+        TaskAllocator allocator = new TaskAllocator(parallel, 5);
+        int[] ids = addAgents(allocator, state, 10, 500f, new Random(7));
+        addTasks(allocator, 30, 500f, new Random(8));
+        allocator.allocate(state);
+        assertEquals(0, allocator.reallocate(state), "Nothing changed since allocate()");
+
+        int[] added = addTasks(allocator, 15, 500f, new Random(9));
+        assertTrue(allocator.hasChanges());
+        int assigned = allocator.reallocate(state);
+
+        assertEquals(15, assigned);
+        assertEquals(0, allocator.getOpenTaskCount());
+        for (int task : added) {
+            assertTrue(allocator.isAgent(allocator.getOwner(task)), "New task " + task + " should have a drone");
+        }
+        checkBundles(allocator, ids, 45);
+
+        parallel.shutdown();
+    }
+
+    /**
+     * Full allocation of 5000 tasks over 5 x 5 km to 1000 drones with room
+     * for exactly all of them. Logs the time per allocate(); the bound only
+     * catches order-of-magnitude regressions.
+     */
+    @Test
+    void testAllocationTime1000Drones5000Tasks() {
+        ParallelFor parallel = new ParallelFor(Runtime.getRuntime().availableProcessors());
+        DroneState state = new DroneState(1000);
+        TaskAllocator allocator = new TaskAllocator(parallel, 5);
+        int[] ids = addAgents(allocator, state, 1000, 5000f, new Random(10));
+        addTasks(allocator, 5000, 5000f, new Random(11));
+
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            assertEquals(5000, allocator.allocate(state));
+            best = Math.min(best, allocator.getLastNanos());
+        }
+        logger.info("1000 drones x 5000 tasks: best allocate() {} ms, {} rounds", best / 1_000_000,
+                allocator.getLastRounds());
+        checkBundles(allocator, ids, 5000);
+        assertTrue(best < 2_000_000_000L, "Allocation took " + best / 1_000_000 + " ms");
+
+        parallel.shutdown();
+    }
+
+    private static int[] addAgents(TaskAllocator allocator, DroneState state, int count, float size, Random random) {
+        int[] ids = new int[count];
+        float[] position = state.getPosition();
+        for (int i = 0; i < count; i++) {
+            ids[i] = state.allocate();
+            int p = ids[i] * 3;
+            position[p] = random.nextFloat() * size;
+            position[p + 1] = 30f;
+            position[p + 2] = random.nextFloat() * size;
+            allocator.addAgent(ids[i]);
+        }
+        return ids;
+    }
+
+    private static int[] addTasks(TaskAllocator allocator, int count, float size, Random random) {
+        int[] tasks = new int[count];
+        for (int i = 0; i < count; i++) {
+            tasks[i] = allocator.addTask(random.nextFloat() * size, 10f, random.nextFloat() * size,
+                    1f + random.nextFloat() * 9f, 30f);
+        }
+        return tasks;
+    }
+
+    /** Bundles respect maxBundle, agree with getOwner() and hold each task once */
+    private static void checkBundles(TaskAllocator allocator, int[] ids, int expectedTotal) {
+        int[] bundle = new int[allocator.getMaxBundle()];
+        Set<Integer> seen = new HashSet<>();
+        for (int id : ids) {
+            int size = allocator.getBundle(id, bundle);
+            assertTrue(size <= allocator.getMaxBundle(), "Drone " + id + " holds " + size + " tasks");
+            for (int i = 0; i < size; i++) {
+                assertEquals(id, allocator.getOwner(bundle[i]), "Task " + bundle[i] + " owner");
+                assertTrue(seen.add(bundle[i]), "Task " + bundle[i] + " is in two bundles");
+            }
+        }
+        assertEquals(expectedTotal, seen.size());
+    }
+}
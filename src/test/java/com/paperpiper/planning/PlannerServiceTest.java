@@ -0,0 +1,159 @@
+package com.paperpiper.planning;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.paperpiper.airspace.ReservationTable;
+import com.paperpiper.spatial.OccupancyOctree;
+
+/**
+ * Unit tests for PlannerService with a ReservationTable attached.
+ */
+class PlannerServiceTest {
+
+    private static final int DRONES = 20;
+    private static final float SPEED = 10f;
+
+    /**
+     * Each drone asks for a path east, then at once for one north. Whichever
+     * worker finishes first, the table must end up holding exactly the
+     * collected (north) path and nothing of the superseded one.
+     */
+    @Test
+    void testSupersededRequestLeavesNoReservation() throws InterruptedException {
+        OccupancyOctree map = OccupancyOctree.covering(-128, 0, -128, 128, 128, 128, 2f, 1.5f);
+        ReservationTable table = new ReservationTable(4f, 1f, 64, 4096, 64);
+        PlannerService service = new PlannerService(map, 4, 100_000, 64, 256);
+        service.setReservations(table, SPEED);
+
+        for (int d = 0; d < DRONES; d++) {
+            float y = altitude(d);
+            assertTrue(service.request(d, 0, y, 0, 100, y, 0));
+            assertTrue(service.request(d, 0, y, 0, 0, y, -100));
+        }
+        collectAll(service);
+
+        for (int d = 0; d < DRONES; d++) {
+            float y = altitude(d);
+            FlightPath path = service.getPath(d);
+            float[] waypoints = path.getWaypoints();
+            assertEquals(-100f, waypoints[waypoints.length - 1], 1e-3f, "Drone " + d + " should have the newer path");
+            assertTrue(path.isReserved(), "Drone " + d + " should hold its path");
+            float departure = path.getDeparture();
+            for (float f = 0.1f; f < 1f; f += 0.1f) {
+                assertEquals(d, table.ownerAt(0, y, -100 * f, departure + 100 * f / SPEED),
+                        "Drone " + d + " should hold its collected path at " + f);
+            }
+            for (float f = 0.4f; f <= 1f; f += 0.1f) {
+                assertEquals(-1, table.ownerAt(100 * f, y, 0, departure + 100 * f / SPEED),
+                        "Nothing of drone " + d + "'s superseded path should be held at " + f);
+            }
+        }
+        service.shutdown();
+    }
+
+    /**
+     * Cancelling while the request is still in flight (as removeDrone does)
+     * must not leave the worker's reservation behind.
+     */
+    @Test
+    void testCancelledRequestLeavesNoReservation() throws InterruptedException {
+        OccupancyOctree map = OccupancyOctree.covering(-128, 0, -128, 128, 128, 128, 2f, 1.5f);
+        ReservationTable table = new ReservationTable(4f, 1f, 64, 4096, 64);
+        PlannerService service = new PlannerService(map, 4, 100_000, 64, 256);
+        service.setReservations(table, SPEED);
+
+        for (int d = 0; d < DRONES; d++) {
+            float y = altitude(d);
+            assertTrue(service.request(d, 0, y, 0, 100, y, 0));
+            service.cancel(d);
+        }
+        while (service.getQueued() > 0) {
+            Thread.sleep(1);
+        }
+        service.collect();
+
+        for (int d = 0; d < DRONES; d++) {
+            float y = altitude(d);
+            assertNull(service.getPath(d));
+            for (float f = 0.1f; f <= 1f; f += 0.1f) {
+                assertEquals(-1, table.ownerAt(100 * f, y, 0, 100 * f / SPEED),
+                        "Cancelled drone " + d + " should hold nothing at " + f);
+            }
+        }
+        service.shutdown();
+    }
+
+    /**
+     * With maxQueued = 1 and the only place taken, a cache hit that runs into
+     * another drone's reservation must be refused without touching the
+     * requesting drone: its current path stays reserved and nothing is left
+     * pending.
+     */
+    @Test
+    void testRefusedCacheHitLeavesDroneUntouched() throws InterruptedException {
+        OccupancyOctree map = OccupancyOctree.covering(-128, 0, -128, 128, 128, 128, 2f, 1.5f);
+        // A sealed hollow box: planning into it searches until maxNodes runs out
+        float cx = -100, cy = 60, cz = 100, half = 10, wall = 1;
+        map.addBox(cx - half, cy, cz, wall, half, half);
+        map.addBox(cx + half, cy, cz, wall, half, half);
+        map.addBox(cx, cy - half, cz, half, wall, half);
+        map.addBox(cx, cy + half, cz, half, wall, half);
+        map.addBox(cx, cy, cz - half, half, half, wall);
+        map.addBox(cx, cy, cz + half, half, half, wall);
+        ReservationTable table = new ReservationTable(4f, 1f, 64, 4096, 64);
+        PlannerService service = new PlannerService(map, 1, 2_000_000, 64, 1);
+        service.setReservations(table, SPEED);
+
+        // Drone 1 flies east, which also puts that path in the cache
+        assertTrue(service.request(1, 0, 20, 0, 100, 20, 0));
+        collectAll(service);
+        assertTrue(service.getPath(1).isReserved());
+
+        // Drone 0 flies north and holds that
+        assertTrue(service.request(0, 0, 60, 0, 0, 60, -100));
+        collectAll(service);
+        FlightPath north = service.getPath(0);
+        assertTrue(north.isReserved());
+
+        // Fill the queue, then ask for the (cached, taken) east path. A worker
+        // hands its result over just before giving up its place
+        while (service.getQueued() > 0) {
+            Thread.sleep(1);
+        }
+        assertTrue(service.request(3, 0, 60, 0, cx, cy, cz));
+        assertEquals(1, service.getQueued());
+        boolean accepted = service.request(0, 0, 20, 0, 100, 20, 0);
+
+        assertTrue(!accepted, "The queue is full");
+        assertTrue(north == service.getPath(0), "Drone 0 should keep its path");
+        assertTrue(!service.isPending(0), "Nothing was submitted for drone 0");
+        for (float f = 0.1f; f < 1f; f += 0.1f) {
+            assertEquals(0, table.ownerAt(0, 60, -100 * f, north.getDeparture() + 100 * f / SPEED),
+                    "Drone 0 should still hold its path at " + f);
+        }
+        service.shutdown();
+    }
+
+    /** One reservation voxel apart, so drones never conflict with each other */
+    private static float altitude(int drone) {
+        return 10f + drone * 5f;
+    }
+
+    private static void collectAll(PlannerService service) throws InterruptedException {
+        for (int wait = 0; wait < 10_000; wait++) {
+            service.collect();
+            boolean pending = false;
+            for (int d = 0; d < DRONES; d++) {
+                pending |= service.isPending(d);
+            }
+            if (!pending) {
+                return;
+            }
+            Thread.sleep(1);
+        }
+        throw new AssertionError("Planner didn't finish within 10 s");
+    }
+}
@@ -0,0 +1,145 @@
+package com.paperpiper.spatial;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for RTree.
+ */
+class RTreeTest {
+
+    private static final int ITEMS = 2000;
+
+    /**
+     * Random inserts, moves (small ones that stay in their leaf and large
+     * ones that don't) and removes, with a repack halfway: every query must
+     * return exactly the boxes a brute-force scan finds.
+     */
+    @Test
+    void testRandomEditsMatchBruteForce() {
+        Random random = new Random(1);
+        RTree tree = new RTree(8);
+        float[] boxes = new float[ITEMS * 6];
+        boolean[] present = new boolean[ITEMS];
+        int[] out = new int[ITEMS];
+        int[] stack = new int[1024];
+
+        for (int step = 0; step < 20_000; step++) {
+            int id = random.nextInt(ITEMS);
+            int op = random.nextInt(10);
+            if (op < 4) {
+                randomBox(random, boxes, id, 30f);
+                tree.insert(id, boxes[id * 6], boxes[id * 6 + 1], boxes[id * 6 + 2], boxes[id * 6 + 3],
+                        boxes[id * 6 + 4], boxes[id * 6 + 5]);
+                present[id] = true;
+            } else if (op < 7 && present[id]) {
+                if (op == 4) {
+                    // Nudge: usually still inside its leaf
+                    int b = id * 6;
+                    float dx = random.nextFloat() - 0.5f, dz = random.nextFloat() - 0.5f;
+                    for (int c = 0; c < 6; c += 3) {
+                        boxes[b + c] += dx;
+                        boxes[b + c + 2] += dz;
+                    }
+                } else {
+                    randomBox(random, boxes, id, 30f);
+                }
+                tree.update(id, boxes[id * 6], boxes[id * 6 + 1], boxes[id * 6 + 2], boxes[id * 6 + 3],
+                        boxes[id * 6 + 4], boxes[id * 6 + 5]);
+            } else if (op < 9) {
+                tree.remove(id);
+                present[id] = false;
+            }
+            if (step == 10_000) {
+                tree.repack();
+                assertEquals(0, tree.getEditsSincePack());
+            }
+            if (step % 250 == 0) {
+                checkQueries(tree, boxes, present, random, out, stack, "Step " + step);
+            }
+        }
+
+        tree.repack();
+        checkQueries(tree, boxes, present, random, out, stack, "After the final repack");
+    }
+
+    /**
+     * A bulk load matches brute force too, and removing everything leaves
+     * an empty tree that takes inserts again.
+     */
+    @Test
+    void testLoadAndEmpty() {
+        Random random = new Random(2);
+        RTree tree = new RTree(6);
+        float[] boxes = new float[ITEMS * 6];
+        boolean[] present = new boolean[ITEMS];
+        int[] ids = new int[ITEMS / 2];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i * 2;
+            randomBox(random, boxes, ids[i], 50f);
+            present[ids[i]] = true;
+        }
+        tree.load(ids, boxes, ids.length);
+        int[] out = new int[ITEMS];
+        int[] stack = new int[1024];
+
+        assertEquals(ids.length, tree.getItemCount());
+        checkQueries(tree, boxes, present, random, out, stack, "After load");
+
+        for (int id : ids) {
+            tree.remove(id);
+        }
+        assertEquals(0, tree.getItemCount());
+        assertEquals(0, tree.getHeight());
+        assertEquals(0, tree.query(-1e6f, -1e6f, -1e6f, 1e6f, 1e6f, 1e6f, out, stack));
+
+        tree.insert(5, 0, 0, 0, 1, 1, 1);
+        assertEquals(1, tree.query(0.5f, 0.5f, 0.5f, 2, 2, 2, out, stack));
+        assertEquals(5, out[0]);
+    }
+
+    private static void randomBox(Random random, float[] boxes, int id, float maxSize) {
+        int b = id * 6;
+        float x = random.nextFloat() * 1000, y = random.nextFloat() * 100, z = random.nextFloat() * 1000;
+        boxes[b] = x;
+        boxes[b + 1] = y;
+        boxes[b + 2] = z;
+        boxes[b + 3] = x + random.nextFloat() * maxSize;
+        boxes[b + 4] = y + random.nextFloat() * maxSize;
+        boxes[b + 5] = z + random.nextFloat() * maxSize;
+    }
+
+    /** 50 random query boxes: the tree finds exactly the overlapping items, each once */
+    private static void checkQueries(RTree tree, float[] boxes, boolean[] present, Random random, int[] out,
+            int[] stack, String when) {
+        int expectedCount = 0;
+        for (boolean p : present) {
+            expectedCount += p ? 1 : 0;
+        }
+        assertEquals(expectedCount, tree.getItemCount(), when);
+
+        boolean[] found = new boolean[present.length];
+        for (int q = 0; q < 50; q++) {
+            float x = random.nextFloat() * 1000, y = random.nextFloat() * 100, z = random.nextFloat() * 1000;
+            float size = random.nextFloat() * 80;
+            int count = tree.query(x, y, z, x + size, y + size, z + size, out, stack);
+
+            Arrays.fill(found, false);
+            for (int i = 0; i < count; i++) {
+                assertTrue(!found[out[i]], when + ": item " + out[i] + " returned twice");
+                found[out[i]] = true;
+            }
+            for (int id = 0; id < present.length; id++) {
+                int b = id * 6;
+                boolean overlaps = present[id] && boxes[b] <= x + size && boxes[b + 3] >= x
+                        && boxes[b + 1] <= y + size && boxes[b + 4] >= y && boxes[b + 2] <= z + size
+                        && boxes[b + 5] >= z;
+                assertEquals(overlaps, found[id], when + ": item " + id + " in query " + q);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.paperpiper.spatial;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.paperpiper.util.ParallelFor;
+
+/**
+ * Unit tests for SpatialHash.
+ */
+class SpatialHashTest {
+
+    private static final int CAPACITY = 4000;
+
+    /**
+     * Sparse ids scattered around the origin (negative cells too) in a table
+     * small enough that many cells share a bucket. Radius and nearest queries
+     * must agree with a brute-force scan, whether the rebuild ran serially or
+     * on the pool.
+     */
+    @Test
+    void testQueriesMatchBruteForce() {
+        Random random = new Random(1);
+        float[] positions = new float[CAPACITY * 3];
+        int[] entries = new int[CAPACITY / 2];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = i * 2 + 1;
+            int p = entries[i] * 3;
+            positions[p] = random.nextFloat() * 200 - 100;
+            positions[p + 1] = random.nextFloat() * 40 - 20;
+            positions[p + 2] = random.nextFloat() * 200 - 100;
+        }
+        ParallelFor parallel = new ParallelFor(2);
+
+        for (ParallelFor pool : new ParallelFor[] {null, parallel}) {
+            SpatialHash hash = new SpatialHash(5f, 64);
+            hash.rebuild(positions, entries, entries.length, pool);
+            assertEquals(entries.length, hash.size());
+
+            for (int q = 0; q < 200; q++) {
+                float x = random.nextFloat() * 220 - 110;
+                float y = random.nextFloat() * 50 - 25;
+                float z = random.nextFloat() * 220 - 110;
+                // Half the queries come from a drone, which must leave itself out
+                int exclude = q % 2 == 0 ? entries[random.nextInt(entries.length)] : -1;
+                if (exclude >= 0) {
+                    x = positions[exclude * 3];
+                    y = positions[exclude * 3 + 1];
+                    z = positions[exclude * 3 + 2];
+                }
+                float radius = random.nextFloat() * 20;
+                int k = 1 + random.nextInt(16);
+                checkRadius(hash, positions, entries, x, y, z, radius, exclude);
+                checkNearest(hash, positions, entries, x, y, z, k, radius, exclude);
+            }
+        }
+        parallel.shutdown();
+    }
+
+    /**
+     * Asking for more neighbours than there are returns all of them, closest
+     * first; radius 0 finds only drones sitting exactly on the point.
+     */
+    @Test
+    void testEdgeCases() {
+        float[] positions = {
+            0, 0, 0,
+            3, 0, 0,
+            -1, 2, 0,
+            3, 0, 0,     // on top of drone 1
+            40, 0, -40,
+        };
+        int[] entries = {0, 1, 2, 3, 4};
+        SpatialHash hash = new SpatialHash(5f, 16);
+        hash.rebuild(positions, entries, entries.length);
+
+        for (int k : new int[] {5, 8, 100}) {
+            checkNearest(hash, positions, entries, 0, 0, 0, k, 100f, -1);
+            checkNearest(hash, positions, entries, 0, 0, 0, k, 100f, 0);
+            checkNearest(hash, positions, entries, 0, 0, 0, k, 10f, 0);
+        }
+        int[] ids = new int[100];
+        float[] distSq = new float[100];
+        assertEquals(4, hash.queryNearest(0, 0, 0, 100, 100f, 0, ids, distSq), "Everyone but the asking drone");
+
+        checkRadius(hash, positions, entries, 3, 0, 0, 0f, -1);
+        assertEquals(2, hash.queryRadius(3, 0, 0, 0f, -1, ids), "Both drones on the point");
+        assertEquals(1, hash.queryRadius(3, 0, 0, 0f, 1, ids));
+        assertEquals(3, ids[0]);
+        assertEquals(0, hash.queryRadius(3.01f, 0, 0, 0f, -1, ids));
+        checkNearest(hash, positions, entries, 3, 0, 0, 4, 0f, -1);
+        assertEquals(2, hash.queryNearest(3, 0, 0, 4, 0f, -1, ids, distSq));
+        assertEquals(0, hash.queryNearest(3.01f, 0, 0, 4, 0f, -1, ids, distSq));
+
+        SpatialHash empty = new SpatialHash(5f, 16);
+        empty.rebuild(positions, entries, 0);
+        assertEquals(0, empty.queryRadius(0, 0, 0, 10f, -1, ids));
+        assertEquals(0, empty.queryNearest(0, 0, 0, 4, 10f, -1, ids, distSq));
+    }
+
+    private static float distSq(float[] positions, int id, float x, float y, float z) {
+        float dx = positions[id * 3] - x, dy = positions[id * 3 + 1] - y, dz = positions[id * 3 + 2] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static void checkRadius(SpatialHash hash, float[] positions, int[] entries, float x, float y, float z,
+            float radius, int exclude) {
+        int[] out = new int[entries.length];
+        int count = hash.queryRadius(x, y, z, radius, exclude, out);
+        int[] got = Arrays.copyOf(out, count);
+        Arrays.sort(got);
+
+        int[] expected = new int[entries.length];
+        int n = 0;
+        for (int id : entries) {
+            if (id != exclude && distSq(positions, id, x, y, z) <= radius * radius) {
+                expected[n++] = id;
+            }
+        }
+        expected = Arrays.copyOf(expected, n);
+        Arrays.sort(expected);
+        assertTrue(Arrays.equals(expected, got), "Within " + radius + " m of (" + x + ", " + y + ", " + z
+                + "): expected " + Arrays.toString(expected) + ", got " + Arrays.toString(got));
+    }
+
+    /** Same distances as the brute-force top k (ids may differ only between equal distances) */
+    private static void checkNearest(SpatialHash hash, float[] positions, int[] entries, float x, float y, float z,
+            int k, float maxRadius, int exclude) {
+        int[] ids = new int[k];
+        float[] distSq = new float[k];
+        int count = hash.queryNearest(x, y, z, k, maxRadius, exclude, ids, distSq);
+
+        float[] all = new float[entries.length];
+        int n = 0;
+        for (int id : entries) {
+            float d = distSq(positions, id, x, y, z);
+            if (id != exclude && d <= maxRadius * maxRadius) {
+                all[n++] = d;
+            }
+        }
+        Arrays.sort(all, 0, n);
+        String where = k + " nearest within " + maxRadius + " m of (" + x + ", " + y + ", " + z + ")";
+        assertEquals(Math.min(k, n), count, where);
+        for (int i = 0; i < count; i++) {
+            assertEquals(all[i], distSq[i], where + ", #" + i);
+            assertTrue(ids[i] != exclude, where + ": returned the excluded drone");
+            assertEquals(distSq(positions, ids[i], x, y, z), distSq[i], where + ": distance of " + ids[i]);
+        }
+    }
+}